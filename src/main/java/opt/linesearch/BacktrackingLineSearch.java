@@ -61,7 +61,7 @@ public final class BacktrackingLineSearch extends LineSearch {
 		final int D = x0.length;
 
 		// prepare initial position and dot products
-		final double[] x = new double[D];
+		final double[] x = output(D);
 		double step = initial;
 		double y;
 		BlasMath.daxpy1(D, step, dir, 1, x0, 1, x, 1);
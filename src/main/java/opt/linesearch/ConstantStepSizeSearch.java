@@ -49,7 +49,7 @@ public final class ConstantStepSizeSearch extends LineSearch {
 			final Function<? super double[], double[]> df, final double[] x0, final double[] dir, final double[] df0,
 			final double f0, final double initial) {
 		final int D = x0.length;
-		final double[] x = new double[D];
+		final double[] x = output(D);
 		BlasMath.daxpy1(D, myStepSize, dir, 1, x0, 1, x, 1);
 		return new LineSearchSolution(myStepSize, 0, 0, x, true);
 	}
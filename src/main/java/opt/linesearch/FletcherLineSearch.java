@@ -55,7 +55,7 @@ public final class FletcherLineSearch extends LineSearch {
 			double f0, final double initial) {
 		final double rhoscal = 0.1, sig = 0.7, tau = 0.1, chi = 0.75, eps2 = myTol;
 		final int mhat = myMaxIters, n = x0.length;
-		final double[] wa = new double[n];
+		final double[] wa = output(n);
 
 		// INITIALIZE TEMPORARY ALGORITHM VARIABLES
 		double alfa0 = initial, alfal = 0.0, alfau = 1e99;
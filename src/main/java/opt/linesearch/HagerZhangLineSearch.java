@@ -20,8 +20,7 @@ OR OTHER DEALINGS IN THE SOFTWARE.
 */
 package opt.linesearch;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.function.Function;
 
 import utils.BlasMath;
@@ -44,16 +43,15 @@ import utils.BlasMath;
  */
 public final class HagerZhangLineSearch extends LineSearch {
 
-	private static class LineStep {
+	// the trial steps with their slopes and values, stored in arrays that are
+	// reused between calls
+	private double[] mySteps = new double[16], mySlopes = new double[16], myValues = new double[16];
+	private int mySize;
 
-		public double step, slope, value;
-
-		public LineStep(double _step, double _slope, double _value) {
-			step = _step;
-			slope = _slope;
-			value = _value;
-		}
-	}
+	// the outputs of the subroutines, which would otherwise be returned in
+	// newly allocated arrays
+	private double myPhi, myDPhi;
+	private int myIa, myIb, myFev, myDFev;
 
 	/**
 	 *
@@ -69,12 +67,9 @@ public final class HagerZhangLineSearch extends LineSearch {
 			final Function<? super double[], double[]> df, final double[] x0, final double[] dir, final double[] df0,
 			final double f0, final double initial) {
 
-		// prepare variables
-		final int[] fev = new int[1];
-		final int[] dfev = new int[1];
-
 		// call main subroutine
-		return hagerzhang(f, df, x0, dir, df0, f0, initial, myTol, myMaxIters, fev, dfev);
+		myFev = myDFev = 0;
+		return hagerzhang(f, df, x0, dir, df0, f0, initial, myTol, myMaxIters);
 	}
 
 	/**
@@ -102,8 +97,7 @@ public final class HagerZhangLineSearch extends LineSearch {
 
 		// prepare variables
 		final int n = x0.length;
-		final int[] fev = new int[1];
-		final int[] dfev = new int[1];
+		myFev = myDFev = 0;
 
 		// initialize the step size
 		final double xnorm = BlasMath.denorm(n, x0);
@@ -119,14 +113,13 @@ public final class HagerZhangLineSearch extends LineSearch {
 			} else {
 				c = 1.0;
 			}
-			fev[0] = 0;
 		} else if (quadstep) {
 
 			// not the first iteration - attempt quadratic interpolation
 			final double phi0 = f0;
 			final double dphi0 = BlasMath.ddotm(n, df0, 1, dir, 1);
 			final double step = psi1 * pstep;
-			final double[] wa = new double[n];
+			final double[] wa = work(0, n);
 			for (int i = 0; i < n; ++i) {
 				wa[i] = x0[i] + step * dir[i];
 			}
@@ -142,66 +135,76 @@ public final class HagerZhangLineSearch extends LineSearch {
 				// interpolation rejected
 				c = psi2 * pstep;
 			}
-			fev[0] = 1;
+			myFev = 1;
 		} else {
 			c = psi2 * pstep;
 		}
 
 		// call main subroutine
-		return hagerzhang(f, df, x0, dir, df0, f0, c, epsk, maxit, fev, dfev);
+		return hagerzhang(f, df, x0, dir, df0, f0, c, epsk, maxit);
 	}
 
-	private static LineSearchSolution hagerzhang(final Function<? super double[], Double> f,
+	private LineSearchSolution hagerzhang(final Function<? super double[], Double> f,
 			final Function<? super double[], double[]> df, final double[] x0, final double[] dir, final double[] df0,
-			final double f0, final double initial, final double eps, final int maxit, final int[] fev,
-			final int[] dfev) {
+			final double f0, final double initial, final double eps, final int maxit) {
 
 		// prepare variables
 		final int n = x0.length;
-		final double[] wa = new double[n];
-		final double[] dfarr = new double[n];
+		final double[] wa = output(n);
+		final double[] dfarr = work(1, n);
 		final double phi0 = f0;
 		final double dphi0 = BlasMath.ddotm(n, df0, 1, dir, 1);
-		final List<LineStep> lsr = new ArrayList<>();
-		lsr.add(new LineStep(0.0, dphi0, phi0));
+		mySize = 0;
+		add(0.0, dphi0, phi0);
 
 		// call main subroutine
 		// TODO: check convergence
-		final double stepf = hagerzhang(lsr, n, dfarr, x0, dir, wa, initial, false, 0.1, 0.9, Double.POSITIVE_INFINITY,
-				5.0, eps, 0.66, maxit, 0.1, 10000, f, df, fev, dfev);
+		final double stepf = hagerzhang(n, dfarr, x0, dir, wa, initial, false, 0.1, 0.9, Double.POSITIVE_INFINITY, 5.0,
+				eps, 0.66, maxit, 0.1, 10000, f, df);
 		BlasMath.daxpy1(n, stepf, dir, 1, x0, 1, wa, 1);
-		return new LineSearchSolution(stepf, fev[0], dfev[0], wa, true);
+		return new LineSearchSolution(stepf, myFev, myDFev, wa, true);
 	}
 
-	private static double hagerzhang(final List<LineStep> lsr, final int n, final double[] df, final double[] x,
-			final double[] d, final double[] wa, double c, boolean canbreak, final double delta, final double sigma,
-			double stepmax, final double rho, final double eps, final double gamma, final int lsmax, final double psi3,
-			final int itfmax, final Function<? super double[], Double> func,
-			final Function<? super double[], double[]> dfunc, final int[] fev, final int[] dfev) {
+	private void add(final double step, final double slope, final double value) {
+		if (mySize == mySteps.length) {
+			mySteps = Arrays.copyOf(mySteps, 2 * mySize);
+			mySlopes = Arrays.copyOf(mySlopes, 2 * mySize);
+			myValues = Arrays.copyOf(myValues, 2 * mySize);
+		}
+		mySteps[mySize] = step;
+		mySlopes[mySize] = slope;
+		myValues[mySize] = value;
+		++mySize;
+	}
+
+	private double hagerzhang(final int n, final double[] df, final double[] x, final double[] d, final double[] wa,
+			double c, boolean canbreak, final double delta, final double sigma, double stepmax, final double rho,
+			final double eps, final double gamma, final int lsmax, final double psi3, final int itfmax,
+			final Function<? super double[], Double> func, final Function<? super double[], double[]> dfunc) {
 
-		double phi0 = lsr.get(1 - 1).value;
-		double dphi0 = lsr.get(1 - 1).slope;
+		double phi0 = myValues[1 - 1];
+		double dphi0 = mySlopes[1 - 1];
 		double philim = phi0 + eps * Math.abs(phi0);
-		double[] val = eval(n, df, x, d, c, wa, true, func, dfunc);
-		double phic = val[0];
-		double dphic = val[1];
-		++fev[0];
-		++dfev[0];
+		eval(n, df, x, d, c, wa, true, func, dfunc);
+		double phic = myPhi;
+		double dphic = myDPhi;
+		++myFev;
+		++myDFev;
 		int itf = 1;
 		while (!(Double.isFinite(phic) && Double.isFinite(dphic)) && itf < itfmax) {
 			canbreak = false;
 			++itf;
 			c *= psi3;
-			val = eval(n, df, x, d, c, wa, true, func, dfunc);
-			phic = val[0];
-			dphic = val[1];
-			++fev[0];
-			++dfev[0];
+			eval(n, df, x, d, c, wa, true, func, dfunc);
+			phic = myPhi;
+			dphic = myDPhi;
+			++myFev;
+			++myDFev;
 		}
 		if (!(Double.isFinite(phic) && Double.isFinite(dphic))) {
 			return 0.0;
 		}
-		lsr.add(new LineStep(c, dphic, phic));
+		add(c, dphic, phic);
 		if (canbreak && satisfiesWolfe(c, phic, dphic, phi0, dphi0, philim, delta, sigma)) {
 			return c;
 		}
@@ -212,20 +215,20 @@ public final class HagerZhangLineSearch extends LineSearch {
 		double cold;
 		while (!isbrak && it < lsmax) {
 			if (dphic >= 0.0) {
-				ib = lsr.size();
+				ib = mySize;
 				for (int i = ib - 1; i >= 1; --i) {
-					if (lsr.get(i - 1).value <= philim) {
+					if (myValues[i - 1] <= philim) {
 						ia = i;
 						break;
 					}
 				}
 				isbrak = true;
-			} else if (lsr.get(lsr.size() - 1).value > philim) {
-				ib = lsr.size();
+			} else if (myValues[mySize - 1] > philim) {
+				ib = mySize;
 				ia = ib - 1;
-				final int[] iab = bisect(lsr, n, df, x, d, wa, ia, ib, philim, func, dfunc, fev, dfev);
-				ia = iab[0];
-				ib = iab[1];
+				bisect(n, df, x, d, wa, ia, ib, philim, func, dfunc);
+				ia = myIa;
+				ib = myIb;
 				isbrak = true;
 			} else {
 				cold = c;
@@ -236,117 +239,119 @@ public final class HagerZhangLineSearch extends LineSearch {
 						return cold;
 					}
 				}
-				val = eval(n, df, x, d, c, wa, true, func, dfunc);
-				phic = val[0];
-				dphic = val[1];
-				++fev[0];
-				++dfev[0];
+				eval(n, df, x, d, c, wa, true, func, dfunc);
+				phic = myPhi;
+				dphic = myDPhi;
+				++myFev;
+				++myDFev;
 				itf = 1;
 				while (!(Double.isFinite(phic) && Double.isFinite(dphic)) && c > nextFloat(cold) && itf < itfmax) {
 					stepmax = c;
 					++itf;
 					c = (cold + c) / 2.0;
-					val = eval(n, df, x, d, c, wa, true, func, dfunc);
-					phic = val[0];
-					dphic = val[1];
-					++fev[0];
-					++dfev[0];
+					eval(n, df, x, d, c, wa, true, func, dfunc);
+					phic = myPhi;
+					dphic = myDPhi;
+					++myFev;
+					++myDFev;
 				}
 				if (!(Double.isFinite(phic) && Double.isFinite(dphic))) {
 					return cold;
 				} else if (dphic < 0.0 && c == stepmax) {
 					return c;
 				}
-				lsr.add(new LineStep(c, dphic, phic));
+				add(c, dphic, phic);
 			}
 			++it;
 		}
 		while (it < lsmax) {
-			double a = lsr.get(ia - 1).step;
-			double b = lsr.get(ib - 1).step;
+			double a = mySteps[ia - 1];
+			double b = mySteps[ib - 1];
 			if (b - a <= Math.ulp(b)) {
 				return a;
 			}
-			final int[] sec = secant2(lsr, n, df, x, d, wa, ia, ib, philim, delta, sigma, func, dfunc, fev, dfev);
-			boolean iswolfe = sec[0] == 1;
-			int iA = sec[1];
-			int iB = sec[2];
+			boolean iswolfe = secant2(n, df, x, d, wa, ia, ib, philim, delta, sigma, func, dfunc);
+			int iA = myIa;
+			int iB = myIb;
 			if (iswolfe) {
-				return lsr.get(iA - 1).step;
+				return mySteps[iA - 1];
 			}
-			double A = lsr.get(iA - 1).step;
-			double B = lsr.get(iB - 1).step;
+			double A = mySteps[iA - 1];
+			double B = mySteps[iB - 1];
 			if (B - A < gamma * (b - a)) {
-				if (nextFloat(lsr.get(ia - 1).value) >= lsr.get(ib - 1).value
-						&& nextFloat(lsr.get(iA - 1).value) >= lsr.get(iB - 1).value) {
+				if (nextFloat(myValues[ia - 1]) >= myValues[ib - 1]
+						&& nextFloat(myValues[iA - 1]) >= myValues[iB - 1]) {
 					return A;
 				}
 				ia = iA;
 				ib = iB;
 			} else {
 				c = (A + B) / 2.0;
-				val = eval(n, df, x, d, c, wa, true, func, dfunc);
-				phic = val[0];
-				dphic = val[1];
-				++fev[0];
-				++dfev[0];
-				lsr.add(new LineStep(c, dphic, phic));
-				final int[] iab = update(lsr, n, df, x, d, wa, iA, iB, lsr.size(), philim, func, dfunc, fev, dfev);
-				ia = iab[0];
-				ib = iab[1];
+				eval(n, df, x, d, c, wa, true, func, dfunc);
+				phic = myPhi;
+				dphic = myDPhi;
+				++myFev;
+				++myDFev;
+				add(c, dphic, phic);
+				update(n, df, x, d, wa, iA, iB, mySize, philim, func, dfunc);
+				ia = myIa;
+				ib = myIb;
 			}
 			++it;
 		}
 		throw new RuntimeException("Line search failed to converge" + " - reached maximum # of iterations.");
 	}
 
-	private static int[] secant2(final List<LineStep> lsr, final int n, final double[] df, final double[] x,
-			final double[] d, final double[] wa, final int ia, final int ib, final double philim, final double delta,
-			final double sigma, final Function<? super double[], Double> func,
-			final Function<? super double[], double[]> dfunc, final int[] fev, final int[] dfev) {
-		double phi0 = lsr.get(1 - 1).value;
-		double dphi0 = lsr.get(1 - 1).slope;
-		double a = lsr.get(ia - 1).step;
-		double b = lsr.get(ib - 1).step;
-		double dphia = lsr.get(ia - 1).slope;
-		double dphib = lsr.get(ib - 1).slope;
+	private boolean secant2(final int n, final double[] df, final double[] x, final double[] d, final double[] wa,
+			final int ia, final int ib, final double philim, final double delta, final double sigma,
+			final Function<? super double[], Double> func, final Function<? super double[], double[]> dfunc) {
+		double phi0 = myValues[1 - 1];
+		double dphi0 = mySlopes[1 - 1];
+		double a = mySteps[ia - 1];
+		double b = mySteps[ib - 1];
+		double dphia = mySlopes[ia - 1];
+		double dphib = mySlopes[ib - 1];
 		double c = secant(a, b, dphia, dphib);
-		double[] val = eval(n, df, x, d, c, wa, true, func, dfunc);
-		double phic = val[0];
-		double dphic = val[1];
-		++fev[0];
-		++dfev[0];
-		lsr.add(new LineStep(c, dphic, phic));
-		int ic = lsr.size();
+		eval(n, df, x, d, c, wa, true, func, dfunc);
+		double phic = myPhi;
+		double dphic = myDPhi;
+		++myFev;
+		++myDFev;
+		add(c, dphic, phic);
+		int ic = mySize;
 		if (satisfiesWolfe(c, phic, dphic, phi0, dphi0, philim, delta, sigma)) {
-			return new int[] { 1, ic, ic };
+			myIa = myIb = ic;
+			return true;
 		}
-		int[] AB = update(lsr, n, df, x, d, wa, ia, ib, ic, philim, func, dfunc, fev, dfev);
-		int iA = AB[0];
-		int iB = AB[1];
-		a = lsr.get(iA - 1).step;
-		b = lsr.get(iB - 1).step;
+		update(n, df, x, d, wa, ia, ib, ic, philim, func, dfunc);
+		int iA = myIa;
+		int iB = myIb;
+		a = mySteps[iA - 1];
+		b = mySteps[iB - 1];
 		if (iB == ic) {
-			c = secant(lsr, ib, iB);
+			c = secant(ib, iB);
 		} else if (iA == ic) {
-			c = secant(lsr, ia, iA);
+			c = secant(ia, iA);
 		}
 		if (c >= a && c <= b) {
-			val = eval(n, df, x, d, c, wa, true, func, dfunc);
-			phic = val[0];
-			dphic = val[1];
-			++fev[0];
-			++dfev[0];
-			lsr.add(new LineStep(c, dphic, phic));
-			ic = lsr.size();
+			eval(n, df, x, d, c, wa, true, func, dfunc);
+			phic = myPhi;
+			dphic = myDPhi;
+			++myFev;
+			++myDFev;
+			add(c, dphic, phic);
+			ic = mySize;
 			if (satisfiesWolfe(c, phic, dphic, phi0, dphi0, philim, delta, sigma)) {
-				return new int[] { 1, ic, ic };
+				myIa = myIb = ic;
+				return true;
 			}
-			AB = update(lsr, n, df, x, d, wa, iA, iB, ic, philim, func, dfunc, fev, dfev);
-			iA = AB[0];
-			iB = AB[1];
+			update(n, df, x, d, wa, iA, iB, ic, philim, func, dfunc);
+			iA = myIa;
+			iB = myIb;
 		}
-		return new int[] { 0, iA, iB };
+		myIa = iA;
+		myIb = iB;
+		return false;
 	}
 
 	private static boolean satisfiesWolfe(final double c, final double phic, final double dphic, final double phi0,
@@ -356,43 +361,46 @@ public final class HagerZhangLineSearch extends LineSearch {
 		return wolfe1 || wolfe2;
 	}
 
-	private static int[] update(final List<LineStep> lsr, final int n, final double[] df, final double[] x,
-			final double[] d, final double[] wa, final int ia, final int ib, final int ic, final double philim,
-			final Function<? super double[], Double> func, final Function<? super double[], double[]> dfunc,
-			final int[] fev, final int[] dfev) {
-		double a = lsr.get(ia - 1).step;
-		double b = lsr.get(ib - 1).step;
-		double c = lsr.get(ic - 1).step;
-		double phic = lsr.get(ic - 1).value;
-		double dphic = lsr.get(ic - 1).slope;
+	private void update(final int n, final double[] df, final double[] x, final double[] d, final double[] wa,
+			final int ia, final int ib, final int ic, final double philim, final Function<? super double[], Double> func,
+			final Function<? super double[], double[]> dfunc) {
+		double a = mySteps[ia - 1];
+		double b = mySteps[ib - 1];
+		double c = mySteps[ic - 1];
+		double phic = myValues[ic - 1];
+		double dphic = mySlopes[ic - 1];
 		if (c < a || c > b) {
-			return new int[] { ia, ib };
+			myIa = ia;
+			myIb = ib;
 		} else if (dphic >= 0.0) {
-			return new int[] { ia, ic };
+			myIa = ia;
+			myIb = ic;
 		} else if (phic <= philim) {
-			return new int[] { ic, ib };
+			myIa = ic;
+			myIb = ib;
 		} else {
-			return bisect(lsr, n, df, x, d, wa, ia, ic, philim, func, dfunc, fev, dfev);
+			bisect(n, df, x, d, wa, ia, ic, philim, func, dfunc);
 		}
 	}
 
-	private static int[] bisect(final List<LineStep> lsr, final int n, final double[] df, final double[] x,
-			final double[] d, final double[] wa, int ia, int ib, final double philim,
-			final Function<? super double[], Double> func, final Function<? super double[], double[]> dfunc,
-			final int[] fev, final int[] dfev) {
-		double a = lsr.get(ia - 1).step;
-		double b = lsr.get(ib - 1).step;
+	private void bisect(final int n, final double[] df, final double[] x, final double[] d, final double[] wa, int ia,
+			int ib, final double philim, final Function<? super double[], Double> func,
+			final Function<? super double[], double[]> dfunc) {
+		double a = mySteps[ia - 1];
+		double b = mySteps[ib - 1];
 		while (b - a > Math.ulp(b)) {
 			final double dd = (a + b) / 2.0;
-			final double[] val = eval(n, df, x, d, dd, wa, true, func, dfunc);
-			final double phid = val[0];
-			final double gphi = val[1];
-			++fev[0];
-			++dfev[0];
-			lsr.add(new LineStep(dd, gphi, phid));
-			final int id = lsr.size();
+			eval(n, df, x, d, dd, wa, true, func, dfunc);
+			final double phid = myPhi;
+			final double gphi = myDPhi;
+			++myFev;
+			++myDFev;
+			add(dd, gphi, phid);
+			final int id = mySize;
 			if (gphi >= 0.0) {
-				return new int[] { ia, id };
+				myIa = ia;
+				myIb = id;
+				return;
 			} else if (phid <= philim) {
 				a = dd;
 				ia = id;
@@ -401,10 +409,11 @@ public final class HagerZhangLineSearch extends LineSearch {
 				ib = id;
 			}
 		}
-		return new int[] { ia, ib };
+		myIa = ia;
+		myIb = ib;
 	}
 
-	private static double[] eval(final int n, final double[] df, final double[] x, final double[] d, final double step,
+	private void eval(final int n, final double[] df, final double[] x, final double[] d, final double step,
 			final double[] wa, final boolean grad, final Function<? super double[], Double> func,
 			final Function<? super double[], double[]> dfunc) {
 		BlasMath.daxpy1(n, step, d, 1, x, 1, wa, 1);
@@ -419,15 +428,16 @@ public final class HagerZhangLineSearch extends LineSearch {
 		} else {
 			phi = func.apply(wa);
 		}
-		return new double[] { phi, gphi };
+		myPhi = phi;
+		myDPhi = gphi;
 	}
 
 	private static double secant(final double a, final double b, final double dphia, final double dphib) {
 		return (a * dphib - b * dphia) / (dphib - dphia);
 	}
 
-	private static double secant(final List<LineStep> lsr, final int ia, final int ib) {
-		return secant(lsr.get(ia - 1).step, lsr.get(ib - 1).step, lsr.get(ia - 1).slope, lsr.get(ib - 1).slope);
+	private double secant(final int ia, final int ib) {
+		return secant(mySteps[ia - 1], mySteps[ib - 1], mySlopes[ia - 1], mySlopes[ib - 1]);
 	}
 
 	private static double nextFloat(final double x) {
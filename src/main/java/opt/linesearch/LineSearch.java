@@ -21,12 +21,19 @@
  */
 package opt.linesearch;
 
+import java.util.Arrays;
 import java.util.function.Function;
 
 import opt.Optimizer;
 
 /**
- * An abstract algorithm for performing a line search.
+ * An abstract algorithm for performing a line search. A line search owns the
+ * work vectors it needs and reuses them between calls, so that repeated
+ * searches on problems of the same dimension do not allocate memory. As a
+ * result, an instance should not be shared between threads. The point returned
+ * in the solution is stored in one of two buffers that are used in turn, so it
+ * can be passed as the starting point of the next search, but it is
+ * overwritten by the search after that.
  */
 public abstract class LineSearch extends Optimizer<Double, Double, LineSearchProblem> {
 
@@ -34,6 +41,10 @@ public abstract class LineSearch extends Optimizer<Double, Double, LineSearchPro
 	protected final int myMaxIters;
 	protected final double myC1;
 
+	private double[][] myWork = new double[0][];
+	private final double[][] myOutput = new double[2][];
+	private int myOutputIndex;
+
 	/**
 	 *
 	 * @param tolerance
@@ -70,6 +81,39 @@ public abstract class LineSearch extends Optimizer<Double, Double, LineSearchPro
 			Function<? super double[], double[]> df, double[] x0, double[] dir, double[] df0, double f0,
 			double initial);
 
+	/**
+	 * Returns the work vector with the given index and length n, which is
+	 * allocated on first use and reused by later calls.
+	 * 
+	 * @param index
+	 * @param n
+	 * @return
+	 */
+	protected final double[] work(final int index, final int n) {
+		if (index >= myWork.length) {
+			myWork = Arrays.copyOf(myWork, index + 1);
+		}
+		if (myWork[index] == null || myWork[index].length != n) {
+			myWork[index] = new double[n];
+		}
+		return myWork[index];
+	}
+
+	/**
+	 * Returns the buffer of length n that holds the point returned by the current
+	 * call, which alternates between two buffers on successive calls.
+	 * 
+	 * @param n
+	 * @return
+	 */
+	protected final double[] output(final int n) {
+		myOutputIndex = 1 - myOutputIndex;
+		if (myOutput[myOutputIndex] == null || myOutput[myOutputIndex].length != n) {
+			myOutput[myOutputIndex] = new double[n];
+		}
+		return myOutput[myOutputIndex];
+	}
+
 	@Override
 	public LineSearchSolution optimize(final LineSearchProblem problem, final Double guess) {
 		final Function<double[], Double> f = problem.myFunc;
@@ -53,7 +53,6 @@ POSSIBILITY OF SUCH LOSS OR DAMAGES.
 */
 package opt.linesearch;
 
-import java.util.Arrays;
 import java.util.function.Function;
 
 import utils.BlasMath;
@@ -74,6 +73,10 @@ public final class MoreThuenteLineSearch extends LineSearch {
 
 	private final double myFTol, myGTol, myXTol, myMinStep, myMaxStep;
 
+	// the state of the search, which replaces the in-out arguments of MINPACK
+	private double myStp, myStx, myFx, myDx, mySty, myFy, myDy;
+	private int myBrackt, myInfoc, myNfev;
+
 	/**
 	 *
 	 * @param sufficientDecrease
@@ -127,270 +130,259 @@ public final class MoreThuenteLineSearch extends LineSearch {
 
 		// initialize data
 		final int n = x0.length;
-		final double[] fin = { f0 };
-		final double[] stpin = { initial };
-		final double[] x0copy = Arrays.copyOf(x0, x0.length);
-		final double[] dircopy = Arrays.copyOf(dir, dir.length);
-		final double[] df0copy = Arrays.copyOf(df0, df0.length);
-		final double[] wa = new double[x0.length];
-		final int[] info = new int[] { 0 };
-		final int[] nfev = new int[] { 0 };
+		final double[] x = output(n);
+		final double[] g = work(0, n);
+		final double[] wa = work(1, n);
+		System.arraycopy(x0, 0, x, 0, n);
+		System.arraycopy(df0, 0, g, 0, n);
+		myStp = initial;
 
 		// call search
-		cvsrch(f, df, n, x0copy, fin, df0copy, dircopy, stpin, myFTol, myGTol, myXTol, myMinStep, myMaxStep, myMaxIters,
-				info, nfev, wa);
-		return new LineSearchSolution(stpin[0], nfev[0], nfev[0], x0copy, info[0] == 1);
+		final int info = cvsrch(f, df, n, x, f0, g, dir, myFTol, myGTol, myXTol, myMinStep, myMaxStep, myMaxIters, wa);
+		return new LineSearchSolution(myStp, myNfev, myNfev, x, info == 1);
 	}
 
-	private static void cvsrch(final Function<? super double[], Double> fcn,
-			final Function<? super double[], double[]> dfcn, final int n, final double[] x, final double[] f,
-			final double[] g, final double[] s, final double[] stp, final double ftol, final double gtol,
-			final double xtol, final double stpmin, final double stpmax, final int maxfev, final int[] info,
-			final int[] nfev, final double[] wa) {
+	private int cvsrch(final Function<? super double[], Double> fcn, final Function<? super double[], double[]> dfcn,
+			final int n, final double[] x, double f, final double[] g, final double[] s, final double ftol,
+			final double gtol, final double xtol, final double stpmin, final double stpmax, final int maxfev,
+			final double[] wa) {
 
 		final double p5 = 0.5, p66 = 0.66, xtrapf = 4.0;
-		final double[] stx = new double[1], sty = new double[1], fx = new double[1], fy = new double[1],
-				dgx = new double[1], dgy = new double[1], fxm = new double[1], fym = new double[1],
-				dgxm = new double[1], dgym = new double[1];
-		final int[] brackt = new int[1], infoc = new int[1];
-
-		info[0] = 0;
+		int info = 0;
+		myNfev = 0;
 
 		// check for input errors
-		if (stp[0] <= 0.0 || ftol < 0.0 || gtol < 0.0 || xtol < 0.0 || stpmin < 0.0 || stpmax < stpmin || maxfev <= 0) {
-			return;
+		if (myStp <= 0.0 || ftol < 0.0 || gtol < 0.0 || xtol < 0.0 || stpmin < 0.0 || stpmax < stpmin || maxfev <= 0) {
+			return info;
 		}
 
 		// compute initial gradient
 		double dginit = BlasMath.ddotm(n, g, 1, s, 1);
 		if (dginit >= 0.0) {
-			return;
+			return info;
 		}
 
 		// initialize local variables
-		brackt[0] = 0;
-		infoc[0] = 1;
-		nfev[0] = 0;
+		myBrackt = 0;
+		myInfoc = 1;
 		int stage1 = 1;
-		final double finit = f[0];
+		final double finit = f;
 		final double dgtest = ftol * dginit;
 		double width = stpmax - stpmin;
 		double width1 = 2.0 * width;
 		System.arraycopy(x, 0, wa, 0, n);
 
-		stx[0] = sty[0] = 0.0;
-		fx[0] = fy[0] = finit;
-		dgx[0] = dgy[0] = dginit;
+		myStx = mySty = 0.0;
+		myFx = myFy = finit;
+		myDx = myDy = dginit;
 
 		// beginning of iteration
 		while (true) {
 
 			// set min and max steps to current interval
 			final double stmin, stmax;
-			if (brackt[0] == 1) {
-				stmin = Math.min(stx[0], sty[0]);
-				stmax = Math.max(stx[0], sty[0]);
+			if (myBrackt == 1) {
+				stmin = Math.min(myStx, mySty);
+				stmax = Math.max(myStx, mySty);
 			} else {
-				stmin = stx[0];
-				stmax = stp[0] + xtrapf * (stp[0] - stx[0]);
+				stmin = myStx;
+				stmax = myStp + xtrapf * (myStp - myStx);
 			}
 
 			// force step to within bounds
-			stp[0] = Math.max(stp[0], stpmin);
-			stp[0] = Math.min(stp[0], stpmax);
+			myStp = Math.max(myStp, stpmin);
+			myStp = Math.min(myStp, stpmax);
 
 			// unusual termination
-			if ((brackt[0] == 1 && (stp[0] <= stmin || stp[0] >= stmax)) || nfev[0] >= maxfev - 1 || infoc[0] == 0
-					|| (brackt[0] == 1 && stmax - stmin <= xtol * stmax)) {
-				stp[0] = stx[0];
+			if ((myBrackt == 1 && (myStp <= stmin || myStp >= stmax)) || myNfev >= maxfev - 1 || myInfoc == 0
+					|| (myBrackt == 1 && stmax - stmin <= xtol * stmax)) {
+				myStp = myStx;
 			}
 
 			// evaluate function and gradient
-			BlasMath.daxpy1(n, stp[0], s, 1, wa, 1, x, 1);
-			f[0] = fcn.apply(x);
+			BlasMath.daxpy1(n, myStp, s, 1, wa, 1, x, 1);
+			f = fcn.apply(x);
 			System.arraycopy(dfcn.apply(x), 0, g, 0, n);
-			++nfev[0];
+			++myNfev;
 
-			final double ftest1 = finit + stp[0] * dgtest;
+			final double ftest1 = finit + myStp * dgtest;
 			final double dg = BlasMath.ddotm(n, g, 1, s, 1);
 
 			// test convergence
-			if ((brackt[0] == 1 && (stp[0] <= stmin || stp[0] >= stmax)) || infoc[0] == 0) {
-				info[0] = 6;
+			if ((myBrackt == 1 && (myStp <= stmin || myStp >= stmax)) || myInfoc == 0) {
+				info = 6;
 			}
-			if (stp[0] == stpmax && f[0] <= ftest1 && dg <= dgtest) {
-				info[0] = 5;
+			if (myStp == stpmax && f <= ftest1 && dg <= dgtest) {
+				info = 5;
 			}
-			if (stp[0] == stpmin && (f[0] > ftest1 || dg >= dgtest)) {
-				info[0] = 4;
+			if (myStp == stpmin && (f > ftest1 || dg >= dgtest)) {
+				info = 4;
 			}
-			if (nfev[0] >= maxfev) {
-				info[0] = 3;
+			if (myNfev >= maxfev) {
+				info = 3;
 			}
-			if (brackt[0] == 1 && stmax - stmin <= xtol * stmax) {
-				info[0] = 2;
+			if (myBrackt == 1 && stmax - stmin <= xtol * stmax) {
+				info = 2;
 			}
-			if (f[0] <= ftest1 && Math.abs(dg) <= gtol * (-dginit)) {
-				info[0] = 1;
+			if (f <= ftest1 && Math.abs(dg) <= gtol * (-dginit)) {
+				info = 1;
 			}
 
 			// check for termination
-			if (info[0] != 0) {
-				return;
+			if (info != 0) {
+				return info;
 			}
 
 			// look for a new step
-			if (stage1 == 1 && f[0] <= ftest1 && dg >= Math.min(ftol, gtol) * dginit) {
+			if (stage1 == 1 && f <= ftest1 && dg >= Math.min(ftol, gtol) * dginit) {
 				stage1 = 0;
 			}
 
-			if (stage1 == 1 && f[0] <= fx[0] && f[0] > ftest1) {
+			if (stage1 == 1 && f <= myFx && f > ftest1) {
 
 				// modified function/derivative values
-				fxm[0] = fx[0] - stx[0] * dgtest;
-				fym[0] = fy[0] - sty[0] * dgtest;
-				dgxm[0] = dgx[0] - dgtest;
-				dgym[0] = dgy[0] - dgtest;
-				final double fm = f[0] - stp[0] * dgtest;
+				myFx -= myStx * dgtest;
+				myFy -= mySty * dgtest;
+				myDx -= dgtest;
+				myDy -= dgtest;
+				final double fm = f - myStp * dgtest;
 				final double dgm = dg - dgtest;
 
 				// call cstep
-				cstep(stx, fxm, dgxm, sty, fym, dgym, stp, fm, dgm, brackt, stmin, stmax, infoc);
+				cstep(fm, dgm, stmin, stmax);
 
 				// reset function and gradient values
-				fx[0] = fxm[0] + stx[0] * dgtest;
-				fy[0] = fym[0] + sty[0] * dgtest;
-				dgx[0] = dgxm[0] + dgtest;
-				dgy[0] = dgym[0] + dgtest;
+				myFx += myStx * dgtest;
+				myFy += mySty * dgtest;
+				myDx += dgtest;
+				myDy += dgtest;
 			} else {
 
 				// call cstep
-				cstep(stx, fx, dgx, sty, fy, dgy, stp, f[0], dg, brackt, stmin, stmax, infoc);
+				cstep(f, dg, stmin, stmax);
 			}
 
 			// force a sufficient decrease in interval size
-			if (brackt[0] == 1) {
-				if (Math.abs(sty[0] - stx[0]) >= p66 * width1) {
-					stp[0] = stx[0] + p5 * (sty[0] - stx[0]);
+			if (myBrackt == 1) {
+				if (Math.abs(mySty - myStx) >= p66 * width1) {
+					myStp = myStx + p5 * (mySty - myStx);
 				}
 				width1 = width;
-				width = Math.abs(sty[0] - stx[0]);
+				width = Math.abs(mySty - myStx);
 			}
 		}
 	}
 
-	private static void cstep(final double[] stx, final double[] fx, final double[] dx, final double[] sty,
-			final double[] fy, final double[] dy, final double[] stp, final double fp, final double dp,
-			final int[] brackt, final double stpmin, final double stpmax, final int[] info) {
+	private void cstep(final double fp, final double dp, final double stpmin, final double stpmax) {
 		final double p66 = 0.66;
-		info[0] = 0;
+		myInfoc = 0;
 
 		// check input parameters
-		if ((brackt[0] == 1 && (stp[0] <= Math.min(stx[0], sty[0]) || stp[0] >= Math.max(stx[0], sty[0])))
-				|| dx[0] * (stp[0] - stx[0]) >= 0.0 || stpmax < stpmin) {
+		if ((myBrackt == 1 && (myStp <= Math.min(myStx, mySty) || myStp >= Math.max(myStx, mySty)))
+				|| myDx * (myStp - myStx) >= 0.0 || stpmax < stpmin) {
 			return;
 		}
 
 		// determine whether derivatives have opposite sign
-		final double sgnd = dp * (dx[0] / Math.abs(dx[0]));
+		final double sgnd = dp * (myDx / Math.abs(myDx));
 
 		// bracketing
 		final int bound;
 		double stpf;
-		if (fp > fx[0]) {
+		if (fp > myFx) {
 
-			info[0] = 1;
+			myInfoc = 1;
 			bound = 1;
-			final double theta = 3.0 * (fx[0] - fp) / (stp[0] - stx[0]) + dx[0] + dp;
-			final double s = max3(theta, dx[0], dp);
-			double gamma = s * Math.sqrt((theta / s) * (theta / s) - (dx[0] / s) * (dp / s));
-			if (stp[0] < stx[0]) {
+			final double theta = 3.0 * (myFx - fp) / (myStp - myStx) + myDx + dp;
+			final double s = max3(theta, myDx, dp);
+			double gamma = s * Math.sqrt((theta / s) * (theta / s) - (myDx / s) * (dp / s));
+			if (myStp < myStx) {
 				gamma = -gamma;
 			}
-			final double p = (gamma - dx[0]) + theta;
-			final double q = ((gamma - dx[0]) + gamma) + dp;
+			final double p = (gamma - myDx) + theta;
+			final double q = ((gamma - myDx) + gamma) + dp;
 			final double r = p / q;
-			final double stpc = stx[0] + r * (stp[0] - stx[0]);
-			final double temp = (fx[0] - fp) / (stp[0] - stx[0]) + dx[0];
-			final double stpq = stx[0] + ((dx[0] / (temp)) / 2) * (stp[0] - stx[0]);
-			if (Math.abs(stpc - stx[0]) < Math.abs(stpq - stx[0])) {
+			final double stpc = myStx + r * (myStp - myStx);
+			final double temp = (myFx - fp) / (myStp - myStx) + myDx;
+			final double stpq = myStx + ((myDx / (temp)) / 2) * (myStp - myStx);
+			if (Math.abs(stpc - myStx) < Math.abs(stpq - myStx)) {
 				stpf = stpc;
 			} else {
 				stpf = stpc + (stpq - stpc) / 2;
 			}
-			brackt[0] = 1;
+			myBrackt = 1;
 		} else if (sgnd < 0.0) {
 
-			info[0] = 2;
+			myInfoc = 2;
 			bound = 0;
-			final double theta = 3.0 * (fx[0] - fp) / (stp[0] - stx[0]) + dx[0] + dp;
-			final double s = max3(theta, dx[0], dp);
-			double gamma = s * Math.sqrt((theta / s) * (theta / s) - (dx[0] / s) * (dp / s));
-			if (stp[0] > stx[0]) {
+			final double theta = 3.0 * (myFx - fp) / (myStp - myStx) + myDx + dp;
+			final double s = max3(theta, myDx, dp);
+			double gamma = s * Math.sqrt((theta / s) * (theta / s) - (myDx / s) * (dp / s));
+			if (myStp > myStx) {
 				gamma = -gamma;
 			}
 			final double p = (gamma - dp) + theta;
-			final double q = ((gamma - dp) + gamma) + dx[0];
+			final double q = ((gamma - dp) + gamma) + myDx;
 			final double r = p / q;
-			final double stpc = stp[0] + r * (stx[0] - stp[0]);
-			final double stpq = stp[0] + (dp / (dp - dx[0])) * (stx[0] - stp[0]);
-			if (Math.abs(stpc - stp[0]) > Math.abs(stpq - stp[0])) {
+			final double stpc = myStp + r * (myStx - myStp);
+			final double stpq = myStp + (dp / (dp - myDx)) * (myStx - myStp);
+			if (Math.abs(stpc - myStp) > Math.abs(stpq - myStp)) {
 				stpf = stpc;
 			} else {
 				stpf = stpq;
 			}
-			brackt[0] = 1;
-		} else if (Math.abs(dp) < Math.abs(dx[0])) {
+			myBrackt = 1;
+		} else if (Math.abs(dp) < Math.abs(myDx)) {
 
-			info[0] = 3;
+			myInfoc = 3;
 			bound = 1;
-			final double theta = 3.0 * (fx[0] - fp) / (stp[0] - stx[0]) + dx[0] + dp;
-			final double s = max3(theta, dx[0], dp);
-			final double temp = (theta / s) * (theta / s) - (dx[0] / s) * (dp / s);
+			final double theta = 3.0 * (myFx - fp) / (myStp - myStx) + myDx + dp;
+			final double s = max3(theta, myDx, dp);
+			final double temp = (theta / s) * (theta / s) - (myDx / s) * (dp / s);
 			double gamma = s * Math.sqrt(Math.max(0.0, temp));
-			if (stp[0] > stx[0]) {
+			if (myStp > myStx) {
 				gamma = -gamma;
 			}
 			final double p = (gamma - dp) + theta;
-			final double q = (gamma + (dx[0] - dp)) + gamma;
+			final double q = (gamma + (myDx - dp)) + gamma;
 			final double r = p / q;
 			final double stpc;
 			if (r < 0.0 && gamma != 0.0) {
-				stpc = stp[0] + r * (stx[0] - stp[0]);
-			} else if (stp[0] > stx[0]) {
+				stpc = myStp + r * (myStx - myStp);
+			} else if (myStp > myStx) {
 				stpc = stpmax;
 			} else {
 				stpc = stpmin;
 			}
-			final double stpq = stp[0] + (dp / (dp - dx[0])) * (stx[0] - stp[0]);
-			if (brackt[0] == 1) {
-				if (Math.abs(stp[0] - stpc) < Math.abs(stp[0] - stpq)) {
+			final double stpq = myStp + (dp / (dp - myDx)) * (myStx - myStp);
+			if (myBrackt == 1) {
+				if (Math.abs(myStp - stpc) < Math.abs(myStp - stpq)) {
 					stpf = stpc;
 				} else {
 					stpf = stpq;
 				}
-			} else if (Math.abs(stp[0] - stpc) > Math.abs(stp[0] - stpq)) {
+			} else if (Math.abs(myStp - stpc) > Math.abs(myStp - stpq)) {
 				stpf = stpc;
 			} else {
 				stpf = stpq;
 			}
 		} else {
 
-			info[0] = 4;
+			myInfoc = 4;
 			bound = 0;
-			if (brackt[0] == 1) {
-				final double theta = 3.0 * (fp - fy[0]) / (sty[0] - stp[0]) + dy[0] + dp;
-				final double s = max3(theta, dy[0], dp);
-				double gamma = s * Math.sqrt((theta / s) * (theta / s) - (dy[0] / s) * (dp / s));
-				if (stp[0] > sty[0]) {
+			if (myBrackt == 1) {
+				final double theta = 3.0 * (fp - myFy) / (mySty - myStp) + myDy + dp;
+				final double s = max3(theta, myDy, dp);
+				double gamma = s * Math.sqrt((theta / s) * (theta / s) - (myDy / s) * (dp / s));
+				if (myStp > mySty) {
 					gamma = -gamma;
 				}
 				final double p = (gamma - dp) + theta;
-				final double q = ((gamma - dp) + gamma) + dy[0];
+				final double q = ((gamma - dp) + gamma) + myDy;
 				final double r = p / q;
-				final double stpc = stp[0] + r * (sty[0] - stp[0]);
+				final double stpc = myStp + r * (mySty - myStp);
 				stpf = stpc;
-			} else if (stp[0] > stx[0]) {
+			} else if (myStp > myStx) {
 				stpf = stpmax;
 			} else {
 				stpf = stpmin;
@@ -398,30 +390,30 @@ public final class MoreThuenteLineSearch extends LineSearch {
 		}
 
 		// update interval
-		if (fp > fx[0]) {
-			sty[0] = stp[0];
-			fy[0] = fp;
-			dy[0] = dp;
+		if (fp > myFx) {
+			mySty = myStp;
+			myFy = fp;
+			myDy = dp;
 		} else {
 			if (sgnd < 0.0) {
-				sty[0] = stx[0];
-				fy[0] = fx[0];
-				dy[0] = dx[0];
+				mySty = myStx;
+				myFy = myFx;
+				myDy = myDx;
 			}
-			stx[0] = stp[0];
-			fx[0] = fp;
-			dx[0] = dp;
+			myStx = myStp;
+			myFx = fp;
+			myDx = dp;
 		}
 
 		// compute new step and safeguard
 		stpf = Math.min(stpmax, stpf);
 		stpf = Math.max(stpmin, stpf);
-		stp[0] = stpf;
-		if (brackt[0] == 1 && bound == 1) {
-			if (sty[0] > stx[0]) {
-				stp[0] = Math.min(stx[0] + p66 * (sty[0] - stx[0]), stp[0]);
+		myStp = stpf;
+		if (myBrackt == 1 && bound == 1) {
+			if (mySty > myStx) {
+				myStp = Math.min(myStx + p66 * (mySty - myStx), myStp);
 			} else {
-				stp[0] = Math.max(stx[0] + p66 * (sty[0] - stx[0]), stp[0]);
+				myStp = Math.max(myStx + p66 * (mySty - myStx), myStp);
 			}
 		}
 	}
@@ -0,0 +1,181 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.linesearch;
+
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import utils.BlasMath;
+
+/**
+ * A line search based on the strong Wolfe conditions that evaluates the
+ * function and its gradient at several trial steps concurrently. Each round
+ * probes a geometric ladder of steps below or above the current step, or a
+ * uniform grid inside the current bracket, and returns the probe with the
+ * lowest function value that satisfies the strong Wolfe conditions. Otherwise,
+ * the probes are used to shrink the bracket or to expand the search, as in the
+ * serial line search of Nocedal and Wright (2006). The function and gradient
+ * must be thread-safe.
+ * 
+ * 
+ * REFERENCES:
+ * 
+ * [1] Nocedal, Jorge, and Stephen Wright. Numerical optimization. Springer
+ * Science & Business Media, 2006.
+ */
+public final class SpeculativeLineSearch extends LineSearch {
+
+	private final double myC2, myMaxStep, myRho;
+	private final int myProbes;
+	private final double[] mySteps, myValues, mySlopes;
+	private final double[][] myProbeX;
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param c2
+	 * @param scale
+	 * @param maximum
+	 * @param probes
+	 * @param maxIterations
+	 */
+	public SpeculativeLineSearch(final double tolerance, final double c2, final double scale, final double maximum,
+			final int probes, final int maxIterations) {
+		super(tolerance, maxIterations);
+		if (probes < 1) {
+			throw new IllegalArgumentException("probes must be positive.");
+		}
+		myC2 = c2;
+		myRho = scale;
+		myMaxStep = maximum;
+		myProbes = probes;
+		mySteps = new double[probes];
+		myValues = new double[probes];
+		mySlopes = new double[probes];
+		myProbeX = new double[probes][];
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param c2
+	 * @param scale
+	 * @param maximum
+	 * @param maxIterations
+	 */
+	public SpeculativeLineSearch(final double tolerance, final double c2, final double scale, final double maximum,
+			final int maxIterations) {
+		this(tolerance, c2, scale, maximum, Runtime.getRuntime().availableProcessors(), maxIterations);
+	}
+
+	@Override
+	public final LineSearchSolution lineSearch(final Function<? super double[], Double> f,
+			final Function<? super double[], double[]> df, final double[] x0, final double[] dir, final double[] df0,
+			final double f0, final double initial) {
+		final int D = x0.length, k = myProbes;
+		final double[] as = mySteps, ys = myValues, dys = mySlopes;
+		final double[][] xs = myProbeX;
+		for (int i = 0; i < k; ++i) {
+			xs[i] = work(i, D);
+		}
+		final double[] wa = output(D);
+
+		// the bracket [alo, ahi] where alo satisfies the sufficient decrease
+		// condition, and ahi is infinite until a step that fails is found
+		final double dphi0 = BlasMath.ddotm(D, df0, 1, dir, 1);
+		double alo = 0.0, ylo = f0, ahi = Double.POSITIVE_INFINITY, atop = Math.min(initial, myMaxStep);
+		int fevals = 0, dfevals = 0;
+		boolean expand = false;
+
+		// main loop of line search
+		for (int it = 0; it < myMaxIters; ++it) {
+
+			// choose the trial steps in increasing order
+			int m = k;
+			if (ahi < Double.POSITIVE_INFINITY) {
+				for (int i = 0; i < k; ++i) {
+					as[i] = alo + (ahi - alo) * (i + 1) / (k + 1);
+				}
+			} else if (expand) {
+				if (alo >= myMaxStep) {
+					break;
+				}
+				for (int i = 0; i < k; ++i) {
+					as[i] = Math.min(myMaxStep, (i == 0 ? alo : as[i - 1]) * myRho);
+					if (as[i] >= myMaxStep) {
+						m = i + 1;
+						break;
+					}
+				}
+			} else {
+				for (int i = k - 1; i >= 0; --i) {
+					as[i] = i == k - 1 ? atop : as[i + 1] / myRho;
+				}
+			}
+
+			// evaluate the function and directional derivative at all steps
+			final int mm = m;
+			IntStream.range(0, mm).parallel().forEach(i -> {
+				BlasMath.daxpy1(D, as[i], dir, 1, x0, 1, xs[i], 1);
+				ys[i] = f.apply(xs[i]);
+				dys[i] = BlasMath.ddotm(D, df.apply(xs[i]), 1, dir, 1);
+			});
+			fevals += mm;
+			dfevals += mm;
+
+			// return the best step satisfying the strong Wolfe conditions
+			int best = -1;
+			for (int i = 0; i < mm; ++i) {
+				if (ys[i] <= f0 + myC1 * as[i] * dphi0 && Math.abs(dys[i]) <= -myC2 * dphi0
+						&& (best < 0 || ys[i] < ys[best])) {
+					best = i;
+				}
+			}
+			if (best >= 0) {
+				System.arraycopy(xs[best], 0, wa, 0, D);
+				return new LineSearchSolution(as[best], fevals, dfevals, wa, true);
+			}
+
+			// move alo up through the steps until the first one that fails the
+			// sufficient decrease condition, does not decrease the function or
+			// passes the minimum
+			boolean bracketed = false;
+			for (int i = 0; i < mm; ++i) {
+				if (ys[i] > f0 + myC1 * as[i] * dphi0 || ys[i] >= ylo || dys[i] >= 0.0) {
+					ahi = as[i];
+					bracketed = true;
+					break;
+				}
+				alo = as[i];
+				ylo = ys[i];
+			}
+			expand = !bracketed && ahi == Double.POSITIVE_INFINITY;
+			if (ahi < Double.POSITIVE_INFINITY && ahi - alo <= myTol * ahi) {
+				break;
+			}
+		}
+
+		// return the best step found so far
+		BlasMath.daxpy1(D, alo, dir, 1, x0, 1, wa, 1);
+		return new LineSearchSolution(alo, fevals, dfevals, wa, false);
+	}
+}
@@ -38,6 +38,7 @@ import utils.BlasMath;
 public final class StrongWolfeLineSearch extends LineSearch {
 
 	private final double myC2, myMaxStep, myRho;
+	private int myFEvals, myDFEvals;
 
 	/**
 	 *
@@ -60,7 +61,7 @@ public final class StrongWolfeLineSearch extends LineSearch {
 			final Function<? super double[], double[]> df, final double[] x0, final double[] dir, final double[] df0,
 			final double f0, final double initial) {
 		final int D = x0.length;
-		final double[] wa = new double[D];
+		final double[] wa = output(D);
 
 		// compute dphi(0)/da
 		double dphi0 = BlasMath.ddotm(D, df0, 1, dir, 1);
@@ -68,9 +69,8 @@ public final class StrongWolfeLineSearch extends LineSearch {
 		double y0 = f0, dy0 = dphi0;
 		double step = a0;
 		boolean first = true;
-		final int[] fevals = new int[1];
-		final int[] dfevals = new int[1];
 		boolean converged = false;
+		myFEvals = myDFEvals = 0;
 
 		// main loop of line search
 		while (true) {
@@ -80,12 +80,12 @@ public final class StrongWolfeLineSearch extends LineSearch {
 			final double[] df1 = df.apply(wa);
 			final double y1 = f.apply(wa);
 			final double dy1 = BlasMath.ddotm(D, df1, 1, dir, 1);
-			++fevals[0];
-			++dfevals[0];
+			++myFEvals;
+			++myDFEvals;
 
 			// check sufficient condition
 			if (y1 > f0 + myC1 * a1 * dphi0 || (y1 >= y0 && !first)) {
-				step = zoom(f, df, a0, a1, y0, y1, dy0, f0, dphi0, wa, x0, dir, D, fevals, dfevals);
+				step = zoom(f, df, a0, a1, y0, y1, dy0, f0, dphi0, wa, x0, dir, D);
 				converged = true;
 				break;
 			}
@@ -98,7 +98,7 @@ public final class StrongWolfeLineSearch extends LineSearch {
 
 			// check if we passed the minimum
 			if (dy1 >= 0.0) {
-				step = zoom(f, df, a1, a0, y1, y0, dy1, f0, dphi0, wa, x0, dir, D, fevals, dfevals);
+				step = zoom(f, df, a1, a0, y1, y0, dy1, f0, dphi0, wa, x0, dir, D);
 				break;
 			}
 
@@ -113,13 +113,12 @@ public final class StrongWolfeLineSearch extends LineSearch {
 
 		// compute the final posititon
 		BlasMath.daxpy1(D, step, dir, 1, x0, 1, wa, 1);
-		return new LineSearchSolution(step, fevals[0], dfevals[0], wa, converged);
+		return new LineSearchSolution(step, myFEvals, myDFEvals, wa, converged);
 	}
 
 	private double zoom(final Function<? super double[], Double> f, final Function<? super double[], double[]> df,
 			double alo, double ahi, double ylo, double yhi, double dylo, final double phi0, final double dphi0,
-			final double[] wa, final double[] x0, final double[] dir, final int D, final int[] fevals,
-			final int[] dfevals) {
+			final double[] wa, final double[] x0, final double[] dir, final int D) {
 
 		// initialize
 		double atry = 0.0, ar = 0.0, yr = phi0;
@@ -158,7 +157,7 @@ public final class StrongWolfeLineSearch extends LineSearch {
 			// compute new point
 			BlasMath.daxpy1(D, atry, dir, 1, x0, 1, wa, 1);
 			final double ytry = f.apply(wa);
-			++fevals[0];
+			++myFEvals;
 
 			// check wolfe conditions
 			if (ytry > phi0 + myC1 * atry * dphi0 || ytry >= ylo) {
@@ -170,7 +169,7 @@ public final class StrongWolfeLineSearch extends LineSearch {
 
 				// check descent condition
 				final double dytry = BlasMath.ddotm(D, df.apply(wa), 1, dir, 1);
-				++fevals[0];
+				++myDFEvals;
 				if (Math.abs(dytry) <= -myC2 * dphi0) {
 					break;
 				} else {
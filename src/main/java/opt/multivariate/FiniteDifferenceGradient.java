@@ -0,0 +1,348 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import utils.BlasMath;
+
+/**
+ * Estimates the gradient of a function by finite differences, so that a
+ * gradient-based optimizer can be applied when only the function is available.
+ * Forward, central and fourth-order central stencils are supported. The step
+ * along each coordinate is proportional to the magnitude of that coordinate,
+ * and is adjusted so that the perturbed coordinate is exactly representable.
+ * 
+ * The perturbed evaluations can be distributed over the threads of a
+ * ForkJoinPool, in which case the function must be thread-safe. For a
+ * partially separable function given as a sum of element functions, each of
+ * which depends on only a few variables, the variables are grouped so that no
+ * two variables in a group share an element, and all variables in a group are
+ * perturbed at once. The number of evaluations then depends on the number of
+ * groups rather than the dimension.
+ */
+public final class FiniteDifferenceGradient implements Function<double[], double[]> {
+
+	/**
+	 * The finite difference stencil.
+	 */
+	public static enum Scheme {
+
+		/**
+		 * (f(x + h) - f(x)) / h, with error O(h)
+		 */
+		FORWARD(new double[] { 1.0 }, new double[] { 1.0 }, -1.0, 1),
+
+		/**
+		 * (f(x + h) - f(x - h)) / (2 h), with error O(h^2)
+		 */
+		CENTRAL(new double[] { 1.0, -1.0 }, new double[] { 0.5, -0.5 }, 0.0, 2),
+
+		/**
+		 * (-f(x + 2h) + 8 f(x + h) - 8 f(x - h) + f(x - 2h)) / (12 h), with error
+		 * O(h^4)
+		 */
+		CENTRAL_FOURTH(new double[] { 2.0, 1.0, -1.0, -2.0 },
+				new double[] { -1.0 / 12.0, 8.0 / 12.0, -8.0 / 12.0, 1.0 / 12.0 }, 0.0, 4);
+
+		private final double[] myOffsets, myWeights;
+		private final double myCenterWeight;
+		private final int myOrder;
+
+		private Scheme(final double[] offsets, final double[] weights, final double centerWeight, final int order) {
+			myOffsets = offsets;
+			myWeights = weights;
+			myCenterWeight = centerWeight;
+			myOrder = order;
+		}
+
+		/**
+		 * Returns the relative step that balances the truncation and rounding
+		 * errors of the stencil.
+		 * 
+		 * @return
+		 */
+		public final double defaultStep() {
+			return Math.pow(BlasMath.D1MACH[4 - 1], 1.0 / (myOrder + 1));
+		}
+	}
+
+	private final Function<? super double[], Double> myFunc;
+	private final Function<? super double[], double[]> myElements;
+	private final Scheme myScheme;
+	private final double myStep;
+	private final ForkJoinPool myPool;
+
+	// for partially separable functions: the elements depending on each
+	// variable, and the groups of variables that are perturbed together
+	private final int myM;
+	private final int[] myColPtr, myRowInd, myGroupPtr, myGroupCol;
+
+	/**
+	 *
+	 * @param func
+	 * @param scheme
+	 * @param relativeStep
+	 * @param pool
+	 */
+	public FiniteDifferenceGradient(final Function<? super double[], Double> func, final Scheme scheme,
+			final double relativeStep, final ForkJoinPool pool) {
+		if (relativeStep <= 0.0) {
+			throw new IllegalArgumentException("Step size must be positive.");
+		}
+		myFunc = func;
+		myElements = null;
+		myScheme = scheme;
+		myStep = relativeStep;
+		myPool = pool;
+		myM = 0;
+		myColPtr = myRowInd = myGroupPtr = myGroupCol = null;
+	}
+
+	/**
+	 *
+	 * @param func
+	 * @param scheme
+	 * @param parallel
+	 */
+	public FiniteDifferenceGradient(final Function<? super double[], Double> func, final Scheme scheme,
+			final boolean parallel) {
+		this(func, scheme, scheme.defaultStep(), parallel ? ForkJoinPool.commonPool() : null);
+	}
+
+	/**
+	 *
+	 * @param func
+	 */
+	public FiniteDifferenceGradient(final Function<? super double[], Double> func) {
+		this(func, Scheme.CENTRAL, false);
+	}
+
+	/**
+	 *
+	 * @param elements the element functions, whose sum is the function to
+	 *                 differentiate
+	 * @param n        the number of variables
+	 * @param pattern  the variables on which each element depends
+	 * @param scheme
+	 * @param relativeStep
+	 * @param pool
+	 */
+	public FiniteDifferenceGradient(final Function<? super double[], double[]> elements, final int n,
+			final int[][] pattern, final Scheme scheme, final double relativeStep, final ForkJoinPool pool) {
+		if (relativeStep <= 0.0) {
+			throw new IllegalArgumentException("Step size must be positive.");
+		}
+		myFunc = null;
+		myElements = elements;
+		myScheme = scheme;
+		myStep = relativeStep;
+		myPool = pool;
+		myM = pattern.length;
+
+		// elements depending on each variable
+		myColPtr = new int[n + 1];
+		for (final int[] row : pattern) {
+			for (final int j : row) {
+				if (j < 0 || j >= n) {
+					throw new IllegalArgumentException("Variable index " + j + " in sparsity pattern out of range.");
+				}
+				++myColPtr[j + 1];
+			}
+		}
+		for (int j = 0; j < n; ++j) {
+			myColPtr[j + 1] += myColPtr[j];
+		}
+		myRowInd = new int[myColPtr[n]];
+		final int[] next = Arrays.copyOf(myColPtr, n);
+		for (int i = 0; i < myM; ++i) {
+			for (final int j : pattern[i]) {
+				myRowInd[next[j]++] = i;
+			}
+		}
+
+		// greedy grouping of the variables so that no two variables in a group
+		// share an element
+		final int[] group = new int[n], used = new int[n + 1];
+		Arrays.fill(group, -1);
+		Arrays.fill(used, -1);
+		int ngroups = 0;
+		for (int j = 0; j < n; ++j) {
+			for (int p = myColPtr[j]; p < myColPtr[j + 1]; ++p) {
+				for (final int k : pattern[myRowInd[p]]) {
+					if (group[k] >= 0) {
+						used[group[k]] = j;
+					}
+				}
+			}
+			int g = 0;
+			while (used[g] == j) {
+				++g;
+			}
+			group[j] = g;
+			ngroups = Math.max(ngroups, g + 1);
+		}
+		myGroupPtr = new int[ngroups + 1];
+		myGroupCol = new int[n];
+		for (int j = 0; j < n; ++j) {
+			++myGroupPtr[group[j] + 1];
+		}
+		for (int g = 0; g < ngroups; ++g) {
+			myGroupPtr[g + 1] += myGroupPtr[g];
+		}
+		final int[] gnext = Arrays.copyOf(myGroupPtr, ngroups);
+		for (int j = 0; j < n; ++j) {
+			myGroupCol[gnext[group[j]]++] = j;
+		}
+	}
+
+	/**
+	 *
+	 * @param elements
+	 * @param n
+	 * @param pattern
+	 * @param scheme
+	 * @param parallel
+	 */
+	public FiniteDifferenceGradient(final Function<? super double[], double[]> elements, final int n,
+			final int[][] pattern, final Scheme scheme, final boolean parallel) {
+		this(elements, n, pattern, scheme, scheme.defaultStep(), parallel ? ForkJoinPool.commonPool() : null);
+	}
+
+	/**
+	 * Returns the number of groups of variables that are perturbed together, or
+	 * zero if the function is not partially separable.
+	 * 
+	 * @return
+	 */
+	public final int numberOfGroups() {
+		return myGroupPtr == null ? 0 : myGroupPtr.length - 1;
+	}
+
+	@Override
+	public final double[] apply(final double[] x) {
+		final int n = x.length;
+		final double[] g = new double[n];
+		final double[] h = new double[n];
+		for (int j = 0; j < n; ++j) {
+			final double temp = x[j] + myStep * Math.max(Math.abs(x[j]), 1.0);
+			h[j] = temp - x[j];
+		}
+		if (myElements == null) {
+			scalarGradient(x, h, g);
+		} else {
+			if (myColPtr.length != n + 1) {
+				throw new IllegalArgumentException("Dimension of x does not match the sparsity pattern.");
+			}
+			separableGradient(x, h, g);
+		}
+		return g;
+	}
+
+	private void scalarGradient(final double[] x, final double[] h, final double[] g) {
+		final int n = x.length;
+		final double f0 = myScheme.myCenterWeight != 0.0 ? myFunc.apply(x) : 0.0;
+		run(n, (lo, hi) -> {
+			final double[] xp = Arrays.copyOf(x, n);
+			for (int j = lo; j < hi; ++j) {
+				double sum = myScheme.myCenterWeight * f0;
+				for (int s = 0; s < myScheme.myOffsets.length; ++s) {
+					xp[j] = x[j] + myScheme.myOffsets[s] * h[j];
+					sum += myScheme.myWeights[s] * myFunc.apply(xp);
+				}
+				xp[j] = x[j];
+				g[j] = sum / h[j];
+			}
+		});
+	}
+
+	private void separableGradient(final double[] x, final double[] h, final double[] g) {
+		final int n = x.length;
+		final double[] r0 = myScheme.myCenterWeight != 0.0 ? checkElements(myElements.apply(x)) : null;
+		run(myGroupPtr.length - 1, (lo, hi) -> {
+			final double[] xp = Arrays.copyOf(x, n);
+			for (int grp = lo; grp < hi; ++grp) {
+				final int p1 = myGroupPtr[grp], p2 = myGroupPtr[grp + 1];
+				for (int p = p1; p < p2; ++p) {
+					final int j = myGroupCol[p];
+					g[j] = 0.0;
+					if (r0 != null) {
+						for (int q = myColPtr[j]; q < myColPtr[j + 1]; ++q) {
+							g[j] += myScheme.myCenterWeight * r0[myRowInd[q]];
+						}
+					}
+				}
+				for (int s = 0; s < myScheme.myOffsets.length; ++s) {
+					for (int p = p1; p < p2; ++p) {
+						final int j = myGroupCol[p];
+						xp[j] = x[j] + myScheme.myOffsets[s] * h[j];
+					}
+					final double[] r = checkElements(myElements.apply(xp));
+					for (int p = p1; p < p2; ++p) {
+						final int j = myGroupCol[p];
+						for (int q = myColPtr[j]; q < myColPtr[j + 1]; ++q) {
+							g[j] += myScheme.myWeights[s] * r[myRowInd[q]];
+						}
+					}
+				}
+				for (int p = p1; p < p2; ++p) {
+					final int j = myGroupCol[p];
+					xp[j] = x[j];
+					g[j] /= h[j];
+				}
+			}
+		});
+	}
+
+	private double[] checkElements(final double[] r) {
+		if (r.length != myM) {
+			throw new IllegalArgumentException("Number of elements does not match the sparsity pattern.");
+		}
+		return r;
+	}
+
+	private static interface Range {
+
+		void apply(int lo, int hi);
+	}
+
+	private void run(final int count, final Range body) {
+		if (myPool == null || count <= 1) {
+			body.apply(0, count);
+			return;
+		}
+
+		// split the work into a few chunks per thread, each of which uses a
+		// single copy of x
+		final int nchunks = Math.min(count, 4 * myPool.getParallelism());
+		final Runnable task = () -> IntStream.range(0, nchunks).parallel()
+				.forEach(c -> body.apply((int) ((long) count * c / nchunks), (int) ((long) count * (c + 1) / nchunks)));
+		if (myPool == ForkJoinPool.commonPool()) {
+			task.run();
+		} else {
+			myPool.submit(task).join();
+		}
+	}
+}
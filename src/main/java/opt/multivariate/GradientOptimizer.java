@@ -24,6 +24,8 @@ package opt.multivariate;
 import java.util.function.Function;
 
 import opt.Optimizer;
+import opt.multivariate.ad.TapeFunction;
+import opt.multivariate.ad.TapeObjective;
 
 /**
  *
@@ -51,12 +53,28 @@ public abstract class GradientOptimizer extends Optimizer<double[], Double, Func
 			Function<? super double[], double[]> df, double[] guess);
 
 	/**
+	 * Minimizes f using a gradient estimated by central finite differences. To
+	 * evaluate the differences in parallel or to exploit partial separability,
+	 * pass a {@link FiniteDifferenceGradient} as the gradient instead.
 	 *
 	 * @param f
 	 * @param guess
 	 * @return
 	 */
 	public MultivariateOptimizerSolution optimize(final Function<? super double[], Double> f, final double[] guess) {
-		throw new IllegalArgumentException("f' not provided; no numerical diff. method exists yet!");
+		return optimize(f, new FiniteDifferenceGradient(f), guess);
+	}
+
+	/**
+	 * Minimizes f using a gradient computed by reverse mode automatic
+	 * differentiation.
+	 *
+	 * @param f
+	 * @param guess
+	 * @return
+	 */
+	public MultivariateOptimizerSolution optimize(final TapeFunction f, final double[] guess) {
+		final TapeObjective obj = new TapeObjective(f);
+		return optimize(obj.asFunction(), obj.asGradient(), guess);
 	}
 }
@@ -0,0 +1,133 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A Hessian matrix with a fixed sparsity pattern. The pattern is the lower
+ * triangle of the matrix, including every diagonal entry, in compressed sparse
+ * row format: the column indices of row i are columnIndices[rowPointers[i]] to
+ * columnIndices[rowPointers[i + 1] - 1], and must not exceed i. The values are
+ * computed by a function that fills an array aligned with the column indices,
+ * so that no memory is allocated when the Hessian is evaluated.
+ */
+public final class SparseHessian {
+
+	private final int myN;
+	private final int[] myRowPointers, myColumnIndices, myDiagonal;
+	private final BiConsumer<double[], double[]> myValues;
+
+	/**
+	 *
+	 * @param n             the dimension
+	 * @param rowPointers   the row pointers, of length n + 1
+	 * @param columnIndices the column indices of the lower triangle
+	 * @param values        computes the values at a point x into an array of
+	 *                      length columnIndices.length
+	 */
+	public SparseHessian(final int n, final int[] rowPointers, final int[] columnIndices,
+			final BiConsumer<double[], double[]> values) {
+		if (rowPointers.length != n + 1 || rowPointers[0] != 0 || rowPointers[n] != columnIndices.length) {
+			throw new IllegalArgumentException("Row pointers do not match the column indices.");
+		}
+		myN = n;
+		myRowPointers = rowPointers;
+		myColumnIndices = columnIndices;
+		myValues = values;
+		myDiagonal = new int[n];
+		for (int i = 0; i < n; ++i) {
+			myDiagonal[i] = -1;
+			for (int p = rowPointers[i]; p < rowPointers[i + 1]; ++p) {
+				final int j = columnIndices[p];
+				if (j < 0 || j > i) {
+					throw new IllegalArgumentException("Column index " + j + " is not in the lower triangle of row " + i);
+				}
+				if (j == i) {
+					myDiagonal[i] = p;
+				}
+			}
+			if (myDiagonal[i] < 0) {
+				throw new IllegalArgumentException("Row " + i + " has no diagonal entry.");
+			}
+		}
+	}
+
+	public final int dimension() {
+		return myN;
+	}
+
+	public final int nnz() {
+		return myColumnIndices.length;
+	}
+
+	public final int[] rowPointers() {
+		return myRowPointers;
+	}
+
+	public final int[] columnIndices() {
+		return myColumnIndices;
+	}
+
+	/**
+	 * Returns the positions of the diagonal entries in the values array.
+	 * 
+	 * @return
+	 */
+	public final int[] diagonal() {
+		return myDiagonal;
+	}
+
+	/**
+	 * Computes the values of the Hessian at x.
+	 * 
+	 * @param x
+	 * @param values
+	 */
+	public final void evaluate(final double[] x, final double[] values) {
+		myValues.accept(x, values);
+	}
+
+	/**
+	 * Computes hv = H v for the symmetric matrix H with the given values.
+	 * 
+	 * @param values
+	 * @param v
+	 * @param hv
+	 */
+	public final void multiply(final double[] values, final double[] v, final double[] hv) {
+		for (int i = 0; i < myN; ++i) {
+			hv[i] = 0.0;
+		}
+		for (int i = 0; i < myN; ++i) {
+			double sum = 0.0;
+			for (int p = myRowPointers[i]; p < myRowPointers[i + 1]; ++p) {
+				final int j = myColumnIndices[p];
+				sum += values[p] * v[j];
+				if (j != i) {
+					hv[j] += values[p] * v[i];
+				}
+			}
+			hv[i] += sum;
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.ad;
+
+/**
+ * A dual number a + b e with e^2 = 0, used for forward mode automatic
+ * differentiation: the real part carries the value of an expression and the
+ * dual part its derivative along a fixed direction.
+ */
+public final class Dual {
+
+	private final double myValue;
+	private final double myDerivative;
+
+	/**
+	 *
+	 * @param value      the real part
+	 * @param derivative the dual part
+	 */
+	public Dual(final double value, final double derivative) {
+		myValue = value;
+		myDerivative = derivative;
+	}
+
+	/**
+	 * Returns a dual number with the given value and a zero derivative.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static final Dual constant(final double value) {
+		return new Dual(value, 0.0);
+	}
+
+	/**
+	 * Returns the real part, i.e. the value of the expression.
+	 * 
+	 * @return
+	 */
+	public final double value() {
+		return myValue;
+	}
+
+	/**
+	 * Returns the dual part, i.e. the derivative of the expression.
+	 * 
+	 * @return
+	 */
+	public final double derivative() {
+		return myDerivative;
+	}
+
+	/**
+	 * Returns this + b.
+	 * 
+	 * @param b
+	 * @return
+	 */
+	public final Dual add(final Dual b) {
+		return new Dual(myValue + b.myValue, myDerivative + b.myDerivative);
+	}
+
+	/**
+	 * Returns this + c for a constant c.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	public final Dual add(final double c) {
+		return new Dual(myValue + c, myDerivative);
+	}
+
+	/**
+	 * Returns this - b.
+	 * 
+	 * @param b
+	 * @return
+	 */
+	public final Dual sub(final Dual b) {
+		return new Dual(myValue - b.myValue, myDerivative - b.myDerivative);
+	}
+
+	/**
+	 * Returns this - c for a constant c.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	public final Dual sub(final double c) {
+		return new Dual(myValue - c, myDerivative);
+	}
+
+	/**
+	 * Returns this * b.
+	 * 
+	 * @param b
+	 * @return
+	 */
+	public final Dual mul(final Dual b) {
+		return new Dual(myValue * b.myValue, myDerivative * b.myValue + myValue * b.myDerivative);
+	}
+
+	/**
+	 * Returns c * this for a constant c.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	public final Dual mul(final double c) {
+		return new Dual(c * myValue, c * myDerivative);
+	}
+
+	/**
+	 * Returns this / b.
+	 * 
+	 * @param b
+	 * @return
+	 */
+	public final Dual div(final Dual b) {
+		final double r = 1.0 / b.myValue;
+		return new Dual(myValue * r, (myDerivative - myValue * r * b.myDerivative) * r);
+	}
+
+	/**
+	 * Returns this / c for a constant c.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	public final Dual div(final double c) {
+		return new Dual(myValue / c, myDerivative / c);
+	}
+
+	/**
+	 * Returns -this.
+	 * 
+	 * @return
+	 */
+	public final Dual neg() {
+		return new Dual(-myValue, -myDerivative);
+	}
+
+	/**
+	 * Returns this^2.
+	 * 
+	 * @return
+	 */
+	public final Dual sqr() {
+		return new Dual(myValue * myValue, 2.0 * myValue * myDerivative);
+	}
+
+	/**
+	 * Returns the square root of this.
+	 * 
+	 * @return
+	 */
+	public final Dual sqrt() {
+		final double s = Math.sqrt(myValue);
+		return new Dual(s, 0.5 * myDerivative / s);
+	}
+
+	/**
+	 * Returns the exponential of this.
+	 * 
+	 * @return
+	 */
+	public final Dual exp() {
+		final double e = Math.exp(myValue);
+		return new Dual(e, e * myDerivative);
+	}
+
+	/**
+	 * Returns the natural logarithm of this.
+	 * 
+	 * @return
+	 */
+	public final Dual log() {
+		return new Dual(Math.log(myValue), myDerivative / myValue);
+	}
+
+	/**
+	 * Returns the sine of this.
+	 * 
+	 * @return
+	 */
+	public final Dual sin() {
+		return new Dual(Math.sin(myValue), Math.cos(myValue) * myDerivative);
+	}
+
+	/**
+	 * Returns the cosine of this.
+	 * 
+	 * @return
+	 */
+	public final Dual cos() {
+		return new Dual(Math.cos(myValue), -Math.sin(myValue) * myDerivative);
+	}
+
+	/**
+	 * Returns the hyperbolic tangent of this.
+	 * 
+	 * @return
+	 */
+	public final Dual tanh() {
+		final double t = Math.tanh(myValue);
+		return new Dual(t, (1.0 - t * t) * myDerivative);
+	}
+
+	/**
+	 * Returns this^p for a constant exponent p.
+	 * 
+	 * @param p
+	 * @return
+	 */
+	public final Dual pow(final double p) {
+		return new Dual(Math.pow(myValue, p), p * Math.pow(myValue, p - 1.0) * myDerivative);
+	}
+
+	/**
+	 * Returns the absolute value of this, whose derivative at zero is taken from
+	 * the right.
+	 * 
+	 * @return
+	 */
+	public final Dual abs() {
+		return myValue >= 0.0 ? this : neg();
+	}
+
+	@Override
+	public final String toString() {
+		return myValue + " + " + myDerivative + "e";
+	}
+}
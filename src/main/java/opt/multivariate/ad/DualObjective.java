@@ -0,0 +1,114 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.ad;
+
+import java.util.function.Function;
+
+/**
+ * Differentiates a {@link DualFunction} in forward mode. A directional
+ * derivative costs one evaluation, and a gradient costs one evaluation per
+ * variable, so this is best suited to functions of few variables.
+ */
+public final class DualObjective {
+
+	private final DualFunction myFunc;
+
+	/**
+	 *
+	 * @param func the function to differentiate
+	 */
+	public DualObjective(final DualFunction func) {
+		myFunc = func;
+	}
+
+	/**
+	 * Returns the value of the function at x.
+	 * 
+	 * @param x
+	 * @return
+	 */
+	public final double value(final double[] x) {
+		final int n = x.length;
+		final Dual[] dx = new Dual[n];
+		for (int i = 0; i < n; ++i) {
+			dx[i] = Dual.constant(x[i]);
+		}
+		return myFunc.apply(dx).value();
+	}
+
+	/**
+	 * Returns the derivative of the function at x along the direction v.
+	 * 
+	 * @param x
+	 * @param v
+	 * @return
+	 */
+	public final double directionalDerivative(final double[] x, final double[] v) {
+		final int n = x.length;
+		final Dual[] dx = new Dual[n];
+		for (int i = 0; i < n; ++i) {
+			dx[i] = new Dual(x[i], v[i]);
+		}
+		return myFunc.apply(dx).derivative();
+	}
+
+	/**
+	 * Returns the gradient of the function at x, computed from n directional
+	 * derivatives along the coordinate axes.
+	 * 
+	 * @param x
+	 * @return
+	 */
+	public final double[] gradient(final double[] x) {
+		final int n = x.length;
+		final Dual[] dx = new Dual[n];
+		for (int i = 0; i < n; ++i) {
+			dx[i] = Dual.constant(x[i]);
+		}
+		final double[] g = new double[n];
+		for (int i = 0; i < n; ++i) {
+			final Dual xi = dx[i];
+			dx[i] = new Dual(x[i], 1.0);
+			g[i] = myFunc.apply(dx).derivative();
+			dx[i] = xi;
+		}
+		return g;
+	}
+
+	/**
+	 * Returns the function as an objective for the optimizers.
+	 * 
+	 * @return
+	 */
+	public final Function<double[], Double> asFunction() {
+		return this::value;
+	}
+
+	/**
+	 * Returns the gradient as a function for the optimizers.
+	 * 
+	 * @return
+	 */
+	public final Function<double[], double[]> asGradient() {
+		return this::gradient;
+	}
+}
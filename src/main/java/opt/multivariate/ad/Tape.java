@@ -0,0 +1,387 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.ad;
+
+import java.util.Arrays;
+
+/**
+ * A tape for reverse mode automatic differentiation. The nodes of the
+ * computational graph are identified by integer indices, and each operation
+ * records its value, the indices of its arguments and its partial derivatives
+ * with respect to them in primitive arrays, so no object is created per node.
+ * The arrays are kept when the tape is reset, so evaluating a function many
+ * times does not allocate memory after the first evaluation.
+ * 
+ * When second order information is requested, the second partial derivatives
+ * of each operation are recorded too. Hessian-vector products are then
+ * computed by forward mode differentiation of the reverse sweep
+ * (forward-over-reverse), which costs a small multiple of the cost of the
+ * gradient.
+ */
+public final class Tape {
+
+	private int mySize;
+	private boolean mySecond;
+	private double[] myVal = new double[64];
+	private int[] myArg = new int[128];
+	private double[] myD1 = new double[128];
+	private double[] myD2 = new double[192];
+	private double[] myTan = new double[0], myAdj = new double[0], myAdjTan = new double[0];
+
+	/**
+	 * Clears the tape.
+	 * 
+	 * @param secondOrder whether to record the second partial derivatives
+	 */
+	public final void reset(final boolean secondOrder) {
+		mySize = 0;
+		mySecond = secondOrder;
+	}
+
+	/**
+	 * Returns the number of nodes on the tape.
+	 * 
+	 * @return
+	 */
+	public final int size() {
+		return mySize;
+	}
+
+	/**
+	 * Returns the value of a node.
+	 * 
+	 * @param a
+	 * @return
+	 */
+	public final double value(final int a) {
+		return myVal[a];
+	}
+
+	/**
+	 * Records a node that does not depend on any other node, i.e. a constant or
+	 * an independent variable.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public final int constant(final double value) {
+		return push(value, -1, -1, 0.0, 0.0, 0.0, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node a + b.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public final int add(final int a, final int b) {
+		return push(myVal[a] + myVal[b], a, b, 1.0, 1.0, 0.0, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node a - b.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public final int sub(final int a, final int b) {
+		return push(myVal[a] - myVal[b], a, b, 1.0, -1.0, 0.0, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node a * b.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public final int mul(final int a, final int b) {
+		final double x = myVal[a], y = myVal[b];
+		return push(x * y, a, b, y, x, 0.0, 1.0, 0.0);
+	}
+
+	/**
+	 * Returns the node a / b.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public final int div(final int a, final int b) {
+		final double x = myVal[a], y = myVal[b], r = 1.0 / y;
+		return push(x * r, a, b, r, -x * r * r, 0.0, -r * r, 2.0 * x * r * r * r);
+	}
+
+	/**
+	 * Returns the node -a.
+	 * 
+	 * @param a
+	 * @return
+	 */
+	public final int neg(final int a) {
+		return push(-myVal[a], a, -1, -1.0, 0.0, 0.0, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node a + c for a constant c.
+	 * 
+	 * @param a
+	 * @param c
+	 * @return
+	 */
+	public final int shift(final int a, final double c) {
+		return push(myVal[a] + c, a, -1, 1.0, 0.0, 0.0, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node c * a for a constant c.
+	 * 
+	 * @param a
+	 * @param c
+	 * @return
+	 */
+	public final int scale(final int a, final double c) {
+		return push(c * myVal[a], a, -1, c, 0.0, 0.0, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node a^2.
+	 * 
+	 * @param a
+	 * @return
+	 */
+	public final int sqr(final int a) {
+		final double x = myVal[a];
+		return push(x * x, a, -1, 2.0 * x, 0.0, 2.0, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node the square root of a.
+	 * 
+	 * @param a
+	 * @return
+	 */
+	public final int sqrt(final int a) {
+		final double s = Math.sqrt(myVal[a]);
+		return push(s, a, -1, 0.5 / s, 0.0, -0.25 / (s * s * s), 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node the exponential of a.
+	 * 
+	 * @param a
+	 * @return
+	 */
+	public final int exp(final int a) {
+		final double e = Math.exp(myVal[a]);
+		return push(e, a, -1, e, 0.0, e, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node the natural logarithm of a.
+	 * 
+	 * @param a
+	 * @return
+	 */
+	public final int log(final int a) {
+		final double r = 1.0 / myVal[a];
+		return push(Math.log(myVal[a]), a, -1, r, 0.0, -r * r, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node the sine of a.
+	 * 
+	 * @param a
+	 * @return
+	 */
+	public final int sin(final int a) {
+		final double s = Math.sin(myVal[a]), c = Math.cos(myVal[a]);
+		return push(s, a, -1, c, 0.0, -s, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node the cosine of a.
+	 * 
+	 * @param a
+	 * @return
+	 */
+	public final int cos(final int a) {
+		final double s = Math.sin(myVal[a]), c = Math.cos(myVal[a]);
+		return push(c, a, -1, -s, 0.0, -c, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node the hyperbolic tangent of a.
+	 * 
+	 * @param a
+	 * @return
+	 */
+	public final int tanh(final int a) {
+		final double t = Math.tanh(myVal[a]), d = 1.0 - t * t;
+		return push(t, a, -1, d, 0.0, -2.0 * t * d, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the node a^p for a constant exponent p.
+	 * 
+	 * @param a
+	 * @param p
+	 * @return
+	 */
+	public final int pow(final int a, final double p) {
+		final double x = myVal[a];
+		return push(Math.pow(x, p), a, -1, p * Math.pow(x, p - 1.0), 0.0, p * (p - 1.0) * Math.pow(x, p - 2.0), 0.0,
+				0.0);
+	}
+
+	/**
+	 * Returns the node the absolute value of a, whose derivative at zero is
+	 * taken from the right.
+	 * 
+	 * @param a
+	 * @return
+	 */
+	public final int abs(final int a) {
+		final double x = myVal[a];
+		return push(Math.abs(x), a, -1, x >= 0.0 ? 1.0 : -1.0, 0.0, 0.0, 0.0, 0.0);
+	}
+
+	/**
+	 * Computes the gradient of the node out with respect to the first n nodes on
+	 * the tape by a reverse sweep.
+	 * 
+	 * @param out
+	 * @param n
+	 * @param g
+	 */
+	public final void gradient(final int out, final int n, final double[] g) {
+		if (myAdj.length < mySize) {
+			myAdj = new double[myVal.length];
+		}
+		final double[] adj = myAdj;
+		Arrays.fill(adj, 0, out + 1, 0.0);
+		adj[out] = 1.0;
+		for (int i = out; i >= 0; --i) {
+			final double a = adj[i];
+			if (a == 0.0) {
+				continue;
+			}
+			final int p = myArg[2 * i], q = myArg[2 * i + 1];
+			if (p >= 0) {
+				adj[p] += a * myD1[2 * i];
+			}
+			if (q >= 0) {
+				adj[q] += a * myD1[2 * i + 1];
+			}
+		}
+		System.arraycopy(adj, 0, g, 0, n);
+	}
+
+	/**
+	 * Computes the gradient g of the node out with respect to the first n nodes
+	 * on the tape, and the product hv of its Hessian with the vector v. The tape
+	 * must have been recorded with second order information.
+	 * 
+	 * @param out
+	 * @param n
+	 * @param v
+	 * @param g
+	 * @param hv
+	 */
+	public final void hessianVector(final int out, final int n, final double[] v, final double[] g,
+			final double[] hv) {
+		if (!mySecond) {
+			throw new IllegalStateException("Tape was recorded without second order information.");
+		}
+		if (myTan.length < mySize) {
+			myTan = new double[myVal.length];
+			myAdjTan = new double[myVal.length];
+		}
+		if (myAdj.length < mySize) {
+			myAdj = new double[myVal.length];
+		}
+		final double[] tan = myTan, adj = myAdj, adjt = myAdjTan;
+
+		// forward sweep for the directional derivatives along v
+		System.arraycopy(v, 0, tan, 0, n);
+		for (int i = n; i <= out; ++i) {
+			final int p = myArg[2 * i], q = myArg[2 * i + 1];
+			double t = 0.0;
+			if (p >= 0) {
+				t += myD1[2 * i] * tan[p];
+			}
+			if (q >= 0) {
+				t += myD1[2 * i + 1] * tan[q];
+			}
+			tan[i] = t;
+		}
+
+		// reverse sweep for the adjoints and their directional derivatives
+		Arrays.fill(adj, 0, out + 1, 0.0);
+		Arrays.fill(adjt, 0, out + 1, 0.0);
+		adj[out] = 1.0;
+		for (int i = out; i >= 0; --i) {
+			final double a = adj[i], at = adjt[i];
+			if (a == 0.0 && at == 0.0) {
+				continue;
+			}
+			final int p = myArg[2 * i], q = myArg[2 * i + 1];
+			final double tp = p >= 0 ? tan[p] : 0.0, tq = q >= 0 ? tan[q] : 0.0;
+			if (p >= 0) {
+				adj[p] += a * myD1[2 * i];
+				adjt[p] += at * myD1[2 * i] + a * (myD2[3 * i] * tp + myD2[3 * i + 1] * tq);
+			}
+			if (q >= 0) {
+				adj[q] += a * myD1[2 * i + 1];
+				adjt[q] += at * myD1[2 * i + 1] + a * (myD2[3 * i + 1] * tp + myD2[3 * i + 2] * tq);
+			}
+		}
+		System.arraycopy(adj, 0, g, 0, n);
+		System.arraycopy(adjt, 0, hv, 0, n);
+	}
+
+	private int push(final double value, final int a, final int b, final double da, final double db,
+			final double daa, final double dab, final double dbb) {
+		final int i = mySize;
+		if (i == myVal.length) {
+			final int cap = 2 * i;
+			myVal = Arrays.copyOf(myVal, cap);
+			myArg = Arrays.copyOf(myArg, 2 * cap);
+			myD1 = Arrays.copyOf(myD1, 2 * cap);
+			myD2 = Arrays.copyOf(myD2, 3 * cap);
+		}
+		myVal[i] = value;
+		myArg[2 * i] = a;
+		myArg[2 * i + 1] = b;
+		myD1[2 * i] = da;
+		myD1[2 * i + 1] = db;
+		if (mySecond) {
+			myD2[3 * i] = daa;
+			myD2[3 * i + 1] = dab;
+			myD2[3 * i + 2] = dbb;
+		}
+		++mySize;
+		return i;
+	}
+}
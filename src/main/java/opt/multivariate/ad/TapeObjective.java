@@ -0,0 +1,174 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.ad;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import opt.multivariate.HessianVectorProduct;
+
+/**
+ * Differentiates a {@link TapeFunction} in reverse mode. The function is
+ * recorded once per point, and the gradient at the most recently recorded
+ * point costs one reverse sweep of the tape, independent of the number of
+ * variables. Hessian-vector products are computed forward-over-reverse.
+ * 
+ * Instances keep their tape between calls and are not thread-safe.
+ */
+public final class TapeObjective {
+
+	private final TapeFunction myFunc;
+	private final Tape myTape = new Tape();
+	private double[] myX = new double[0];
+	private int[] myVars = new int[0];
+	private double[] myG = new double[0];
+	private int myOut = -1;
+	private boolean mySecond;
+
+	/**
+	 *
+	 * @param func the function to differentiate
+	 */
+	public TapeObjective(final TapeFunction func) {
+		myFunc = func;
+	}
+
+	/**
+	 * Returns the value of the function at x.
+	 * 
+	 * @param x
+	 * @return
+	 */
+	public final double value(final double[] x) {
+		record(x, false);
+		return myTape.value(myOut);
+	}
+
+	/**
+	 * Returns the gradient of the function at x, computed by one reverse sweep.
+	 * 
+	 * @param x
+	 * @return
+	 */
+	public final double[] gradient(final double[] x) {
+		record(x, false);
+		final double[] g = new double[x.length];
+		myTape.gradient(myOut, x.length, g);
+		return g;
+	}
+
+	/**
+	 * Computes the gradient g and the Hessian-vector product hv = H v at x.
+	 * 
+	 * @param x
+	 * @param v
+	 * @param g
+	 * @param hv
+	 */
+	public final void hessianVector(final double[] x, final double[] v, final double[] g, final double[] hv) {
+		record(x, true);
+		myTape.hessianVector(myOut, x.length, v, g, hv);
+	}
+
+	/**
+	 * Returns the Hessian at x, assembled column by column from n
+	 * Hessian-vector products of a single recording.
+	 * 
+	 * @param x
+	 * @return
+	 */
+	public final double[][] hessian(final double[] x) {
+		final int n = x.length;
+		record(x, true);
+		final double[][] h = new double[n][n];
+		final double[] e = new double[n], g = new double[n], hv = new double[n];
+		for (int j = 0; j < n; ++j) {
+			e[j] = 1.0;
+			myTape.hessianVector(myOut, n, e, g, hv);
+			e[j] = 0.0;
+			for (int i = 0; i < n; ++i) {
+				h[i][j] = hv[i];
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Returns the function as an objective for the optimizers.
+	 * 
+	 * @return
+	 */
+	public final Function<double[], Double> asFunction() {
+		return this::value;
+	}
+
+	/**
+	 * Returns the gradient as a function for the optimizers.
+	 * 
+	 * @return
+	 */
+	public final Function<double[], double[]> asGradient() {
+		return this::gradient;
+	}
+
+	/**
+	 * Returns the Hessian as a function for the optimizers.
+	 * 
+	 * @return
+	 */
+	public final Function<double[], double[][]> asHessian() {
+		return this::hessian;
+	}
+
+	/**
+	 * Returns the Hessian-vector product as a function for the optimizers. The
+	 * gradient computed along the way is discarded.
+	 * 
+	 * @return
+	 */
+	public final HessianVectorProduct asHessianVectorProduct() {
+		return (x, v, hv) -> {
+			if (myG.length != x.length) {
+				myG = new double[x.length];
+			}
+			hessianVector(x, v, myG, hv);
+		};
+	}
+
+	private void record(final double[] x, final boolean second) {
+		if (myOut >= 0 && (mySecond || !second) && Arrays.equals(myX, x)) {
+			return;
+		}
+		final int n = x.length;
+		if (myX.length != n) {
+			myX = new double[n];
+			myVars = new int[n];
+		}
+		myTape.reset(second);
+		for (int i = 0; i < n; ++i) {
+			myVars[i] = myTape.constant(x[i]);
+		}
+		myOut = myFunc.apply(myTape, myVars);
+		System.arraycopy(x, 0, myX, 0, n);
+		mySecond = second;
+	}
+}
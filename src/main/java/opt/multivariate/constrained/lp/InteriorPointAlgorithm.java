@@ -0,0 +1,537 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.constrained.lp;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import opt.Optimizer;
+import opt.multivariate.MultivariateOptimizerSolution;
+import utils.SparseCholesky;
+
+/**
+ * Mehrotra's primal-dual predictor-corrector interior-point algorithm for
+ * minimizing a linear function subject to linear constraints. The inequality
+ * constraints are converted to equalities with slack variables, and the search
+ * directions are computed from the normal equations A D A' dy = r, which are
+ * solved by Cholesky factorization. If the polyhedron is sparse, the normal
+ * equations are sparse and their symbolic factorization is computed only once.
+ * The formation of A D A' can be done in parallel.
+ *
+ * The solution of an interior-point method is generally not a vertex of the
+ * polyhedron. Optionally, a crossover step guesses an optimal basis from the
+ * interior solution and finishes with the sparse revised simplex algorithm
+ * started from that basis, which returns a vertex solution.
+ *
+ *
+ * REFERENCES:
+ *
+ * [1] Mehrotra, Sanjay. "On the implementation of a primal-dual interior point
+ * method." SIAM Journal on Optimization 2.4 (1992): 575-601.
+ *
+ * [2] Wright, Stephen J. Primal-dual interior-point methods. Society for
+ * Industrial and Applied Mathematics, 1997.
+ *
+ * [3] Nocedal, Jorge, and Stephen Wright. Numerical optimization. Springer
+ * Science & Business Media, 2006.
+ */
+public final class InteriorPointAlgorithm extends Optimizer<double[], Double, RealLinearProgram> {
+
+	private static final double STEP = 0.995;
+	private static final double PIVTOL = 1e-30;
+	private static final double BIG = 1e12;
+
+	private final double myTol;
+	private final int myMaxIters;
+	private final boolean myCrossover, myParallel;
+
+	// problem in standard form: A x = b, x >= 0, where the slack variables of the
+	// inequality rows follow the structural variables
+	private int m, n0, n, iters;
+	private boolean sparse;
+	private int[] rp, rc, cp, cr, slackRow;
+	private double[] rv, cv, slackSign, c, b;
+
+	// normal equations
+	private int[] mp, mi, diag;
+	private double[] mv, work;
+	private double[][] dense;
+	private SparseCholesky chol;
+
+	// iterates and work arrays
+	private double[] x, y, s, d, dx, dy, ds, dxa, dsa, rb, rd, rhs, tmp;
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param maxIterations
+	 * @param crossover
+	 * @param parallel
+	 */
+	public InteriorPointAlgorithm(final double tolerance, final int maxIterations, final boolean crossover,
+			final boolean parallel) {
+		myTol = tolerance;
+		myMaxIters = maxIterations;
+		myCrossover = crossover;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param maxIterations
+	 */
+	public InteriorPointAlgorithm(final double tolerance, final int maxIterations) {
+		this(tolerance, maxIterations, false, false);
+	}
+
+	@Override
+	public final MultivariateOptimizerSolution optimize(final RealLinearProgram lp, final double[] guess) {
+		initialize(lp);
+		final boolean converged = mpc();
+		if (!myCrossover || !converged) {
+			return new MultivariateOptimizerSolution(Arrays.copyOf(x, n0), iters, 0, converged);
+		}
+
+		// guess the optimal basis from the interior solution, and finish with the
+		// simplex method
+		final int[] basis = crossoverBasis(lp);
+		final SparseRevisedSimplexAlgorithm simplex = new SparseRevisedSimplexAlgorithm(10 * (m + n), 1e-9, 100, 0,
+				myParallel);
+		final MultivariateOptimizerSolution sol = simplex.optimizeFromBasis(lp, basis);
+		return new MultivariateOptimizerSolution(sol.getOptimalPoint(), iters + sol.getFEvals(), 0,
+				sol.converged());
+	}
+
+	private void initialize(final RealLinearProgram lp) {
+		final Polyhedron poly = lp.mySimplex;
+		m = poly.numRows();
+		n0 = poly.myD;
+		final int nle = poly.myNumLe, nge = poly.myNumGe;
+		n = n0 + nle + nge;
+		sparse = poly.isSparse();
+		b = poly.getB();
+		c = new double[n];
+		System.arraycopy(lp.myCostVec, 0, c, 0, n0);
+
+		// slack variables
+		slackRow = new int[n - n0];
+		slackSign = new double[n - n0];
+		for (int k = 0; k < nle + nge; ++k) {
+			slackRow[k] = k;
+			slackSign[k] = k < nle ? 1.0 : -1.0;
+		}
+
+		// the structural part of the constraint matrix by rows and by columns
+		rp = poly.getRowPointers();
+		rc = poly.getColumnIndices();
+		rv = poly.getValues();
+		cp = new int[n0 + 1];
+		for (int k = 0; k < rp[m]; ++k) {
+			++cp[rc[k] + 1];
+		}
+		for (int j = 0; j < n0; ++j) {
+			cp[j + 1] += cp[j];
+		}
+		cr = new int[rp[m]];
+		cv = new double[rp[m]];
+		final int[] next = Arrays.copyOf(cp, n0);
+		for (int i = 0; i < m; ++i) {
+			for (int k = rp[i]; k < rp[i + 1]; ++k) {
+				final int e = next[rc[k]]++;
+				cr[e] = i;
+				cv[e] = rv[k];
+			}
+		}
+
+		// the pattern of the normal equations, and its symbolic factorization
+		if (sparse) {
+			final int[] mark = new int[m];
+			Arrays.fill(mark, -1);
+			mp = new int[m + 1];
+			diag = new int[m];
+			int[] idx = new int[Math.max(16, rp[m])];
+			int nz = 0;
+			for (int j = 0; j < m; ++j) {
+				mark[j] = j;
+				if (nz + 1 > idx.length) {
+					idx = Arrays.copyOf(idx, idx.length << 1);
+				}
+				diag[j] = nz;
+				idx[nz++] = j;
+				for (int k = rp[j]; k < rp[j + 1]; ++k) {
+					final int col = rc[k];
+					for (int e = cp[col]; e < cp[col + 1]; ++e) {
+						final int i = cr[e];
+						if (i < j && mark[i] != j) {
+							mark[i] = j;
+							if (nz + 1 > idx.length) {
+								idx = Arrays.copyOf(idx, idx.length << 1);
+							}
+							idx[nz++] = i;
+						}
+					}
+				}
+				mp[j + 1] = nz;
+			}
+			mi = Arrays.copyOf(idx, nz);
+			mv = new double[nz];
+			work = new double[m];
+			chol = new SparseCholesky(m, mp, mi);
+		} else {
+			dense = new double[m][m];
+		}
+
+		// iterates
+		x = new double[n];
+		s = new double[n];
+		d = new double[n];
+		dx = new double[n];
+		ds = new double[n];
+		dxa = new double[n];
+		dsa = new double[n];
+		rd = new double[n];
+		tmp = new double[n];
+		y = new double[m];
+		dy = new double[m];
+		rb = new double[m];
+		rhs = new double[m];
+		iters = 0;
+	}
+
+	private boolean mpc() {
+
+		// Mehrotra's starting point
+		Arrays.fill(d, 1.0);
+		if (!factor()) {
+			return false;
+		}
+		System.arraycopy(b, 0, rhs, 0, m);
+		solve(rhs);
+		multiplyTranspose(rhs, x);
+		multiply(c, rhs);
+		solve(rhs);
+		System.arraycopy(rhs, 0, y, 0, m);
+		multiplyTranspose(y, s);
+		for (int j = 0; j < n; ++j) {
+			s[j] = c[j] - s[j];
+		}
+		double xmin = Double.POSITIVE_INFINITY, smin = Double.POSITIVE_INFINITY;
+		for (int j = 0; j < n; ++j) {
+			xmin = Math.min(xmin, x[j]);
+			smin = Math.min(smin, s[j]);
+		}
+		final double shx = Math.max(-1.5 * xmin, 0.0), shs = Math.max(-1.5 * smin, 0.0);
+		double xs = 0.0, sx = 0.0, ss = 0.0;
+		for (int j = 0; j < n; ++j) {
+			x[j] += shx;
+			s[j] += shs;
+			xs += x[j] * s[j];
+			sx += x[j];
+			ss += s[j];
+		}
+		final double shx2 = ss > 0.0 ? 0.5 * xs / ss : 1.0, shs2 = sx > 0.0 ? 0.5 * xs / sx : 1.0;
+		for (int j = 0; j < n; ++j) {
+			x[j] = Math.max(x[j] + shx2, 1e-8);
+			s[j] = Math.max(s[j] + shs2, 1e-8);
+		}
+
+		final double bnorm = 1.0 + norm(b, m), cnorm = 1.0 + norm(c, n);
+		while (true) {
+
+			// residuals and convergence test
+			multiply(x, rb);
+			for (int i = 0; i < m; ++i) {
+				rb[i] -= b[i];
+			}
+			multiplyTranspose(y, rd);
+			double mu = 0.0, pobj = 0.0, dobj = 0.0;
+			for (int j = 0; j < n; ++j) {
+				rd[j] += s[j] - c[j];
+				mu += x[j] * s[j];
+				pobj += c[j] * x[j];
+			}
+			for (int i = 0; i < m; ++i) {
+				dobj += b[i] * y[i];
+			}
+			mu /= n;
+			if (norm(rb, m) / bnorm <= myTol && norm(rd, n) / cnorm <= myTol
+					&& Math.abs(pobj - dobj) / (1.0 + Math.abs(pobj)) <= myTol) {
+				return true;
+			}
+			if (iters >= myMaxIters || !(Math.abs(pobj) < BIG * bnorm * cnorm)
+					|| !(Math.abs(dobj) < BIG * bnorm * cnorm)) {
+				return false;
+			}
+			++iters;
+
+			// factor the normal equations
+			for (int j = 0; j < n; ++j) {
+				d[j] = x[j] / s[j];
+			}
+			if (!factor()) {
+				return false;
+			}
+
+			// predictor (affine scaling) direction
+			for (int j = 0; j < n; ++j) {
+				tmp[j] = -x[j] * s[j];
+			}
+			direction(dxa, dsa);
+			final double apa = Math.min(1.0, maxStep(x, dxa)), ada = Math.min(1.0, maxStep(s, dsa));
+			double muaff = 0.0;
+			for (int j = 0; j < n; ++j) {
+				muaff += (x[j] + apa * dxa[j]) * (s[j] + ada * dsa[j]);
+			}
+			muaff /= n;
+			final double sigma = Math.pow(muaff / mu, 3.0);
+
+			// corrector direction with centering
+			for (int j = 0; j < n; ++j) {
+				tmp[j] = -x[j] * s[j] - dxa[j] * dsa[j] + sigma * mu;
+			}
+			direction(dx, ds);
+			final double ap = Math.min(1.0, STEP * maxStep(x, dx)), ad = Math.min(1.0, STEP * maxStep(s, ds));
+			for (int j = 0; j < n; ++j) {
+				x[j] += ap * dx[j];
+				s[j] += ad * ds[j];
+			}
+			for (int i = 0; i < m; ++i) {
+				y[i] += ad * dy[i];
+			}
+		}
+	}
+
+	private void direction(final double[] px, final double[] ps) {
+
+		// solve for dy from the normal equations, where tmp holds the right-hand
+		// side of the complementarity equations
+		for (int j = 0; j < n; ++j) {
+			px[j] = tmp[j] / s[j] + d[j] * rd[j];
+		}
+		multiply(px, rhs);
+		for (int i = 0; i < m; ++i) {
+			rhs[i] = -rb[i] - rhs[i];
+		}
+		solve(rhs);
+		System.arraycopy(rhs, 0, dy, 0, m);
+
+		// recover ds and dx
+		multiplyTranspose(dy, ps);
+		for (int j = 0; j < n; ++j) {
+			ps[j] = -rd[j] - ps[j];
+			px[j] = tmp[j] / s[j] - d[j] * ps[j];
+		}
+	}
+
+	private static double maxStep(final double[] v, final double[] dv) {
+		double alpha = Double.POSITIVE_INFINITY;
+		for (int j = 0; j < v.length; ++j) {
+			if (dv[j] < 0.0) {
+				alpha = Math.min(alpha, -v[j] / dv[j]);
+			}
+		}
+		return alpha;
+	}
+
+	private static double norm(final double[] v, final int len) {
+		double max = 0.0;
+		for (int i = 0; i < len; ++i) {
+			max = Math.max(max, Math.abs(v[i]));
+		}
+		return max;
+	}
+
+	private void multiply(final double[] v, final double[] out) {
+		for (int i = 0; i < m; ++i) {
+			double sum = 0.0;
+			for (int k = rp[i]; k < rp[i + 1]; ++k) {
+				sum += rv[k] * v[rc[k]];
+			}
+			out[i] = sum;
+		}
+		for (int k = 0; k < n - n0; ++k) {
+			out[slackRow[k]] += slackSign[k] * v[n0 + k];
+		}
+	}
+
+	private void multiplyTranspose(final double[] v, final double[] out) {
+		for (int j = 0; j < n0; ++j) {
+			double sum = 0.0;
+			for (int e = cp[j]; e < cp[j + 1]; ++e) {
+				sum += cv[e] * v[cr[e]];
+			}
+			out[j] = sum;
+		}
+		for (int k = 0; k < n - n0; ++k) {
+			out[n0 + k] = slackSign[k] * v[slackRow[k]];
+		}
+	}
+
+	private boolean factor() {
+		if (sparse) {
+
+			// form A D A' by columns
+			if (myParallel && m > 1) {
+				final int nchunks = Math.min(m, 4 * Runtime.getRuntime().availableProcessors());
+				IntStream.range(0, nchunks).parallel().forEach(t -> {
+					final double[] w = new double[m];
+					for (int j = t * m / nchunks; j < (t + 1) * m / nchunks; ++j) {
+						formColumn(j, w);
+					}
+				});
+			} else {
+				for (int j = 0; j < m; ++j) {
+					formColumn(j, work);
+				}
+			}
+			for (int k = 0; k < n - n0; ++k) {
+				mv[diag[slackRow[k]]] += d[n0 + k];
+			}
+			return chol.factorSemidefinite(mv, PIVTOL) >= 0;
+		}
+
+		// form A D A' by rows
+		final double[][] a = dense;
+		if (myParallel && m > 1) {
+			IntStream.range(0, m).parallel().forEach(this::formRow);
+		} else {
+			for (int i = 0; i < m; ++i) {
+				formRow(i);
+			}
+		}
+		for (int k = 0; k < n - n0; ++k) {
+			a[slackRow[k]][slackRow[k]] += d[n0 + k];
+		}
+
+		// dense Cholesky factorization, dropping tiny pivots
+		double dmax = 0.0;
+		for (int i = 0; i < m; ++i) {
+			dmax = Math.max(dmax, a[i][i]);
+		}
+		for (int j = 0; j < m; ++j) {
+			double djj = a[j][j];
+			for (int k = 0; k < j; ++k) {
+				djj -= a[j][k] * a[j][k];
+			}
+			if (djj <= PIVTOL * dmax) {
+				if (djj < -dmax) {
+					return false;
+				}
+				djj = 1e128;
+			}
+			djj = Math.sqrt(djj);
+			a[j][j] = djj;
+			for (int i = j + 1; i < m; ++i) {
+				double sum = a[i][j];
+				for (int k = 0; k < j; ++k) {
+					sum -= a[i][k] * a[j][k];
+				}
+				a[i][j] = sum / djj;
+			}
+		}
+		return true;
+	}
+
+	private void formColumn(final int j, final double[] w) {
+		for (int k = rp[j]; k < rp[j + 1]; ++k) {
+			final int col = rc[k];
+			final double f = d[col] * rv[k];
+			for (int e = cp[col]; e < cp[col + 1]; ++e) {
+				final int i = cr[e];
+				if (i <= j) {
+					w[i] += f * cv[e];
+				}
+			}
+		}
+		for (int p = mp[j]; p < mp[j + 1]; ++p) {
+			mv[p] = w[mi[p]];
+			w[mi[p]] = 0.0;
+		}
+	}
+
+	private void formRow(final int i) {
+		final double[] ai = dense[i];
+		for (int j = 0; j <= i; ++j) {
+			double sum = 0.0;
+			int k1 = rp[i], k2 = rp[j];
+			while (k1 < rp[i + 1] && k2 < rp[j + 1]) {
+				if (rc[k1] == rc[k2]) {
+					sum += rv[k1] * d[rc[k1]] * rv[k2];
+					++k1;
+					++k2;
+				} else if (rc[k1] < rc[k2]) {
+					++k1;
+				} else {
+					++k2;
+				}
+			}
+			ai[j] = sum;
+		}
+	}
+
+	private void solve(final double[] v) {
+		if (sparse) {
+			chol.solve(v);
+			return;
+		}
+		final double[][] a = dense;
+		for (int i = 0; i < m; ++i) {
+			double sum = v[i];
+			for (int k = 0; k < i; ++k) {
+				sum -= a[i][k] * v[k];
+			}
+			v[i] = sum / a[i][i];
+		}
+		for (int i = m - 1; i >= 0; --i) {
+			double sum = v[i];
+			for (int k = i + 1; k < m; ++k) {
+				sum -= a[k][i] * v[k];
+			}
+			v[i] = sum / a[i][i];
+		}
+	}
+
+	private int[] crossoverBasis(final RealLinearProgram lp) {
+
+		// rank the structural and logical variables of the simplex method by how
+		// far they are from their bounds relative to their dual slacks
+		final int nv = n0 + m;
+		final double[] score = new double[nv];
+		for (int j = 0; j < n0; ++j) {
+			score[j] = x[j] / (x[j] + s[j]);
+		}
+		for (int k = 0; k < n - n0; ++k) {
+			score[n0 + slackRow[k]] = x[n0 + k] / (x[n0 + k] + s[n0 + k]);
+		}
+		final Integer[] order = new Integer[nv];
+		for (int j = 0; j < nv; ++j) {
+			order[j] = j;
+		}
+		Arrays.sort(order, (i1, i2) -> Double.compare(score[i2], score[i1]));
+		final int[] basis = new int[m];
+		for (int i = 0; i < m; ++i) {
+			basis[i] = order[i] + 1;
+		}
+		return basis;
+	}
+}
@@ -22,12 +22,18 @@ SOFTWARE.
 package opt.multivariate.constrained.lp;
 
 /**
- * A polyhedron defined by a set of constraints of the form >= and <=.
+ * A polyhedron defined by a set of constraints of the form >= and <=. The
+ * constraint matrix can be given either as a dense matrix, or in compressed
+ * sparse row (CSR) format for large sparse problems. The other representation
+ * is only built on request.
  */
 public class Polyhedron {
 
-	private final double[][] myA;
+	private double[][] myA;
+	private int[] myRowPtr, myColIdx;
+	private double[] myVals;
 	private final double[] myB;
+	private final boolean mySparse;
 	public final int myD, myNumLe, myNumGe;
 
 	/**
@@ -43,6 +49,51 @@ public class Polyhedron {
 		myNumLe = numlesseq;
 		myNumGe = numgreeq;
 		myD = amat[0].length;
+		mySparse = false;
+	}
+
+	/**
+	 *
+	 * @param rowPointers
+	 * @param columnIndices
+	 * @param values
+	 * @param numColumns
+	 * @param bvec
+	 * @param numlesseq
+	 * @param numgreeq
+	 */
+	public Polyhedron(final int[] rowPointers, final int[] columnIndices, final double[] values, final int numColumns,
+			final double[] bvec, final int numlesseq, final int numgreeq) {
+		if (rowPointers.length != bvec.length + 1) {
+			throw new IllegalArgumentException("Length of row pointers must be one more than the number of rows.");
+		}
+		if (columnIndices.length < rowPointers[bvec.length] || values.length < rowPointers[bvec.length]) {
+			throw new IllegalArgumentException("Column indices and values must have one entry per nonzero.");
+		}
+		myRowPtr = rowPointers;
+		myColIdx = columnIndices;
+		myVals = values;
+		myB = bvec;
+		myNumLe = numlesseq;
+		myNumGe = numgreeq;
+		myD = numColumns;
+		mySparse = true;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public final boolean isSparse() {
+		return mySparse;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public final int numRows() {
+		return myB.length;
 	}
 
 	/**
@@ -50,6 +101,15 @@ public class Polyhedron {
 	 * @return
 	 */
 	public final double[][] getA() {
+		if (myA == null) {
+			final double[][] a = new double[myB.length][myD];
+			for (int i = 0; i < myB.length; ++i) {
+				for (int k = myRowPtr[i]; k < myRowPtr[i + 1]; ++k) {
+					a[i][myColIdx[k]] += myVals[k];
+				}
+			}
+			myA = a;
+		}
 		return myA;
 	}
 
@@ -60,4 +120,66 @@ public class Polyhedron {
 	public final double[] getB() {
 		return myB;
 	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public final int[] getRowPointers() {
+		if (myRowPtr == null) {
+			toSparse();
+		}
+		return myRowPtr;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public final int[] getColumnIndices() {
+		if (myRowPtr == null) {
+			toSparse();
+		}
+		return myColIdx;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public final double[] getValues() {
+		if (myRowPtr == null) {
+			toSparse();
+		}
+		return myVals;
+	}
+
+	private void toSparse() {
+		final int m = myB.length;
+		final int[] ptr = new int[m + 1];
+		for (int i = 0; i < m; ++i) {
+			int nnz = 0;
+			for (int j = 0; j < myD; ++j) {
+				if (myA[i][j] != 0.0) {
+					++nnz;
+				}
+			}
+			ptr[i + 1] = ptr[i] + nnz;
+		}
+		final int[] idx = new int[ptr[m]];
+		final double[] vals = new double[ptr[m]];
+		for (int i = 0; i < m; ++i) {
+			int k = ptr[i];
+			for (int j = 0; j < myD; ++j) {
+				if (myA[i][j] != 0.0) {
+					idx[k] = j;
+					vals[k] = myA[i][j];
+					++k;
+				}
+			}
+		}
+		myColIdx = idx;
+		myVals = vals;
+		myRowPtr = ptr;
+	}
 }
@@ -55,6 +55,24 @@ public final class RealSimplexAlgorithm extends Optimizer<double[], Double, Real
 
 	@Override
 	public final MultivariateOptimizerSolution optimize(final RealLinearProgram lp, final double[] guess) {
+		return optimizeFromBasis(lp, new int[lp.mySimplex.getB().length]);
+	}
+
+	/**
+	 * Solves the linear program starting from the given basis. On entry, basis
+	 * holds the final basis of a previous solve of a program with the same
+	 * constraint matrix, or all zeros to start from the slack basis. On exit, it
+	 * holds the final basis, which can warm-start a subsequent solve after the
+	 * cost vector or the right-hand side is changed.
+	 *
+	 * @param lp
+	 * @param basis
+	 * @return
+	 */
+	public final MultivariateOptimizerSolution optimizeFromBasis(final RealLinearProgram lp, final int[] basis) {
+		if (basis.length != lp.mySimplex.getB().length) {
+			throw new IllegalArgumentException("Length of basis must equal the number of constraints.");
+		}
 
 		// prepare variables
 		final double[][] a = lp.mySimplex.getA();
@@ -73,19 +91,19 @@ public final class RealSimplexAlgorithm extends Optimizer<double[], Double, Real
 		}
 
 		// call main subroutine
-		final double[] result = smplx(a, b, c, iter, myMaxIters, numle, numge, rerr, converged);
+		final double[] result = smplx(a, b, c, basis, iter, myMaxIters, numle, numge, rerr, converged);
 		return new MultivariateOptimizerSolution(result, iter[0], 0, converged[0]);
 	}
 
-	private static double[] smplx(final double[][] a, final double[] b0, final double[] c, final int[] iter,
-			final int mxiter, final int numle, final int numge, final double[] rerr, final boolean[] converged) {
+	private static double[] smplx(final double[][] a, final double[] b0, final double[] c, final int[] ibasis,
+			final int[] iter, final int mxiter, final int numle, final int numge, final double[] rerr,
+			final boolean[] converged) {
 
 		// prepare variables
 		final int ka = a.length;
 		final int m = b0.length;
 		final int n0 = a[0].length;
-		final int[] ind = { 0 };
-		final int[] ibasis = new int[m];
+		final int[] ind = { ibasis[0] > 0 ? 1 : 0 };
 		final double[] x = new double[n0 + numle + numge];
 		final double[] z = new double[1];
 		final double[][] bi = new double[m][m];
@@ -260,13 +278,17 @@ public final class RealSimplexAlgorithm extends Optimizer<double[], Double, Real
 						}
 					}
 					icount = 0;
-					final double[] wa = new double[m];
-					for (kk = 1; kk <= m; ++kk) {
-						wa[kk - 1] = bi[kk - 1][1 - 1];
+					final double[] wa = new double[m * m];
+					for (j = 1; j <= m; ++j) {
+						for (kk = 1; kk <= m; ++kk) {
+							wa[(j - 1) * m + kk - 1] = bi[kk - 1][j - 1];
+						}
 					}
 					crout1(wa, m, m, iend, indx, y, ierr);
-					for (kk = 1; kk <= m; ++kk) {
-						bi[kk - 1][1 - 1] = wa[kk - 1];
+					for (j = 1; j <= m; ++j) {
+						for (kk = 1; kk <= m; ++kk) {
+							bi[kk - 1][j - 1] = wa[(j - 1) * m + kk - 1];
+						}
 					}
 					if (ierr[0] != 0) {
 						if (iter[0] == 0) {
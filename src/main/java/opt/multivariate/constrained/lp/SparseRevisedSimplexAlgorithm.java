@@ -0,0 +1,1059 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.constrained.lp;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import opt.Optimizer;
+import opt.multivariate.MultivariateOptimizerSolution;
+
+/**
+ * A bounded revised simplex algorithm for minimizing a linear function subject
+ * to linear constraints, intended for large problems whose constraint matrix is
+ * sparse. The constraint matrix is stored by columns, and the basis is kept as
+ * a sparse LU factorization computed by left-looking Gaussian elimination with
+ * partial pivoting, followed by product-form (eta) updates until the next
+ * refactorization. Memory is therefore proportional to the number of nonzeros
+ * of the constraint matrix and of the factors, rather than to the square of
+ * the number of constraints.
+ *
+ * Each constraint row receives a logical variable, so the initial basis is the
+ * identity. Phase I minimizes the sum of infeasibilities of the basic variables
+ * and phase II the objective. Entering variables are chosen by partial pricing
+ * over segments of the columns, and the pricing of a segment can be done in
+ * parallel. Leaving variables are chosen by the two-pass ratio test of Harris.
+ *
+ * The final basis can be returned and used to warm-start the solution of a
+ * modified problem with the same constraint matrix. If the starting basis is
+ * primal feasible, such as after a change in the cost vector, the primal
+ * simplex continues from it. If it is only dual feasible, such as after a
+ * change in the right-hand side, the dual simplex algorithm first restores
+ * primal feasibility.
+ *
+ *
+ * REFERENCES:
+ *
+ * [1] Gilbert, John R., and Tim Peierls. "Sparse partial pivoting in time
+ * proportional to arithmetic operations." SIAM Journal on Scientific and
+ * Statistical Computing 9.5 (1988): 862-874.
+ *
+ * [2] Harris, Paula MJ. "Pivot selection methods of the Devex LP code."
+ * Mathematical Programming 5.1 (1973): 1-28.
+ *
+ * [3] Maros, Istvan. Computational techniques of the simplex method. Vol. 61.
+ * Springer Science & Business Media, 2012.
+ */
+public final class SparseRevisedSimplexAlgorithm extends Optimizer<double[], Double, RealLinearProgram> {
+
+	/**
+	 * Sparse LU factorization of the basis matrix. The k-th pivot takes the
+	 * column of basis position q[k] and the row prow[k]. Columns of L hold the
+	 * multipliers indexed by original rows, and columns of U hold the entries
+	 * above the diagonal indexed by pivot step.
+	 */
+	private static final class SparseLU {
+
+		private final int m;
+		private final int[] q, prow, pinv, lp, up, mark, stack, pstack, pattern, order, count;
+		private final double[] udiag, work, y;
+		private int[] li, ui;
+		private double[] lx, ux;
+		private int stamp, nnz;
+
+		SparseLU(final int dim) {
+			m = dim;
+			q = new int[m];
+			prow = new int[m];
+			pinv = new int[m];
+			lp = new int[m + 1];
+			up = new int[m + 1];
+			mark = new int[m];
+			stack = new int[m];
+			pstack = new int[m];
+			pattern = new int[m];
+			order = new int[m];
+			count = new int[m];
+			udiag = new double[m];
+			work = new double[m];
+			y = new double[m];
+			li = new int[Math.max(16, m)];
+			lx = new double[li.length];
+			ui = new int[Math.max(16, m)];
+			ux = new double[ui.length];
+		}
+
+		final int factor(final int[] cp, final int[] ri, final double[] v, final int n0, final int[] head,
+				final int[] bad) {
+
+			// order the columns by increasing number of nonzeros
+			int maxc = 0;
+			for (int p = 0; p < m; ++p) {
+				final int j = head[p];
+				count[p] = j < n0 ? cp[j + 1] - cp[j] : 1;
+				maxc = Math.max(maxc, count[p]);
+			}
+			final int[] start = new int[maxc + 2];
+			for (int p = 0; p < m; ++p) {
+				++start[count[p] + 1];
+			}
+			for (int c = 1; c <= maxc + 1; ++c) {
+				start[c] += start[c - 1];
+			}
+			for (int p = 0; p < m; ++p) {
+				order[start[count[p]]++] = p;
+			}
+
+			// left-looking factorization
+			Arrays.fill(pinv, -1);
+			int k = 0, nbad = 0, lnz = 0, unz = 0;
+			lp[0] = up[0] = 0;
+			nnz = 0;
+			for (int t = 0; t < m; ++t) {
+				final int p = order[t], j = head[p];
+
+				// reach of the column in the graph of L, in topological order
+				++stamp;
+				int top = m;
+				if (j < n0) {
+					for (int e = cp[j]; e < cp[j + 1]; ++e) {
+						if (mark[ri[e]] != stamp) {
+							top = dfs(ri[e], top);
+						}
+					}
+					for (int e = cp[j]; e < cp[j + 1]; ++e) {
+						work[ri[e]] += v[e];
+					}
+				} else {
+					top = dfs(j - n0, top);
+					work[j - n0] = 1.0;
+				}
+
+				// sparse triangular solve with the columns of L computed so far
+				for (int s = top; s < m; ++s) {
+					final int r = pattern[s], kk = pinv[r];
+					if (kk < 0) {
+						continue;
+					}
+					final double xr = work[r];
+					if (xr != 0.0) {
+						for (int e = lp[kk]; e < lp[kk + 1]; ++e) {
+							work[li[e]] -= lx[e] * xr;
+						}
+					}
+				}
+
+				// partial pivoting among the rows not yet pivoted
+				int ipiv = -1;
+				double amax = 0.0;
+				for (int s = top; s < m; ++s) {
+					final int r = pattern[s];
+					if (pinv[r] < 0 && Math.abs(work[r]) > amax) {
+						amax = Math.abs(work[r]);
+						ipiv = r;
+					}
+				}
+				if (ipiv < 0 || amax <= PIVTOL) {
+					for (int s = top; s < m; ++s) {
+						work[pattern[s]] = 0.0;
+					}
+					bad[nbad] = p;
+					++nbad;
+					continue;
+				}
+
+				// store the columns of U and L
+				if (unz + m - top > ui.length) {
+					ui = Arrays.copyOf(ui, Math.max(ui.length << 1, unz + m - top));
+					ux = Arrays.copyOf(ux, ui.length);
+				}
+				if (lnz + m - top > li.length) {
+					li = Arrays.copyOf(li, Math.max(li.length << 1, lnz + m - top));
+					lx = Arrays.copyOf(lx, li.length);
+				}
+				final double piv = work[ipiv];
+				for (int s = top; s < m; ++s) {
+					final int r = pattern[s];
+					final double xr = work[r];
+					work[r] = 0.0;
+					if (xr == 0.0 || r == ipiv) {
+						continue;
+					}
+					if (pinv[r] >= 0) {
+						ui[unz] = pinv[r];
+						ux[unz] = xr;
+						++unz;
+					} else {
+						li[lnz] = r;
+						lx[lnz] = xr / piv;
+						++lnz;
+					}
+				}
+				udiag[k] = piv;
+				pinv[ipiv] = k;
+				prow[k] = ipiv;
+				q[k] = p;
+				++k;
+				lp[k] = lnz;
+				up[k] = unz;
+			}
+			nnz = lnz + unz + m;
+			return nbad;
+		}
+
+		private int dfs(final int root, int top) {
+			int hd = 0;
+			stack[0] = root;
+			while (hd >= 0) {
+				final int r = stack[hd], kk = pinv[r];
+				if (mark[r] != stamp) {
+					mark[r] = stamp;
+					pstack[hd] = kk < 0 ? 0 : lp[kk];
+				}
+				final int end = kk < 0 ? 0 : lp[kk + 1];
+				boolean done = true;
+				for (int e = pstack[hd]; e < end; ++e) {
+					final int i = li[e];
+					if (mark[i] == stamp) {
+						continue;
+					}
+					pstack[hd] = e + 1;
+					++hd;
+					stack[hd] = i;
+					done = false;
+					break;
+				}
+				if (done) {
+					--hd;
+					--top;
+					pattern[top] = r;
+				}
+			}
+			return top;
+		}
+
+		final boolean isPivoted(final int row) {
+			return pinv[row] >= 0;
+		}
+
+		final void ftran(final double[] rhs, final double[] out) {
+
+			// solve L y = P b, where rhs is indexed by rows and is overwritten
+			for (int k = 0; k < m; ++k) {
+				final double v = rhs[prow[k]];
+				y[k] = v;
+				if (v != 0.0) {
+					for (int e = lp[k]; e < lp[k + 1]; ++e) {
+						rhs[li[e]] -= lx[e] * v;
+					}
+				}
+			}
+
+			// solve U z = y, and scatter z to basis positions
+			for (int k = m - 1; k >= 0; --k) {
+				final double z = y[k] / udiag[k];
+				if (z != 0.0) {
+					for (int e = up[k]; e < up[k + 1]; ++e) {
+						y[ui[e]] -= ux[e] * z;
+					}
+				}
+				out[q[k]] = z;
+			}
+		}
+
+		final void btran(final double[] rhs, final double[] out) {
+
+			// solve U' w = rhs, where rhs is indexed by basis positions
+			for (int k = 0; k < m; ++k) {
+				double s = rhs[q[k]];
+				for (int e = up[k]; e < up[k + 1]; ++e) {
+					s -= ux[e] * y[ui[e]];
+				}
+				y[k] = s / udiag[k];
+			}
+
+			// solve L' v = w, and scatter v to rows
+			for (int k = m - 1; k >= 0; --k) {
+				double s = y[k];
+				for (int e = lp[k]; e < lp[k + 1]; ++e) {
+					s -= lx[e] * out[li[e]];
+				}
+				out[prow[k]] = s;
+			}
+		}
+	}
+
+	private static final double PIVTOL = 1e-11;
+	private static final int CHUNK = 4096;
+
+	private final int myMaxIters, myRefactorEvery, myPricingSize;
+	private final double myTol;
+	private final boolean myParallel;
+
+	// problem in computational form: A x + s = b, with bounds on x and s
+	private int m, n0, n;
+	private int[] cp, ri;
+	private double[] v, lo, hi, cost, b;
+
+	// basis and factorization
+	private int[] head, pos, bad;
+	private double[] x;
+	private SparseLU lu;
+	private int neta;
+	private int[] etaPos, etaPtr, etaIdx;
+	private double[] etaVal, etaPiv;
+
+	// work arrays
+	private double[] cb, dual, alpha, rhs, bkt, unit, rho, rowAlpha;
+	private int[] bki, chunkBest;
+	private double[] chunkScore;
+	private int segStart, iters, status;
+
+	/**
+	 *
+	 * @param maxIterations
+	 * @param tolerance
+	 * @param refactorEvery
+	 * @param pricingSegment
+	 * @param parallel
+	 */
+	public SparseRevisedSimplexAlgorithm(final int maxIterations, final double tolerance, final int refactorEvery,
+			final int pricingSegment, final boolean parallel) {
+		myMaxIters = maxIterations;
+		myTol = tolerance;
+		myRefactorEvery = refactorEvery;
+		myPricingSize = pricingSegment;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param maxIterations
+	 */
+	public SparseRevisedSimplexAlgorithm(final int maxIterations) {
+		this(maxIterations, 1e-9, 100, 0, false);
+	}
+
+	@Override
+	public final MultivariateOptimizerSolution optimize(final RealLinearProgram lp, final double[] guess) {
+		return optimizeFromBasis(lp, new int[lp.mySimplex.numRows()]);
+	}
+
+	/**
+	 * Solves the linear program starting from the given basis. On entry, basis
+	 * holds the final basis of a previous solve of a program with the same
+	 * constraint matrix, or all zeros to start from the slack basis. On exit, it
+	 * holds the final basis, which can warm-start a subsequent solve after the
+	 * cost vector or the right-hand side is changed.
+	 *
+	 * @param lp
+	 * @param basis
+	 * @return
+	 */
+	public final MultivariateOptimizerSolution optimizeFromBasis(final RealLinearProgram lp, final int[] basis) {
+		if (basis.length != lp.mySimplex.numRows()) {
+			throw new IllegalArgumentException("Length of basis must equal the number of constraints.");
+		}
+		initialize(lp);
+		final boolean warm = basis[0] > 0;
+		if (warm) {
+			setBasis(basis);
+		}
+		refactor();
+		status = -1;
+		if (warm && !primalFeasible() && dualFeasible()) {
+			dual();
+		}
+		if (status < 0) {
+			solve();
+		}
+		for (int i = 0; i < m; ++i) {
+			basis[i] = head[i] + 1;
+		}
+		return new MultivariateOptimizerSolution(Arrays.copyOf(x, n0), iters, 0, status == 0);
+	}
+
+	private void initialize(final RealLinearProgram lp) {
+		final Polyhedron poly = lp.mySimplex;
+		m = poly.numRows();
+		n0 = poly.myD;
+		n = n0 + m;
+		b = poly.getB();
+
+		// transpose the constraint matrix to compressed columns
+		final int[] rp = poly.getRowPointers(), ci = poly.getColumnIndices();
+		final double[] rv = poly.getValues();
+		cp = new int[n0 + 1];
+		for (int k = 0; k < rp[m]; ++k) {
+			++cp[ci[k] + 1];
+		}
+		for (int j = 0; j < n0; ++j) {
+			cp[j + 1] += cp[j];
+		}
+		ri = new int[rp[m]];
+		v = new double[rp[m]];
+		final int[] next = Arrays.copyOf(cp, n0);
+		for (int i = 0; i < m; ++i) {
+			for (int k = rp[i]; k < rp[i + 1]; ++k) {
+				final int e = next[ci[k]]++;
+				ri[e] = i;
+				v[e] = rv[k];
+			}
+		}
+
+		// bounds of the structural and logical variables
+		lo = new double[n];
+		hi = new double[n];
+		cost = new double[n];
+		Arrays.fill(hi, 0, n0, Double.POSITIVE_INFINITY);
+		System.arraycopy(lp.myCostVec, 0, cost, 0, n0);
+		for (int i = 0; i < m; ++i) {
+			if (i < poly.myNumLe) {
+				hi[n0 + i] = Double.POSITIVE_INFINITY;
+			} else if (i < poly.myNumLe + poly.myNumGe) {
+				lo[n0 + i] = Double.NEGATIVE_INFINITY;
+			}
+		}
+
+		// start from the slack basis, with the structurals at zero
+		head = new int[m];
+		pos = new int[n];
+		Arrays.fill(pos, -1);
+		for (int i = 0; i < m; ++i) {
+			head[i] = n0 + i;
+			pos[n0 + i] = i;
+		}
+		x = new double[n];
+		bad = new int[m];
+		lu = new SparseLU(m);
+		etaPos = new int[16];
+		etaPtr = new int[17];
+		etaPiv = new double[16];
+		etaIdx = new int[Math.max(16, m)];
+		etaVal = new double[etaIdx.length];
+		cb = new double[m];
+		dual = new double[m];
+		alpha = new double[m];
+		rhs = new double[m];
+		bkt = new double[m];
+		unit = new double[m];
+		rho = new double[m];
+		rowAlpha = new double[n];
+		bki = new int[m];
+		final int nchunks = (n + CHUNK - 1) / CHUNK;
+		chunkBest = new int[nchunks];
+		chunkScore = new double[nchunks];
+		segStart = iters = 0;
+	}
+
+	private void setBasis(final int[] basis) {
+		Arrays.fill(pos, -1);
+		for (int i = 0; i < m; ++i) {
+			final int j = basis[i] - 1;
+			if (j < 0 || j >= n || pos[j] >= 0) {
+				throw new IllegalArgumentException("Basis must contain distinct variables between 1 and " + n + ".");
+			}
+			head[i] = j;
+			pos[j] = i;
+		}
+		for (int j = 0; j < n; ++j) {
+			x[j] = lo[j] > Double.NEGATIVE_INFINITY ? lo[j] : hi[j];
+		}
+	}
+
+	private boolean primalFeasible() {
+		for (int i = 0; i < m; ++i) {
+			final int j = head[i];
+			if (x[j] < lo[j] - myTol || x[j] > hi[j] + myTol) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean dualFeasible() {
+		for (int i = 0; i < m; ++i) {
+			cb[i] = cost[head[i]];
+		}
+		btran(cb, dual);
+		for (int j = 0; j < n; ++j) {
+			if (pos[j] >= 0) {
+				continue;
+			}
+			final double d = reducedCost(j, false);
+			if ((d < -myTol && x[j] < hi[j]) || (d > myTol && x[j] > lo[j])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void dual() {
+		while (true) {
+			if (neta >= myRefactorEvery || etaPtr[neta] > lu.nnz) {
+				refactor();
+			}
+
+			// leaving variable with the largest primal infeasibility
+			int r = -1;
+			double worst = myTol;
+			for (int i = 0; i < m; ++i) {
+				final int j = head[i];
+				final double inf = Math.max(lo[j] - x[j], x[j] - hi[j]);
+				if (inf > worst) {
+					worst = inf;
+					r = i;
+				}
+			}
+			if (r < 0) {
+				return;
+			}
+			if (iters >= myMaxIters) {
+				status = 3;
+				return;
+			}
+			++iters;
+			final int jr = head[r];
+			final double s = x[jr] < lo[jr] ? 1.0 : -1.0;
+			final double bound = s > 0.0 ? lo[jr] : hi[jr];
+
+			// duals and row r of the inverse of the basis
+			for (int i = 0; i < m; ++i) {
+				cb[i] = cost[head[i]];
+			}
+			btran(cb, dual);
+			unit[r] = 1.0;
+			btran(unit, rho);
+			unit[r] = 0.0;
+
+			// row r of the tableau
+			final int nchunks = (n + CHUNK - 1) / CHUNK;
+			if (myParallel && nchunks > 1) {
+				IntStream.range(0, nchunks).parallel().forEach(this::rowChunk);
+			} else {
+				for (int c = 0; c < nchunks; ++c) {
+					rowChunk(c);
+				}
+			}
+
+			// Harris pass 1: maximum dual step with the reduced costs relaxed by
+			// the tolerance
+			double tmax = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < n; ++j) {
+				final double arj = s * rowAlpha[j];
+				if (arj < -PIVTOL && x[j] < hi[j]) {
+					tmax = Math.min(tmax, (Math.max(reducedCost(j, false), 0.0) + myTol) / -arj);
+				} else if (arj > PIVTOL && x[j] > lo[j]) {
+					tmax = Math.min(tmax, (Math.max(-reducedCost(j, false), 0.0) + myTol) / arj);
+				}
+			}
+			if (tmax == Double.POSITIVE_INFINITY) {
+				status = 1;
+				return;
+			}
+
+			// Harris pass 2: largest pivot among the columns within tmax
+			int q = -1;
+			double amax = 0.0;
+			for (int j = 0; j < n; ++j) {
+				final double arj = s * rowAlpha[j];
+				final double t;
+				if (arj < -PIVTOL && x[j] < hi[j]) {
+					t = Math.max(reducedCost(j, false), 0.0) / -arj;
+				} else if (arj > PIVTOL && x[j] > lo[j]) {
+					t = Math.max(-reducedCost(j, false), 0.0) / arj;
+				} else {
+					continue;
+				}
+				if (t <= tmax && Math.abs(arj) > amax) {
+					amax = Math.abs(arj);
+					q = j;
+				}
+			}
+
+			// primal step that takes the leaving variable to its bound
+			column(q, rhs);
+			ftran(rhs, alpha);
+			final double dx = (x[jr] - bound) / alpha[r];
+			step(q, dx > 0.0 ? 1.0 : -1.0, Math.abs(dx), r, bound);
+		}
+	}
+
+	private void rowChunk(final int c) {
+		final int j1 = c * CHUNK, j2 = Math.min(j1 + CHUNK, n);
+		for (int j = j1; j < j2; ++j) {
+			if (pos[j] >= 0) {
+				rowAlpha[j] = 0.0;
+			} else if (j >= n0) {
+				rowAlpha[j] = rho[j - n0];
+			} else {
+				double sum = 0.0;
+				for (int e = cp[j]; e < cp[j + 1]; ++e) {
+					sum += v[e] * rho[ri[e]];
+				}
+				rowAlpha[j] = sum;
+			}
+		}
+	}
+
+	private void solve() {
+		int stalls = 0;
+		while (true) {
+			// refactor also when the etas become denser than the factors
+			if (neta >= myRefactorEvery || etaPtr[neta] > lu.nnz) {
+				refactor();
+			}
+
+			// costs of the basic variables, for phase I or phase II
+			boolean phase1 = false;
+			for (int i = 0; i < m; ++i) {
+				final int j = head[i];
+				if (x[j] < lo[j] - myTol) {
+					cb[i] = -1.0;
+					phase1 = true;
+				} else if (x[j] > hi[j] + myTol) {
+					cb[i] = 1.0;
+					phase1 = true;
+				} else {
+					cb[i] = 0.0;
+				}
+			}
+			if (!phase1) {
+				for (int i = 0; i < m; ++i) {
+					cb[i] = cost[head[i]];
+				}
+			}
+			btran(cb, dual);
+
+			// pricing
+			final int entering = price(phase1);
+			if (entering < 0) {
+
+				// verify optimality with a fresh factorization
+				if (neta > 0) {
+					refactor();
+					continue;
+				}
+				status = phase1 ? 1 : 0;
+				return;
+			}
+			if (iters >= myMaxIters) {
+				status = 3;
+				return;
+			}
+			++iters;
+			final double dj = reducedCost(entering, phase1);
+			final double dir = dj < 0.0 ? 1.0 : -1.0;
+
+			// compute the entering column in terms of the basis
+			column(entering, rhs);
+			ftran(rhs, alpha);
+
+			// ratio test and update
+			final int leave = phase1 ? ratioPhase1(entering, dir, Math.abs(dj)) : ratioPhase2(entering, dir);
+			if (leave == -2) {
+				if (neta > 0 && stalls < 2) {
+					++stalls;
+					refactor();
+					continue;
+				}
+				status = phase1 ? 4 : 2;
+				return;
+			}
+			stalls = 0;
+		}
+	}
+
+	private int price(final boolean phase1) {
+		final int seg = myPricingSize <= 0 ? n : Math.min(myPricingSize, n);
+		final int nseg = (n + seg - 1) / seg;
+		for (int s = 0; s < nseg; ++s) {
+			final int from = ((segStart + s) % nseg) * seg, to = Math.min(from + seg, n);
+			final int nchunks = (to - from + CHUNK - 1) / CHUNK;
+			if (myParallel && nchunks > 1) {
+				IntStream.range(0, nchunks).parallel().forEach(c -> priceChunk(c, from, to, phase1));
+			} else {
+				for (int c = 0; c < nchunks; ++c) {
+					priceChunk(c, from, to, phase1);
+				}
+			}
+			int best = -1;
+			double score = myTol;
+			for (int c = 0; c < nchunks; ++c) {
+				if (chunkBest[c] >= 0 && chunkScore[c] > score) {
+					best = chunkBest[c];
+					score = chunkScore[c];
+				}
+			}
+			if (best >= 0) {
+				segStart = (segStart + s + 1) % nseg;
+				return best;
+			}
+		}
+		return -1;
+	}
+
+	private void priceChunk(final int c, final int from, final int to, final boolean phase1) {
+		final int j1 = from + c * CHUNK, j2 = Math.min(j1 + CHUNK, to);
+		int best = -1;
+		double score = myTol;
+		for (int j = j1; j < j2; ++j) {
+			if (pos[j] >= 0) {
+				continue;
+			}
+			final double d = reducedCost(j, phase1);
+			final double sj;
+			if (d < -myTol && x[j] < hi[j]) {
+				sj = -d;
+			} else if (d > myTol && x[j] > lo[j]) {
+				sj = d;
+			} else {
+				continue;
+			}
+			if (sj > score) {
+				score = sj;
+				best = j;
+			}
+		}
+		chunkBest[c] = best;
+		chunkScore[c] = score;
+	}
+
+	private double reducedCost(final int j, final boolean phase1) {
+		if (j >= n0) {
+			return (phase1 ? 0.0 : cost[j]) - dual[j - n0];
+		}
+		double d = phase1 ? 0.0 : cost[j];
+		for (int e = cp[j]; e < cp[j + 1]; ++e) {
+			d -= v[e] * dual[ri[e]];
+		}
+		return d;
+	}
+
+	private int ratioPhase2(final int q, final double dir) {
+
+		// Harris pass 1: maximum step with bounds relaxed by the tolerance
+		double tmax = hi[q] - lo[q];
+		for (int i = 0; i < m; ++i) {
+			final double delta = -dir * alpha[i];
+			final int j = head[i];
+			if (delta < -PIVTOL && lo[j] > Double.NEGATIVE_INFINITY) {
+				tmax = Math.min(tmax, (x[j] - lo[j] + myTol) / -delta);
+			} else if (delta > PIVTOL && hi[j] < Double.POSITIVE_INFINITY) {
+				tmax = Math.min(tmax, (hi[j] - x[j] + myTol) / delta);
+			}
+		}
+		if (tmax == Double.POSITIVE_INFINITY) {
+			return -2;
+		}
+
+		// bound flip of the entering variable
+		if (hi[q] - lo[q] <= tmax) {
+			step(q, dir, hi[q] - lo[q], -1, 0.0);
+			return -1;
+		}
+
+		// Harris pass 2: largest pivot among the rows that block within tmax
+		int r = -1;
+		double amax = 0.0, theta = 0.0, bound = 0.0;
+		for (int i = 0; i < m; ++i) {
+			final double delta = -dir * alpha[i];
+			final int j = head[i];
+			final double t, bd;
+			if (delta < -PIVTOL && lo[j] > Double.NEGATIVE_INFINITY) {
+				bd = lo[j];
+				t = (x[j] - lo[j]) / -delta;
+			} else if (delta > PIVTOL && hi[j] < Double.POSITIVE_INFINITY) {
+				bd = hi[j];
+				t = (hi[j] - x[j]) / delta;
+			} else {
+				continue;
+			}
+			if (t <= tmax && Math.abs(delta) > amax) {
+				amax = Math.abs(delta);
+				r = i;
+				theta = Math.max(t, 0.0);
+				bound = bd;
+			}
+		}
+		step(q, dir, theta, r, bound);
+		return r;
+	}
+
+	private int ratioPhase1(final int q, final double dir, final double slope0) {
+
+		// hard limits come from the feasible basic variables and from the far
+		// bounds of infeasible ones; breakpoints come from infeasible basic
+		// variables reaching their near bounds
+		double tmax = hi[q] - lo[q];
+		int nbk = 0;
+		for (int i = 0; i < m; ++i) {
+			final double delta = -dir * alpha[i];
+			if (Math.abs(delta) <= PIVTOL) {
+				continue;
+			}
+			final int j = head[i];
+			if (x[j] < lo[j] - myTol) {
+				if (delta > 0.0) {
+					bkt[nbk] = (lo[j] - x[j]) / delta;
+					bki[nbk] = i;
+					++nbk;
+					if (hi[j] < Double.POSITIVE_INFINITY) {
+						tmax = Math.min(tmax, (hi[j] - x[j] + myTol) / delta);
+					}
+				}
+			} else if (x[j] > hi[j] + myTol) {
+				if (delta < 0.0) {
+					bkt[nbk] = (x[j] - hi[j]) / -delta;
+					bki[nbk] = i;
+					++nbk;
+					if (lo[j] > Double.NEGATIVE_INFINITY) {
+						tmax = Math.min(tmax, (x[j] - lo[j] + myTol) / -delta);
+					}
+				}
+			} else if (delta < 0.0 && lo[j] > Double.NEGATIVE_INFINITY) {
+				tmax = Math.min(tmax, (x[j] - lo[j] + myTol) / -delta);
+			} else if (delta > 0.0 && hi[j] < Double.POSITIVE_INFINITY) {
+				tmax = Math.min(tmax, (hi[j] - x[j] + myTol) / delta);
+			}
+		}
+
+		// pass the breakpoints while the sum of infeasibilities decreases
+		sortBreakpoints(nbk);
+		double slope = -slope0;
+		for (int k = 0; k < nbk && bkt[k] <= tmax; ++k) {
+			final int i = bki[k];
+			slope += Math.abs(alpha[i]);
+			if (slope >= 0.0) {
+				final int j = head[i];
+				step(q, dir, bkt[k], i, x[j] < lo[j] ? lo[j] : hi[j]);
+				return i;
+			}
+		}
+		if (tmax == Double.POSITIVE_INFINITY) {
+			if (nbk == 0) {
+				return -2;
+			}
+
+			// the slope can only fail to turn nonnegative due to rounding
+			final int i = bki[nbk - 1], j = head[i];
+			step(q, dir, bkt[nbk - 1], i, x[j] < lo[j] ? lo[j] : hi[j]);
+			return i;
+		}
+
+		// bound flip of the entering variable
+		if (hi[q] - lo[q] <= tmax) {
+			step(q, dir, hi[q] - lo[q], -1, 0.0);
+			return -1;
+		}
+
+		// Harris pass 2 on the hard limits
+		int r = -1;
+		double amax = 0.0, theta = 0.0, bound = 0.0;
+		for (int i = 0; i < m; ++i) {
+			final double delta = -dir * alpha[i];
+			if (Math.abs(delta) <= PIVTOL) {
+				continue;
+			}
+			final int j = head[i];
+			final double t, bd;
+			if (x[j] < lo[j] - myTol) {
+				if (delta < 0.0 || hi[j] == Double.POSITIVE_INFINITY) {
+					continue;
+				}
+				bd = hi[j];
+				t = (hi[j] - x[j]) / delta;
+			} else if (x[j] > hi[j] + myTol) {
+				if (delta > 0.0 || lo[j] == Double.NEGATIVE_INFINITY) {
+					continue;
+				}
+				bd = lo[j];
+				t = (x[j] - lo[j]) / -delta;
+			} else if (delta < 0.0 && lo[j] > Double.NEGATIVE_INFINITY) {
+				bd = lo[j];
+				t = (x[j] - lo[j]) / -delta;
+			} else if (delta > 0.0 && hi[j] < Double.POSITIVE_INFINITY) {
+				bd = hi[j];
+				t = (hi[j] - x[j]) / delta;
+			} else {
+				continue;
+			}
+			if (t <= tmax && Math.abs(delta) > amax) {
+				amax = Math.abs(delta);
+				r = i;
+				theta = Math.max(t, 0.0);
+				bound = bd;
+			}
+		}
+		step(q, dir, theta, r, bound);
+		return r;
+	}
+
+	private void sortBreakpoints(final int nbk) {
+		for (int k = 1; k < nbk; ++k) {
+			final double t = bkt[k];
+			final int i = bki[k];
+			int l = k - 1;
+			while (l >= 0 && bkt[l] > t) {
+				bkt[l + 1] = bkt[l];
+				bki[l + 1] = bki[l];
+				--l;
+			}
+			bkt[l + 1] = t;
+			bki[l + 1] = i;
+		}
+	}
+
+	private void step(final int q, final double dir, final double theta, final int r, final double bound) {
+
+		// move the entering and basic variables along the edge
+		if (theta != 0.0) {
+			for (int i = 0; i < m; ++i) {
+				if (alpha[i] != 0.0) {
+					x[head[i]] -= dir * theta * alpha[i];
+				}
+			}
+		}
+		if (r < 0) {
+			x[q] = dir > 0.0 ? hi[q] : lo[q];
+			return;
+		}
+		x[q] += dir * theta;
+
+		// exchange the leaving variable with the entering variable
+		final int l = head[r];
+		x[l] = bound;
+		pos[l] = -1;
+		head[r] = q;
+		pos[q] = r;
+		addEta(r);
+	}
+
+	private void column(final int j, final double[] out) {
+		Arrays.fill(out, 0.0);
+		if (j >= n0) {
+			out[j - n0] = 1.0;
+		} else {
+			for (int e = cp[j]; e < cp[j + 1]; ++e) {
+				out[ri[e]] += v[e];
+			}
+		}
+	}
+
+	private void refactor() {
+
+		// replace the columns of a singular basis by logicals of unpivoted rows
+		while (true) {
+			final int nbad = lu.factor(cp, ri, v, n0, head, bad);
+			if (nbad == 0) {
+				break;
+			}
+			for (int k = 0; k < nbad; ++k) {
+				final int j = head[bad[k]];
+				pos[j] = -1;
+				x[j] = lo[j] > Double.NEGATIVE_INFINITY ? lo[j] : hi[j];
+			}
+			int row = 0;
+			for (int k = 0; k < nbad; ++k) {
+				while (lu.isPivoted(row)) {
+					++row;
+				}
+				head[bad[k]] = n0 + row;
+				pos[n0 + row] = bad[k];
+				++row;
+			}
+		}
+		neta = 0;
+		etaPtr[0] = 0;
+
+		// recompute the basic variables from the nonbasic ones
+		System.arraycopy(b, 0, rhs, 0, m);
+		for (int j = 0; j < n; ++j) {
+			if (pos[j] >= 0 || x[j] == 0.0) {
+				continue;
+			}
+			if (j >= n0) {
+				rhs[j - n0] -= x[j];
+			} else {
+				for (int e = cp[j]; e < cp[j + 1]; ++e) {
+					rhs[ri[e]] -= v[e] * x[j];
+				}
+			}
+		}
+		ftran(rhs, alpha);
+		for (int i = 0; i < m; ++i) {
+			x[head[i]] = alpha[i];
+		}
+	}
+
+	private void ftran(final double[] in, final double[] out) {
+		lu.ftran(in, out);
+		for (int k = 0; k < neta; ++k) {
+			final int p = etaPos[k];
+			final double xp = out[p] / etaPiv[k];
+			out[p] = xp;
+			if (xp != 0.0) {
+				for (int e = etaPtr[k]; e < etaPtr[k + 1]; ++e) {
+					out[etaIdx[e]] -= etaVal[e] * xp;
+				}
+			}
+		}
+	}
+
+	private void btran(final double[] in, final double[] out) {
+		System.arraycopy(in, 0, rhs, 0, m);
+		for (int k = neta - 1; k >= 0; --k) {
+			final int p = etaPos[k];
+			double s = rhs[p];
+			for (int e = etaPtr[k]; e < etaPtr[k + 1]; ++e) {
+				s -= etaVal[e] * rhs[etaIdx[e]];
+			}
+			rhs[p] = s / etaPiv[k];
+		}
+		lu.btran(rhs, out);
+	}
+
+	private void addEta(final int r) {
+		if (neta == etaPos.length) {
+			etaPos = Arrays.copyOf(etaPos, neta << 1);
+			etaPiv = Arrays.copyOf(etaPiv, neta << 1);
+			etaPtr = Arrays.copyOf(etaPtr, (neta << 1) + 1);
+		}
+		int nz = etaPtr[neta];
+		for (int i = 0; i < m; ++i) {
+			if (i == r || alpha[i] == 0.0) {
+				continue;
+			}
+			if (nz == etaIdx.length) {
+				etaIdx = Arrays.copyOf(etaIdx, nz << 1);
+				etaVal = Arrays.copyOf(etaVal, nz << 1);
+			}
+			etaIdx[nz] = i;
+			etaVal[nz] = alpha[i];
+			++nz;
+		}
+		etaPos[neta] = r;
+		etaPiv[neta] = alpha[r];
+		++neta;
+		etaPtr[neta] = nz;
+	}
+}
@@ -22,6 +22,7 @@ package opt.multivariate.constrained.order0;
 
 import java.util.Arrays;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import opt.multivariate.MultivariateOptimizerSolution;
 import utils.BlasMath;
@@ -40,12 +41,16 @@ import utils.RealMath;
  * [2] Powell, Michael JD. "On fast trust region methods for quadratic models
  * with linear constraints." Mathematical Programming Computation 7.3 (2015):
  * 237-267.
+ * 
+ * In parallel mode, the objective function is evaluated at the initial
+ * interpolation points on multiple threads, so it must be thread-safe.
  */
 public final class LincoaAlgorithm {
 
 	private final Function<Integer, Integer> mySize;
 	private final double myTol, myRho0;
 	private final int myMaxEvals;
+	private final boolean myParallel;
 
 	/**
 	 *
@@ -53,13 +58,27 @@ public final class LincoaAlgorithm {
 	 * @param initialRadius
 	 * @param maxEvals
 	 * @param size
+	 * @param parallel
 	 */
 	public LincoaAlgorithm(final double tolerance, final double initialRadius, final int maxEvals,
-			final Function<Integer, Integer> size) {
+			final Function<Integer, Integer> size, final boolean parallel) {
 		myTol = tolerance;
 		myRho0 = initialRadius;
 		myMaxEvals = maxEvals;
 		mySize = size;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param initialRadius
+	 * @param maxEvals
+	 * @param size
+	 */
+	public LincoaAlgorithm(final double tolerance, final double initialRadius, final int maxEvals,
+			final Function<Integer, Integer> size) {
+		this(tolerance, initialRadius, maxEvals, size, false);
 	}
 
 	/**
@@ -89,13 +108,13 @@ public final class LincoaAlgorithm {
 		final int[] fev = new int[1];
 
 		// TODO: check convergence
-		lincoa(func, n, mySize.apply(n), m, a, n, b, x, myRho0, myTol, 0, myMaxEvals, fev);
+		lincoa(func, n, mySize.apply(n), m, a, n, b, x, myRho0, myTol, 0, myMaxEvals, fev, myParallel);
 		return new MultivariateOptimizerSolution(x, fev[0], 0, false);
 	}
 
 	private static void lincoa(final Function<? super double[], Double> func, final int n, final int npt, final int m,
 			final double[][] a, final int ia, final double[] b, final double[] x, final double rhobeg,
-			final double rhoend, final int iprint, final int maxfun, final int[] fev) {
+			final double rhoend, final int iprint, final int maxfun, final int[] fev, final boolean parallel) {
 
 		double zero, smallx, sum, temp;
 		int i, j, np, nptm, iamat, ib, iflag, iw;
@@ -156,7 +175,7 @@ public final class LincoaAlgorithm {
 				qfac = new double[n][n];
 		final int[] iact = new int[n];
 		lincob(func, n, npt, m, wamat, wb, x, rhobeg, rhoend, iprint, maxfun, xbase, xpt, fval, xsav, xopt, gopt, hq,
-				pq, bmat, zmat, npt + n, step, sp, xnew, iact, rescon, qfac, rfac, pqw, w, fev);
+				pq, bmat, zmat, npt + n, step, sp, xnew, iact, rescon, qfac, rfac, pqw, w, fev, parallel);
 	}
 
 	private static void lincob(final Function<? super double[], Double> func, final int n, final int npt, final int m,
@@ -165,7 +184,7 @@ public final class LincoaAlgorithm {
 			final double[] xsav, final double[] xopt, final double[] gopt, final double[] hq, final double[] pq,
 			final double[][] bmat, final double[][] zmat, final int ndim, final double[] step, final double[] sp,
 			final double[] xnew, final int[] iact, final double[] rescon, final double[][] qfac, final double[] rfac,
-			final double[] pqw, final double[] w, final int[] fev) {
+			final double[] pqw, final double[] w, final int[] fev, final boolean parallel) {
 
 		double half, one, tenth, zero, fopt, delta, rho, fsave = 0.0, xoptsq, qoptsq, sum, temp, sumz, delsav = 0.0,
 				del, xdiff, diff, vquad = 0.0, f = 0.0, vqalt, dffalt = 0.0, ratio = 0.0, ssq, distsq;
@@ -189,7 +208,7 @@ public final class LincoaAlgorithm {
 		// so that the constraint violation is at least 0.2*RHOBEG. Also KOPT
 		// is set so that XPT(KOPT,.) is the initial trust region centre.
 		prelim(func, n, npt, m, amat, b, x, rhobeg, iprint, xbase, xpt, fval, xsav, xopt, gopt, kopt, hq, pq, bmat,
-				zmat, idz, ndim, sp, rescon, step, pqw, w, fev);
+				zmat, idz, ndim, sp, rescon, step, pqw, w, fev, parallel);
 
 		// Begin the iterative procedure.
 		nf = npt;
@@ -1813,11 +1832,13 @@ public final class LincoaAlgorithm {
 			final double[] xbase, final double[][] xpt, final double[] fval, final double[] xsav, final double[] xopt,
 			final double[] gopt, final int[] kopt, final double[] hq, final double[] pq, final double[][] bmat,
 			final double[][] zmat, final int[] idz, final int ndim, final double[] sp, final double[] rescon,
-			final double[] step, final double[] pqw, final double[] w, final int[] fev) {
+			final double[] step, final double[] pqw, final double[] w, final int[] fev, final boolean parallel) {
 
 		double half, one, zero, rhosq, recip, reciq, test, temp, feas, bigv, resid, f;
 		int nptm, kbase, i, j, jp, k, itemp, ipt, jpt, jsav = 0;
 		final int[] nf = new int[1];
+		final double[] fpts = new double[npt], feasv = new double[npt];
+		final double[][] xpts = new double[npt][];
 
 		// Set some constants.
 		half = 0.5;
@@ -1929,12 +1950,26 @@ public final class LincoaAlgorithm {
 				System.arraycopy(step, 0, xpt[nf[0] - 1], 0, n);
 			}
 
-			// Calculate the objective function at the current interpolation point,
-			// and set KOPT to the index of the first trust region centre.
+			// The interpolation points do not depend on the function values, so
+			// they are all generated before the objective function is evaluated.
 			BlasMath.dxpy1(n, xbase, 1, xpt[nf[0] - 1], 1, x, 1);
+			xpts[nf[0] - 1] = Arrays.copyOf(x, n);
+			feasv[nf[0] - 1] = feas;
+		}
+		if (parallel) {
+			IntStream.range(0, npt).parallel().forEach(kk -> fpts[kk] = func.apply(xpts[kk]));
+		} else {
+			for (k = 1; k <= npt; ++k) {
+				fpts[k - 1] = func.apply(xpts[k - 1]);
+			}
+		}
+		fev[0] += npt;
+
+		// Set KOPT to the index of the first trust region centre.
+		for (nf[0] = 1; nf[0] <= npt; ++nf[0]) {
 			// f = feas;
-			f = func.apply(x);
-			++fev[0];
+			f = fpts[nf[0] - 1];
+			feas = feasv[nf[0] - 1];
 			if (nf[0] == 1) {
 				kopt[0] = 1;
 			} else if (f < fval[kopt[0] - 1] && feas > zero) {
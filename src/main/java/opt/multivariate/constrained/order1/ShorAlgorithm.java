@@ -36,15 +36,25 @@ import utils.RealMath;
  * A translation of the Shor algorithm from the SolvOpt program for minimization
  * of a general differentiable function subject to general constraints.
  * 
+ * By default the space transformation B is stored as a dense n-by-n matrix. In
+ * the limited-memory mode, B is instead represented as the product of the last
+ * m dilations I + w * z * z', so that memory and work per iteration are O(mn).
+ * Older dilations are dropped from the front of the product, and all of them
+ * are discarded whenever the algorithm resets B.
+ * 
  * 
  * REFERENCES:
  * 
  * [1] Code from https://imsc.uni-graz.at/kuntsevich/solvopt/index.html
+ * 
+ * [2] Shor, Naum Z. Minimization methods for non-differentiable functions.
+ * Springer Science & Business Media, 1985.
  */
 public final class ShorAlgorithm extends GradientOptimizer {
 
 	private final double myTolF, myDilation, myGradH;
-	private final int myMaxEvals;
+	private final int myMaxEvals, myMemory;
+	private final boolean myParallel;
 
 	/**
 	 *
@@ -53,14 +63,49 @@ public final class ShorAlgorithm extends GradientOptimizer {
 	 * @param dilationCoeff
 	 * @param minGradEstStepsize
 	 * @param maxEvals
+	 * @param memorySize         number of dilations that represent B, or zero to
+	 *                           store B as a dense matrix
+	 * @param parallel           whether to apply the stored dilations with the
+	 *                           parallel vector kernels
 	 */
 	public ShorAlgorithm(final double toleranceX, final double toleranceF, final double dilationCoeff,
-			final double minGradEstStepsize, final int maxEvals) {
+			final double minGradEstStepsize, final int maxEvals, final int memorySize, final boolean parallel) {
 		super(toleranceX);
+		if (memorySize < 0) {
+			throw new IllegalArgumentException("memorySize = " + memorySize);
+		}
 		myTolF = toleranceF;
 		myDilation = dilationCoeff;
 		myGradH = minGradEstStepsize;
 		myMaxEvals = maxEvals;
+		myMemory = memorySize;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param toleranceX
+	 * @param toleranceF
+	 * @param dilationCoeff
+	 * @param minGradEstStepsize
+	 * @param maxEvals
+	 */
+	public ShorAlgorithm(final double toleranceX, final double toleranceF, final double dilationCoeff,
+			final double minGradEstStepsize, final int maxEvals) {
+		this(toleranceX, toleranceF, dilationCoeff, minGradEstStepsize, maxEvals, 0, false);
+	}
+
+	/**
+	 *
+	 * @param toleranceX
+	 * @param toleranceF
+	 * @param maxEvals
+	 * @param memorySize
+	 * @param parallel
+	 */
+	public ShorAlgorithm(final double toleranceX, final double toleranceF, final int maxEvals, final int memorySize,
+			final boolean parallel) {
+		this(toleranceX, toleranceF, 2.5, 1.0e-11, maxEvals, memorySize, parallel);
 	}
 
 	/**
@@ -91,7 +136,7 @@ public final class ShorAlgorithm extends GradientOptimizer {
 		options[8 - 1] = myGradH;
 
 		// call main subroutine
-		solvopt(n, x, f, fun, true, dfun, options, false, null, false, null);
+		solvopt(n, x, f, fun, true, dfun, options, false, null, false, null, myMemory, myParallel);
 		return new MultivariateOptimizerSolution(x, (int) options[10 - 1], (int) options[11 - 1], options[9 - 1] > 0);
 	}
 
@@ -112,7 +157,7 @@ public final class ShorAlgorithm extends GradientOptimizer {
 		options[8 - 1] = myGradH;
 
 		// call main subroutine
-		solvopt(n, x, f, func, false, null, options, false, null, false, null);
+		solvopt(n, x, f, func, false, null, options, false, null, false, null, myMemory, myParallel);
 		return new MultivariateOptimizerSolution(x, (int) options[10 - 1], 0, options[9 - 1] > 0);
 	}
 
@@ -120,19 +165,20 @@ public final class ShorAlgorithm extends GradientOptimizer {
 			final Function<? super double[], Double> fun, final boolean flg,
 			final Function<? super double[], double[]> grad, final double[] options, final boolean flfc,
 			final Function<? super double[], Double> func, final boolean flgc,
-			final Function<? super double[], double[]> gradc) {
+			final Function<? super double[], double[]> gradc, final int mem, final boolean par) {
 
 		boolean constr, app, appconstr, fsbpnt = false, fsbpnt1 = false, termflag, stopf, stopping, dispwarn,
 				reset = false, ksm, knan, obj;
 		int kstore, ajp, ajpp, knorms, k, kcheck, numelem, dispdata, ld, mxtc, termx, limxterm, nzero, krerun, warnno,
-				kflat, stepvanish, i, j, ni, ii, kd = 0, kj, kc, ip, iterlimit, kg, k1, k2, kless = 0;
+				kflat, stepvanish, i, j, ni, ii, kd = 0, kj, kc, ip, iterlimit, kg, k1, k2, kless = 0, kfirst = 0,
+				kdil = 0;
 		double kk, nx, ajb, ajs, des, dq, du20, du10, du03, n_float, cnteps = 0.0, low_bound, zerograd, ddx, y,
 				lowxbound, lowfbound, detfr, detxr, grbnd, fp1 = 0.0, f1, f2, fopt, frec, fst, fp_rate, pencoef = 0.0,
 				pencoefnew, gamma, w, wdef, h1, h, hp, dx, ng, ngc, nng, ngt, nrmz, ng1, d, dd, laststep, zero, one,
 				two, three, four, five, six, seven, eight, nine, ten, hundr, infty, epsnorm, epsnorm2, powerm12;
 		final double[] fp = new double[1], fc = new double[1], fm = new double[1];
 		final double[] doptions = new double[13], nsteps = new double[3], gnorms = new double[10], g, g0, g1, gt, gc, z,
-				x1, xopt, xrec, grec, xx, deltax, zeroes;
+				x1, xopt, xrec, grec, xx, deltax, zeroes, zs, ws;
 		final double[][] B;
 		final int[] idx;
 
@@ -162,7 +208,6 @@ public final class ShorAlgorithm extends GradientOptimizer {
 		n_float = (double) n;
 
 		// allocate working arrays
-		B = new double[n][n];
 		g = new double[n];
 		g0 = new double[n];
 		g1 = new double[n];
@@ -205,6 +250,17 @@ public final class ShorAlgorithm extends GradientOptimizer {
 		options[12 - 1] = zero;
 		options[13 - 1] = zero;
 		iterlimit = (int) (options[4 - 1]);
+
+		// at most one dilation is stored per iteration
+		final int nmem = Math.min(mem, Math.max(iterlimit, 1));
+		if (nmem > 0) {
+			B = null;
+			zs = new double[nmem * n];
+			ws = new double[nmem];
+		} else {
+			B = new double[n][n];
+			zs = ws = null;
+		}
 		if (constr) {
 			h1 = -one;
 			cnteps = options[6 - 1];
@@ -366,9 +422,13 @@ public final class ShorAlgorithm extends GradientOptimizer {
 		// RESETTING LOOP
 		while (true) {
 			kcheck = kg = kj = 0;
-			for (i = 1; i <= n; ++i) {
-				System.arraycopy(zeroes, 0, B[i - 1], 0, n);
-				B[i - 1][i - 1] = one;
+			if (nmem > 0) {
+				kfirst = kdil = 0;
+			} else {
+				for (i = 1; i <= n; ++i) {
+					System.arraycopy(zeroes, 0, B[i - 1], 0, n);
+					B[i - 1][i - 1] = one;
+				}
 			}
 			System.arraycopy(g0, 0, g1, 0, n);
 			fst = f[0];
@@ -386,15 +446,25 @@ public final class ShorAlgorithm extends GradientOptimizer {
 				gamma = Math.min(gamma, Math.pow(ajs, maxlog10));
 
 				ngt = ng1 = dd = zero;
-				for (i = 1; i <= n; ++i) {
-					d = zero;
-					for (j = 1; j <= n; ++j) {
-						d += (B[j - 1][i - 1] * g[j - 1]);
+				if (nmem > 0) {
+
+					// gt = B' g, where B' applies the oldest dilation first
+					System.arraycopy(g, 0, gt, 0, n);
+					dilate(n, gt, zs, ws, kfirst, kdil, nmem, true, par);
+					dd = BlasMath.ddotm(n, gt, 1, g1, 1, par);
+					ngt = BlasMath.ddotm(n, gt, 1, gt, 1, par);
+					ng1 = BlasMath.ddotm(n, g1, 1, g1, 1, par);
+				} else {
+					for (i = 1; i <= n; ++i) {
+						d = zero;
+						for (j = 1; j <= n; ++j) {
+							d += (B[j - 1][i - 1] * g[j - 1]);
+						}
+						gt[i - 1] = d;
+						dd += (d * g1[i - 1]);
+						ngt += (d * d);
+						ng1 += (g1[i - 1] * g1[i - 1]);
 					}
-					gt[i - 1] = d;
-					dd += (d * g1[i - 1]);
-					ngt += (d * d);
-					ng1 += (g1[i - 1] * g1[i - 1]);
 				}
 				ngt = Math.sqrt(ngt);
 				ng1 = Math.sqrt(ng1);
@@ -432,11 +502,27 @@ public final class ShorAlgorithm extends GradientOptimizer {
 					// new inverse matrix: B = B ( I + (1/alpha -1)zz' )
 					d = BlasMath.ddotm(n, z, 1, gt, 1);
 					d *= w;
-					for (i = 1; i <= n; ++i) {
-						g1[i - 1] = gt[i - 1] + d * z[i - 1];
-						dd = BlasMath.ddotm(n, B[i - 1], 1, z, 1);
-						dd *= w;
-						BlasMath.daxpym(n, dd, z, 1, B[i - 1], 1);
+					if (nmem > 0) {
+						BlasMath.daxpy1(n, d, z, 1, gt, 1, g1, 1, par);
+
+						// append the dilation, overwriting the oldest one when full
+						final int slot;
+						if (kdil < nmem) {
+							slot = (kfirst + kdil) % nmem;
+							++kdil;
+						} else {
+							slot = kfirst;
+							kfirst = (kfirst + 1) % nmem;
+						}
+						System.arraycopy(z, 0, zs, slot * n, n);
+						ws[slot] = w;
+					} else {
+						for (i = 1; i <= n; ++i) {
+							g1[i - 1] = gt[i - 1] + d * z[i - 1];
+							dd = BlasMath.ddotm(n, B[i - 1], 1, z, 1);
+							dd *= w;
+							BlasMath.daxpym(n, dd, z, 1, B[i - 1], 1);
+						}
 					}
 					ng1 = BlasMath.denorm(n, g1);
 				} else {
@@ -445,9 +531,16 @@ public final class ShorAlgorithm extends GradientOptimizer {
 					nrmz = zero;
 				}
 				BlasMath.dscal1(n, 1.0 / ng1, g1, 1, gt, 1);
-				for (i = 1; i <= n; ++i) {
-					d = BlasMath.ddotm(n, B[i - 1], 1, gt, 1);
-					g0[i - 1] = d;
+				if (nmem > 0) {
+
+					// g0 = B gt, where B applies the newest dilation first
+					System.arraycopy(gt, 0, g0, 0, n);
+					dilate(n, g0, zs, ws, kfirst, kdil, nmem, false, par);
+				} else {
+					for (i = 1; i <= n; ++i) {
+						d = BlasMath.ddotm(n, B[i - 1], 1, gt, 1);
+						g0[i - 1] = d;
+					}
 				}
 
 				// RESETTING
@@ -1004,6 +1097,17 @@ public final class ShorAlgorithm extends GradientOptimizer {
 		}
 	}
 
+	// applies the stored dilations I + w * z * z' to v in place, in the order
+	// they were added or in reverse
+	private static void dilate(final int n, final double[] v, final double[] zs, final double[] ws, final int first,
+			final int count, final int mem, final boolean oldestFirst, final boolean par) {
+		for (int j = 0; j < count; ++j) {
+			final int slot = (first + (oldestFirst ? j : count - 1 - j)) % mem;
+			final double d = ws[slot] * BlasMath.ddotm(n, zs, slot * n + 1, v, 1, par);
+			BlasMath.daxpym(n, d, zs, slot * n + 1, v, 1, par);
+		}
+	}
+
 	private static void soptions(final double[] def) {
 		def[1 - 1] = -1.0;
 		def[2 - 1] = 1.0e-4;
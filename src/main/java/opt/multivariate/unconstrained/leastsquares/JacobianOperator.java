@@ -0,0 +1,70 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.unconstrained.leastsquares;
+
+import java.util.Arrays;
+
+/**
+ * A linear operator representing the Jacobian matrix of a vector-valued
+ * function, which is accessed only through products with vectors.
+ */
+public interface JacobianOperator {
+
+	/**
+	 *
+	 * @return the number of rows (residuals)
+	 */
+	int numRows();
+
+	/**
+	 *
+	 * @return the number of columns (parameters)
+	 */
+	int numColumns();
+
+	/**
+	 * Computes out = J v.
+	 *
+	 * @param v
+	 * @param out
+	 */
+	void multiply(double[] v, double[] out);
+
+	/**
+	 * Computes out = J' u.
+	 *
+	 * @param u
+	 * @param out
+	 */
+	void multiplyTranspose(double[] u, double[] out);
+
+	/**
+	 * Computes the Euclidean norms of the columns of J, which are used to scale
+	 * the problem. Implementations that cannot compute them cheaply leave them at
+	 * one.
+	 *
+	 * @param out
+	 */
+	default void columnNorms(final double[] out) {
+		Arrays.fill(out, 0, numColumns(), 1.0);
+	}
+}
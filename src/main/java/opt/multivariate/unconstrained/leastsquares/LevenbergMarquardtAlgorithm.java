@@ -55,6 +55,7 @@ package opt.multivariate.unconstrained.leastsquares;
 
 import java.util.Arrays;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import utils.BlasMath;
 import utils.RealMath;
@@ -62,6 +63,19 @@ import utils.RealMath;
 /**
  * A translation of the Levenberg Marquardt algorithm originally written in
  * Fortran by the University of Chicago as part of the MINPACK project.
+ *
+ * When the Jacobian is approximated by finite differences, the perturbed
+ * residual vectors can be evaluated in parallel, in which case the residual
+ * function must be thread-safe. If the sparsity pattern of the Jacobian is
+ * known, structurally orthogonal columns are grouped together with the
+ * Curtis-Powell-Reid method, so that each group requires only one evaluation.
+ *
+ *
+ * REFERENCES:
+ *
+ * [1] Curtis, Alan R., Michael JD Powell, and John K. Reid. "On the estimation
+ * of sparse Jacobian matrices." IMA Journal of Applied Mathematics 13.1 (1974):
+ * 117-119.
  */
 public final class LevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
 
@@ -71,16 +85,34 @@ public final class LevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
 		void fcn(int[] iflag, int m, int n, double[] x, double[] fvec, double[][] fjac, int ldfjac);
 	}
 
+	@FunctionalInterface
+	private interface Jac {
+
+		int jac(int m, int n, double[] x, double[] fvec, double[][] fjac, double epsfcn);
+	}
+
 	private final int myMaxEvals;
+	private final boolean myParallel;
 
 	/**
 	 *
 	 * @param tolerance
 	 * @param maxEvaluations
+	 * @param parallel
 	 */
-	public LevenbergMarquardtAlgorithm(final double tolerance, final int maxEvaluations) {
+	public LevenbergMarquardtAlgorithm(final double tolerance, final int maxEvaluations, final boolean parallel) {
 		super(tolerance);
 		myMaxEvals = maxEvaluations;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param maxEvaluations
+	 */
+	public LevenbergMarquardtAlgorithm(final double tolerance, final int maxEvaluations) {
+		this(tolerance, maxEvaluations, false);
 	}
 
 	@Override
@@ -93,7 +125,32 @@ public final class LevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
 		final int[] njev = new int[1];
 
 		// call main subroutine
-		final double[] result = dnlse1(func, guess, myTol, myTol, myTol, myMaxEvals, 0.0, 100.0, info, nfev, njev);
+		final double[] result = dnlse1(func, null, myParallel, guess, myTol, myTol, myTol, myMaxEvals, 0.0, 100.0,
+				info, nfev, njev);
+		return new LeastSquaresOptimizerSolution(result, nfev[0], njev[0], info[0] >= 1 && info[0] <= 4);
+	}
+
+	/**
+	 * Minimizes the sum of squared residuals, where the Jacobian is approximated
+	 * by finite differences using the given sparsity pattern.
+	 *
+	 * @param func
+	 * @param pattern the column indices of the nonzero entries in each row of the
+	 *                Jacobian
+	 * @param guess
+	 * @return
+	 */
+	public final LeastSquaresOptimizerSolution optimizeWithPattern(final Function<? super double[], double[]> func,
+			final int[][] pattern, final double[] guess) {
+
+		// prepare variables
+		final int[] info = new int[1];
+		final int[] nfev = new int[1];
+		final int[] njev = new int[1];
+
+		// call main subroutine
+		final double[] result = dnlse1(func, pattern, myParallel, guess, myTol, myTol, myTol, myMaxEvals, 0.0, 100.0,
+				info, nfev, njev);
 		return new LeastSquaresOptimizerSolution(result, nfev[0], njev[0], info[0] >= 1 && info[0] <= 4);
 	}
 
@@ -118,9 +175,10 @@ public final class LevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
 		return new LeastSquaresOptimizerSolution(result, nfev[0], njev[0], info[0] >= 1 && info[0] <= 4);
 	}
 
-	private static double[] dnlse1(final Function<? super double[], double[]> func, final double[] x, final double ftol,
-			final double xtol, final double gtol, final int maxfev, final double epsfcn, final double factor,
-			final int[] info, final int[] nfev, final int[] njev) {
+	private static double[] dnlse1(final Function<? super double[], double[]> func, final int[][] pattern,
+			final boolean parallel, final double[] x, final double ftol, final double xtol, final double gtol,
+			final int maxfev, final double epsfcn, final double factor, final int[] info, final int[] nfev,
+			final int[] njev) {
 
 		// prepare fcn function
 		final Fcn fcn = (iflag, m, n, x1, fvec, fjac, ldfjac) -> {
@@ -136,9 +194,12 @@ public final class LevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
 		final double[] qtf = new double[n], wa1 = new double[n], wa2 = new double[n], wa3 = new double[n],
 				wa4 = new double[m];
 
+		// prepare the finite difference Jacobian
+		final Jac jac = pattern == null && !parallel ? null : fdjac(func, m, n, pattern, parallel);
+
 		// call main subroutine
-		dnls1(fcn, iopt, m, n, guess, fvec, fjac, ldfjac, ftol, xtol, gtol, maxfev, epsfcn, diag, mode, factor, info,
-				nfev, njev, ipvt, qtf, wa1, wa2, wa3, wa4);
+		dnls1(fcn, jac, iopt, m, n, guess, fvec, fjac, ldfjac, ftol, xtol, gtol, maxfev, epsfcn, diag, mode, factor,
+				info, nfev, njev, ipvt, qtf, wa1, wa2, wa3, wa4);
 		return guess;
 	}
 
@@ -166,12 +227,12 @@ public final class LevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
 				wa4 = new double[m];
 
 		// call main subroutine
-		dnls1(fcn, iopt, m, n, guess, fvec, fjac, ldfjac, ftol, xtol, gtol, maxfev, epsfcn, diag, mode, factor, info,
-				nfev, njev, ipvt, qtf, wa1, wa2, wa3, wa4);
+		dnls1(fcn, null, iopt, m, n, guess, fvec, fjac, ldfjac, ftol, xtol, gtol, maxfev, epsfcn, diag, mode, factor,
+				info, nfev, njev, ipvt, qtf, wa1, wa2, wa3, wa4);
 		return guess;
 	}
 
-	private static void dnls1(final Fcn fcn, final int iopt, final int m, final int n, final double[] x,
+	private static void dnls1(final Fcn fcn, final Jac jac, final int iopt, final int m, final int n, final double[] x,
 			final double[] fvec, final double[][] fjac, final int ldfjac, final double ftol, final double xtol,
 			final double gtol, final int maxfev, final double epsfcn, final double[] diag, final int mode,
 			final double factor, final int[] info, final int[] nfev, final int[] njev, final int[] ipvt,
@@ -346,8 +407,12 @@ public final class LevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
 
 					// THE CODE APPROXIMATES THE JACOBIAN
 					iflag[0] = 1;
-					dfdjc3(fcn, m, n, x, fvec, fjac, ldfjac, iflag, epsfcn, wa4);
-					nfev[0] += n;
+					if (jac == null) {
+						dfdjc3(fcn, m, n, x, fvec, fjac, ldfjac, iflag, epsfcn, wa4);
+						nfev[0] += n;
+					} else {
+						nfev[0] += jac.jac(m, n, x, fvec, fjac, epsfcn);
+					}
 				} else {
 
 					// THE USER SUPPLIES THE JACOBIAN
@@ -875,6 +940,121 @@ public final class LevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
 		}
 	}
 
+	private static Jac fdjac(final Function<? super double[], double[]> func, final int m, final int n,
+			final int[][] pattern, final boolean parallel) {
+
+		// rows of each column of the Jacobian
+		final int[] colptr = new int[n + 1];
+		final int[] rowind;
+		if (pattern == null) {
+			rowind = null;
+		} else {
+			if (pattern.length != m) {
+				throw new IllegalArgumentException("Sparsity pattern must have one row per residual.");
+			}
+			for (final int[] row : pattern) {
+				for (final int j : row) {
+					if (j < 0 || j >= n) {
+						throw new IllegalArgumentException("Column index " + j + " in sparsity pattern out of range.");
+					}
+					++colptr[j + 1];
+				}
+			}
+			for (int j = 0; j < n; ++j) {
+				colptr[j + 1] += colptr[j];
+			}
+			rowind = new int[colptr[n]];
+			final int[] next = Arrays.copyOf(colptr, n);
+			for (int i = 0; i < m; ++i) {
+				for (final int j : pattern[i]) {
+					rowind[next[j]++] = i;
+				}
+			}
+		}
+
+		// group the columns so that no two columns in a group share a row
+		final int[] group = new int[n];
+		int ngroups = 0;
+		if (pattern == null) {
+			for (int j = 0; j < n; ++j) {
+				group[j] = j;
+			}
+			ngroups = n;
+		} else {
+			final int[] used = new int[n + 1];
+			Arrays.fill(used, -1);
+			Arrays.fill(group, -1);
+			for (int j = 0; j < n; ++j) {
+				for (int p = colptr[j]; p < colptr[j + 1]; ++p) {
+					for (final int k : pattern[rowind[p]]) {
+						if (group[k] >= 0) {
+							used[group[k]] = j;
+						}
+					}
+				}
+				int g = 0;
+				while (used[g] == j) {
+					++g;
+				}
+				group[j] = g;
+				ngroups = Math.max(ngroups, g + 1);
+			}
+		}
+		final int[] gptr = new int[ngroups + 1], gcol = new int[n];
+		for (int j = 0; j < n; ++j) {
+			++gptr[group[j] + 1];
+		}
+		for (int g = 0; g < ngroups; ++g) {
+			gptr[g + 1] += gptr[g];
+		}
+		final int[] next = Arrays.copyOf(gptr, ngroups);
+		for (int j = 0; j < n; ++j) {
+			gcol[next[group[j]]++] = j;
+		}
+		final int ng = ngroups;
+
+		return (m1, n1, x, fvec, fjac, epsfcn) -> {
+			final double eps = Math.sqrt(Math.max(epsfcn, BlasMath.D1MACH[4 - 1]));
+			final double[] h = new double[n];
+			for (int j = 0; j < n; ++j) {
+				h[j] = eps * Math.abs(x[j]);
+				if (h[j] <= 0.0) {
+					h[j] = eps;
+				}
+			}
+			if (rowind != null) {
+				for (int i = 0; i < m; ++i) {
+					Arrays.fill(fjac[i], 0, n, 0.0);
+				}
+			}
+
+			// each group of columns needs one evaluation at a perturbed point
+			final IntStream groups = IntStream.range(0, ng);
+			(parallel ? groups.parallel() : groups).forEach(g -> {
+				final double[] xg = Arrays.copyOf(x, n);
+				for (int k = gptr[g]; k < gptr[g + 1]; ++k) {
+					final int j = gcol[k];
+					xg[j] = x[j] + h[j];
+				}
+				final double[] wa = func.apply(xg);
+				for (int k = gptr[g]; k < gptr[g + 1]; ++k) {
+					final int j = gcol[k];
+					if (rowind == null) {
+						for (int i = 0; i < m; ++i) {
+							fjac[i][j] = (wa[i] - fvec[i]) / h[j];
+						}
+					} else {
+						for (int p = colptr[j]; p < colptr[j + 1]; ++p) {
+							final int i = rowind[p];
+							fjac[i][j] = (wa[i] - fvec[i]) / h[j];
+						}
+					}
+				}
+			});
+			return ng;
+		};
+	}
+
 	private static void dwupdt(final int n, final double[][] r, final int ldr, final double[] w, final double[] b,
 			final double[] alpha, final double[] cos, final double[] sin) {
 		int i, j, jm1;
@@ -926,7 +1106,7 @@ public final class LevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
 
 		// FIRST EXECUTABLE STATEMENT DQRSLV
 		for (j = 1; j <= n; ++j) {
-			for (i = j; i <= n; ++j) {
+			for (i = j; i <= n; ++i) {
 				r[i - 1][j - 1] = r[j - 1][i - 1];
 			}
 			x[j - 1] = r[j - 1][j - 1];
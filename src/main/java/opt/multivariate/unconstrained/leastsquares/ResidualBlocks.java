@@ -0,0 +1,65 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.unconstrained.leastsquares;
+
+/**
+ * A vector of residuals that is evaluated in blocks of consecutive rows, so that
+ * the full residual vector and Jacobian matrix never need to be stored at once.
+ * For example, each block may correspond to a chunk of observations read from a
+ * file. If the residuals are accumulated in parallel, different blocks may be
+ * evaluated concurrently.
+ */
+public interface ResidualBlocks {
+
+	/**
+	 *
+	 * @return the number of blocks
+	 */
+	int numBlocks();
+
+	/**
+	 *
+	 * @param block
+	 * @return the number of residuals in the given block
+	 */
+	int blockSize(int block);
+
+	/**
+	 * Evaluates the residuals of a block.
+	 *
+	 * @param block
+	 * @param x
+	 * @param residuals
+	 */
+	void residuals(int block, double[] x, double[] residuals);
+
+	/**
+	 * Evaluates the residuals of a block and the corresponding rows of the
+	 * Jacobian matrix.
+	 *
+	 * @param block
+	 * @param x
+	 * @param residuals
+	 * @param jacobian
+	 */
+	void jacobian(int block, double[] x, double[] residuals, double[][] jacobian);
+}
@@ -0,0 +1,112 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.unconstrained.leastsquares;
+
+/**
+ * A Jacobian matrix stored in compressed sparse row format.
+ */
+public final class SparseJacobian implements JacobianOperator {
+
+	private final int myM, myN;
+	private final int[] myRowPtr, myColIdx;
+	private final double[] myVals;
+
+	/**
+	 *
+	 * @param rowPointers
+	 * @param columnIndices
+	 * @param values
+	 * @param numColumns
+	 */
+	public SparseJacobian(final int[] rowPointers, final int[] columnIndices, final double[] values,
+			final int numColumns) {
+		if (rowPointers.length < 1) {
+			throw new IllegalArgumentException("Length of row pointers must be one more than the number of rows.");
+		}
+		final int m = rowPointers.length - 1;
+		if (columnIndices.length < rowPointers[m] || values.length < rowPointers[m]) {
+			throw new IllegalArgumentException("Column indices and values must have one entry per nonzero.");
+		}
+		myM = m;
+		myN = numColumns;
+		myRowPtr = rowPointers;
+		myColIdx = columnIndices;
+		myVals = values;
+	}
+
+	@Override
+	public final int numRows() {
+		return myM;
+	}
+
+	@Override
+	public final int numColumns() {
+		return myN;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public final int nnz() {
+		return myRowPtr[myM];
+	}
+
+	@Override
+	public final void multiply(final double[] v, final double[] out) {
+		for (int i = 0; i < myM; ++i) {
+			double sum = 0.0;
+			for (int k = myRowPtr[i]; k < myRowPtr[i + 1]; ++k) {
+				sum += myVals[k] * v[myColIdx[k]];
+			}
+			out[i] = sum;
+		}
+	}
+
+	@Override
+	public final void multiplyTranspose(final double[] u, final double[] out) {
+		for (int j = 0; j < myN; ++j) {
+			out[j] = 0.0;
+		}
+		for (int i = 0; i < myM; ++i) {
+			final double ui = u[i];
+			if (ui != 0.0) {
+				for (int k = myRowPtr[i]; k < myRowPtr[i + 1]; ++k) {
+					out[myColIdx[k]] += myVals[k] * ui;
+				}
+			}
+		}
+	}
+
+	@Override
+	public final void columnNorms(final double[] out) {
+		for (int j = 0; j < myN; ++j) {
+			out[j] = 0.0;
+		}
+		for (int k = 0; k < myRowPtr[myM]; ++k) {
+			out[myColIdx[k]] += myVals[k] * myVals[k];
+		}
+		for (int j = 0; j < myN; ++j) {
+			out[j] = Math.sqrt(out[j]);
+		}
+	}
+}
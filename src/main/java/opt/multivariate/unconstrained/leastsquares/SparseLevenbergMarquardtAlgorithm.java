@@ -0,0 +1,355 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.unconstrained.leastsquares;
+
+import java.util.Arrays;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import utils.BlasMath;
+
+/**
+ * A Levenberg-Marquardt algorithm for large sparse least-squares problems. The
+ * Jacobian is accessed only through products with vectors, and the damped
+ * linear least-squares subproblem in each iteration is solved approximately by
+ * the LSQR method, preconditioned by scaling the columns of the Jacobian to
+ * unit norm. The memory requirement is proportional to the number of nonzero
+ * entries of the Jacobian plus the number of residuals and parameters.
+ *
+ * The damping parameter is updated by the rule of Nielsen.
+ *
+ *
+ * REFERENCES:
+ *
+ * [1] Paige, Christopher C., and Michael A. Saunders. "LSQR: An algorithm for
+ * sparse linear equations and sparse least squares." ACM Transactions on
+ * Mathematical Software (TOMS) 8.1 (1982): 43-71.
+ *
+ * [2] Nielsen, Hans Bruun. Damping parameter in Marquardt's method. IMM,
+ * Technical University of Denmark, 1999.
+ */
+public final class SparseLevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
+
+	private final int myMaxEvals, myMaxInnerIters;
+
+	// work arrays
+	private int m, n;
+	private double[] d, u, v, w, tmp, av;
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param maxEvaluations
+	 * @param maxInnerIterations the maximum number of LSQR iterations per
+	 *                           subproblem; if not positive, twice the number of
+	 *                           parameters
+	 */
+	public SparseLevenbergMarquardtAlgorithm(final double tolerance, final int maxEvaluations,
+			final int maxInnerIterations) {
+		super(tolerance);
+		myMaxEvals = maxEvaluations;
+		myMaxInnerIters = maxInnerIterations;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param maxEvaluations
+	 */
+	public SparseLevenbergMarquardtAlgorithm(final double tolerance, final int maxEvaluations) {
+		this(tolerance, maxEvaluations, 0);
+	}
+
+	/**
+	 * Minimizes the sum of squared residuals, where the Jacobian is approximated
+	 * by forward differences and only its nonzero entries are stored.
+	 */
+	@Override
+	public final LeastSquaresOptimizerSolution optimize(final Function<? super double[], double[]> func,
+			final double[] guess) {
+		final LeastSquaresOptimizerSolution sol = solve(func, (x, r) -> differenceJacobian(func, x, r),
+				guess.length, guess);
+		return new LeastSquaresOptimizerSolution(sol.getOptimalPoint(), sol.getFEvals(), 0, sol.converged());
+	}
+
+	/**
+	 *
+	 * @param func
+	 * @param jacobian
+	 * @param guess
+	 * @return
+	 */
+	public final LeastSquaresOptimizerSolution optimize(final Function<? super double[], double[]> func,
+			final Function<? super double[], ? extends JacobianOperator> jacobian, final double[] guess) {
+		return solve(func, (x, r) -> jacobian.apply(x), 0, guess);
+	}
+
+	// jcost is the number of evaluations of func spent on each Jacobian
+	private LeastSquaresOptimizerSolution solve(final Function<? super double[], double[]> func,
+			final BiFunction<double[], double[], ? extends JacobianOperator> jacobian, final int jcost,
+			final double[] guess) {
+
+		// prepare variables
+		final double[] x = Arrays.copyOf(guess, guess.length);
+		double[] r = func.apply(x);
+		int fev = 1, jev = 0;
+		m = r.length;
+		n = x.length;
+		if (m < n) {
+			throw new IllegalArgumentException("Number of residuals must be at least the number of parameters.");
+		}
+		final int maxit = myMaxInnerIters > 0 ? myMaxInnerIters : 2 * n;
+		final double itol = Math.max(myTol, 1e-14);
+		final double[] g = new double[n], q = new double[n], p = new double[n], xt = new double[n],
+				jp = new double[m], cn = new double[n];
+		d = new double[n];
+		av = new double[m];
+		u = new double[m];
+		v = new double[n];
+		w = new double[n];
+		tmp = new double[n];
+		double ss = BlasMath.ddotm(m, r, 1, r, 1);
+		double lambda = 1e-3, nu = 2.0;
+		boolean converged = false;
+
+		while (fev < myMaxEvals) {
+
+			// evaluate the Jacobian, if the budget allows, and update the scaling
+			if (fev + jcost > myMaxEvals) {
+				break;
+			}
+			final JacobianOperator jac = jacobian.apply(x, r);
+			fev += jcost;
+			++jev;
+			if (jac.numRows() != m || jac.numColumns() != n) {
+				throw new IllegalArgumentException("Jacobian dimensions do not match the residuals and parameters.");
+			}
+			jac.columnNorms(cn);
+			for (int j = 0; j < n; ++j) {
+				final double cj = cn[j] > 0.0 ? cn[j] : 1.0;
+				d[j] = jev == 1 ? cj : Math.max(d[j], cj);
+			}
+
+			// test for convergence of the scaled gradient
+			jac.multiplyTranspose(r, g);
+			double gnorm = 0.0;
+			for (int j = 0; j < n; ++j) {
+				gnorm = Math.max(gnorm, Math.abs(g[j]) / d[j]);
+			}
+			if (gnorm <= myTol * Math.max(Math.sqrt(ss), myTol)) {
+				converged = true;
+				break;
+			}
+
+			// solve damped subproblems until a step is accepted
+			boolean accepted = false;
+			while (!accepted && fev < myMaxEvals) {
+				for (int i = 0; i < m; ++i) {
+					u[i] = -r[i];
+				}
+				lsqr(jac, Math.sqrt(lambda), itol, maxit, q);
+				double pnorm = 0.0, xnorm = 0.0;
+				for (int j = 0; j < n; ++j) {
+					p[j] = q[j] / d[j];
+					xt[j] = x[j] + p[j];
+					pnorm += q[j] * q[j];
+					xnorm += (d[j] * x[j]) * (d[j] * x[j]);
+				}
+				if (Math.sqrt(pnorm) <= myTol * (Math.sqrt(xnorm) + myTol)) {
+					converged = true;
+					break;
+				}
+
+				// compare the actual and predicted reductions
+				final double[] rt = func.apply(xt);
+				++fev;
+				final double sst = BlasMath.ddotm(m, rt, 1, rt, 1);
+				jac.multiply(p, jp);
+				double lin = 0.0;
+				for (int i = 0; i < m; ++i) {
+					lin += (r[i] + jp[i]) * (r[i] + jp[i]);
+				}
+				final double pred = ss - lin, rho = (ss - sst) / pred;
+				if (pred > 0.0 && rho > 0.0 && Double.isFinite(sst)) {
+					final double red = ss - sst;
+					System.arraycopy(xt, 0, x, 0, n);
+					r = rt;
+					ss = sst;
+					final double t = 2.0 * rho - 1.0;
+					lambda *= Math.max(1.0 / 3.0, 1.0 - t * t * t);
+					nu = 2.0;
+					accepted = true;
+					if (red <= myTol * ss) {
+						converged = true;
+					}
+				} else {
+					lambda *= nu;
+					nu *= 2.0;
+				}
+			}
+			if (converged) {
+				break;
+			}
+		}
+		return new LeastSquaresOptimizerSolution(x, fev, jev, converged);
+	}
+
+	private void lsqr(final JacobianOperator jac, final double damp, final double tol, final int maxit,
+			final double[] x) {
+
+		// solves min |A x - b|^2 + damp^2 |x|^2 with A = J D^-1, where b is in u
+		Arrays.fill(x, 0.0);
+		double beta = BlasMath.denorm(m, u);
+		if (beta <= 0.0) {
+			return;
+		}
+		BlasMath.dscalm(m, 1.0 / beta, u, 1);
+		transposeProduct(jac);
+		double alpha = BlasMath.denorm(n, v);
+		if (alpha <= 0.0) {
+			return;
+		}
+		BlasMath.dscalm(n, 1.0 / alpha, v, 1);
+		System.arraycopy(v, 0, w, 0, n);
+		final double bnorm = beta;
+		double phibar = beta, rhobar = alpha, anorm = 0.0, res2 = 0.0, xxnorm = 0.0;
+		for (int it = 0; it < maxit; ++it) {
+
+			// continue the bidiagonalization
+			for (int j = 0; j < n; ++j) {
+				tmp[j] = v[j] / d[j];
+			}
+			jac.multiply(tmp, av);
+			for (int i = 0; i < m; ++i) {
+				u[i] = av[i] - alpha * u[i];
+			}
+			beta = BlasMath.denorm(m, u);
+			if (beta > 0.0) {
+				BlasMath.dscalm(m, 1.0 / beta, u, 1);
+				anorm = Math.sqrt(anorm * anorm + alpha * alpha + beta * beta + damp * damp);
+				for (int j = 0; j < n; ++j) {
+					tmp[j] = v[j];
+				}
+				transposeProduct(jac);
+				for (int j = 0; j < n; ++j) {
+					v[j] -= beta * tmp[j];
+				}
+				alpha = BlasMath.denorm(n, v);
+				if (alpha > 0.0) {
+					BlasMath.dscalm(n, 1.0 / alpha, v, 1);
+				}
+			}
+
+			// eliminate the damping parameter and the subdiagonal
+			final double rhobar1 = Math.sqrt(rhobar * rhobar + damp * damp);
+			final double cs1 = rhobar / rhobar1, sn1 = damp / rhobar1;
+			final double psi = sn1 * phibar;
+			phibar *= cs1;
+			final double rho = Math.sqrt(rhobar1 * rhobar1 + beta * beta);
+			final double cs = rhobar1 / rho, sn = beta / rho;
+			final double theta = sn * alpha;
+			rhobar = -cs * alpha;
+			final double phi = cs * phibar;
+			phibar *= sn;
+
+			// update the solution and search direction
+			final double t1 = phi / rho, t2 = -theta / rho;
+			for (int j = 0; j < n; ++j) {
+				x[j] += t1 * w[j];
+				w[j] = v[j] + t2 * w[j];
+			}
+
+			// stopping criteria based on the residual and normal residual
+			xxnorm = BlasMath.ddotm(n, x, 1, x, 1);
+			res2 += psi * psi;
+			final double rnorm = Math.sqrt(phibar * phibar + res2);
+			final double arnorm = alpha * Math.abs(sn * phi);
+			if (rnorm <= tol * bnorm + tol * anorm * Math.sqrt(xxnorm) || arnorm <= tol * anorm * rnorm
+					|| alpha <= 0.0 || beta <= 0.0) {
+				break;
+			}
+		}
+	}
+
+	private void transposeProduct(final JacobianOperator jac) {
+
+		// v = D^-1 J' u
+		jac.multiplyTranspose(u, v);
+		for (int j = 0; j < n; ++j) {
+			v[j] /= d[j];
+		}
+	}
+
+	private static SparseJacobian differenceJacobian(final Function<? super double[], double[]> func,
+			final double[] x, final double[] f0) {
+		final int m = f0.length, n = x.length;
+		final double eps = Math.sqrt(BlasMath.D1MACH[4 - 1]);
+
+		// compute the columns by forward differences, keeping the nonzeros
+		final int[] cp = new int[n + 1];
+		int[] ri = new int[Math.max(16, n)];
+		double[] cv = new double[ri.length];
+		final double[] xh = Arrays.copyOf(x, n);
+		for (int j = 0; j < n; ++j) {
+			double h = eps * Math.abs(x[j]);
+			if (h <= 0.0) {
+				h = eps;
+			}
+			xh[j] = x[j] + h;
+			final double[] fh = func.apply(xh);
+			xh[j] = x[j];
+			int nz = cp[j];
+			for (int i = 0; i < m; ++i) {
+				final double dij = (fh[i] - f0[i]) / h;
+				if (dij != 0.0) {
+					if (nz >= ri.length) {
+						ri = Arrays.copyOf(ri, ri.length << 1);
+						cv = Arrays.copyOf(cv, ri.length);
+					}
+					ri[nz] = i;
+					cv[nz] = dij;
+					++nz;
+				}
+			}
+			cp[j + 1] = nz;
+		}
+
+		// convert to compressed rows
+		final int[] rp = new int[m + 1], ci = new int[cp[n]];
+		final double[] rv = new double[cp[n]];
+		for (int k = 0; k < cp[n]; ++k) {
+			++rp[ri[k] + 1];
+		}
+		for (int i = 0; i < m; ++i) {
+			rp[i + 1] += rp[i];
+		}
+		final int[] next = Arrays.copyOf(rp, m);
+		for (int j = 0; j < n; ++j) {
+			for (int k = cp[j]; k < cp[j + 1]; ++k) {
+				final int e = next[ri[k]]++;
+				ci[e] = j;
+				rv[e] = cv[k];
+			}
+		}
+		return new SparseJacobian(rp, ci, rv, n);
+	}
+}
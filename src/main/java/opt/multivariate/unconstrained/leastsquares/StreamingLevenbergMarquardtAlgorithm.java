@@ -0,0 +1,356 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.unconstrained.leastsquares;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import utils.BlasMath;
+
+/**
+ * A Levenberg-Marquardt algorithm for data-fitting problems with many more
+ * residuals than parameters. The residuals and the rows of the Jacobian are
+ * streamed in blocks, and only the normal equations J'J and J'r are kept in
+ * memory, so the memory requirement does not depend on the number of
+ * residuals. The blocks can be accumulated in parallel, in which case partial
+ * sums over chunks of blocks are added together at the end of each pass.
+ *
+ * The damped normal equations are solved by Cholesky factorization, with the
+ * damping scaled by the diagonal of J'J, and the damping parameter is updated
+ * by the rule of Nielsen.
+ *
+ *
+ * REFERENCES:
+ *
+ * [1] Marquardt, Donald W. "An algorithm for least-squares estimation of
+ * nonlinear parameters." Journal of the society for Industrial and Applied
+ * Mathematics 11.2 (1963): 431-441.
+ *
+ * [2] Nielsen, Hans Bruun. Damping parameter in Marquardt's method. IMM,
+ * Technical University of Denmark, 1999.
+ */
+public final class StreamingLevenbergMarquardtAlgorithm extends LeastSquaresOptimizer {
+
+	private final int myMaxEvals;
+	private final boolean myParallel;
+
+	// partial sums and buffers for each chunk of blocks
+	private int n, nb, nchunks;
+	private double[][][] jtj, jbuf;
+	private double[][] jtr, rbuf;
+	private double[] ssum;
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param maxEvaluations the maximum number of passes over the data
+	 * @param parallel
+	 */
+	public StreamingLevenbergMarquardtAlgorithm(final double tolerance, final int maxEvaluations,
+			final boolean parallel) {
+		super(tolerance);
+		myMaxEvals = maxEvaluations;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param maxEvaluations
+	 */
+	public StreamingLevenbergMarquardtAlgorithm(final double tolerance, final int maxEvaluations) {
+		this(tolerance, maxEvaluations, false);
+	}
+
+	/**
+	 * Minimizes the sum of squared residuals as a single block, where the
+	 * Jacobian is approximated by forward differences.
+	 */
+	@Override
+	public final LeastSquaresOptimizerSolution optimize(final Function<? super double[], double[]> func,
+			final double[] guess) {
+		final int m = func.apply(guess).length;
+		final int[] fevals = { 1 };
+		final ResidualBlocks blocks = new ResidualBlocks() {
+
+			@Override
+			public int numBlocks() {
+				return 1;
+			}
+
+			@Override
+			public int blockSize(final int block) {
+				return m;
+			}
+
+			@Override
+			public void residuals(final int block, final double[] x, final double[] residuals) {
+				System.arraycopy(func.apply(x), 0, residuals, 0, m);
+				++fevals[0];
+			}
+
+			@Override
+			public void jacobian(final int block, final double[] x, final double[] residuals,
+					final double[][] jacobian) {
+				residuals(block, x, residuals);
+				final double eps = Math.sqrt(BlasMath.D1MACH[4 - 1]);
+				final double[] xh = Arrays.copyOf(x, x.length);
+				for (int j = 0; j < x.length; ++j) {
+					double h = eps * Math.abs(x[j]);
+					if (h <= 0.0) {
+						h = eps;
+					}
+					xh[j] = x[j] + h;
+					final double[] fh = func.apply(xh);
+					xh[j] = x[j];
+					for (int i = 0; i < m; ++i) {
+						jacobian[i][j] = (fh[i] - residuals[i]) / h;
+					}
+				}
+				fevals[0] += x.length;
+			}
+		};
+		final LeastSquaresOptimizerSolution sol = optimize(blocks, guess);
+		return new LeastSquaresOptimizerSolution(sol.getOptimalPoint(), fevals[0], 0, sol.converged());
+	}
+
+	/**
+	 *
+	 * @param blocks
+	 * @param guess
+	 * @return
+	 */
+	public final LeastSquaresOptimizerSolution optimize(final ResidualBlocks blocks, final double[] guess) {
+
+		// prepare the buffers for each chunk of blocks
+		n = guess.length;
+		nb = blocks.numBlocks();
+		int maxsize = 0;
+		for (int b = 0; b < nb; ++b) {
+			maxsize = Math.max(maxsize, blocks.blockSize(b));
+		}
+		nchunks = myParallel ? Math.max(1, Math.min(nb, 4 * Runtime.getRuntime().availableProcessors())) : 1;
+		jtj = new double[nchunks][n][n];
+		jtr = new double[nchunks][n];
+		jbuf = new double[nchunks][maxsize][n];
+		rbuf = new double[nchunks][maxsize];
+		ssum = new double[nchunks];
+
+		// prepare variables
+		final double[] x = Arrays.copyOf(guess, n), xt = new double[n], d = new double[n], p = new double[n],
+				ap = new double[n];
+		final double[][] a = new double[n][n], l = new double[n][n];
+		final double[] g = new double[n];
+		int fev = 0, jev = 0;
+		double lambda = 1e-3, nu = 2.0;
+		boolean converged = false;
+
+		while (fev < myMaxEvals) {
+
+			// accumulate the normal equations at x
+			final double ss = pass(blocks, x, true);
+			++fev;
+			++jev;
+			for (int j = 0; j < n; ++j) {
+				System.arraycopy(jtj[0][j], 0, a[j], 0, n);
+				g[j] = jtr[0][j];
+				for (int k = 0; k < j; ++k) {
+					a[j][k] = a[k][j];
+				}
+				final double ajj = a[j][j] > 0.0 ? a[j][j] : 1.0;
+				d[j] = jev == 1 ? ajj : Math.max(d[j], ajj);
+			}
+
+			// test for convergence of the scaled gradient
+			double gnorm = 0.0;
+			for (int j = 0; j < n; ++j) {
+				gnorm = Math.max(gnorm, Math.abs(g[j]) / Math.sqrt(d[j]));
+			}
+			if (gnorm <= myTol * Math.max(Math.sqrt(ss), myTol)) {
+				converged = true;
+				break;
+			}
+
+			// solve damped normal equations until a step is accepted
+			boolean accepted = false;
+			while (!accepted && fev < myMaxEvals) {
+				if (!cholesky(a, d, lambda, l)) {
+
+					// a non-finite Jacobian fails for every lambda
+					lambda *= nu;
+					nu *= 2.0;
+					if (!Double.isFinite(lambda)) {
+						return new LeastSquaresOptimizerSolution(x, fev, jev, false);
+					}
+					continue;
+				}
+				for (int j = 0; j < n; ++j) {
+					p[j] = -g[j];
+				}
+				solve(l, p);
+				double pnorm = 0.0, xnorm = 0.0;
+				for (int j = 0; j < n; ++j) {
+					xt[j] = x[j] + p[j];
+					pnorm += d[j] * p[j] * p[j];
+					xnorm += d[j] * x[j] * x[j];
+				}
+				if (Math.sqrt(pnorm) <= myTol * (Math.sqrt(xnorm) + myTol)) {
+					converged = true;
+					break;
+				}
+
+				// compare the actual and predicted reductions
+				final double sst = pass(blocks, xt, false);
+				++fev;
+				double pap = 0.0, pg = 0.0;
+				for (int j = 0; j < n; ++j) {
+					ap[j] = BlasMath.ddotm(n, a[j], 1, p, 1);
+					pap += p[j] * ap[j];
+					pg += p[j] * g[j];
+				}
+				final double pred = -2.0 * pg - pap, rho = (ss - sst) / pred;
+				if (pred > 0.0 && rho > 0.0 && Double.isFinite(sst)) {
+					System.arraycopy(xt, 0, x, 0, n);
+					final double t = 2.0 * rho - 1.0;
+					lambda *= Math.max(1.0 / 3.0, 1.0 - t * t * t);
+					nu = 2.0;
+					accepted = true;
+					if (ss - sst <= myTol * sst) {
+						converged = true;
+					}
+				} else {
+					lambda *= nu;
+					nu *= 2.0;
+				}
+			}
+			if (converged) {
+				break;
+			}
+		}
+		return new LeastSquaresOptimizerSolution(x, fev, jev, converged);
+	}
+
+	private double pass(final ResidualBlocks blocks, final double[] x, final boolean jacobian) {
+
+		// accumulate the sums over each chunk of blocks
+		if (nchunks > 1) {
+			IntStream.range(0, nchunks).parallel().forEach(c -> accumulate(blocks, x, jacobian, c));
+		} else {
+			accumulate(blocks, x, jacobian, 0);
+		}
+
+		// reduce the partial sums
+		double ss = ssum[0];
+		for (int c = 1; c < nchunks; ++c) {
+			ss += ssum[c];
+			if (jacobian) {
+				for (int j = 0; j < n; ++j) {
+					jtr[0][j] += jtr[c][j];
+					for (int k = j; k < n; ++k) {
+						jtj[0][j][k] += jtj[c][j][k];
+					}
+				}
+			}
+		}
+		return ss;
+	}
+
+	private void accumulate(final ResidualBlocks blocks, final double[] x, final boolean jacobian, final int c) {
+		final double[][] ajj = jtj[c], jac = jbuf[c];
+		final double[] g = jtr[c], r = rbuf[c];
+		double ss = 0.0;
+		if (jacobian) {
+			for (int j = 0; j < n; ++j) {
+				Arrays.fill(ajj[j], j, n, 0.0);
+			}
+			Arrays.fill(g, 0.0);
+		}
+		for (int b = c * nb / nchunks; b < (c + 1) * nb / nchunks; ++b) {
+			final int size = blocks.blockSize(b);
+			if (jacobian) {
+				blocks.jacobian(b, x, r, jac);
+			} else {
+				blocks.residuals(b, x, r);
+			}
+			for (int i = 0; i < size; ++i) {
+				final double ri = r[i];
+				ss += ri * ri;
+				if (jacobian) {
+
+					// rank-one update of the upper triangle of J'J
+					final double[] row = jac[i];
+					for (int j = 0; j < n; ++j) {
+						final double rij = row[j];
+						if (rij != 0.0) {
+							g[j] += rij * ri;
+							final double[] aj = ajj[j];
+							for (int k = j; k < n; ++k) {
+								aj[k] += rij * row[k];
+							}
+						}
+					}
+				}
+			}
+		}
+		ssum[c] = ss;
+	}
+
+	private boolean cholesky(final double[][] a, final double[] d, final double lambda, final double[][] l) {
+		for (int j = 0; j < n; ++j) {
+			double s = a[j][j] + lambda * d[j];
+			for (int k = 0; k < j; ++k) {
+				s -= l[j][k] * l[j][k];
+			}
+			if (!(s > 0.0)) {
+				return false;
+			}
+			final double ljj = Math.sqrt(s);
+			l[j][j] = ljj;
+			for (int i = j + 1; i < n; ++i) {
+				double t = a[i][j];
+				for (int k = 0; k < j; ++k) {
+					t -= l[i][k] * l[j][k];
+				}
+				l[i][j] = t / ljj;
+			}
+		}
+		return true;
+	}
+
+	private void solve(final double[][] l, final double[] b) {
+		for (int i = 0; i < n; ++i) {
+			double s = b[i];
+			for (int k = 0; k < i; ++k) {
+				s -= l[i][k] * b[k];
+			}
+			b[i] = s / l[i][i];
+		}
+		for (int i = n - 1; i >= 0; --i) {
+			double s = b[i];
+			for (int k = i + 1; k < n; ++k) {
+				s -= l[k][i] * b[k];
+			}
+			b[i] = s / l[i][i];
+		}
+	}
+}
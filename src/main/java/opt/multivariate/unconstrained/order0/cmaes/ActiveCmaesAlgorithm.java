@@ -24,6 +24,7 @@ package opt.multivariate.unconstrained.order0.cmaes;
 import java.util.function.Function;
 
 import utils.BlasMath;
+import utils.DenseMath;
 
 /**
  * The active variant of the CMA-ES algorithm, which includes a negative update
@@ -155,10 +156,10 @@ public class ActiveCmaesAlgorithm extends CmaesAlgorithm {
 		// Cumulation: Update evolution paths
 		final double csc = Math.sqrt(cs * (2.0 - cs) * mueff);
 		for (int i = 0; i < D; ++i) {
-			ps[i] *= (1.0 - cs);
-			for (int j = 0; j < D; ++j) {
-				ps[i] += csc * invsqrtC[i][j] * (xmean[j] - xold[j]) / (cm * sigma);
-			}
+			artmp[i] = (xmean[i] - xold[i]) / (cm * sigma);
+		}
+		for (int i = 0; i < D; ++i) {
+			ps[i] = (1.0 - cs) * ps[i] + csc * BlasMath.ddotm(D, invsqrtC[i], 1, artmp, 1);
 		}
 
 		// compute hsig
@@ -181,49 +182,38 @@ public class ActiveCmaesAlgorithm extends CmaesAlgorithm {
 		for (int i = 0; i < myMu; ++i) {
 			final int mtop = arfitness[myLambda - myMu + 1 + i - 1].index;
 			final int mbot = arfitness[myLambda - i - 1].index;
-			double ssqtop = 0.0;
-			double ssqbot = 0.0;
-			for (int j = 0; j < D; ++j) {
-				double termtop = 0.0;
-				double termbot = 0.0;
-				for (int l = 0; l < D; ++l) {
-					termtop += invsqrtC[j][l] * (arx[mtop][l] - xold[l]);
-					termbot += invsqrtC[j][l] * (arx[mbot][l] - xold[l]);
-				}
-				ssqtop += termtop * termtop;
-				ssqbot += termbot * termbot;
-			}
-			ssqbot = Math.max(ssqbot, 1e-8);
+			final double ssqtop = invsqrtNorm2(arx[mtop]);
+			final double ssqbot = Math.max(invsqrtNorm2(arx[mbot]), 1e-8);
 			ycoeff[i] = ssqtop / ssqbot;
 		}
 
-		// Adapt covariance matrix C
+		// Adapt covariance matrix C: old matrix plus rank mu update
 		final double c2 = (1.0 - hsig) * cc * (2.0 - cc);
 		final double cmu1 = cmu + cneg * (1.0 - alphaold);
-		for (int i = 0; i < D; ++i) {
-			for (int j = 0; j <= i; ++j) {
-
-				// old matrix plus rank-one update
-				double sum = (1.0 - c1 - cmu + cneg * alphaold) * C[i][j] + c1 * (pc[i] * pc[j] + c2 * C[i][j]);
-
-				// rank mu update
-				for (int k = 0; k < myMu; ++k) {
-					final int m = arfitness[k].index;
-					final double di = (arx[m][i] - xold[i]) / sigma;
-					final double dj = (arx[m][j] - xold[j]) / sigma;
-					sum += cmu1 * weights[k] * di * dj;
-				}
-
-				// active update: this is the main modification in active CMA-ES
-				for (int k = 0; k < myMu; ++k) {
-					final int m = arfitness[myLambda - k - 1].index;
-					final double di = (arx[m][i] - xold[i]) / sigma;
-					final double dj = (arx[m][j] - xold[j]) / sigma;
-					sum -= cneg * weights[k] * ycoeff[k] * di * dj;
-				}
-				C[i][j] = sum;
+		final double[] flatC = new double[D * D], ary = new double[D * myMu];
+		for (int k = 0; k < myMu; ++k) {
+			final int m = arfitness[k].index;
+			final double wk = Math.sqrt(weights[k]) / sigma;
+			for (int i = 0; i < D; ++i) {
+				ary[i * myMu + k] = wk * (arx[m][i] - xold[i]);
+			}
+		}
+		flatten(D, C, flatC);
+		DenseMath.dsyrk(D, myMu, cmu1, ary, 1.0 - c1 - cmu + cneg * alphaold + c1 * c2, flatC, false);
+
+		// active update: this is the main modification in active CMA-ES
+		for (int k = 0; k < myMu; ++k) {
+			final int m = arfitness[myLambda - k - 1].index;
+			final double wk = Math.sqrt(weights[k] * ycoeff[k]) / sigma;
+			for (int i = 0; i < D; ++i) {
+				ary[i * myMu + k] = wk * (arx[m][i] - xold[i]);
 			}
 		}
+		DenseMath.dsyrk(D, myMu, -cneg, ary, 1.0, flatC, false);
+
+		// rank-one update
+		DenseMath.dsyrk(D, 1, c1, pc, 1.0, flatC, false);
+		unflatten(D, flatC, C);
 
 		// update sigma
 		updateSigma();
@@ -231,4 +221,17 @@ public class ActiveCmaesAlgorithm extends CmaesAlgorithm {
 		// Decomposition of C into B*diag(D.^2)*B' (diagonalization)
 		eigenDecomposition();
 	}
+
+	// squared norm of invsqrtC * (x - xold)
+	private double invsqrtNorm2(final double[] x) {
+		for (int l = 0; l < D; ++l) {
+			artmp[l] = x[l] - xold[l];
+		}
+		double ssq = 0.0;
+		for (int j = 0; j < D; ++j) {
+			final double term = BlasMath.ddotm(D, invsqrtC[j], 1, artmp, 1);
+			ssq += term * term;
+		}
+		return ssq;
+	}
 }
@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.function.Function;
 
 import utils.BlasMath;
+import utils.DenseMath;
 import utils.RealMath;
 
 /**
@@ -137,10 +138,10 @@ public class CmaesAlgorithm extends AbstractCmaesOptimizer {
 		// Cumulation: Update evolution paths
 		final double csc = Math.sqrt(cs * (2.0 - cs) * mueff);
 		for (int i = 0; i < D; ++i) {
-			ps[i] *= (1.0 - cs);
-			for (int j = 0; j < D; ++j) {
-				ps[i] += csc * invsqrtC[i][j] * (xmean[j] - xold[j]) / sigma;
-			}
+			artmp[i] = (xmean[i] - xold[i]) / sigma;
+		}
+		for (int i = 0; i < D; ++i) {
+			ps[i] = (1.0 - cs) * ps[i] + csc * BlasMath.ddotm(D, invsqrtC[i], 1, artmp, 1);
 		}
 
 		// compute hsig
@@ -159,24 +160,21 @@ public class CmaesAlgorithm extends AbstractCmaesOptimizer {
 			pc[i] = (1.0 - cc) * pc[i] + hsig * ccc * (xmean[i] - xold[i]) / sigma;
 		}
 
-		// Adapt covariance matrix C
+		// Adapt covariance matrix C: old matrix plus rank mu and rank-one updates
+		// the dense kernels work on a flat row-major copy of C
 		final double c2 = (1.0 - hsig) * cc * (2.0 - cc);
-		for (int i = 0; i < D; ++i) {
-			for (int j = 0; j <= i; ++j) {
-
-				// old matrix plus rank-one update
-				double sum = (1.0 - c1 - cmu) * C[i][j] + c1 * (pc[i] * pc[j] + c2 * C[i][j]);
-
-				// rank mu update
-				for (int k = 0; k < myMu; ++k) {
-					final int m = arfitness[k].index;
-					final double di = (arx[m][i] - xold[i]) / sigma;
-					final double dj = (arx[m][j] - xold[j]) / sigma;
-					sum += cmu * weights[k] * di * dj;
-				}
-				C[i][j] = sum;
+		final double[] flatC = new double[D * D], ary = new double[D * myMu];
+		for (int k = 0; k < myMu; ++k) {
+			final int m = arfitness[k].index;
+			final double wk = Math.sqrt(weights[k]) / sigma;
+			for (int i = 0; i < D; ++i) {
+				ary[i * myMu + k] = wk * (arx[m][i] - xold[i]);
 			}
 		}
+		flatten(D, C, flatC);
+		DenseMath.dsyrk(D, myMu, cmu, ary, 1.0 - c1 - cmu + c1 * c2, flatC, false);
+		DenseMath.dsyrk(D, 1, c1, pc, 1.0, flatC, false);
+		unflatten(D, flatC, C);
 
 		// update sigma parameters
 		updateSigma();
@@ -296,17 +294,12 @@ public class CmaesAlgorithm extends AbstractCmaesOptimizer {
 			return;
 		}
 
-		// enforce symmetry
-		for (int i = 0; i < D; ++i) {
-			for (int j = 0; j <= i; ++j) {
-				B[i][j] = B[j][i] = C[i][j];
-			}
-		}
-
 		// eigenvalue decomposition, B==normalized eigenvectors
 		updateEigenLastEval = myEvals;
-		tred2(D, B, diagD, artmp);
-		tql2(D, diagD, artmp, B);
+		final double[] flatB = new double[D * D];
+		flatten(D, C, flatB);
+		DenseMath.dsyev(D, flatB, diagD, artmp);
+		unflatten(D, flatB, B);
 
 		// limit condition number of covariance matrix
 		if (diagD[0] <= 0.0) {
@@ -333,15 +326,26 @@ public class CmaesAlgorithm extends AbstractCmaesOptimizer {
 		}
 
 		// invsqrtC = B * diag(D^-1) * B^T
+		final double[] bd = new double[D * D], flatInvsqrtC = new double[D * D];
 		for (int i = 0; i < D; ++i) {
-			for (int j = 0; j <= i; ++j) {
-				double sum = 0.0;
-				for (int k = 0; k < D; ++k) {
-					sum += B[i][k] / diagD[k] * B[j][k];
-				}
-				invsqrtC[i][j] = invsqrtC[j][i] = sum;
+			for (int k = 0; k < D; ++k) {
+				bd[i * D + k] = flatB[i * D + k] / Math.sqrt(diagD[k]);
 			}
 		}
+		DenseMath.dsyrk(D, D, 1.0, bd, 0.0, flatInvsqrtC, false);
+		unflatten(D, flatInvsqrtC, invsqrtC);
+	}
+
+	static final void flatten(final int n, final double[][] a, final double[] flat) {
+		for (int i = 0; i < n; ++i) {
+			System.arraycopy(a[i], 0, flat, i * n, n);
+		}
+	}
+
+	static final void unflatten(final int n, final double[] flat, final double[][] a) {
+		for (int i = 0; i < n; ++i) {
+			System.arraycopy(flat, i * n, a[i], 0, n);
+		}
 	}
 
 	/**
@@ -356,7 +360,11 @@ public class CmaesAlgorithm extends AbstractCmaesOptimizer {
 	 * public domain. Neither The MathWorks nor NIST assumes any responsibility
 	 * whatsoever for its use by other parties, and makes no guarantees, expressed
 	 * or implied, about its quality, reliability, or any other characteristic.
+	 * 
+	 * @deprecated the covariance matrix is now decomposed by
+	 *             {@link DenseMath#dsyev}
 	 */
+	@Deprecated
 	protected static final void tred2(int n, final double[][] V, final double[] d, final double[] e) {
 
 		// This is derived from the Algol procedures tred2 by
@@ -454,7 +462,13 @@ public class CmaesAlgorithm extends AbstractCmaesOptimizer {
 		e[0] = 0.0;
 	}
 
-	// Symmetric tridiagonal QL algorithm, taken from JAMA package.
+	/**
+	 * Symmetric tridiagonal QL algorithm, taken from JAMA package.
+	 * 
+	 * @deprecated the covariance matrix is now decomposed by
+	 *             {@link DenseMath#dsyev}
+	 */
+	@Deprecated
 	protected static final void tql2(int n, double[] d, double[] e, double[][] V) {
 		System.arraycopy(e, 1, e, 0, n - 1);
 		e[n - 1] = 0.0;
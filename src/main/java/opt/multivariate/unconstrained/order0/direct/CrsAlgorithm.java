@@ -22,8 +22,8 @@
 package opt.multivariate.unconstrained.order0.direct;
 
 import java.util.Arrays;
-import java.util.TreeSet;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import opt.multivariate.GradientFreeOptimizer;
 import opt.multivariate.MultivariateOptimizerSolution;
@@ -33,6 +33,10 @@ import utils.BlasMath;
  * A translation of the controlled random search (CRS) algorithm for the
  * minimization of a general non-linear function without constraints.
  * 
+ * The population is ordered by an array-based min-max heap over point indices.
+ * Optionally, several trial points can be generated at once and evaluated in
+ * parallel, in which case the objective function must be thread-safe; each
+ * trial point that improves on the worst point of the population replaces it.
  * 
  * REFERENCES:
  * 
@@ -41,24 +45,136 @@ import utils.BlasMath;
  */
 public final class CrsAlgorithm extends GradientFreeOptimizer {
 
-	private static final class RbNode implements Comparable<RbNode> {
+	private static final class MinMaxHeap {
 
-		int i_ps;
-		double fx;
-		double[] x;
+		final int[] h;
+		final double[] key;
+		int size;
 
-		@Override
-		public int compareTo(final RbNode o) {
-			final double k1 = fx;
-			final double k2 = o.fx;
-			if (k1 < k2) {
-				return -1;
-			} else if (k1 > k2) {
-				return 1;
+		MinMaxHeap(final int capacity, final double[] keys) {
+			h = new int[capacity];
+			key = keys;
+			size = 0;
+		}
+
+		final int min() {
+			return h[0];
+		}
+
+		final int max() {
+			if (size <= 2) {
+				return h[size - 1];
+			}
+			return key[h[1]] >= key[h[2]] ? h[1] : h[2];
+		}
+
+		final void add(final int handle) {
+			h[size] = handle;
+			++size;
+			pushUp(size - 1);
+		}
+
+		final int removeMax() {
+			final int i = size <= 2 ? size - 1 : (key[h[1]] >= key[h[2]] ? 1 : 2);
+			final int handle = h[i];
+			--size;
+			if (i < size) {
+				h[i] = h[size];
+				pushDown(i);
+			}
+			return handle;
+		}
+
+		private static boolean isMinLevel(final int i) {
+			return ((31 - Integer.numberOfLeadingZeros(i + 1)) & 1) == 0;
+		}
+
+		private void swap(final int i, final int j) {
+			final int t = h[i];
+			h[i] = h[j];
+			h[j] = t;
+		}
+
+		private void pushUp(final int i) {
+			if (i == 0) {
+				return;
+			}
+			final int p = (i - 1) >>> 1;
+			if (isMinLevel(i)) {
+				if (key[h[i]] > key[h[p]]) {
+					swap(i, p);
+					pushUpMax(p);
+				} else {
+					pushUpMin(i);
+				}
 			} else {
+				if (key[h[i]] < key[h[p]]) {
+					swap(i, p);
+					pushUpMin(p);
+				} else {
+					pushUpMax(i);
+				}
+			}
+		}
+
+		private void pushUpMin(int i) {
+			while (i > 2) {
+				final int g = (((i - 1) >>> 1) - 1) >>> 1;
+				if (key[h[i]] >= key[h[g]]) {
+					break;
+				}
+				swap(i, g);
+				i = g;
+			}
+		}
+
+		private void pushUpMax(int i) {
+			while (i > 2) {
+				final int g = (((i - 1) >>> 1) - 1) >>> 1;
+				if (key[h[i]] <= key[h[g]]) {
+					break;
+				}
+				swap(i, g);
+				i = g;
+			}
+		}
+
+		private void pushDown(int i) {
+			final boolean min = isMinLevel(i);
+			while (2 * i + 1 < size) {
+
+				// find the extreme element among the children and grandchildren
+				int m = 2 * i + 1;
+				final int last = Math.min(4 * i + 6, size - 1);
+				for (int j = 2 * i + 2; j <= Math.min(2 * i + 2, size - 1); ++j) {
+					if (min ? key[h[j]] < key[h[m]] : key[h[j]] > key[h[m]]) {
+						m = j;
+					}
+				}
+				for (int j = 4 * i + 3; j <= last; ++j) {
+					if (min ? key[h[j]] < key[h[m]] : key[h[j]] > key[h[m]]) {
+						m = j;
+					}
+				}
+				if (m <= 2 * i + 2) {
+
+					// extreme element is a child
+					if (min ? key[h[m]] < key[h[i]] : key[h[m]] > key[h[i]]) {
+						swap(m, i);
+					}
+					return;
+				}
 
-				// tie-breaker
-				return (int) (k1 - k2);
+				// extreme element is a grandchild
+				if (!(min ? key[h[m]] < key[h[i]] : key[h[m]] > key[h[i]])) {
+					return;
+				}
+				swap(m, i);
+				final int p = (m - 1) >>> 1;
+				if (min ? key[h[m]] > key[h[p]] : key[h[m]] < key[h[p]]) {
+					swap(m, p);
+				}
+				i = m;
 			}
 		}
 	}
@@ -73,14 +189,18 @@ public final class CrsAlgorithm extends GradientFreeOptimizer {
 		int npts;
 		double[] psf;
 		double[][] psx;
-		double[] px;
-		double pf;
-		TreeSet<RbNode> t;
+		MinMaxHeap t;
+
+		// trial points
+		double[][] px;
+		double[] pf;
+		int[] mutation;
 	}
 
 	// algorithm parameters
 	private final double myTolF;
-	private final int myMaxEvals, myPopSize, myMaxMutations;
+	private final int myMaxEvals, myPopSize, myMaxMutations, myBatch;
+	private final boolean myParallel;
 
 	// problem parameters
 	private Function<? super double[], Double> myFunc;
@@ -100,14 +220,34 @@ public final class CrsAlgorithm extends GradientFreeOptimizer {
 	 * @param maxEvaluations
 	 * @param populationSize
 	 * @param numberMutations
+	 * @param batchSize
+	 * @param parallel
 	 */
 	public CrsAlgorithm(final double toleranceX, final double toleranceF, final int maxEvaluations,
-			final int populationSize, final int numberMutations) {
+			final int populationSize, final int numberMutations, final int batchSize, final boolean parallel) {
 		super(toleranceX);
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be at least 1.");
+		}
 		myTolF = toleranceF;
 		myMaxEvals = maxEvaluations;
 		myPopSize = populationSize;
 		myMaxMutations = numberMutations;
+		myBatch = batchSize;
+		myParallel = parallel;
+	}
+
+	/**
+	 * 
+	 * @param toleranceX
+	 * @param toleranceF
+	 * @param maxEvaluations
+	 * @param populationSize
+	 * @param numberMutations
+	 */
+	public CrsAlgorithm(final double toleranceX, final double toleranceF, final int maxEvaluations,
+			final int populationSize, final int numberMutations) {
+		this(toleranceX, toleranceF, maxEvaluations, populationSize, numberMutations, 1, false);
 	}
 
 	/**
@@ -144,22 +284,24 @@ public final class CrsAlgorithm extends GradientFreeOptimizer {
 
 	@Override
 	public final void iterate() {
-		crs_trial(data, myMaxEvals, myMaxMutations);
-		final RbNode best = data.t.first();
-		if (best.fx < minF) {
-			if (Math.abs(best.fx - minF) <= myTolF) {
+		crs_trial(data, myMaxEvals, myMaxMutations, myParallel);
+		final int best = data.t.min();
+		final double bestf = data.psf[best];
+		final double[] bestx = data.psx[best];
+		if (bestf < minF) {
+			if (Math.abs(bestf - minF) <= myTolF) {
 				done = true;
 			}
 			double dx = 0.0;
 			for (int i = 0; i < n; ++i) {
-				final double dxi = best.x[i] - x[i];
+				final double dxi = bestx[i] - x[i];
 				dx += dxi * dxi;
 			}
 			if (dx <= myTol) {
 				done = true;
 			}
-			minF = best.fx;
-			System.arraycopy(best.x, 0, x, 0, n);
+			minF = bestf;
+			System.arraycopy(bestx, 0, x, 0, n);
 		}
 		if (data.evals >= myMaxEvals) {
 			done = true;
@@ -185,12 +327,12 @@ public final class CrsAlgorithm extends GradientFreeOptimizer {
 		x = Arrays.copyOf(guess, n);
 		minF = Double.POSITIVE_INFINITY;
 		data = new CrsData();
-		crs_init(data, n, x, myLower, myUpper, myFunc, myPopSize);
+		crs_init(data, n, x, myLower, myUpper, myFunc, myPopSize, myBatch, myParallel);
 
 		// set best element to current guess
-		final RbNode best = data.t.first();
-		minF = best.fx;
-		System.arraycopy(best.x, 0, x, 0, n);
+		final int best = data.t.min();
+		minF = data.psf[best];
+		System.arraycopy(data.psx[best], 0, x, 0, n);
 	}
 
 	/**
@@ -210,12 +352,12 @@ public final class CrsAlgorithm extends GradientFreeOptimizer {
 		return new MultivariateOptimizerSolution(Arrays.copyOf(x, n), data.evals, 0, false);
 	}
 
-	private static void random_trial(final CrsData d, final RbNode best) {
+	private static void random_trial(final CrsData d, final int best, final double[] px) {
 		final int n = d.n;
 
 		// initialize x to x_0 = best point
-		System.arraycopy(best.x, 0, d.px, 0, n);
-		final int i0 = best.i_ps;
+		System.arraycopy(d.psx[best], 0, px, 0, n);
+		final int i0 = best;
 
 		// which of remaining n points is "x_n", i.e. which to reflect through ...
 		// this is necessary since we generate the remaining points in order, so
@@ -254,11 +396,11 @@ public final class CrsAlgorithm extends GradientFreeOptimizer {
 				if (jn-- == 0) {
 
 					// point to reflect through
-					BlasMath.daxpym(n, -0.5 * n, d.psx[i], 1, d.px, 1);
+					BlasMath.daxpym(n, -0.5 * n, d.psx[i], 1, px, 1);
 				} else {
 
 					// point to include in centroid
-					BlasMath.dxpym(n, d.psx[i], 1, d.px, 1);
+					BlasMath.dxpym(n, d.psx[i], 1, px, 1);
 				}
 				++i;
 				if (i == i0) {
@@ -274,64 +416,96 @@ public final class CrsAlgorithm extends GradientFreeOptimizer {
 			if (jn-- == 0) {
 
 				// point to reflect through
-				BlasMath.daxpym(n, -0.5 * n, d.psx[i], 1, d.px, 1);
+				BlasMath.daxpym(n, -0.5 * n, d.psx[i], 1, px, 1);
 			} else {
 
 				// point to include in centroid
-				BlasMath.dxpym(n, d.psx[i], 1, d.px, 1);
+				BlasMath.dxpym(n, d.psx[i], 1, px, 1);
 			}
 		}
 
 		// re-normalize
 		for (int k = 0; k < n; ++k) {
-			d.px[k] *= 2.0 / n;
-			if (d.px[k] > d.ub[k]) {
-				d.px[k] = d.ub[k];
-			} else if (d.px[k] < d.lb[k]) {
-				d.px[k] = d.lb[k];
+			px[k] *= 2.0 / n;
+			if (px[k] > d.ub[k]) {
+				px[k] = d.ub[k];
+			} else if (px[k] < d.lb[k]) {
+				px[k] = d.lb[k];
 			}
 		}
 	}
 
-	private static void crs_trial(final CrsData d, final int maxevls, final int numMutations) {
-		final RbNode best = d.t.first();
-		final RbNode worst = d.t.last();
-		int mutation = numMutations;
-		int n = d.n;
-		random_trial(d, best);
+	private static void crs_trial(final CrsData d, final int maxevls, final int numMutations,
+			final boolean parallel) {
+		final int best = d.t.min();
+		final double[] bestx = d.psx[best];
+		final int n = d.n;
+
+		// each trial point starts from a random trial
+		final int batch = d.px.length;
+		Arrays.fill(d.mutation, -1);
 		do {
-			d.pf = d.f.apply(d.px);
-			++d.evals;
-			if (d.pf < worst.fx) {
-				break;
-			}
-			if (d.evals >= maxevls) {
+			final int nb = Math.min(batch, maxevls - d.evals);
+			if (nb <= 0) {
 				return;
 			}
-			if (mutation != 0) {
-				for (int i = 0; i < n; ++i) {
-					final double w = RAND.nextDouble();
-					d.px[i] = best.x[i] * (1.0 + w) - w * d.px[i];
-					if (d.px[i] > d.ub[i]) {
-						d.px[i] = d.ub[i];
-					} else if (d.px[i] < d.lb[i]) {
-						d.px[i] = d.lb[i];
+
+			// generate the trial points: a failed trial point is mutated a given
+			// number of times before it is replaced by a new random trial
+			for (int s = 0; s < nb; ++s) {
+				final double[] px = d.px[s];
+				if (d.mutation[s] > 0) {
+					for (int i = 0; i < n; ++i) {
+						final double w = RAND.nextDouble();
+						px[i] = bestx[i] * (1.0 + w) - w * px[i];
+						if (px[i] > d.ub[i]) {
+							px[i] = d.ub[i];
+						} else if (px[i] < d.lb[i]) {
+							px[i] = d.lb[i];
+						}
 					}
+					--d.mutation[s];
+				} else {
+					random_trial(d, best, px);
+					d.mutation[s] = numMutations;
 				}
-				--mutation;
-			} else {
-				random_trial(d, best);
-				mutation = numMutations;
+			}
+
+			// evaluate the trial points
+			evaluate(d, nb, parallel);
+
+			// replace the worst points in the population by successful trials
+			boolean success = false;
+			for (int s = 0; s < nb; ++s) {
+				final int worst = d.t.max();
+				if (d.pf[s] < d.psf[worst]) {
+					d.t.removeMax();
+					d.psf[worst] = d.pf[s];
+					System.arraycopy(d.px[s], 0, d.psx[worst], 0, n);
+					d.t.add(worst);
+					d.mutation[s] = -1;
+					success = true;
+				}
+			}
+			if (success) {
+				return;
 			}
 		} while (true);
-		d.t.remove(worst);
-		worst.fx = d.pf;
-		System.arraycopy(d.px, 0, worst.x, 0, n);
-		d.t.add(worst);
+	}
+
+	private static void evaluate(final CrsData d, final int nb, final boolean parallel) {
+		if (parallel && nb > 1) {
+			IntStream.range(0, nb).parallel().forEach(s -> d.pf[s] = d.f.apply(d.px[s]));
+		} else {
+			for (int s = 0; s < nb; ++s) {
+				d.pf[s] = d.f.apply(d.px[s]);
+			}
+		}
+		d.evals += nb;
 	}
 
 	private static void crs_init(final CrsData d, final int n, final double[] x, final double[] lb, final double[] ub,
-			final Function<? super double[], Double> f, final int pop) {
+			final Function<? super double[], Double> f, final int pop, final int batch, final boolean parallel) {
 		if (pop == 0) {
 
 			/*
@@ -357,31 +531,29 @@ public final class CrsAlgorithm extends GradientFreeOptimizer {
 		d.lb = lb;
 		d.psx = new double[d.npts][n];
 		d.psf = new double[d.npts];
-		d.px = new double[n];
-		d.pf = 0.0;
-		d.t = new TreeSet<>();
+		d.px = new double[batch][n];
+		d.pf = new double[batch];
+		d.mutation = new int[batch];
+		d.t = new MinMaxHeap(d.npts, d.psf);
 
 		// generate initial points randomly, plus starting guess
 		System.arraycopy(x, 0, d.psx[0], 0, n);
-		d.psf[0] = f.apply(x);
-		++d.evals;
-		final RbNode node = new RbNode();
-		node.x = d.psx[0];
-		node.fx = d.psf[0];
-		node.i_ps = 0;
-		d.t.add(node);
 		for (int i = 1; i < d.npts; ++i) {
 			final double[] k = d.psx[i];
 			for (int j = 0; j < n; ++j) {
 				k[j] = lb[j] + (ub[j] - lb[j]) * RAND.nextDouble();
 			}
-			d.psf[i] = f.apply(k);
-			++d.evals;
-			final RbNode node_i = new RbNode();
-			node_i.x = k;
-			node_i.fx = d.psf[i];
-			node_i.i_ps = i;
-			d.t.add(node_i);
+		}
+		if (parallel) {
+			IntStream.range(0, d.npts).parallel().forEach(i -> d.psf[i] = f.apply(d.psx[i]));
+		} else {
+			for (int i = 0; i < d.npts; ++i) {
+				d.psf[i] = f.apply(d.psx[i]);
+			}
+		}
+		d.evals += d.npts;
+		for (int i = 0; i < d.npts; ++i) {
+			d.t.add(i);
 		}
 	}
 }
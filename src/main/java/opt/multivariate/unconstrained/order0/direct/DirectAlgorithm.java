@@ -26,29 +26,328 @@ package opt.multivariate.unconstrained.order0.direct;
 
 import java.util.Arrays;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import opt.multivariate.GradientFreeOptimizer;
 import opt.multivariate.MultivariateOptimizerSolution;
 
 /**
- * 
+ * In parallel mode, the sample points of all potentially optimal
+ * hyperrectangles selected in an iteration are created first and evaluated
+ * concurrently, before the rectangles are divided and inserted into the lists.
+ * In this case, the objective function must be thread-safe.
+ *
+ * The hyperrectangles are kept in a growable store, so memory is proportional
+ * to the number of rectangles actually created rather than to the evaluation
+ * budget, and there is no limit on the problem dimension. The rectangles of
+ * each level are kept in a binary heap ordered by function value, so the
+ * potentially optimal rectangles are found and updated in O(log n) time.
+ *
+ * The evaluation budget is checked before each hyperrectangle is divided, so a
+ * run may exceed maxEvals by at most the 2n - 1 further samples of the last
+ * division. While no feasible point has been found, the budget is extended as
+ * in the original code.
+ *
  * REFERENCES:
- * 
+ *
  * [1] Jones, Donald R., Cary D. Perttunen, and Bruce E. Stuckman. "Lipschitzian
  * optimization without the Lipschitz constant." Journal of optimization Theory
  * and Applications 79.1 (1993): 157-181.
- * 
+ *
  * [2] Gablonsky, Joerg M., and Carl T. Kelley. "A locally-biased form of the
  * DIRECT algorithm." Journal of Global Optimization 21.1 (2001): 27-37.
  */
 public final class DirectAlgorithm extends GradientFreeOptimizer {
 
+	/**
+	 * Growable storage of hyperrectangles, indexed from 1 as in the original
+	 * code. The centers are stored in chunks of flat arrays. Since DIRECT always
+	 * trisects all of the longest sides of a rectangle, the side lengths of a
+	 * rectangle take at most two consecutive levels, so they are stored as a base
+	 * level plus one bit per dimension. The rectangles of each level are kept in
+	 * an indexed binary heap ordered by function value, and then by order of
+	 * insertion, which reproduces the order of the sorted lists of the original
+	 * code.
+	 */
+	private static final class RectangleStore {
+
+		private static final int CHUNK_BITS = 10, CHUNK = 1 << CHUNK_BITS, MASK = CHUNK - 1;
+
+		private final int n, words;
+		private double[][] c, f;
+		private byte[][] flag;
+		private int[][] base, level, hpos;
+		private long[][] bits, seq;
+		private int size;
+
+		private final int[][] heap;
+		private final int[] hsize;
+		private long nextseq, frontseq;
+		private int[] stack;
+
+		RectangleStore(final int dim, final int maxdeep) {
+			n = dim;
+			words = (n + 63) >>> 6;
+			c = new double[16][];
+			f = new double[16][];
+			flag = new byte[16][];
+			base = new int[16][];
+			level = new int[16][];
+			hpos = new int[16][];
+			bits = new long[16][];
+			seq = new long[16][];
+			heap = new int[maxdeep + 2][];
+			hsize = new int[maxdeep + 2];
+			nextseq = 1L;
+			frontseq = 0L;
+			stack = new int[16];
+		}
+
+		final int size() {
+			return size;
+		}
+
+		final int add() {
+			final int k = size >>> CHUNK_BITS;
+			if ((size & MASK) == 0) {
+				if (k == c.length) {
+					final int len = k << 1;
+					c = Arrays.copyOf(c, len);
+					f = Arrays.copyOf(f, len);
+					flag = Arrays.copyOf(flag, len);
+					base = Arrays.copyOf(base, len);
+					level = Arrays.copyOf(level, len);
+					hpos = Arrays.copyOf(hpos, len);
+					bits = Arrays.copyOf(bits, len);
+					seq = Arrays.copyOf(seq, len);
+				}
+				c[k] = new double[CHUNK * n];
+				f[k] = new double[CHUNK];
+				flag[k] = new byte[CHUNK];
+				base[k] = new int[CHUNK];
+				level[k] = new int[CHUNK];
+				hpos[k] = new int[CHUNK];
+				bits[k] = new long[CHUNK * words];
+				seq[k] = new long[CHUNK];
+			}
+			hpos[k][size & MASK] = -1;
+			++size;
+			return size;
+		}
+
+		final double c(final int pos, final int i) {
+			return c[(pos - 1) >>> CHUNK_BITS][((pos - 1) & MASK) * n + i - 1];
+		}
+
+		final void setC(final int pos, final int i, final double value) {
+			c[(pos - 1) >>> CHUNK_BITS][((pos - 1) & MASK) * n + i - 1] = value;
+		}
+
+		final double f(final int pos) {
+			return f[(pos - 1) >>> CHUNK_BITS][(pos - 1) & MASK];
+		}
+
+		final void setF(final int pos, final double value) {
+			f[(pos - 1) >>> CHUNK_BITS][(pos - 1) & MASK] = value;
+		}
+
+		final double flag(final int pos) {
+			return flag[(pos - 1) >>> CHUNK_BITS][(pos - 1) & MASK];
+		}
+
+		final void setFlag(final int pos, final double value) {
+			flag[(pos - 1) >>> CHUNK_BITS][(pos - 1) & MASK] = (byte) value;
+		}
+
+		final int length(final int pos, final int i) {
+			final int k = (pos - 1) >>> CHUNK_BITS, off = (pos - 1) & MASK;
+			final long word = bits[k][off * words + ((i - 1) >>> 6)];
+			return base[k][off] + (int) ((word >>> (i - 1)) & 1L);
+		}
+
+		final void setLength(final int pos, final int i, final int value) {
+			final int k = (pos - 1) >>> CHUNK_BITS, off = (pos - 1) & MASK;
+			final int b = base[k][off], w = off * words + ((i - 1) >>> 6);
+			final long mask = 1L << (i - 1);
+			if (value == b) {
+				bits[k][w] &= ~mask;
+			} else if (value == b + 1) {
+				bits[k][w] |= mask;
+
+				// when all sides are at the upper level, promote the base level
+				int count = 0;
+				for (int j = 0; j < words; ++j) {
+					count += Long.bitCount(bits[k][off * words + j]);
+				}
+				if (count == n) {
+					Arrays.fill(bits[k], off * words, off * words + words, 0L);
+					base[k][off] = b + 1;
+				}
+			} else {
+				throw new IllegalStateException("Side lengths of a rectangle must span at most two levels.");
+			}
+		}
+
+		final int minLength(final int pos) {
+			return base[(pos - 1) >>> CHUNK_BITS][(pos - 1) & MASK];
+		}
+
+		final void copy(final int from, final int to) {
+			final int kf = (from - 1) >>> CHUNK_BITS, of = (from - 1) & MASK;
+			final int kt = (to - 1) >>> CHUNK_BITS, ot = (to - 1) & MASK;
+			System.arraycopy(c[kf], of * n, c[kt], ot * n, n);
+			System.arraycopy(bits[kf], of * words, bits[kt], ot * words, words);
+			base[kt][ot] = base[kf][of];
+		}
+
+		final int head(final int deep) {
+			return hsize[deep + 1] > 0 ? heap[deep + 1][0] : 0;
+		}
+
+		final boolean contains(final int pos) {
+			return hpos[(pos - 1) >>> CHUNK_BITS][(pos - 1) & MASK] >= 0;
+		}
+
+		final void insert(final int deep, final int pos, final boolean beforeTies) {
+			final int k = (pos - 1) >>> CHUNK_BITS, off = (pos - 1) & MASK;
+			if (beforeTies) {
+				--frontseq;
+				seq[k][off] = frontseq;
+			} else {
+				seq[k][off] = nextseq;
+				++nextseq;
+			}
+			level[k][off] = deep;
+			final int h = deep + 1;
+			if (heap[h] == null) {
+				heap[h] = new int[16];
+			} else if (hsize[h] == heap[h].length) {
+				heap[h] = Arrays.copyOf(heap[h], hsize[h] << 1);
+			}
+			heap[h][hsize[h]] = pos;
+			hpos[k][off] = hsize[h];
+			++hsize[h];
+			siftUp(h, hsize[h] - 1);
+		}
+
+		final void remove(final int pos) {
+			final int k = (pos - 1) >>> CHUNK_BITS, off = (pos - 1) & MASK;
+			final int h = level[k][off] + 1, i = hpos[k][off];
+			hpos[k][off] = -1;
+			--hsize[h];
+			if (i < hsize[h]) {
+				final int last = heap[h][hsize[h]];
+				heap[h][i] = last;
+				setHpos(last, i);
+				siftDown(h, i);
+				siftUp(h, hpos[(last - 1) >>> CHUNK_BITS][(last - 1) & MASK]);
+			}
+		}
+
+		final int ties(final int deep, final double tol, final int[] out, final int limit) {
+
+			// collect the rectangles in the level, other than the head, whose
+			// function values are within tol of the head (at most limit of them)
+			final int h = deep + 1;
+			if (hsize[h] == 0) {
+				return 0;
+			}
+			final double fhead = f(heap[h][0]);
+			int count = 0, top = 0;
+			stack[top++] = 0;
+			while (top > 0 && count < limit) {
+				final int i = stack[--top];
+				final int pos = heap[h][i];
+				if (f(pos) - fhead <= tol) {
+					if (i > 0) {
+						out[count++] = pos;
+					}
+					if (top + 2 > stack.length) {
+						stack = Arrays.copyOf(stack, stack.length << 1);
+					}
+					if (2 * i + 1 < hsize[h]) {
+						stack[top++] = 2 * i + 1;
+					}
+					if (2 * i + 2 < hsize[h]) {
+						stack[top++] = 2 * i + 2;
+					}
+				}
+			}
+
+			// sort them by key, as they appear in the original sorted list
+			for (int i = 1; i < count; ++i) {
+				final int t = out[i];
+				int j = i - 1;
+				while (j >= 0 && less(t, out[j])) {
+					out[j + 1] = out[j];
+					--j;
+				}
+				out[j + 1] = t;
+			}
+			return count;
+		}
+
+		private boolean less(final int a, final int b) {
+			final double fa = f(a), fb = f(b);
+			if (fa < fb) {
+				return true;
+			}
+			if (fa == fb) {
+				return seq[(a - 1) >>> CHUNK_BITS][(a - 1) & MASK] < seq[(b - 1) >>> CHUNK_BITS][(b - 1) & MASK];
+			}
+			return false;
+		}
+
+		private void setHpos(final int pos, final int i) {
+			hpos[(pos - 1) >>> CHUNK_BITS][(pos - 1) & MASK] = i;
+		}
+
+		private void siftUp(final int h, int i) {
+			final int[] hp = heap[h];
+			final int pos = hp[i];
+			while (i > 0) {
+				final int parent = (i - 1) >>> 1;
+				if (!less(pos, hp[parent])) {
+					break;
+				}
+				hp[i] = hp[parent];
+				setHpos(hp[i], i);
+				i = parent;
+			}
+			hp[i] = pos;
+			setHpos(pos, i);
+		}
+
+		private void siftDown(final int h, int i) {
+			final int[] hp = heap[h];
+			final int sz = hsize[h];
+			final int pos = hp[i];
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= sz) {
+					break;
+				}
+				if (child + 1 < sz && less(hp[child + 1], hp[child])) {
+					++child;
+				}
+				if (!less(hp[child], pos)) {
+					break;
+				}
+				hp[i] = hp[child];
+				setHpos(hp[i], i);
+				i = child;
+			}
+			hp[i] = pos;
+			setHpos(pos, i);
+		}
+	}
+
 	private static final int DEF_MAXDEEP = 600;
 	private static final int DEF_MAXDIV = 3000;
-	private static final int DEF_MAXDIM = 64;
 
-	private final int maxfunc, maxiters, maxdeep, maxdiv, maxdim, method;
+	private final int maxfunc, maxiters, maxdeep, maxdiv, method;
 	private final double[] lx, ux;
+	private final boolean myParallel;
 	private int jones;
 	private double volper, sigmaper;
 
@@ -64,21 +363,42 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 	 * @param algorithmMethod
 	 * @param lower
 	 * @param upper
+	 * @param parallel
 	 */
 	public DirectAlgorithm(final double tolerance, final double volperParam, final double sigmaperParam,
 			final int maxEvals, final int maxIterations, final int maxDepth, final int maxDivs,
-			final int algorithmMethod, final double[] lower, final double[] upper) {
+			final int algorithmMethod, final double[] lower, final double[] upper, final boolean parallel) {
 		super(tolerance);
-		maxfunc = maxEvals + 21;
+		maxfunc = maxEvals;
 		maxiters = maxIterations;
 		maxdeep = maxDepth;
 		maxdiv = maxDivs;
-		maxdim = DEF_MAXDIM;
 		volper = volperParam;
 		sigmaper = sigmaperParam;
 		method = algorithmMethod;
 		lx = lower;
 		ux = upper;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param volperParam
+	 * @param sigmaperParam
+	 * @param maxEvals
+	 * @param maxIterations
+	 * @param maxDepth
+	 * @param maxDivs
+	 * @param algorithmMethod
+	 * @param lower
+	 * @param upper
+	 */
+	public DirectAlgorithm(final double tolerance, final double volperParam, final double sigmaperParam,
+			final int maxEvals, final int maxIterations, final int maxDepth, final int maxDivs,
+			final int algorithmMethod, final double[] lower, final double[] upper) {
+		this(tolerance, volperParam, sigmaperParam, maxEvals, maxIterations, maxDepth, maxDivs, algorithmMethod,
+				lower, upper, false);
 	}
 
 	/**
@@ -94,6 +414,22 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 		this(tolerance, volperParam, sigmaperParam, maxEvals, maxEvals, DEF_MAXDEEP, DEF_MAXDIV, 1, lower, upper);
 	}
 
+	/**
+	 *
+	 * @param tolerance
+	 * @param volperParam
+	 * @param sigmaperParam
+	 * @param maxEvals
+	 * @param lower
+	 * @param upper
+	 * @param parallel
+	 */
+	public DirectAlgorithm(final double tolerance, final double volperParam, final double sigmaperParam,
+			final int maxEvals, final double[] lower, final double[] upper, final boolean parallel) {
+		this(tolerance, volperParam, sigmaperParam, maxEvals, maxEvals, DEF_MAXDEEP, DEF_MAXDIV, 1, lower, upper,
+				parallel);
+	}
+
 	@Override
 	public final void initialize(final Function<? super double[], Double> func, final double[] guess) {
 		// nothing to do here
@@ -111,7 +447,7 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 		final int n = guess.length;
 		final double[] x = Arrays.copyOf(guess, n);
 		final double[] eps = { myTol }, fmin = { func.apply(x) };
-		final int[] maxf = { maxfunc - 21 }, maxT = { maxiters }, Ierror = new int[1];
+		final int[] maxf = { maxfunc }, maxT = { maxiters }, Ierror = new int[1];
 		final double fglobal = -1.0e100, fglper = 0.0;
 
 		// call main subroutine
@@ -124,19 +460,20 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 			final int algmethod, final int[] Ierror, final double fglobal, final double fglper, final double volper,
 			final double sigmaper) {
 
-		final int[] iepschange = new int[1], free = new int[1], oops = new int[1], actdeep = new int[1],
-				maxi = new int[1], minpos = new int[1], Ifeasiblef = new int[1], IInfeasiblef = new int[1],
-				maxpos = new int[1], start = new int[1];
+		final int[] iepschange = new int[1], oops = new int[1], actdeep = new int[1], maxi = new int[1],
+				minpos = new int[1], Ifeasiblef = new int[1], IInfeasiblef = new int[1], maxpos = new int[1],
+				start = new int[1];
 		final double[] epsfix = new double[1], fmax = new double[1];
 		double divfactor, delta, kmax;
 		int t, i, j, help, numfunc, cheat, tstart, newtosample, pos1, mdeep, oldmaxf, increase, freeold = 0,
-				actdeep_div, actmaxdeep, oldpos;
+				actdeep_div, actmaxdeep, oldpos, nsel, nsamples;
+		boolean stopdeep;
 
-		final double[][] f = new double[maxfunc][2], c = new double[maxfunc][maxdim];
-		final double[] thirds = new double[maxdeep + 1], levels = new double[maxdeep + 1], w = new double[maxdim],
-				oldl = new double[maxdim], oldu = new double[maxdim];
-		final int[][] S = new int[maxdiv][2], length = new int[maxfunc][maxdim], list2 = new int[maxdim][2];
-		final int[] anchor = new int[maxdeep + 2], point = new int[maxfunc], arrayI = new int[maxdim];
+		final double[] thirds = new double[maxdeep + 1], levels = new double[maxdeep + 1], w = new double[n],
+				oldl = new double[n], oldu = new double[n];
+		final int[][] S = new int[maxdiv][2], list2 = new int[n][2], sel = new int[maxdiv][4];
+		final int[] arrayI = new int[n], ties = new int[maxdiv + 1];
+		int[] samples = new int[n + n];
 
 		// Start of code
 		jones = algmethod;
@@ -151,7 +488,7 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 		mdeep = maxdeep;
 
 		// Write the header of the logfile
-		DIRheader(n, eps, maxf[0], l, u, maxfunc, Ierror, epsfix, iepschange);
+		DIRheader(n, eps, maxf[0], l, u, Ierror, epsfix, iepschange);
 
 		// If an error has occured while writing the header
 		if (Ierror[0] < 0) {
@@ -173,7 +510,7 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 		increase = 0;
 
 		// Initialiase the lists
-		DIRInitList(anchor, free, point, f, maxfunc, maxdeep);
+		final RectangleStore store = new RectangleStore(n, maxdeep);
 
 		// Call the routine to initialise the mapping of x
 		DIRpreprc(u, l, n, l, u, oops);
@@ -185,18 +522,8 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 
 		// Initialise the algorithm DIRECT
 		// Added variable to keep track of the maximum value found
-		DIRInit(f, fcn, c, length, actdeep, point, anchor, free, arrayI, maxi, list2, w, x, l, u, fmin, minpos, thirds,
-				levels, maxfunc, maxdeep, n, maxdim, fmax, Ifeasiblef, IInfeasiblef, Ierror);
-
-		// Added error checking
-		if (Ierror[0] < 0) {
-			if (Ierror[0] == -4) {
-				return;
-			}
-			if (Ierror[0] == -5) {
-				return;
-			}
-		}
+		DIRInit(store, fcn, actdeep, arrayI, maxi, list2, w, x, l, u, fmin, minpos, thirds, levels, maxdeep, n, fmax,
+				Ifeasiblef, IInfeasiblef);
 		numfunc = 1 + maxi[0] + maxi[0];
 		actmaxdeep = 1;
 		oldpos = 0;
@@ -207,12 +534,11 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 
 			// Choose the sample points
 			actdeep[0] = actmaxdeep;
-			DIRChoose(anchor, S, maxdeep, f, fmin[0], eps[0], levels, maxpos, length, maxdeep, n, cheat, kmax,
-					Ifeasiblef[0]);
+			DIRChoose(store, S, maxdeep, fmin[0], eps[0], levels, maxpos, maxdeep, n, cheat, kmax, Ifeasiblef[0]);
 
 			// Add other hyperrectangles to S
 			if (algmethod == 0) {
-				DIRDoubleInsert(anchor, S, maxpos, point, f, maxdiv, Ierror);
+				DIRDoubleInsert(store, S, maxpos, maxdiv, ties, Ierror);
 				if (Ierror[0] == -6) {
 					return;
 				}
@@ -221,76 +547,100 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 
 			// Initialise the number of sample points in this outer loop
 			newtosample = 0;
+			nsel = 0;
+			stopdeep = false;
+
+			// Remove the selected hyperrectangles from the lists and create
+			// all their sample points
 			for (j = 1; j <= maxpos[0]; ++j) {
 				actdeep[0] = S[j - 1][2 - 1];
 
 				// If the actual index is a point to sample, do it
 				if (S[j - 1][1 - 1] > 0) {
 
+					// Stop dividing once the samples reach the budget
+					if (numfunc + newtosample + newtosample >= maxf[0]) {
+						break;
+					}
+
 					// Calculate the value delta used for sampling points
-					actdeep_div = DIRGetmaxDeep(S[j - 1][1 - 1], length, n);
+					actdeep_div = DIRGetmaxDeep(S[j - 1][1 - 1], store, n);
 					delta = thirds[actdeep_div + 1];
 					actdeep[0] = S[j - 1][2 - 1];
 
 					// If the current dept of division is only one
 					// under the maximal allowed
 					if (actdeep[0] + 1 >= mdeep) {
-						Ierror[0] = -6;
-
-						// Store the position of the minimum in x
-						for (i = 1; i <= n; ++i) {
-							x[i - 1] = c[minpos[0] - 1][i - 1] * l[i - 1] + l[i - 1] * u[i - 1];
-						}
-						System.arraycopy(oldu, 0, u, 0, n);
-						System.arraycopy(oldl, 0, l, 0, n);
-
-						// Store the number of function evaluations in maxf
-						maxf[0] = numfunc;
-						return;
+						stopdeep = true;
+						break;
 					}
 					actmaxdeep = Math.max(actdeep[0], actmaxdeep);
 					help = S[j - 1][1 - 1];
-					if (!(anchor[actdeep[0] + 1] == help)) {
-						pos1 = anchor[actdeep[0] + 1];
-						while (!(point[pos1 - 1] == help)) {
-							pos1 = point[pos1 - 1];
-						}
-						point[pos1 - 1] = point[help - 1];
-					} else {
-						anchor[actdeep[0] + 1] = point[help - 1];
-					}
+					store.remove(help);
 					if (actdeep[0] < 0) {
-						actdeep[0] = (int) f[help - 1][1 - 1];
+						actdeep[0] = (int) store.f(help);
 					}
 
 					// Get the Directions in which to decrease the interval-length
-					DIRGet_I(length, help, arrayI, maxi, n);
+					DIRGet_I(store, help, arrayI, maxi, n);
 
 					// Sample the function
-					DIRSamplepoints(c, arrayI, delta, help, start, length, free, maxi[0], point, n, oops);
-					if (oops[0] > 0) {
-						Ierror[0] = -4;
-						return;
-					}
+					DIRSamplepoints(store, arrayI, delta, help, start, maxi[0]);
 					newtosample += maxi[0];
+					sel[nsel][0] = help;
+					sel[nsel][1] = start[0];
+					sel[nsel][2] = maxi[0];
+					sel[nsel][3] = actdeep_div;
+					++nsel;
+				}
+			}
 
-					// Added variable to keep track of the maximum value found
-					DIRSamplef(c, start[0], length, f, free[0], maxi[0], point, fcn, x, l, fmin, minpos, u, n, fmax,
-							Ifeasiblef, IInfeasiblef);
-					if (oops[0] > 0) {
-						Ierror[0] = -5;
-						return;
-					}
+			// Evaluate the function at all new sample points of this iteration
+			if (samples.length < newtosample + newtosample) {
+				samples = new int[Math.max(newtosample + newtosample, samples.length << 1)];
+			}
+			nsamples = 0;
+			for (j = 1; j <= nsel; ++j) {
+				pos1 = sel[j - 1][1];
+				for (i = 1; i <= sel[j - 1][2] + sel[j - 1][2]; ++i) {
+					samples[nsamples] = pos1;
+					++nsamples;
+					++pos1;
+				}
+			}
+			DIRSampleEval(store, samples, nsamples, fcn, l, u, n, myParallel);
 
-					// Divide the intervalls
-					DIRDivide(start[0], actdeep_div, length, point, arrayI, help, list2, w, maxi[0], f);
+			// Divide the selected hyperrectangles in order
+			for (j = 1; j <= nsel; ++j) {
+				help = sel[j - 1][0];
+				start[0] = sel[j - 1][1];
+				maxi[0] = sel[j - 1][2];
+				actdeep_div = sel[j - 1][3];
 
-					// Insert the new intervalls into the list (sorted)
-					DIRInsertList(start, anchor, point, f, maxi[0], length, maxfunc, n, help);
+				// Added variable to keep track of the maximum value found
+				DIRSamplef(store, start[0], maxi[0], fmin, minpos, fmax, Ifeasiblef, IInfeasiblef);
 
-					// Increase the number of function evaluations
-					numfunc += (maxi[0] + maxi[0]);
-				}
+				// Divide the intervalls
+				DIRGet_I(store, help, arrayI, maxi, n);
+				DIRDivide(store, start[0], actdeep_div, arrayI, help, list2, w, maxi[0]);
+
+				// Insert the new intervalls into the list (sorted)
+				DIRInsertList(store, start[0], maxi[0], n, help);
+
+				// Increase the number of function evaluations
+				numfunc += (maxi[0] + maxi[0]);
+			}
+
+			// If the maximal depth of division was reached
+			if (stopdeep) {
+				Ierror[0] = -6;
+
+				// Store the position of the minimum in x
+				DIRStoreMin(store, minpos[0], x, l, u, oldl, oldu, n);
+
+				// Store the number of function evaluations in maxf
+				maxf[0] = numfunc;
+				return;
 			}
 			// End of main loop
 
@@ -298,7 +648,7 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 			// Calculate the index for the hyperrectangle
 			Ierror[0] = jones;
 			jones = 0;
-			actdeep_div = DIRGetlevel(minpos[0], length, n);
+			actdeep_div = DIRGetlevel(minpos[0], store, n);
 			jones = Ierror[0];
 
 			// Use precalculated values to calculate volume
@@ -307,11 +657,7 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 				Ierror[0] = 4;
 
 				// Store the position of the minimum in x
-				for (i = 1; i <= n; ++i) {
-					x[i - 1] = c[minpos[0] - 1][i - 1] * l[i - 1] + l[i - 1] * u[i - 1];
-				}
-				System.arraycopy(oldu, 0, u, 0, n);
-				System.arraycopy(oldl, 0, l, 0, n);
+				DIRStoreMin(store, minpos[0], x, l, u, oldl, oldu, n);
 
 				// Store the number of function evaluations in maxf
 				maxf[0] = numfunc;
@@ -319,17 +665,13 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 			}
 
 			// Calculate the measure for the hyperrectangle
-			actdeep_div = DIRGetlevel(minpos[0], length, n);
+			actdeep_div = DIRGetlevel(minpos[0], store, n);
 			delta = levels[actdeep_div];
 			if (delta <= sigmaper) {
 				Ierror[0] = 5;
 
 				// Store the position of the minimum in x
-				for (i = 1; i <= n; ++i) {
-					x[i - 1] = c[minpos[0] - 1][i - 1] * l[i - 1] + l[i - 1] * u[i - 1];
-				}
-				System.arraycopy(oldu, 0, u, 0, n);
-				System.arraycopy(oldl, 0, l, 0, n);
+				DIRStoreMin(store, minpos[0], x, l, u, oldl, oldu, n);
 
 				// Store the number of function evaluations in maxf
 				maxf[0] = numfunc;
@@ -341,11 +683,7 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 				Ierror[0] = 3;
 
 				// Store the position of the minimum in x
-				for (i = 1; i <= n; ++i) {
-					x[i - 1] = c[minpos[0] - 1][i - 1] * l[i - 1] + l[i - 1] * u[i - 1];
-				}
-				System.arraycopy(oldu, 0, u, 0, n);
-				System.arraycopy(oldl, 0, l, 0, n);
+				DIRStoreMin(store, minpos[0], x, l, u, oldl, oldu, n);
 
 				// Store the number of function evaluations in maxf
 				maxf[0] = numfunc;
@@ -354,9 +692,9 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 
 			// Find out if there are infeasible points which are near feasible ones
 			if (IInfeasiblef[0] > 0) {
-				DIRreplaceInf(free[0], freeold, f, c, thirds, length, anchor, point, u, l, maxfunc, n, fmax[0]);
+				DIRreplaceInf(store, freeold, thirds, u, l, n, fmax[0]);
 			}
-			freeold = free[0];
+			freeold = store.size() + 1;
 
 			// If iepschange = 1, we use the epsilon change formula from Jones
 			if (iepschange[0] == 1) {
@@ -372,16 +710,12 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 			}
 
 			// Check if the number of function evaluations done is larger
-			if (numfunc > maxf[0]) {
+			if (numfunc >= maxf[0]) {
 				if (Ifeasiblef[0] == 0) {
 					Ierror[0] = 1;
 
 					// Store the position of the minimum in x
-					for (i = 1; i <= n; ++i) {
-						x[i - 1] = c[minpos[0] - 1][i - 1] * l[i - 1] + l[i - 1] * u[i - 1];
-					}
-					System.arraycopy(oldu, 0, u, 0, n);
-					System.arraycopy(oldl, 0, l, 0, n);
+					DIRStoreMin(store, minpos[0], x, l, u, oldl, oldu, n);
 
 					// Store the number of function evaluations in maxf
 					maxf[0] = numfunc;
@@ -397,56 +731,72 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 		Ierror[0] = 2;
 
 		// Store the position of the minimum in x
-		for (i = 1; i <= n; ++i) {
-			x[i - 1] = c[minpos[0] - 1][i - 1] * l[i - 1] + l[i - 1] * u[i - 1];
+		DIRStoreMin(store, minpos[0], x, l, u, oldl, oldu, n);
+
+		// Store the number of function evaluations in maxf
+		maxf[0] = numfunc;
+	}
+
+	private static void DIRStoreMin(final RectangleStore store, final int minpos, final double[] x, final double[] l,
+			final double[] u, final double[] oldl, final double[] oldu, final int n) {
+		for (int i = 1; i <= n; ++i) {
+			x[i - 1] = store.c(minpos, i) * l[i - 1] + l[i - 1] * u[i - 1];
 		}
 		System.arraycopy(oldu, 0, u, 0, n);
 		System.arraycopy(oldl, 0, l, 0, n);
+	}
 
-		// Store the number of function evaluations in maxf
-		maxf[0] = numfunc;
+	private static void DIRSampleEval(final RectangleStore store, final int[] samples, final int nsamples,
+			final Function<? super double[], Double> fcn, final double[] l, final double[] u, final int n,
+			final boolean parallel) {
+		IntStream range = IntStream.range(0, nsamples);
+		if (parallel) {
+			range = range.parallel();
+		}
+		range.forEach(j -> {
+			final int pos = samples[j];
+			final double[] x = new double[n];
+			for (int i = 1; i <= n; ++i) {
+				x[i - 1] = (store.c(pos, i) + u[i - 1]) * l[i - 1];
+			}
+			store.setF(pos, fcn.apply(x));
+		});
 	}
 
-	private static void DIRSamplef(final double[][] c, final int nnew, final int[][] length, final double[][] f,
-			final int free, final int maxI, final int[] point, final Function<? super double[], Double> fcn,
-			final double[] x, final double[] l, final double[] fmin, final int[] minpos, final double[] u, final int n,
-			final double[] fmax, final int[] IFeasiblef, final int[] IInfeasiblef) {
+	private static void DIRSamplef(final RectangleStore store, final int nnew, final int maxI, final double[] fmin,
+			final int[] minpos, final double[] fmax, final int[] IFeasiblef, final int[] IInfeasiblef) {
 		int j, kret = 0;
 		int pos = nnew;
 		int helppoint = pos;
 		for (j = 1; j <= maxI + maxI; ++j) {
-			System.arraycopy(c[pos - 1], 0, x, 0, n);
-			final double[] farr = { f[pos - 1][1 - 1] };
-			DIRinfcn(fcn, x, l, u, n, farr);
-			f[pos - 1][1 - 1] = farr[0];
 			IInfeasiblef[0] = Math.max(IInfeasiblef[0], kret);
 			if (kret == 0) {
-				f[pos - 1][2 - 1] = 0.0;
+				store.setFlag(pos, 0.0);
 				IFeasiblef[0] = 0;
-				fmax[0] = Math.max(f[pos - 1][1 - 1], fmax[0]);
+				fmax[0] = Math.max(store.f(pos), fmax[0]);
 			}
 			if (kret >= 1) {
-				f[pos - 1][2 - 1] = 2.0;
-				f[pos - 1][1 - 1] = fmax[0];
+				store.setFlag(pos, 2.0);
+				store.setF(pos, fmax[0]);
 			}
 			if (kret == -1) {
-				f[pos - 1][2 - 1] = -1.0;
+				store.setFlag(pos, -1.0);
 			}
-			pos = point[pos - 1];
+			++pos;
 		}
 		pos = helppoint;
 		for (j = 1; j <= maxI + maxI; ++j) {
-			if ((f[pos - 1][1 - 1] < fmin[0]) && (f[pos - 1][2 - 1] == 0)) {
-				fmin[0] = f[pos - 1][1 - 1];
+			if ((store.f(pos) < fmin[0]) && (store.flag(pos) == 0)) {
+				fmin[0] = store.f(pos);
 				minpos[0] = pos;
 			}
-			pos = point[pos - 1];
+			++pos;
 		}
 	}
 
-	private void DIRChoose(final int[] anchor, final int[][] S, final int actdeep, final double[][] f,
-			final double fmin, final double eps, final double[] thirds, final int[] maxpos, final int[][] length,
-			final int maxdeep, final int n, final int cheat, final double kmax, final int Ifeasiblef) {
+	private void DIRChoose(final RectangleStore store, final int[][] S, final int actdeep, final double fmin,
+			final double eps, final double[] thirds, final int[] maxpos, final int maxdeep, final int n,
+			final int cheat, final double kmax, final int Ifeasiblef) {
 		double maxlower = 1.0e20;
 		int i, j, k, i_, j_;
 		double help2, helplower, helpgreater;
@@ -456,9 +806,9 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 		k = 1;
 		if (Ifeasiblef >= 1) {
 			for (j = 0; j <= actdeep; ++j) {
-				if (anchor[j + 1] > 0) {
-					S[k - 1][1 - 1] = anchor[j + 1];
-					S[k - 1][2 - 1] = DIRGetlevel(S[k - 1][1 - 1], length, n);
+				if (store.head(j) > 0) {
+					S[k - 1][1 - 1] = store.head(j);
+					S[k - 1][2 - 1] = DIRGetlevel(S[k - 1][1 - 1], store, n);
 					break;
 				}
 			}
@@ -467,18 +817,18 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 			return;
 		} else {
 			for (j = 0; j <= actdeep; ++j) {
-				if (anchor[j + 1] > 0) {
-					S[k - 1][1 - 1] = anchor[j + 1];
-					S[k - 1][2 - 1] = DIRGetlevel(S[k - 1][1 - 1], length, n);
+				if (store.head(j) > 0) {
+					S[k - 1][1 - 1] = store.head(j);
+					S[k - 1][2 - 1] = DIRGetlevel(S[k - 1][1 - 1], store, n);
 					++k;
 				}
 			}
 		}
 
 		novalue = 0;
-		if (anchor[0] > 0) {
-			novalue = anchor[0];
-			novaluedeep = DIRGetlevel(novalue, length, n);
+		if (store.head(-1) > 0) {
+			novalue = store.head(-1);
+			novaluedeep = DIRGetlevel(novalue, store, n);
 		}
 		maxpos[0] = k - 1;
 		for (j = k - 1; j <= maxdeep; ++j) {
@@ -493,9 +843,9 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 			for (i = 1; i <= j - 1; ++i) {
 				i_ = S[i - 1][1 - 1];
 				if ((i_ > 0) && !(i == j)) {
-					if (f[i_ - 1][2 - 1] <= 1.0) {
+					if (store.flag(i_) <= 1.0) {
 						help2 = thirds[S[i - 1][2 - 1]] - thirds[S[j - 1][2 - 1]];
-						help2 = (f[i_ - 1][1 - 1] - f[j_ - 1][1 - 1]) / help2;
+						help2 = (store.f(i_) - store.f(j_)) / help2;
 						if (help2 <= 0.0) {
 							breakflag = true;
 							break;
@@ -513,9 +863,9 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 			for (i = j + 1; i <= maxpos[0]; ++i) {
 				i_ = S[i - 1][1 - 1];
 				if ((i_ > 0) && !(i == j)) {
-					if (f[i_ - 1][2 - 1] <= 1.0) {
+					if (store.flag(i_) <= 1.0) {
 						help2 = thirds[S[i - 1][2 - 1]] - thirds[S[j - 1][2 - 1]];
-						help2 = (f[i_ - 1][1 - 1] - f[j_ - 1][1 - 1]) / help2;
+						help2 = (store.f(i_) - store.f(j_)) / help2;
 						if (help2 <= 0.0) {
 							breakflag = true;
 							break;
@@ -538,7 +888,7 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 				if ((cheat == 1) && (helplower > kmax)) {
 					helplower = kmax;
 				}
-				final double temp = f[j_ - 1][1 - 1] - helplower * thirds[S[j - 1][2 - 1]];
+				final double temp = store.f(j_) - helplower * thirds[S[j - 1][2 - 1]];
 				if (temp > (fmin - eps * Math.abs(fmin))) {
 					S[j - 1][1 - 1] = 0;
 				}
@@ -553,25 +903,22 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 		}
 	}
 
-	private static int DIRGetmaxDeep(final int pos, final int[][] length, final int n) {
-		int help = length[pos - 1][1 - 1];
-		for (int i = 2; i <= n; ++i) {
-			help = Math.min(help, length[pos - 1][i - 1]);
-		}
-		return help;
+	private static int DIRGetmaxDeep(final int pos, final RectangleStore store, final int n) {
+		return store.minLength(pos);
 	}
 
-	private int DIRGetlevel(final int pos, final int[][] length, final int n) {
+	private int DIRGetlevel(final int pos, final RectangleStore store, final int n) {
 		int help, i, p, k, DIRGetLevel;
 		if (jones == 0) {
-			help = length[pos - 1][1 - 1];
+			help = store.length(pos, 1);
 			k = help;
 			p = 1;
 			for (i = 2; i <= n; ++i) {
-				if (length[pos - 1][i - 1] < k) {
-					k = length[pos - 1][i - 1];
+				final int len = store.length(pos, i);
+				if (len < k) {
+					k = len;
 				}
-				if (length[pos - 1][i - 1] == help) {
+				if (len == help) {
 					++p;
 				}
 			}
@@ -581,185 +928,106 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 				DIRGetLevel = k * n + p;
 			}
 		} else {
-			help = length[pos - 1][1 - 1];
-			for (i = 2; i <= n; ++i) {
-				if (length[pos - 1][i - 1] < help) {
-					help = length[pos - 1][i - 1];
-				}
-			}
-			DIRGetLevel = help;
+			DIRGetLevel = DIRGetmaxDeep(pos, store, n);
 		}
 		return DIRGetLevel;
 	}
 
-	private static void DIRDoubleInsert(final int[] anchor, final int[][] S, final int[] maxpos, final int[] point,
-			final double[][] f, final int maxdiv, final int[] ierror) {
-		int iflag, i, pos, help, actdeep;
+	private static void DIRDoubleInsert(final RectangleStore store, final int[][] S, final int[] maxpos,
+			final int maxdiv, final int[] ties, final int[] ierror) {
+		int i, m, count, actdeep;
 		int oldmaxpos = maxpos[0];
 		for (i = 1; i <= oldmaxpos; ++i) {
 			if (S[i - 1][1 - 1] > 0) {
 				actdeep = S[i - 1][2 - 1];
-				help = anchor[actdeep + 1];
-				pos = point[help - 1];
-				iflag = 0;
-				while ((pos > 0) && (iflag == 0)) {
-					if (f[pos - 1][1 - 1] - f[help - 1][1 - 1] <= 1.0e-13) {
-						if (maxpos[0] < maxdiv) {
-							++maxpos[0];
-							S[maxpos[0] - 1][1 - 1] = pos;
-							S[maxpos[0] - 1][2 - 1] = actdeep;
-							pos = point[pos - 1];
-						} else {
-							ierror[0] = -6;
-							return;
-						}
+				count = store.ties(actdeep, 1.0e-13, ties, maxdiv - maxpos[0] + 1);
+				for (m = 0; m < count; ++m) {
+					if (maxpos[0] < maxdiv) {
+						++maxpos[0];
+						S[maxpos[0] - 1][1 - 1] = ties[m];
+						S[maxpos[0] - 1][2 - 1] = actdeep;
 					} else {
-						iflag = 1;
+						ierror[0] = -6;
+						return;
 					}
 				}
 			}
 		}
 	}
 
-	private void DIRreplaceInf(final int free, final int freeold, final double[][] f, final double[][] c,
-			final double[] thirds, final int[][] length, final int[] anchor, final int[] point, final double[] c1,
-			final double[] c2, final int maxfunc, final int n, final double fmax) {
-		int LMaxDim = 32;
+	private void DIRreplaceInf(final RectangleStore store, final int freeold, final double[] thirds,
+			final double[] c1, final double[] c2, final int n, final double fmax) {
 		double sidelength;
-		final double[] a = new double[LMaxDim], b = new double[LMaxDim], x = new double[LMaxDim];
-		int i, j, k, l, help;
+		final double[] a = new double[n], b = new double[n], x = new double[n];
+		int i, j, k, l;
+		final int free = store.size() + 1;
 		for (i = 1; i <= free - 1; ++i) {
-			if (f[i - 1][2 - 1] > 0) {
-				help = DIRGetmaxDeep(i, length, n);
+			if (store.flag(i) > 0) {
 				// sidelength = thirds[help] * 2.0;
 				for (j = 1; j <= n; ++j) {
-					sidelength = thirds[length[i - 1][j - 1]];
-					a[j - 1] = c[i - 1][j - 1] - sidelength;
-					b[j - 1] = c[i - 1][j - 1] + sidelength;
+					sidelength = thirds[store.length(i, j)];
+					a[j - 1] = store.c(i, j) - sidelength;
+					b[j - 1] = store.c(i, j) + sidelength;
 				}
-				f[i - 1][1 - 1] = 1.0e6;
-				f[i - 1][2 - 1] = 2.0;
+				store.setF(i, 1.0e6);
+				store.setFlag(i, 2.0);
 				for (k = 1; k <= free - 1; ++k) {
-					if (f[k - 1][2 - 1] == 0) {
-						System.arraycopy(c[k - 1], 0, x, 0, n);
+					if (store.flag(k) == 0) {
+						for (l = 1; l <= n; ++l) {
+							x[l - 1] = store.c(k, l);
+						}
 						if (Isinbox(x, a, b, n) == 1) {
-							f[i - 1][1 - 1] = Math.min(f[i - 1][1 - 1], f[k - 1][1 - 1]);
-							f[i - 1][2 - 1] = 1.0;
+							store.setF(i, Math.min(store.f(i), store.f(k)));
+							store.setFlag(i, 1.0);
 						}
 					}
 				}
-				if (f[i - 1][2 - 1] == 1.0) {
-					f[i - 1][1 - 1] += (1.0e-6 * Math.abs(f[i - 1][1 - 1]));
+				if (store.flag(i) == 1.0) {
+					store.setF(i, store.f(i) + 1.0e-6 * Math.abs(store.f(i)));
 					for (l = 1; l <= n; ++l) {
-						x[l - 1] = c[i - 1][l - 1] * c1[l - 1] + c[i - 1][l - 1] * c2[l - 1];
+						x[l - 1] = store.c(i, l) * c1[l - 1] + store.c(i, l) * c2[l - 1];
 					}
-					DIRResortlist(i, anchor, f, point, length, n, maxfunc);
-				} else if (!(fmax == f[i - 1][1 - 1])) {
-					f[i - 1][1 - 1] = Math.max(fmax + 1.0, f[i - 1][1 - 1]);
+					DIRResortlist(i, store, n);
+				} else if (!(fmax == store.f(i))) {
+					store.setF(i, Math.max(fmax + 1.0, store.f(i)));
 				}
 			}
 		}
 	}
 
-	private void DIRResortlist(final int replace, final int[] anchor, final double[][] f, final int[] point,
-			final int[][] length, final int n, final int maxfunc) {
-		int start, l, i, pos;
-		l = DIRGetlevel(replace, length, n);
-		start = anchor[l + 1];
-		if (replace != start) {
-			pos = start;
-			for (i = 1; i <= maxfunc; ++i) {
-				if (point[pos - 1] == replace) {
-					point[pos - 1] = point[replace - 1];
-					break;
-				} else {
-					pos = point[pos - 1];
-				}
-				if (pos == 0) {
-					break;
-				}
-			}
-			if (f[start - 1][1 - 1] > f[replace - 1][1 - 1]) {
-				anchor[l + 1] = replace;
-				point[replace - 1] = start;
-			} else {
-				pos = start;
-				for (i = 1; i <= maxfunc; ++i) {
-					if (point[pos - 1] == 0) {
-						point[replace - 1] = point[pos - 1];
-						point[pos - 1] = replace;
-						break;
-					} else {
-						if (f[point[pos - 1] - 1][1 - 1] > f[replace - 1][1 - 1]) {
-							point[replace - 1] = point[pos - 1];
-							point[pos - 1] = replace;
-							break;
-						}
-						pos = point[pos - 1];
-					}
-				}
-			}
+	private void DIRResortlist(final int replace, final RectangleStore store, final int n) {
+		final int l = DIRGetlevel(replace, store, n);
+		if (store.contains(replace) && store.head(l) != replace) {
+			store.remove(replace);
+			store.insert(l, replace, false);
 		}
 	}
 
-	private void DIRInsertList(final int[] nnew, final int[] anchor, final int[] point, final double[][] f,
-			final int maxI, final int[][] length, final int maxfunc, final int n, final int samp) {
-		final int[] pos = new int[1];
-		int j, pos1, pos2, deep;
+	private void DIRInsertList(final RectangleStore store, final int nnew, final int maxI, final int n,
+			final int samp) {
+		int j, pos1, pos2, deep, pos;
+		pos = nnew;
 		for (j = 1; j <= maxI; ++j) {
-			pos1 = nnew[0];
-			pos2 = point[pos1 - 1];
-			nnew[0] = point[pos2 - 1];
-			deep = DIRGetlevel(pos1, length, n);
-			if (anchor[deep + 1] == 0) {
-				if (f[pos2 - 1][1 - 1] < f[pos1 - 1][1 - 1]) {
-					anchor[deep + 1] = pos2;
-					point[pos2 - 1] = pos1;
-					point[pos1 - 1] = 0;
-				} else {
-					anchor[deep + 1] = pos1;
-					point[pos2 - 1] = 0;
-				}
+			pos1 = pos;
+			pos2 = pos1 + 1;
+			pos = pos2 + 1;
+			deep = DIRGetlevel(pos1, store, n);
+			final int anchor = store.head(deep);
+			if (store.f(pos2) < store.f(pos1)) {
+				store.insert(deep, pos2, false);
+				store.insert(deep, pos1, false);
 			} else {
-				pos[0] = anchor[deep + 1];
-				if (f[pos2 - 1][1 - 1] < f[pos1 - 1][1 - 1]) {
-					if (f[pos2 - 1][1 - 1] < f[pos[0] - 1][1 - 1]) {
-						anchor[deep + 1] = pos2;
-						if (f[pos1 - 1][1 - 1] < f[pos[0] - 1][1 - 1]) {
-							point[pos2 - 1] = pos1;
-							point[pos1 - 1] = pos[0];
-						} else {
-							point[pos2 - 1] = pos[0];
-							DIRInsert(pos, pos1, point, f, maxfunc);
-						}
-					} else {
-						DIRInsert(pos, pos2, point, f, maxfunc);
-						DIRInsert(pos, pos1, point, f, maxfunc);
-					}
-				} else if (f[pos1 - 1][1 - 1] < f[pos[0] - 1][1 - 1]) {
-					anchor[deep + 1] = pos1;
-					if (f[pos[0] - 1][1 - 1] < f[pos2 - 1][1 - 1]) {
-						point[pos1 - 1] = pos[0];
-						DIRInsert(pos, pos2, point, f, maxfunc);
-					} else {
-						point[pos1 - 1] = pos2;
-						point[pos2 - 1] = pos[0];
-					}
-				} else {
-					DIRInsert(pos, pos1, point, f, maxfunc);
-					DIRInsert(pos, pos2, point, f, maxfunc);
-				}
-			}
-		}
 
-		deep = DIRGetlevel(samp, length, n);
-		pos[0] = anchor[deep + 1];
-		if (f[samp - 1][1 - 1] < f[pos[0] - 1][1 - 1]) {
-			anchor[deep + 1] = samp;
-			point[samp - 1] = pos[0];
-		} else {
-			DIRInsert(pos, samp, point, f, maxfunc);
+				// the original list places pos2 directly after pos1, and so ahead
+				// of an anchor of equal value, when pos1 becomes the new anchor
+				final boolean front = anchor > 0 && store.f(pos1) < store.f(anchor)
+						&& store.f(pos2) == store.f(anchor);
+				store.insert(deep, pos1, false);
+				store.insert(deep, pos2, front);
+			}
 		}
+		deep = DIRGetlevel(samp, store, n);
+		store.insert(deep, samp, false);
 	}
 
 	private static void DIRInsertList_2(final int[] start, final int j, final int k, final int[][] list2,
@@ -799,13 +1067,12 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 		start[0] = list2[start[0] - 1][1 - 1];
 	}
 
-	private void DIRInit(final double[][] f, final Function<? super double[], Double> fcn, final double[][] c,
-			final int[][] length, final int[] actdeep, final int[] point, final int[] anchor, final int[] free,
-			final int[] arrayI, final int[] maxI, final int[][] list2, final double[] w, final double[] x,
-			final double[] l, final double[] u, final double[] fmin, final int[] minpos, final double[] thirds,
-			final double[] levels, final int maxfunc, final int maxdeep, final int n, final int maxor,
-			final double[] fmax, final int[] Ifeasiblef, final int[] IInfeasible, final int[] Ierror) {
-		final int[] nnew = new int[1], oops = new int[1];
+	private void DIRInit(final RectangleStore store, final Function<? super double[], Double> fcn,
+			final int[] actdeep, final int[] arrayI, final int[] maxI, final int[][] list2, final double[] w,
+			final double[] x, final double[] l, final double[] u, final double[] fmin, final int[] minpos,
+			final double[] thirds, final double[] levels, final int maxdeep, final int n, final double[] fmax,
+			final int[] Ifeasiblef, final int[] IInfeasible) {
+		final int[] nnew = new int[1];
 		int i, j, help = 0;
 		double help2, delta;
 		fmin[0] = 1.0e20;
@@ -835,73 +1102,62 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 			help2 *= 3.0;
 		}
 		thirds[0] = 1.0;
+		store.add();
 		for (i = 1; i <= n; ++i) {
-			c[1 - 1][i - 1] = 0.5;
+			store.setC(1, i, 0.5);
 			x[i - 1] = 0.5;
-			length[1 - 1][i - 1] = 0;
+			store.setLength(1, i, 0);
 		}
-		final double[] farr = { f[1 - 1][1 - 1] };
+		final double[] farr = { store.f(1) };
 		DIRinfcn(fcn, x, l, u, n, farr);
-		f[1 - 1][1 - 1] = farr[0];
-		f[1 - 1][2 - 1] = help;
+		store.setF(1, farr[0]);
+		store.setFlag(1, help);
 		IInfeasible[0] = help;
-		fmax[0] = f[1 - 1][1 - 1];
-		if (f[1 - 1][2 - 1] > 0.0) {
-			f[1 - 1][1 - 1] = 1.0e6;
-			fmax[0] = f[1 - 1][1 - 1];
+		fmax[0] = store.f(1);
+		if (store.flag(1) > 0.0) {
+			store.setF(1, 1.0e6);
+			fmax[0] = store.f(1);
 			Ifeasiblef[0] = 1;
 		} else {
 			Ifeasiblef[0] = 0;
 		}
-		fmin[0] = f[1 - 1][1 - 1];
+		fmin[0] = store.f(1);
 		minpos[0] = 1;
 		actdeep[0] = 2;
-		point[1 - 1] = 0;
-		free[0] = 2;
 		delta = thirds[1];
-		DIRGet_I(length, 1, arrayI, maxI, n);
-		nnew[0] = free[0];
-		DIRSamplepoints(c, arrayI, delta, 1, nnew, length, free, maxI[0], point, n, oops);
-		if (oops[0] > 0) {
-			Ierror[0] = -4;
-			return;
-		}
-		DIRSamplef(c, nnew[0], length, f, free[0], maxI[0], point, fcn, x, l, fmin, minpos, u, n, fmax, Ifeasiblef,
-				IInfeasible);
-		if (oops[0] > 0) {
-			Ierror[0] = -5;
-			return;
+		DIRGet_I(store, 1, arrayI, maxI, n);
+		DIRSamplepoints(store, arrayI, delta, 1, nnew, maxI[0]);
+		final int[] samples = new int[maxI[0] + maxI[0]];
+		for (j = 1; j <= maxI[0] + maxI[0]; ++j) {
+			samples[j - 1] = nnew[0] + j - 1;
 		}
-		DIRDivide(nnew[0], 0, length, point, arrayI, 1, list2, w, maxI[0], f);
-		DIRInsertList(nnew, anchor, point, f, maxI[0], length, maxfunc, n, 1);
+		DIRSampleEval(store, samples, samples.length, fcn, l, u, n, myParallel);
+		DIRSamplef(store, nnew[0], maxI[0], fmin, minpos, fmax, Ifeasiblef, IInfeasible);
+		DIRDivide(store, nnew[0], 0, arrayI, 1, list2, w, maxI[0]);
+		DIRInsertList(store, nnew[0], maxI[0], n, 1);
 	}
 
-	private static void DIRDivide(final int nnew, final int currentlength, final int[][] length, final int[] point,
-			final int[] arrayI, final int sample, final int[][] list2, final double[] w, final int maxI,
-			final double[][] f) {
+	private static void DIRDivide(final RectangleStore store, final int nnew, final int currentlength,
+			final int[] arrayI, final int sample, final int[][] list2, final double[] w, final int maxI) {
 		final int[] start = { 0 }, pos = { nnew }, k = new int[1];
 		int i, j, pos2;
 		for (i = 1; i <= maxI; ++i) {
 			j = arrayI[i - 1];
-			w[j - 1] = f[pos[0] - 1][1 - 1];
+			w[j - 1] = store.f(pos[0]);
 			k[0] = pos[0];
-			pos[0] = point[pos[0] - 1];
-			w[j - 1] = Math.min(f[pos[0] - 1][1 - 1], w[j - 1]);
-			pos[0] = point[pos[0] - 1];
+			++pos[0];
+			w[j - 1] = Math.min(store.f(pos[0]), w[j - 1]);
+			++pos[0];
 			DIRInsertList_2(start, j, k[0], list2, w, maxI);
 		}
-		if (pos[0] > 0) {
-			System.out.println("STOP");
-			return;
-		}
 		for (j = 1; j <= maxI; ++j) {
 			DIRSearchmin(start, list2, pos, k);
 			pos2 = start[0];
-			length[sample - 1][k[0] - 1] = currentlength + 1;
+			store.setLength(sample, k[0], currentlength + 1);
 			for (i = 1; i <= maxI - j + 1; ++i) {
-				length[pos[0] - 1][k[0] - 1] = currentlength + 1;
-				pos[0] = point[pos[0] - 1];
-				length[pos[0] - 1][k[0] - 1] = currentlength + 1;
+				store.setLength(pos[0], k[0], currentlength + 1);
+				++pos[0];
+				store.setLength(pos[0], k[0], currentlength + 1);
 				if (pos2 > 0) {
 					pos[0] = list2[pos2 - 1][2 - 1];
 					pos2 = list2[pos2 - 1][1 - 1];
@@ -910,46 +1166,29 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 		}
 	}
 
-	private static void DIRSamplepoints(final double[][] c, final int[] arrayI, final double delta, final int sample,
-			final int[] start, final int[][] length, final int[] free, final int maxI, final int[] point, final int n,
-			final int[] oops) {
-		oops[0] = 0;
-		int pos = free[0];
-		start[0] = free[0];
+	private static void DIRSamplepoints(final RectangleStore store, final int[] arrayI, final double delta,
+			final int sample, final int[] start, final int maxI) {
+		int pos;
+		start[0] = store.size() + 1;
 		for (int k = 1; k <= maxI + maxI; ++k) {
-			System.arraycopy(length[sample - 1], 0, length[free[0] - 1], 0, n);
-			System.arraycopy(c[sample - 1], 0, c[free[0] - 1], 0, n);
-			pos = free[0];
-			free[0] = point[free[0] - 1];
-			if (free[0] == 0) {
-				oops[0] = 1;
-				return;
-			}
+			pos = store.add();
+			store.copy(sample, pos);
 		}
-		point[pos - 1] = 0;
 		pos = start[0];
 		for (int j = 1; j <= maxI; ++j) {
-			c[pos - 1][arrayI[j - 1] - 1] = c[sample - 1][arrayI[j - 1] - 1] + delta;
-			pos = point[pos - 1];
-			c[pos - 1][arrayI[j - 1] - 1] = c[sample - 1][arrayI[j - 1] - 1] - delta;
-			pos = point[pos - 1];
-		}
-		if (pos > 0) {
-			System.out.println("STOP");
+			store.setC(pos, arrayI[j - 1], store.c(sample, arrayI[j - 1]) + delta);
+			++pos;
+			store.setC(pos, arrayI[j - 1], store.c(sample, arrayI[j - 1]) - delta);
+			++pos;
 		}
 	}
 
-	private static void DIRGet_I(final int[][] length, final int pos, final int[] arrayI, final int[] maxi,
+	private static void DIRGet_I(final RectangleStore store, final int pos, final int[] arrayI, final int[] maxi,
 			final int n) {
 		int i, help, j = 1;
-		help = length[pos - 1][1 - 1];
-		for (i = 2; i <= n; ++i) {
-			if (length[pos - 1][i - 1] < help) {
-				help = length[pos - 1][i - 1];
-			}
-		}
+		help = DIRGetmaxDeep(pos, store, n);
 		for (i = 1; i <= n; ++i) {
-			if (length[pos - 1][i - 1] == help) {
+			if (store.length(pos, i) == help) {
 				arrayI[j - 1] = i;
 				++j;
 			}
@@ -957,34 +1196,6 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 		maxi[0] = j - 1;
 	}
 
-	private static void DIRInitList(final int[] anchor, final int[] free, final int[] point, final double[][] f,
-			final int maxfunc, final int maxdeep) {
-		Arrays.fill(anchor, 0, maxdeep + 2, 0);
-		for (int i = 1; i <= maxfunc; ++i) {
-			f[i - 1][1 - 1] = f[i - 1][2 - 1] = 0.0;
-			point[i - 1] = i + 1;
-		}
-		point[maxfunc - 1] = 0;
-		free[0] = 1;
-	}
-
-	private static void DIRInsert(final int[] start, final int ins, final int[] point, final double[][] f,
-			final int maxfunc) {
-		for (int i = 1; i <= maxfunc; ++i) {
-			if (point[start[0] - 1] == 0) {
-				point[start[0] - 1] = ins;
-				point[ins - 1] = 0;
-				return;
-			} else if (f[ins - 1][1 - 1] < f[point[start[0] - 1] - 1][1 - 1]) {
-				final int help = point[start[0] - 1];
-				point[start[0] - 1] = ins;
-				point[ins - 1] = help;
-				return;
-			}
-			start[0] = point[start[0] - 1];
-		}
-	}
-
 	private static void DIRpreprc(final double[] u, final double[] l, final int n, final double[] xs1,
 			final double[] xs2, final int[] oops) {
 		oops[0] = 0;
@@ -1013,7 +1224,7 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 	}
 
 	private static void DIRheader(final int n, final double[] eps, final int maxf, final double[] l, final double[] u,
-			final int maxfunc, final int[] Ierror, final double[] epsfix, final int[] iepschange) {
+			final int[] Ierror, final double[] epsfix, final int[] iepschange) {
 		Ierror[0] = 0;
 		if (eps[0] < 0.0) {
 			iepschange[0] = 1;
@@ -1028,9 +1239,6 @@ public final class DirectAlgorithm extends GradientFreeOptimizer {
 				Ierror[0] = -1;
 			}
 		}
-		if ((maxf + 20) > maxfunc) {
-			Ierror[0] = -2;
-		}
 	}
 
 	private static int Isinbox(final double[] x, final double[] a, final double[] b, final int n) {
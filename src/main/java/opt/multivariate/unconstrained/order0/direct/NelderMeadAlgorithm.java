@@ -9,6 +9,7 @@ package opt.multivariate.unconstrained.order0.direct;
 
 import java.util.Arrays;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import opt.multivariate.GradientFreeOptimizer;
 import opt.multivariate.MultivariateOptimizerSolution;
@@ -20,7 +21,14 @@ import utils.Sequences;
  * modification suggested by Gao and Han (2012) to adapt the parameters of the
  * simplex that was shown to work better in larger dimensions is also
  * implemented.
- *
+ * 
+ * In parallel mode, the vertices of the initial and shrunk simplices and the
+ * points of the final local minimum test are evaluated concurrently. Following
+ * Lee and Wiswall (2007), the reflection, expansion and both contraction points
+ * are also evaluated speculatively in parallel in each iteration, so an
+ * iteration takes the wall-clock time of one function evaluation at the cost
+ * of extra evaluations. The path taken by the algorithm is the same as in
+ * serial mode. In this case, the objective function must be thread-safe.
  * 
  * REFERENCES:
  * 
@@ -34,6 +42,10 @@ import utils.Sequences;
  * [3] Gao, Fuchang, and Lixing Han. "Implementing the Nelder-Mead simplex
  * algorithm with adaptive parameters." Computational Optimization and
  * Applications 51.1 (2012): 259-277.
+ * 
+ * [4] Lee, Donghoon, and Matthew Wiswall. "A parallel implementation of the
+ * simplex function minimization routine." Computational Economics 30.2 (2007):
+ * 171-187.
  */
 public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 
@@ -42,6 +54,7 @@ public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 	private final boolean myAdaptive;
 	private final int myCheckEvery, myMaxEvals;
 	private final double myRadius;
+	private final boolean myParallel;
 
 	// problem parameters
 	private Function<? super double[], Double> myFunc;
@@ -54,6 +67,8 @@ public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 	private double ccoeff, ecoeff, rcoeff, scoeff, del, rq, y2star, ylo, ystar, ynewlo;
 	private double[][] p;
 	private double[] p2star, pbar, pstar, y, xmin, step;
+	private double[][] spec;
+	private double[] yspec;
 
 	/**
 	 *
@@ -62,14 +77,29 @@ public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 	 * @param checkEvery
 	 * @param maxEvaluations
 	 * @param adaptive
+	 * @param parallel
 	 */
 	public NelderMeadAlgorithm(final double tolerance, final double initialRadius, final int checkEvery,
-			final int maxEvaluations, final boolean adaptive) {
+			final int maxEvaluations, final boolean adaptive, final boolean parallel) {
 		super(tolerance);
 		myAdaptive = adaptive;
 		myCheckEvery = checkEvery;
 		myMaxEvals = maxEvaluations;
 		myRadius = initialRadius;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param initialRadius
+	 * @param checkEvery
+	 * @param maxEvaluations
+	 * @param adaptive
+	 */
+	public NelderMeadAlgorithm(final double tolerance, final double initialRadius, final int checkEvery,
+			final int maxEvaluations, final boolean adaptive) {
+		this(tolerance, initialRadius, checkEvery, maxEvaluations, adaptive, false);
 	}
 
 	/**
@@ -114,6 +144,14 @@ public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 		xmin = new double[n];
 		step = new double[n];
 		Arrays.fill(step, myRadius);
+		if (myParallel) {
+			spec = new double[4][];
+			spec[0] = pstar;
+			for (int j = 1; j <= 3; ++j) {
+				spec[j] = new double[n];
+			}
+			yspec = new double[4];
+		}
 
 		// Initialization.
 		icount = 0;
@@ -147,18 +185,35 @@ public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 		for (int k = 1; k <= n; ++k) {
 			pstar[k - 1] = pbar[k - 1] + rcoeff * (pbar[k - 1] - p[ihi - 1][k - 1]);
 		}
-		ystar = myFunc.apply(pstar);
-		++icount;
+		if (myParallel) {
+
+			// Speculatively evaluate the expansion and both contractions.
+			for (int k = 1; k <= n; ++k) {
+				spec[1][k - 1] = pbar[k - 1] + ecoeff * (pstar[k - 1] - pbar[k - 1]);
+				spec[2][k - 1] = pbar[k - 1] + ccoeff * (p[ihi - 1][k - 1] - pbar[k - 1]);
+				spec[3][k - 1] = pbar[k - 1] + ccoeff * (pstar[k - 1] - pbar[k - 1]);
+			}
+			evaluate(spec, yspec, 4);
+			ystar = yspec[0];
+		} else {
+			ystar = myFunc.apply(pstar);
+			++icount;
+		}
 
 		// Successful reflection, so extension.
 		if (ystar < ylo) {
 
 			// Expansion.
-			for (int k = 1; k <= n; ++k) {
-				p2star[k - 1] = pbar[k - 1] + ecoeff * (pstar[k - 1] - pbar[k - 1]);
+			if (myParallel) {
+				System.arraycopy(spec[1], 0, p2star, 0, n);
+				y2star = yspec[1];
+			} else {
+				for (int k = 1; k <= n; ++k) {
+					p2star[k - 1] = pbar[k - 1] + ecoeff * (pstar[k - 1] - pbar[k - 1]);
+				}
+				y2star = myFunc.apply(p2star);
+				++icount;
 			}
-			y2star = myFunc.apply(p2star);
-			++icount;
 
 			// Retain extension or contraction.
 			if (ystar < y2star) {
@@ -185,21 +240,36 @@ public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 			} else if (l == 0) {
 
 				// Contraction on the Y(IHI) side of the centroid.
-				for (int k = 1; k <= n; ++k) {
-					p2star[k - 1] = pbar[k - 1] + ccoeff * (p[ihi - 1][k - 1] - pbar[k - 1]);
+				if (myParallel) {
+					System.arraycopy(spec[2], 0, p2star, 0, n);
+					y2star = yspec[2];
+				} else {
+					for (int k = 1; k <= n; ++k) {
+						p2star[k - 1] = pbar[k - 1] + ccoeff * (p[ihi - 1][k - 1] - pbar[k - 1]);
+					}
+					y2star = myFunc.apply(p2star);
+					++icount;
 				}
-				y2star = myFunc.apply(p2star);
-				++icount;
 
 				// Contract the whole simplex.
 				if (y[ihi - 1] < y2star) {
-					for (int j = 1; j <= n + 1; ++j) {
-						for (int k = 1; k <= n; ++k) {
-							p[j - 1][k - 1] = scoeff * (p[j - 1][k - 1] + p[ilo - 1][k - 1]);
+					if (myParallel) {
+						for (int j = 1; j <= n + 1; ++j) {
+							for (int k = 1; k <= n; ++k) {
+								p[j - 1][k - 1] = scoeff * (p[j - 1][k - 1] + p[ilo - 1][k - 1]);
+							}
+						}
+						evaluate(p, y, n + 1);
+						System.arraycopy(p[n], 0, xmin, 0, n);
+					} else {
+						for (int j = 1; j <= n + 1; ++j) {
+							for (int k = 1; k <= n; ++k) {
+								p[j - 1][k - 1] = scoeff * (p[j - 1][k - 1] + p[ilo - 1][k - 1]);
+							}
+							System.arraycopy(p[j - 1], 0, xmin, 0, n);
+							y[j - 1] = myFunc.apply(xmin);
+							++icount;
 						}
-						System.arraycopy(p[j - 1], 0, xmin, 0, n);
-						y[j - 1] = myFunc.apply(xmin);
-						++icount;
 					}
 					ilo = Sequences.argmin(n + 1, y) + 1;
 					ylo = y[ilo - 1];
@@ -214,11 +284,16 @@ public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 			} else if (l == 1) {
 
 				// Contraction on the reflection side of the centroid.
-				for (int k = 1; k <= n; ++k) {
-					p2star[k - 1] = pbar[k - 1] + ccoeff * (pstar[k - 1] - pbar[k - 1]);
+				if (myParallel) {
+					System.arraycopy(spec[3], 0, p2star, 0, n);
+					y2star = yspec[3];
+				} else {
+					for (int k = 1; k <= n; ++k) {
+						p2star[k - 1] = pbar[k - 1] + ccoeff * (pstar[k - 1] - pbar[k - 1]);
+					}
+					y2star = myFunc.apply(p2star);
+					++icount;
 				}
-				y2star = myFunc.apply(p2star);
-				++icount;
 
 				// Retain reflection?
 				if (y2star <= ystar) {
@@ -276,19 +351,31 @@ public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 		// Initial or restarted loop.
 		while (true) {
 
-			// Start of the restart.
-			System.arraycopy(start, 0, p[n], 0, n);
-			y[n + 1 - 1] = myFunc.apply(start);
-			++icount;
+			if (myParallel) {
+
+				// Define and evaluate the initial simplex.
+				System.arraycopy(start, 0, p[n], 0, n);
+				for (int j = 1; j <= n; ++j) {
+					System.arraycopy(start, 0, p[j - 1], 0, n);
+					p[j - 1][j - 1] += step[j - 1] * del;
+				}
+				evaluate(p, y, n + 1);
+			} else {
 
-			// Define the initial simplex.
-			for (int j = 1; j <= n; ++j) {
-				final double x = start[j - 1];
-				start[j - 1] += step[j - 1] * del;
-				System.arraycopy(start, 0, p[j - 1], 0, n);
-				y[j - 1] = myFunc.apply(start);
+				// Start of the restart.
+				System.arraycopy(start, 0, p[n], 0, n);
+				y[n + 1 - 1] = myFunc.apply(start);
 				++icount;
-				start[j - 1] = x;
+
+				// Define the initial simplex.
+				for (int j = 1; j <= n; ++j) {
+					final double x = start[j - 1];
+					start[j - 1] += step[j - 1] * del;
+					System.arraycopy(start, 0, p[j - 1], 0, n);
+					y[j - 1] = myFunc.apply(start);
+					++icount;
+					start[j - 1] = x;
+				}
 			}
 
 			// Find highest and lowest Y values. YNEWLO = Y(IHI) indicates
@@ -311,23 +398,27 @@ public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 				return 2;
 			}
 			int ifault = 0;
-			for (int i = 1; i <= n; ++i) {
-				del = step[i - 1] * eps;
-				xmin[i - 1] += del;
-				double z = myFunc.apply(xmin);
-				++icount;
-				if (z < ynewlo) {
-					ifault = 2;
-					break;
-				}
-				xmin[i - 1] -= (del + del);
-				z = myFunc.apply(xmin);
-				++icount;
-				if (z < ynewlo) {
-					ifault = 2;
-					break;
+			if (myParallel) {
+				ifault = testParallel();
+			} else {
+				for (int i = 1; i <= n; ++i) {
+					del = step[i - 1] * eps;
+					xmin[i - 1] += del;
+					double z = myFunc.apply(xmin);
+					++icount;
+					if (z < ynewlo) {
+						ifault = 2;
+						break;
+					}
+					xmin[i - 1] -= (del + del);
+					z = myFunc.apply(xmin);
+					++icount;
+					if (z < ynewlo) {
+						ifault = 2;
+						break;
+					}
+					xmin[i - 1] += del;
 				}
-				xmin[i - 1] += del;
 			}
 			if (ifault == 0) {
 				return ifault;
@@ -338,4 +429,33 @@ public final class NelderMeadAlgorithm extends GradientFreeOptimizer {
 			del = eps;
 		}
 	}
+
+	private int testParallel() {
+
+		// Evaluate all the perturbed points of the local minimum test, and
+		// restart from the first improving point in the order of the serial test.
+		final double[][] pts = new double[n << 1][];
+		final double[] z = new double[n << 1];
+		for (int i = 1; i <= n; ++i) {
+			del = step[i - 1] * eps;
+			xmin[i - 1] += del;
+			pts[2 * i - 2] = Arrays.copyOf(xmin, n);
+			xmin[i - 1] -= (del + del);
+			pts[2 * i - 1] = Arrays.copyOf(xmin, n);
+			xmin[i - 1] += del;
+		}
+		evaluate(pts, z, n << 1);
+		for (int k = 0; k < (n << 1); ++k) {
+			if (z[k] < ynewlo) {
+				System.arraycopy(pts[k], 0, xmin, 0, n);
+				return 2;
+			}
+		}
+		return 0;
+	}
+
+	private void evaluate(final double[][] pts, final double[] fs, final int count) {
+		IntStream.range(0, count).parallel().forEach(k -> fs[k] = myFunc.apply(pts[k]));
+		icount += count;
+	}
 }
@@ -31,6 +31,7 @@ import opt.multivariate.GradientFreeOptimizer;
 import opt.multivariate.MultivariateOptimizerSolution;
 import utils.BlasMath;
 import utils.Constants;
+import utils.DenseMath;
 import utils.RealMath;
 
 /**
@@ -355,7 +356,7 @@ public final class PraxisAlgorithm extends GradientFreeOptimizer {
 			// THIS GIVES THE PRINCIPAL VALUES AND PRINCIPAL DIRECTIONS OF THE
 			// APPROXIMATING QUADRATIC FORM WITHOUT SQUARING THE CONDITION
 			// NUMBER.....
-			minfit(n, n, machep, vsmall, v, d, tmp);
+			minfit(n, v, d);
 
 			// UNSCALE THE AXES.....
 			if (scbd > 1.0) {
@@ -636,250 +637,21 @@ public final class PraxisAlgorithm extends GradientFreeOptimizer {
 		}
 	}
 
-	private static void minfit(final int m, final int n, final double machep, final double tol, final double[][] ab,
-			final double[] q, final double[] e) {
-		boolean skipto101, skip110;
-		int i, ii, j, k = 0, kk, kt = 0, l, l2, ll2, lp1;
-		double c, eps, f = 0.0, g, h, s, temp, x, y, z;
-
-		// HOUSEHOLDER'S REDUCTION TO BIDIAGONAL FORM...
+	// singular values q and right singular vectors (columns of ab) of the
+	// n-by-n matrix ab
+	private static void minfit(final int n, final double[][] ab, final double[] q) {
 		if (n == 1) {
 			q[1 - 1] = ab[1 - 1][1 - 1];
 			ab[1 - 1][1 - 1] = 1.0;
 			return;
 		}
-
-		eps = machep;
-		g = x = 0.0;
-		for (i = 1; i <= n; ++i) {
-			e[i - 1] = g;
-			s = 0.0;
-			l = i + 1;
-			for (j = i; j <= n; ++j) {
-				s += (ab[j - 1][i - 1] * ab[j - 1][i - 1]);
-			}
-			g = 0.0;
-			if (s >= tol) {
-				f = ab[i - 1][i - 1];
-				g = Math.sqrt(s);
-				if (f >= 0.0) {
-					g = -g;
-				}
-				h = f * g - s;
-				ab[i - 1][i - 1] = f - g;
-				if (l <= n) {
-					for (j = l; j <= n; ++j) {
-						f = 0.0;
-						for (k = i; k <= n; ++k) {
-							f += ab[k - 1][i - 1] * ab[k - 1][j - 1];
-						}
-						f /= h;
-						for (k = i; k <= n; ++k) {
-							ab[k - 1][j - 1] += f * ab[k - 1][i - 1];
-						}
-					}
-				}
-			}
-			q[i - 1] = g;
-			s = 0.0;
-			if (i != n) {
-				s += BlasMath.ddotm(n - l + 1, ab[i - 1], l, ab[i - 1], l);
-			}
-			g = 0.0;
-			if (s >= tol) {
-				if (i != n) {
-					f = ab[i - 1][i + 1 - 1];
-				}
-				g = Math.sqrt(g);
-				if (f >= 0.0) {
-					g = -g;
-				}
-				h = f * g - s;
-				if (i != n) {
-					ab[i - 1][i + 1 - 1] = f - g;
-					for (j = l; j <= n; ++j) {
-						e[j - 1] = ab[i - 1][j - 1] / h;
-					}
-					for (j = l; j <= n; ++j) {
-						s = BlasMath.ddotm(n - l + 1, ab[j - 1], l, ab[i - 1], l);
-						BlasMath.daxpym(n - l + 1, s, e, l, ab[j - 1], l);
-					}
-				}
-			}
-			y = Math.abs(q[i - 1]) + Math.abs(e[i - 1]);
-			if (y > x) {
-				x = y;
-			}
-		}
-
-		// ACCUMULATION OF RIGHT-HAND TRANSFORMATIONS...
-		ab[n - 1][n - 1] = 1.0;
-		g = e[n - 1];
-		l = n;
-		for (ii = 2; ii <= n; ++ii) {
-			i = n - ii + 1;
-			if (g != 0.0) {
-				h = ab[i - 1][i + 1 - 1] * g;
-				for (j = l; j <= n; ++j) {
-					ab[j - 1][i - 1] = ab[i - 1][j - 1] / h;
-				}
-				for (j = l; j <= n; ++j) {
-					s = 0.0;
-					for (k = l; k <= n; ++k) {
-						s += ab[i - 1][k - 1] * ab[k - 1][j - 1];
-					}
-					for (k = l; k <= n; ++k) {
-						ab[k - 1][j - 1] += s * ab[k - 1][i - 1];
-					}
-				}
-			}
-			for (j = l; j <= n; ++j) {
-				ab[i - 1][j - 1] = ab[j - 1][i - 1] = 0.0;
-			}
-			ab[i - 1][i - 1] = 1.0;
-			g = e[i - 1];
-			l = i;
+		final double[] a = new double[n * n], v = new double[n * n];
+		for (int i = 0; i < n; ++i) {
+			System.arraycopy(ab[i], 0, a, i * n, n);
 		}
-
-		// DIAGONALIZATION OF THE BIDIAGONAL FORM...
-		eps *= x;
-		skipto101 = false;
-		for (kk = 1; kk <= n; ++kk) {
-
-			if (!skipto101) {
-				k = n - kk + 1;
-				kt = 0;
-			}
-			++kt;
-			if (kt > 30) {
-				e[k - 1] = 0.0;
-			}
-			skip110 = false;
-			for (ll2 = 1; ll2 <= k; ++ll2) {
-				l2 = k - ll2 + 1;
-				l = l2;
-				if (Math.abs(e[l - 1]) <= eps) {
-					skip110 = true;
-					break;
-				}
-				if (l == 1) {
-				} else if (Math.abs(q[l - 1 - 1]) <= eps) {
-					skip110 = false;
-					break;
-				}
-			}
-
-			if (!skip110) {
-
-				// CANCELLATION OF E(L) IF L>1...
-				c = 0.0;
-				s = 1.0;
-				for (i = l; i <= k; ++i) {
-					f = s * e[i - 1];
-					e[i - 1] *= c;
-					if (Math.abs(f) <= eps) {
-						break;
-					}
-					g = q[i - 1];
-
-					// Q(I) = H = DSQRT(G*G + F*F)...
-					if (Math.abs(f) < Math.abs(g)) {
-						h = Math.abs(g) * RealMath.hypot(1.0, f / g);
-					} else if (f < 0.0 || f > 0.0) {
-						h = Math.abs(f) * RealMath.hypot(1.0, g / f);
-					} else {
-						h = 0.0;
-					}
-					q[i - 1] = h;
-					if (h == 0.0) {
-						g = h = 1.0;
-					}
-					c = g / h;
-					s = -f / h;
-				}
-			}
-
-			// TEST FOR CONVERGENCE...
-			z = q[k - 1];
-			if (l == k) {
-
-				// CONVERGENCE: Q(K) IS MADE NON-NEGATIVE...
-				if (z < 0.0) {
-					q[k - 1] = -z;
-					for (j = 1; j <= n; ++j) {
-						ab[j - 1][k - 1] = -ab[j - 1][k - 1];
-					}
-				}
-				skipto101 = false;
-				continue;
-			}
-
-			// SHIFT FROM BOTTOM 2*2 MINOR...
-			x = q[l - 1];
-			y = q[k - 1 - 1];
-			g = e[k - 1 - 1];
-			h = e[k - 1];
-			f = ((y - z) * (y + z) + (g - h) * (g + h)) / (2.0 * h * y);
-			g = RealMath.hypot(f, 1.0);
-			temp = f - g;
-			if (f >= 0.0) {
-				temp = f + g;
-			}
-			f = ((x - z) * (x + z) + h * (y / temp - h)) / x;
-
-			// NEXT QR TRANSFORMATION...
-			c = s = 1.0;
-			lp1 = l + 1;
-			if (lp1 <= k) {
-				for (i = lp1; i <= k; ++i) {
-					g = e[i - 1];
-					y = q[i - 1];
-					h = s * g;
-					g *= c;
-					if (Math.abs(f) < Math.abs(h)) {
-						z = Math.abs(h) * RealMath.hypot(1.0, f / h);
-					} else if (f < 0.0 || f > 0.0) {
-						z = Math.abs(f) * RealMath.hypot(1.0, h / f);
-					} else {
-						z = 0.0;
-					}
-					e[i - 1 - 1] = z;
-					if (z == 0.0) {
-						f = z = 1.0;
-					}
-					c = f / z;
-					s = h / z;
-					f = x * c + g * s;
-					g = -x * s + g * c;
-					h = y * s;
-					y *= c;
-					for (j = 1; j <= n; ++j) {
-						x = ab[j - 1][i - 1 - 1];
-						z = ab[j - 1][i - 1];
-						ab[j - 1][i - 1 - 1] = x * c + z * s;
-						ab[j - 1][i - 1] = -x * s + z * c;
-					}
-					if (Math.abs(f) < Math.abs(h)) {
-						z = Math.abs(h) * RealMath.hypot(1.0, f / h);
-					} else if (f < 0.0 || f > 0.0) {
-						z = Math.abs(f) * RealMath.hypot(1.0, h / f);
-					} else {
-						z = 0.0;
-					}
-					q[i - 1 - 1] = z;
-					if (z == 0.0) {
-						f = z = 1.0;
-					}
-					c = f / z;
-					s = h / z;
-					f = c * g + s * y;
-					x = -s * g + c * y;
-				}
-			}
-			e[l - 1] = 0.0;
-			e[k - 1] = f;
-			q[k - 1] = x;
-			skipto101 = true;
+		DenseMath.dgesvj(n, n, a, q, v);
+		for (int i = 0; i < n; ++i) {
+			System.arraycopy(v, i * n, ab[i], 0, n);
 		}
 	}
 }
@@ -1,9 +1,4 @@
 /*
-Please note, even though the main code for AMALGAM can be available under MIT 
-licensed, the dchdcm subroutine is a derivative of LINPACK code that is licensed
-under the 3-Clause BSD license. The other subroutines:
-
-
 Copyright (c) 2020 Mike Gimelfarb
 
 Permission is hereby granted, free of charge, to any person obtaining a copy
@@ -33,6 +28,7 @@ import java.util.function.Function;
 import opt.multivariate.GradientFreeOptimizer;
 import opt.multivariate.MultivariateOptimizerSolution;
 import utils.BlasMath;
+import utils.DenseMath;
 import utils.Sequences;
 
 /**
@@ -75,7 +71,7 @@ public final class AmalgamAlgorithm extends GradientFreeOptimizer {
 	private Solution[] mySols;
 	private double[] myMu, myMuOld, myMuShift, myMuShiftOld;
 	private double[] myTemp, myXAvg;
-	private double[][] myCov, myChol;
+	private double[] myCov, myChol, myDev;
 
 	// algorithm parameters for multiple runs
 	private final boolean myParamFree, myPrintProgress;
@@ -174,7 +170,7 @@ public final class AmalgamAlgorithm extends GradientFreeOptimizer {
 
 		// update mean and variance of the Gaussian
 		updateDistribution(mySols, myTau, myPopSize, myD, mySelectSize, myMu, myMuOld, myCov, myEtaSigma, myMuShift,
-				myMuShiftOld, myEtaShift, myChol, myCMult, myT, myTemp);
+				myMuShiftOld, myEtaShift, myChol, myCMult, myT, myDev);
 
 		// re-sample parameters
 		final int ibest = samplePopulation(mySols, myPopSize, myD, myMu, myChol, myNAms, myDeltaAms, myCMult, myMuShift,
@@ -304,8 +300,9 @@ public final class AmalgamAlgorithm extends GradientFreeOptimizer {
 		myMuShiftOld = new double[myD];
 		myTemp = new double[myD];
 		myXAvg = new double[myD];
-		myCov = new double[myD][myD];
-		myChol = new double[myD][myD];
+		myCov = new double[myD * myD];
+		myChol = new double[myD * myD];
+		myDev = new double[myD * mySelectSize];
 
 		// estimate mean
 		for (int m = 0; m < mySelectSize; ++m) {
@@ -317,8 +314,8 @@ public final class AmalgamAlgorithm extends GradientFreeOptimizer {
 		for (int i = 0; i < myD; ++i) {
 			for (int m = 0; m < mySelectSize; ++m) {
 				final double xmmu = mySols[m].x[i] - myMu[i];
-				myCov[i][i] += xmmu * xmmu;
-				myCov[i][i] /= mySelectSize;
+				myCov[i * myD + i] += xmmu * xmmu;
+				myCov[i * myD + i] /= mySelectSize;
 			}
 		}
 	}
@@ -420,7 +417,7 @@ public final class AmalgamAlgorithm extends GradientFreeOptimizer {
 	}
 
 	private static double computeSDR(final Solution[] sols, final int n, final int d, final double[] xavg,
-			final double[][] cholf, final double[] mu, final double[] temp) {
+			final double[] cholf, final double[] mu, final double[] temp) {
 
 		// compute the average of all points better than previous best
 		Arrays.fill(xavg, 0.0);
@@ -440,17 +437,17 @@ public final class AmalgamAlgorithm extends GradientFreeOptimizer {
 		double sdr = 0.0;
 		for (int i = 0; i < d; ++i) {
 			temp[i] = xavg[i];
-			temp[i] -= BlasMath.ddotm(i, cholf[i], 1, temp, 1);
-			temp[i] /= cholf[i][i];
+			temp[i] -= BlasMath.ddotm(i, cholf, i * d + 1, temp, 1);
+			temp[i] /= cholf[i * d + i];
 			sdr = Math.max(sdr, Math.abs(temp[i]));
 		}
 		return sdr;
 	}
 
 	private static void updateDistribution(final Solution[] sols, final double tau, final int n, final int d,
-			final int taun, final double[] mu, final double[] muold, final double[][] cov, final double nsigma,
-			final double[] mushift, final double[] mushiftold, final double nshift, final double[][] cholf,
-			final double cmult, final int t, final double[] temp) {
+			final int taun, final double[] mu, final double[] muold, final double[] cov, final double nsigma,
+			final double[] mushift, final double[] mushiftold, final double nshift, final double[] cholf,
+			final double cmult, final int t, final double[] dev) {
 
 		// find the best solutions
 		Arrays.sort(sols);
@@ -465,15 +462,12 @@ public final class AmalgamAlgorithm extends GradientFreeOptimizer {
 		}
 
 		// update covariance matrix
-		for (int i = 0; i < d; ++i) {
-			for (int j = 0; j <= i; ++j) {
-				cov[i][j] *= (1.0 - nsigma);
-				for (int m = 0; m < taun; ++m) {
-					cov[i][j] += (nsigma / taun) * (sols[m].x[i] - mu[i]) * (sols[m].x[j] - mu[j]);
-				}
-				cov[j][i] = cov[i][j];
+		for (int m = 0; m < taun; ++m) {
+			for (int i = 0; i < d; ++i) {
+				dev[i * taun + m] = sols[m].x[i] - mu[i];
 			}
 		}
+		DenseMath.dsyrk(d, taun, nsigma / taun, dev, 1.0 - nsigma, cov, false);
 
 		// save old mu shift
 		System.arraycopy(mushift, 0, mushiftold, 0, d);
@@ -493,24 +487,13 @@ public final class AmalgamAlgorithm extends GradientFreeOptimizer {
 		}
 
 		// computes the cholesky factor of the covariance matrix
-		for (int i = 0; i < d; ++i) {
-			System.arraycopy(cov[i], 0, cholf[i], 0, d);
-		}
-		dchdcm(cholf, d, d, temp, new int[1]);
-		for (int i = 0; i < d; ++i) {
-			for (int j = 0; j < i; ++j) {
-				cholf[i][j] = cholf[j][i];
-				cholf[j][i] = 0.0;
-			}
-		}
-		final double cmultsqrt = Math.sqrt(cmult);
-		for (int i = 0; i < d; ++i) {
-			BlasMath.dscalm(d, cmultsqrt, cholf[i], 1);
-		}
+		System.arraycopy(cov, 0, cholf, 0, d * d);
+		DenseMath.dpotrf(d, cholf, false);
+		BlasMath.dscalm(d * d, Math.sqrt(cmult), cholf, 1);
 	}
 
 	private static int samplePopulation(final Solution[] sols, final int n, final int d, final double[] mu,
-			final double[][] cholf, final int nams, final double delams, final double cmult, final double[] mushift,
+			final double[] cholf, final int nams, final double delams, final double cmult, final double[] mushift,
 			final double[] temp, final Function<? super double[], Double> func) {
 
 		// sample from the estimated normal distribution
@@ -520,7 +503,7 @@ public final class AmalgamAlgorithm extends GradientFreeOptimizer {
 			}
 			for (int i = 0; i < d; ++i) {
 				sol.x[i] = mu[i];
-				sol.x[i] += BlasMath.ddotm(d, cholf[i], 1, temp, 1);
+				sol.x[i] += BlasMath.ddotm(i + 1, cholf, i * d + 1, temp, 1);
 			}
 		}
 
@@ -542,81 +525,4 @@ public final class AmalgamAlgorithm extends GradientFreeOptimizer {
 		}
 		return ibest;
 	}
-
-	// adapted from the LINPACK package
-	// j.j. dongarra and g.w. stewart, argonne national laboratory and
-	// university of maryland.
-	private static void dchdcm(final double[][] a, final int lda, final int p, final double[] work, final int[] info) {
-
-		// internal variables
-		int pu, pl, ii, j, k, km1, kp1, l, maxl;
-		double temp, maxdia;
-
-		pl = 1;
-		pu = 0;
-		info[0] = p;
-
-		for (k = 1; k <= p; ++k) {
-
-			// reduction loop
-			maxdia = a[k - 1][k - 1];
-			kp1 = k + 1;
-			maxl = k;
-
-			// determine the pivot element
-			if (k >= pl && k < pu) {
-				for (l = kp1; l <= pu; ++l) {
-					if (a[l - 1][l - 1] > maxdia) {
-						maxdia = a[l - 1][l - 1];
-						maxl = l;
-					}
-				}
-			}
-
-			// quit if the pivot element is not positive
-			if (maxdia <= 0.0) {
-				info[0] = k - 1;
-				break;
-			}
-
-			// start the pivoting and update jpvt
-			if (k != maxl) {
-				km1 = k - 1;
-				for (ii = 1; ii <= km1; ++ii) {
-					temp = a[ii - 1][k - 1];
-					a[ii - 1][k - 1] = a[ii - 1][maxl - 1];
-					a[ii - 1][maxl - 1] = temp;
-				}
-				a[maxl - 1][maxl - 1] = a[k - 1][k - 1];
-				a[k - 1][k - 1] = maxdia;
-			}
-
-			// reduction step. pivoting is contained across the rows
-			work[k - 1] = Math.sqrt(a[k - 1][k - 1]);
-			a[k - 1][k - 1] = work[k - 1];
-			if (p >= kp1) {
-				for (j = kp1; j <= p; ++j) {
-					if (k != maxl) {
-						if (j >= maxl) {
-							if (j != maxl) {
-								temp = a[k - 1][j - 1];
-								a[k - 1][j - 1] = a[maxl - 1][j - 1];
-								a[maxl - 1][j - 1] = temp;
-							}
-						} else {
-							temp = a[k - 1][j - 1];
-							a[k - 1][j - 1] = a[j - 1][maxl - 1];
-							a[j - 1][maxl - 1] = temp;
-						}
-					}
-					a[k - 1][j - 1] /= work[k - 1];
-					work[j - 1] = a[k - 1][j - 1];
-					temp = -a[k - 1][j - 1];
-					for (ii = 1; ii <= j - k; ++ii) {
-						a[kp1 - 1 + ii - 1][j - 1] += temp * work[kp1 - 1 + ii - 1];
-					}
-				}
-			}
-		}
-	}
 }
@@ -0,0 +1,495 @@
+/*
+ * The original version of this PIKAIA software is public domain software
+ * written by the High Altitude Observatory and available here:
+ * https://www.hao.ucar.edu/modeling/pikaia/pikaia.php#sec4
+ *
+ *
+ * Copyright (c) 2020 Mike Gimelfarb
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the > "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, > subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package opt.multivariate.unconstrained.order0.evol;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import opt.multivariate.GradientFreeOptimizer;
+import opt.multivariate.MultivariateOptimizerSolution;
+import utils.Sequences;
+
+/**
+ * A scalable re-implementation of the PIKAIA genetic algorithm with full
+ * generational replacement. Unlike {@link PikaiaAlgorithm}, there is no limit on
+ * the problem dimension or the population size: each gene of nd decimal digits
+ * is packed into a single int, and the whole population is stored in one flat
+ * int array. The offspring of each generation are bred and evaluated
+ * independently, so this can optionally be done in parallel, in which case the
+ * objective function must be thread-safe.
+ *
+ * The phenotypes are searched in the box [lower, upper], which defaults to the
+ * unit hypercube as in {@link PikaiaAlgorithm}.
+ *
+ * REFERENCES:
+ *
+ * [1] https://www.hao.ucar.edu/modeling/pikaia/pikaia.php#sec4
+ */
+public final class ParallelPikaiaAlgorithm extends GradientFreeOptimizer {
+
+	private static final int[] POW10 = { 1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000,
+			1000000000 };
+
+	// algorithm parameters
+	private final int myNp, myMaxGens, myNd, myImut;
+	private final double myPCross, myPMutInit, myPMutMin, myPMutMax, myFdif;
+	private final boolean myElitism, myParallel;
+
+	// problem parameters
+	private Function<? super double[], Double> myFunc;
+	private int myD;
+	private double[] myLower, myUpper;
+
+	// population storage: genes of individual i are in [i * myD, (i + 1) * myD)
+	private int[] myGenes, myNewGenes, myOrder;
+	private double[] myFit, myNewFit, myCumRank;
+	private double myPMut;
+	private int myMod, myEvals;
+
+	/**
+	 *
+	 * @param popSize
+	 * @param maxGens
+	 * @param parallel
+	 */
+	public ParallelPikaiaAlgorithm(final int popSize, final int maxGens, final boolean parallel) {
+		this(popSize, maxGens, 6, 0.85, 2, 0.005, 0.0005, 0.25, 1.0, true, parallel);
+	}
+
+	/**
+	 *
+	 * @param popSize
+	 * @param maxGens
+	 * @param digits
+	 * @param crossRate
+	 * @param mutationMode
+	 * @param initMutateRate
+	 * @param minMutateRate
+	 * @param maxMutateRate
+	 * @param fitnessDifferential
+	 * @param elitism
+	 * @param parallel
+	 */
+	public ParallelPikaiaAlgorithm(final int popSize, final int maxGens, final int digits, final double crossRate,
+			final int mutationMode, final double initMutateRate, final double minMutateRate,
+			final double maxMutateRate, final double fitnessDifferential, final boolean elitism,
+			final boolean parallel) {
+		super(1e-6);
+		if (popSize < 2) {
+			throw new IllegalArgumentException("popSize must be at least 2.");
+		}
+		if (digits < 1 || digits > 9) {
+			throw new IllegalArgumentException("digits must be between 1 and 9.");
+		}
+		if (mutationMode < 1 || mutationMode > 6) {
+			throw new IllegalArgumentException("mutationMode must be between 1 and 6.");
+		}
+		if (crossRate < 0.0 || crossRate > 1.0) {
+			throw new IllegalArgumentException("crossRate must be in [0, 1].");
+		}
+		if (fitnessDifferential > 1.0) {
+			throw new IllegalArgumentException("fitnessDifferential must be at most 1.");
+		}
+		myNp = popSize - (popSize % 2);
+		myMaxGens = maxGens;
+		myNd = digits;
+		myPCross = crossRate;
+		myImut = mutationMode;
+		myPMutInit = initMutateRate;
+		myPMutMin = minMutateRate;
+		myPMutMax = maxMutateRate;
+		myFdif = fitnessDifferential;
+		myElitism = elitism;
+		myParallel = parallel;
+	}
+
+	@Override
+	public void initialize(final Function<? super double[], Double> func, final double[] guess) {
+		final double[] lo = new double[guess.length];
+		final double[] hi = new double[guess.length];
+		Arrays.fill(hi, 1.0);
+		initialize(func, lo, hi);
+	}
+
+	@Override
+	public void iterate() {
+
+		// build the cumulative rank-based roulette wheel
+		rankWheel();
+
+		// breed and evaluate all offspring pairs
+		range(myNp / 2).forEach(this::breed);
+		myEvals += myNp;
+
+		// if using elitism, introduce in new population fittest of old
+		// population (if greater than fitness of the individual it is
+		// to replace)
+		final int best = myOrder[0];
+		if (myElitism && myFit[best] < myNewFit[0]) {
+			System.arraycopy(myGenes, best * myD, myNewGenes, 0, myD);
+			myNewFit[0] = myFit[best];
+		}
+
+		// replace population
+		int[] tmpi = myGenes;
+		myGenes = myNewGenes;
+		myNewGenes = tmpi;
+		double[] tmpd = myFit;
+		myFit = myNewFit;
+		myNewFit = tmpd;
+		rank();
+
+		// adjust mutation rate?
+		if (myImut == 2 || myImut == 3 || myImut == 5 || myImut == 6) {
+			adjmut();
+		}
+	}
+
+	@Override
+	public MultivariateOptimizerSolution optimize(final Function<? super double[], Double> func, final double[] guess) {
+		final double[] lo = new double[guess.length];
+		final double[] hi = new double[guess.length];
+		Arrays.fill(hi, 1.0);
+		return optimize(func, lo, hi);
+	}
+
+	/**
+	 *
+	 * @param func
+	 * @param lower
+	 * @param upper
+	 */
+	public void initialize(final Function<? super double[], Double> func, final double[] lower, final double[] upper) {
+
+		// set problem
+		myFunc = func;
+		myD = lower.length;
+		myLower = lower;
+		myUpper = upper;
+		myMod = POW10[myNd];
+		myPMut = myPMutInit;
+		myEvals = 0;
+
+		// allocate population storage
+		final long size = (long) myNp * myD;
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("popSize * dimension is too large.");
+		}
+		myGenes = new int[(int) size];
+		myNewGenes = new int[(int) size];
+		myFit = new double[myNp];
+		myNewFit = new double[myNp];
+		myOrder = new int[myNp];
+		myCumRank = new double[myNp];
+
+		// compute initial (random but bounded) genotypes
+		for (int i = 0; i < myGenes.length; ++i) {
+			myGenes[i] = RAND.nextInt(myMod);
+		}
+		range(myNp).forEach(ip -> myFit[ip] = evaluate(myGenes, ip));
+		myEvals += myNp;
+
+		// rank initial population by fitness order
+		rank();
+	}
+
+	/**
+	 *
+	 * @param func
+	 * @param lower
+	 * @param upper
+	 * @return
+	 */
+	public MultivariateOptimizerSolution optimize(final Function<? super double[], Double> func, final double[] lower,
+			final double[] upper) {
+		initialize(func, lower, upper);
+
+		// main generation loop
+		for (int ig = 1; ig <= myMaxGens; ++ig) {
+			iterate();
+		}
+
+		// return best phenotype
+		final double[] sol = new double[myD];
+		decode(myGenes, myOrder[0], sol);
+		return new MultivariateOptimizerSolution(sol, myEvals, 0, false);
+	}
+
+	private IntStream range(final int end) {
+		final IntStream stream = IntStream.range(0, end);
+		return myParallel ? stream.parallel() : stream;
+	}
+
+	// ==========================================================================
+	// REPRODUCTION MODULE
+	// ==========================================================================
+	private void breed(final int ip) {
+		final Random rand = myParallel ? ThreadLocalRandom.current() : RAND;
+
+		// 1. pick two parents
+		final int ip1 = select(rand);
+		int ip2;
+		do {
+			ip2 = select(rand);
+		} while (ip1 == ip2);
+
+		// 2. copy parent genotypes into offspring slots
+		final int i1 = 2 * ip, i2 = i1 + 1;
+		System.arraycopy(myGenes, ip1 * myD, myNewGenes, i1 * myD, myD);
+		System.arraycopy(myGenes, ip2 * myD, myNewGenes, i2 * myD, myD);
+
+		// 3. breed
+		cross(rand, i1 * myD, i2 * myD);
+		mutate(rand, i1 * myD);
+		mutate(rand, i2 * myD);
+
+		// 4. compute offspring fitness
+		myNewFit[i1] = evaluate(myNewGenes, i1);
+		myNewFit[i2] = evaluate(myNewGenes, i2);
+	}
+
+	private int select(final Random rand) {
+
+		// roulette wheel on rank, using binary search on the cumulative weights
+		final double dice = rand.nextDouble() * myCumRank[myNp - 1];
+		int lo = 0, hi = myNp - 1;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (myCumRank[mid] >= dice) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return myOrder[lo];
+	}
+
+	private void rankWheel() {
+		final int np1 = myNp + 1;
+		double rtfit = 0.0;
+		for (int r = 1; r <= myNp; ++r) {
+			rtfit += np1 + myFdif * (np1 - 2 * r);
+			myCumRank[r - 1] = rtfit;
+		}
+	}
+
+	private void rank() {
+		for (int i = 0; i < myNp; ++i) {
+			myOrder[i] = i;
+		}
+		sortIndex(myFit, myOrder, 0, myNp - 1);
+	}
+
+	private double evaluate(final int[] genes, final int ip) {
+		final double[] x = new double[myD];
+		decode(genes, ip, x);
+		return myFunc.apply(x);
+	}
+
+	// ==========================================================================
+	// GENETICS MODULE
+	// ==========================================================================
+	private void decode(final int[] genes, final int ip, final double[] x) {
+		final int off = ip * myD;
+		final double z = 1.0 / myMod;
+		for (int k = 0; k < myD; ++k) {
+			x[k] = myLower[k] + (myUpper[k] - myLower[k]) * (genes[off + k] * z);
+		}
+	}
+
+	private void cross(final Random rand, final int off1, final int off2) {
+
+		// use crossover probability to decide whether a crossover occurs
+		if (rand.nextDouble() >= myPCross) {
+			return;
+		}
+
+		// compute crossover points (1-based digit positions)
+		final int len = myD * myNd;
+		int ispl = (int) (rand.nextDouble() * len) + 1;
+		int ispl2;
+		if (rand.nextDouble() < 0.5) {
+			ispl2 = len;
+		} else {
+			ispl2 = (int) (rand.nextDouble() * len) + 1;
+			if (ispl2 < ispl) {
+				final int itmp = ispl2;
+				ispl2 = ispl;
+				ispl = itmp;
+			}
+		}
+
+		// swap digits ispl to ispl2: whole genes are swapped directly, and the
+		// partially covered genes at either end are split by place value
+		final int[] gn = myNewGenes;
+		final int k1 = (ispl - 1) / myNd, k2 = (ispl2 - 1) / myNd;
+		for (int k = k1; k <= k2; ++k) {
+			final int jlo = k == k1 ? ispl - k * myNd : 1;
+			final int jhi = k == k2 ? ispl2 - k * myNd : myNd;
+			final int a = gn[off1 + k], b = gn[off2 + k];
+			if (jlo == 1 && jhi == myNd) {
+				gn[off1 + k] = b;
+				gn[off2 + k] = a;
+			} else {
+				final int hi = POW10[myNd - jlo + 1], lo = POW10[myNd - jhi];
+				final int sega = a % hi - a % lo;
+				final int segb = b % hi - b % lo;
+				gn[off1 + k] = a - sega + segb;
+				gn[off2 + k] = b - segb + sega;
+			}
+		}
+	}
+
+	private void mutate(final Random rand, final int off) {
+		final int[] gn = myNewGenes;
+		final int len = myD * myNd;
+		final boolean creep = myImut >= 4 && rand.nextDouble() <= 0.5;
+
+		// each digit mutates independently with probability pmut, so the gaps
+		// between mutated digits are geometric and can be skipped over directly
+		if (myPMut <= 0.0) {
+			return;
+		}
+		final double logq = myPMut >= 1.0 ? 0.0 : Math.log1p(-myPMut);
+		int pos = -1;
+		while (true) {
+			if (logq == 0.0) {
+				++pos;
+			} else {
+				final double skip = Math.floor(Math.log(1.0 - rand.nextDouble()) / logq);
+				if (skip >= len) {
+					break;
+				}
+				pos += 1 + (int) skip;
+			}
+			if (pos >= len) {
+				break;
+			}
+			final int k = pos / myNd;
+			final int p = POW10[myNd - 1 - pos % myNd];
+			final int v = gn[off + k];
+			if (creep) {
+
+				// CREEP MUTATION OPERATOR: random +/- 1 increment with carry,
+				// saturating the leading digits at 0 or 9
+				final int inc = rand.nextBoolean() ? 1 : -1;
+				final int vnew = v + inc * p;
+				if (vnew < 0) {
+					gn[off + k] = v % p;
+				} else if (vnew >= myMod) {
+					gn[off + k] = myMod - p + v % p;
+				} else {
+					gn[off + k] = vnew;
+				}
+			} else {
+
+				// UNIFORM MUTATION OPERATOR: replace the digit at random
+				final int digit = (v / p) % 10;
+				gn[off + k] = v + (rand.nextInt(10) - digit) * p;
+			}
+		}
+	}
+
+	private void adjmut() {
+		final double rdiflo = 0.05, rdifhi = 0.25, delta = 1.5;
+		final int ibest = myOrder[0], imed = myOrder[myNp - myNp / 2];
+		double rdif = 0.0;
+		if (myImut == 2 || myImut == 5) {
+
+			// adjustment based on fitness differential (fitness is -f)
+			final double fb = -myFit[ibest], fm = -myFit[imed];
+			rdif = Math.abs(fb - fm) / (fb + fm);
+		} else {
+
+			// adjustment based on normalized metric distance
+			final int ob = ibest * myD, om = imed * myD;
+			for (int k = 0; k < myD; ++k) {
+				final double dx = (double) (myGenes[ob + k] - myGenes[om + k]) / myMod;
+				rdif += dx * dx;
+			}
+			rdif = Math.sqrt(rdif) / myD;
+		}
+		if (rdif <= rdiflo) {
+			myPMut = Math.min(myPMutMax, myPMut * delta);
+		} else if (rdif >= rdifhi) {
+			myPMut = Math.max(myPMutMin, myPMut / delta);
+		}
+	}
+
+	private static void sortIndex(final double[] a, final int[] p, int l, int r) {
+
+		// quicksort of the index array p by key a, median-of-three pivoting,
+		// recursing into the smaller part and insertion sort for small parts
+		while (r - l >= 11) {
+			final int m = (l + r) >>> 1;
+			if (a[p[m]] < a[p[l]]) {
+				Sequences.swap(p, m, l);
+			}
+			if (a[p[r]] < a[p[l]]) {
+				Sequences.swap(p, r, l);
+			}
+			if (a[p[r]] < a[p[m]]) {
+				Sequences.swap(p, r, m);
+			}
+			final double x = a[p[m]];
+			int i = l, j = r;
+			while (i <= j) {
+				while (a[p[i]] < x) {
+					++i;
+				}
+				while (x < a[p[j]]) {
+					--j;
+				}
+				if (i <= j) {
+					Sequences.swap(p, i, j);
+					++i;
+					--j;
+				}
+			}
+			if (j - l < r - i) {
+				sortIndex(a, p, l, j);
+				l = i;
+			} else {
+				sortIndex(a, p, i, r);
+				r = j;
+			}
+		}
+		for (int i = l + 1; i <= r; ++i) {
+			final int t = p[i];
+			final double x = a[t];
+			int j = i - 1;
+			while (j >= l && a[p[j]] > x) {
+				p[j + 1] = p[j];
+				--j;
+			}
+			p[j + 1] = t;
+		}
+	}
+}
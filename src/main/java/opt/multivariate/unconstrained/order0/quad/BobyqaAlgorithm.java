@@ -22,6 +22,7 @@ package opt.multivariate.unconstrained.order0.quad;
 
 import java.util.Arrays;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import opt.multivariate.GradientFreeOptimizer;
 import opt.multivariate.MultivariateOptimizerSolution;
@@ -30,6 +31,13 @@ import utils.IntMath;
 import utils.RealMath;
 
 /**
+ * 
+ * In parallel mode, the linear algebra kernels that dominate the cost in high
+ * dimension (the product of the model Hessian with a vector in the truncated
+ * conjugate gradient method, and the updates of ZMAT and BMAT) are run on
+ * multiple threads when the dimension is large. The objective function is also
+ * evaluated on multiple threads at the initial interpolation points, so it must
+ * be thread-safe.
  * 
  * REFERENCES:
  * 
@@ -42,6 +50,7 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 	private final Function<? super Integer, Integer> mySize;
 	private final double myRho0;
 	private final int myMaxFEvals;
+	private final boolean myParallel;
 
 	/**
 	 *
@@ -49,13 +58,27 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 	 * @param initialRadius
 	 * @param maxEvaluations
 	 * @param sizeFunction
+	 * @param parallel
 	 */
 	public BobyqaAlgorithm(final double tolerance, final double initialRadius, final int maxEvaluations,
-			final Function<? super Integer, Integer> sizeFunction) {
+			final Function<? super Integer, Integer> sizeFunction, final boolean parallel) {
 		super(tolerance);
 		mySize = sizeFunction;
 		myRho0 = initialRadius;
 		myMaxFEvals = maxEvaluations;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param initialRadius
+	 * @param maxEvaluations
+	 * @param sizeFunction
+	 */
+	public BobyqaAlgorithm(final double tolerance, final double initialRadius, final int maxEvaluations,
+			final Function<? super Integer, Integer> sizeFunction) {
+		this(tolerance, initialRadius, maxEvaluations, sizeFunction, false);
 	}
 
 	/**
@@ -112,13 +135,14 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 
 		// call main subroutine
 		// TODO: check convergence
-		final double[] result = bobyqa(func, guess, lower, upper, npt, myRho0, myTol, myMaxFEvals, nf);
+		final double[] result = bobyqa(func, guess, lower, upper, npt, myRho0, myTol, myMaxFEvals, nf,
+				myParallel && d >= InterpolationKernels.MIN_PARALLEL_DIM, myParallel);
 		return new MultivariateOptimizerSolution(result, nf[0], 0, false);
 	}
 
 	private static double[] bobyqa(final Function<? super double[], Double> func, final double[] guess,
 			final double[] xl, final double[] xu, final int npt, final double rhobeg, final double rhoend,
-			final int maxfun, final int[] nf) {
+			final int maxfun, final int[] nf, final boolean parallel, final boolean parallelEval) {
 
 		// prepare variables
 		final int n = guess.length;
@@ -126,13 +150,13 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 		nf[0] = 0;
 
 		// call main subroutine
-		bobyqa(func, n, npt, x, xl, xu, rhobeg, rhoend, 0, maxfun, nf);
+		bobyqa(func, n, npt, x, xl, xu, rhobeg, rhoend, 0, maxfun, nf, parallel, parallelEval);
 		return x;
 	}
 
 	private static void bobyqa(final Function<? super double[], Double> func, final int n, final int npt,
 			final double[] x, final double[] xl, final double[] xu, final double rhobeg, final double rhoend,
-			final int iprint, final int maxfun, final int[] nf) {
+			final int iprint, final int maxfun, final int[] nf, final boolean parallel, final boolean parallelEval) {
 
 		final double[] sl = new double[n], su = new double[n], xbase = new double[n], fval = new double[npt],
 				xopt = new double[n], gopt = new double[n], hq = new double[n * (n + 1) / 2], pq = new double[npt],
@@ -179,7 +203,7 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 
 		// Make the call of BOBYQB.
 		bobyqb(func, n, npt, x, xl, xu, rhobeg, rhoend, iprint, maxfun, xbase, xpt, fval, xopt, gopt, hq, pq, bmat,
-				zmat, npt + n, sl, su, xnew, xalt, d, vlag, w, nf);
+				zmat, npt + n, sl, su, xnew, xalt, d, vlag, w, nf, parallel, parallelEval);
 	}
 
 	private static void bobyqb(final Function<? super double[], Double> func, final int n, final int npt,
@@ -187,7 +211,8 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 			final int iprint, final int maxfun, final double[] xbase, final double[][] xpt, final double[] fval,
 			final double[] xopt, final double[] gopt, final double[] hq, final double[] pq, final double[][] bmat,
 			final double[][] zmat, final int ndim, final double[] sl, final double[] su, final double[] xnew,
-			final double[] xalt, final double[] d, final double[] vlag, final double[] w, final int[] nf) {
+			final double[] xalt, final double[] d, final double[] vlag, final double[] w, final int[] nf,
+			final boolean parallel, final boolean parallelEval) {
 
 		final int[] kopt = new int[1], knew = new int[1];
 		final double[] dsq = new double[1], crvmin = new double[1], alpha = new double[1], cauchy = new double[1],
@@ -211,7 +236,7 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 		// initial XOPT is set too. The branch to label 720 occurs if MAXFUN is
 		// less than NPT. GOPT will be updated if KOPT is different from KBASE.
 		prelim(func, n, npt, x, xl, xu, rhobeg, iprint, maxfun, xbase, xpt, fval, gopt, hq, pq, bmat, zmat, ndim, sl,
-				su, nf, kopt);
+				su, nf, kopt, parallelEval);
 		System.arraycopy(xpt[kopt[0] - 1], 0, xopt, 0, n);
 		xoptsq = BlasMath.ddotm(n, xopt, 1, xopt, 1);
 		fsave = fval[1 - 1];
@@ -276,7 +301,7 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 				// of the quadratic model subject to the constraints on the
 				// variables...
 				trsbox(n, npt, xpt, xopt, gopt, hq, pq, sl, su, delta, xnew, d, w, 1, w, np, w, np + n, w, np + 2 * n,
-						w, np + 3 * n, dsq, crvmin);
+						w, np + 3 * n, dsq, crvmin, parallel);
 				dnorm = Math.min(delta, Math.sqrt(dsq[0]));
 				if (dnorm < half * rho) {
 					ntrits = -1;
@@ -435,7 +460,7 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 					}
 				}
 				rescue(func, n, npt, xl, xu, iprint, maxfun, xbase, xpt, fval, xopt, gopt, hq, pq, bmat, zmat, ndim, sl,
-						su, nf, delta, kopt, vlag, ptsaux, w, n + np, w, ndim + np);
+						su, nf, delta, kopt, vlag, ptsaux, w, n + np, w, ndim + np, parallel);
 				for (int i1 = 1; i1 <= 2; ++i1) {
 					for (int i2 = 1; i2 <= n; ++i2) {
 						w[2 * (i2 - 1) + i1 - 1] = ptsaux[i1 - 1][i2 - 1];
@@ -704,7 +729,7 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 				// Update BMAT and ZMAT, so that the KNEW-th interpolation point can
 				// be
 				// moved. Also update the second derivative terms of the model.
-				update(n, npt, bmat, zmat, ndim, vlag, beta, denom, knew[0], w, 1);
+				update(n, npt, bmat, zmat, ndim, vlag, beta, denom, knew[0], w, 1, parallel);
 				ih = 0;
 				pqold = pq[knew[0] - 1];
 				pq[knew[0] - 1] = zero;
@@ -942,7 +967,8 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 			final double[][] xpt, final double[] fval, final double[] xopt, final double[] gopt, final double[] hq,
 			final double[] pq, final double[][] bmat, final double[][] zmat, final int ndim, final double[] sl,
 			final double[] su, final int[] nf, final double delta, final int[] kopt, final double[] vlag,
-			final double[][] ptsaux, final double[] ptsid, final int ipt, final double[] w, final int iiw) {
+			final double[][] ptsaux, final double[] ptsid, final int ipt, final double[] w, final int iiw,
+			final boolean parallel) {
 
 		int i, ih, iw, ip, iq, ihq, ihp = 0, j, jp, jpn, k, kpt, kold, knew, nrem;
 		double sumpq, winc, distsq, temp, fbase, dsqmin, sum, bsum, vlmxsq, hdiag, den, xp = 0.0, xq = 0.0, vquad, f,
@@ -1076,7 +1102,7 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 					// KNEW-th
 					// interpolation point can be changed from provisional to
 					// original.
-					update(n, npt, bmat, zmat, ndim, vlag, beta, denom, knew, w, iiw);
+					update(n, npt, bmat, zmat, ndim, vlag, beta, denom, knew, w, iiw, parallel);
 					if (nrem == 0) {
 						return;
 					}
@@ -1303,7 +1329,7 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 			final double[] gopt, final double[] hq, final double[] pq, final double[] sl, final double[] su,
 			final double delta, final double[] xnew, final double[] d, final double[] gnew, final int ignew,
 			final double[] xbdi, final int ixbdi, final double[] s, final int is, final double[] hs, final int ihs,
-			final double[] hred, final int ihred, final double[] dsq, final double[] crvmin) {
+			final double[] hred, final int ihred, final double[] dsq, final double[] crvmin, final boolean parallel) {
 
 		int i, ih, iu, isav, iact = 0, iterc, itcsav = 0, itermax = 0, nact, k, j;
 		double sqstp, delsq, qred, beta, stepsq = 0.0, gredsq = 0.0, resid, ds, shs, temp, blen, stplen, xsum, sdec,
@@ -1312,6 +1338,7 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 
 		// Set some constants.
 		final double half = 0.5, one = 1.0, onemin = -1.0, zero = 0.0;
+		double[] work = null;
 
 		// The sign of GOPT(I) gives the sign of the change to the I-th variable
 		// that will reduce Q from its value at XOPT...
@@ -1676,22 +1703,29 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 				// second
 				// derivative matrix of the quadratic model, putting the product in
 				// HS.
-				ih = 0;
-				for (j = 1; j <= n; j++) {
-					hs[j - 1 + ihs - 1] = zero;
-					for (i = 1; i <= j; i++) {
-						++ih;
-						if (i < j) {
-							hs[j - 1 + ihs - 1] += hq[ih - 1] * s[i - 1 + is - 1];
+				if (parallel) {
+					if (work == null) {
+						work = new double[npt];
+					}
+					InterpolationKernels.hessianProduct(n, npt, xpt, pq, hq, s, is - 1, hs, ihs - 1, work);
+				} else {
+					ih = 0;
+					for (j = 1; j <= n; j++) {
+						hs[j - 1 + ihs - 1] = zero;
+						for (i = 1; i <= j; i++) {
+							++ih;
+							if (i < j) {
+								hs[j - 1 + ihs - 1] += hq[ih - 1] * s[i - 1 + is - 1];
+							}
+							hs[i - 1 + ihs - 1] += hq[ih - 1] * s[j - 1 + is - 1];
 						}
-						hs[i - 1 + ihs - 1] += hq[ih - 1] * s[j - 1 + is - 1];
 					}
-				}
-				for (k = 1; k <= npt; k++) {
-					if (pq[k - 1] != zero) {
-						temp = BlasMath.ddotm(n, xpt[k - 1], 1, s, is);
-						temp *= pq[k - 1];
-						BlasMath.daxpym(n, temp, xpt[k - 1], 1, hs, ihs);
+					for (k = 1; k <= npt; k++) {
+						if (pq[k - 1] != zero) {
+							temp = BlasMath.ddotm(n, xpt[k - 1], 1, s, is);
+							temp *= pq[k - 1];
+							BlasMath.daxpym(n, temp, xpt[k - 1], 1, hs, ihs);
+						}
 					}
 				}
 				if (crvmin[0] != zero) {
@@ -1967,12 +2001,14 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 			final double[] x, final double[] xl, final double[] xu, final double rhobeg, final int iprint,
 			final int maxfun, final double[] xbase, final double[][] xpt, final double[] fval, final double[] gopt,
 			final double[] hq, final double[] pq, final double[][] bmat, final double[][] zmat, final int ndim,
-			final double[] sl, final double[] su, final int[] nf, final int[] kopt) {
+			final double[] sl, final double[] su, final int[] nf, final int[] kopt, final boolean parallel) {
 
 		final double half = 0.5, one = 1.0, two = 2.0, zero = 0.0, rhosq = rhobeg * rhobeg, recip = one / rhosq;
 		final int np = n + 1;
 		int i, ipt = 0, itemp, j, jpt = 0, k, ih, nfm, nfx;
 		double stepa = 0.0, stepb = 0.0, fbeg = 0.0, f, temp, diff;
+		final double[][] xinit = parallel ? new double[npt][] : null;
+		final double[] finit = parallel ? new double[npt] : null;
 
 		// Set XBASE to the initial vector of variables, and set the initial
 		// elements of XPT, BMAT, HQ, PQ and ZMAT to zero.
@@ -2041,7 +2077,18 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 					x[j - 1] = xu[j - 1];
 				}
 			}
-			f = func.apply(x);
+			if (xinit != null && xinit[nf[0] - 1] == null) {
+
+				// The first 2N+1 initial points are known in advance, and the
+				// remaining ones depend only on the values of F at these points,
+				// so each group is evaluated in parallel
+				final int nflast = Math.min(nf[0] == 1 ? Math.min(npt, 2 * n + 1) : npt, Math.max(maxfun, 1));
+				for (k = nf[0]; k <= nflast; ++k) {
+					xinit[k - 1] = initialPoint(n, k, rhobeg, xbase, xl, xu, sl, su, xpt);
+				}
+				InterpolationKernels.evaluatePoints(func, xinit, finit, IntStream.range(nf[0] - 1, nflast).toArray());
+			}
+			f = InterpolationKernels.evaluate(func, x, nf[0] - 1, xinit, finit);
 			fval[nf[0] - 1] = f;
 			if (nf[0] == 1) {
 				fbeg = f;
@@ -2104,12 +2151,61 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 		}
 	}
 
+	private static double[] initialPoint(final int n, final int nf, final double rhobeg, final double[] xbase,
+			final double[] xl, final double[] xu, final double[] sl, final double[] su, final double[][] xpt) {
+
+		// Mirrors the choice of XPT(NF,.) in PRELIM, where the points beyond the
+		// first 2N+1 are read from the final rows 2 to N+1 of XPT
+		final int np = n + 1, nfm = nf - 1, nfx = nf - 1 - n;
+		final double[] xk = new double[n], x = new double[n];
+		if (nfm <= 2 * n) {
+			if (nfm >= 1 && nfm <= n) {
+				double stepa = rhobeg;
+				if (su[nfm - 1] == 0.0) {
+					stepa = -stepa;
+				}
+				xk[nfm - 1] = stepa;
+			} else if (nfm > n) {
+				double stepb = -rhobeg;
+				if (sl[nfx - 1] == 0.0) {
+					stepb = Math.min(2.0 * rhobeg, su[nfx - 1]);
+				}
+				if (su[nfx - 1] == 0.0) {
+					stepb = Math.max(-2.0 * rhobeg, sl[nfx - 1]);
+				}
+				xk[nfx - 1] = stepb;
+			}
+		} else {
+			int itemp = (nfm - np) / n;
+			int jpt = nfm - itemp * n - n;
+			int ipt = jpt + itemp;
+			if (ipt > n) {
+				itemp = jpt;
+				jpt = ipt - n;
+				ipt = itemp;
+			}
+			xk[ipt - 1] = xpt[ipt + 1 - 1][ipt - 1];
+			xk[jpt - 1] = xpt[jpt + 1 - 1][jpt - 1];
+		}
+		for (int j = 1; j <= n; j++) {
+			final double sum = xbase[j - 1] + xk[j - 1];
+			x[j - 1] = Math.min(Math.max(xl[j - 1], sum), xu[j - 1]);
+			if (xk[j - 1] == sl[j - 1]) {
+				x[j - 1] = xl[j - 1];
+			}
+			if (xk[j - 1] == su[j - 1]) {
+				x[j - 1] = xu[j - 1];
+			}
+		}
+		return x;
+	}
+
 	private static void update(final int n, final int npt, final double[][] bmat, final double[][] zmat, final int ndim,
 			final double[] vlag, final double[] beta, final double[] denom, final int knew, final double[] w,
-			final int iw) {
+			final int iw, final boolean parallel) {
 
 		double ztest, temp, tempa, tempb, alpha, tau;
-		int i, j, jl, jp, k;
+		int i, j, jp, k;
 
 		// Set some constants.
 		final double one = 1.0, zero = 0.0;
@@ -2122,21 +2218,26 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 		}
 		ztest *= 1.0e-20;
 
-		// Apply the rotations that put zeros in the KNEW-th row of ZMAT.
-		jl = 1;
+		// Apply the rotations that put zeros in the KNEW-th row of ZMAT. They are
+		// found from the KNEW-th row first, and then applied to the other rows.
+		final int[] col1 = new int[nptm], col2 = new int[nptm];
+		final double[] ca = new double[nptm], cb = new double[nptm];
+		int nrot = 0;
 		for (j = 2; j <= nptm; ++j) {
 			if (Math.abs(zmat[knew - 1][j - 1]) > ztest) {
 				temp = RealMath.hypot(zmat[knew - 1][1 - 1], zmat[knew - 1][j - 1]);
 				tempa = zmat[knew - 1][1 - 1] / temp;
 				tempb = zmat[knew - 1][j - 1] / temp;
-				for (i = 1; i <= npt; ++i) {
-					temp = tempa * zmat[i - 1][1 - 1] + tempb * zmat[i - 1][j - 1];
-					zmat[i - 1][j - 1] = tempa * zmat[i - 1][j - 1] - tempb * zmat[i - 1][1 - 1];
-					zmat[i - 1][1 - 1] = temp;
-				}
+				zmat[knew - 1][1 - 1] = tempa * zmat[knew - 1][1 - 1] + tempb * zmat[knew - 1][j - 1];
+				col1[nrot] = 0;
+				col2[nrot] = j - 1;
+				ca[nrot] = tempa;
+				cb[nrot] = tempb;
+				++nrot;
 			}
 			zmat[knew - 1][j - 1] = zero;
 		}
+		InterpolationKernels.rotateColumns(zmat, npt, knew - 1, nrot, col1, col2, ca, cb, parallel);
 
 		// Put the first NPT components of the KNEW-th column of HLAG into W,
 		// and calculate the parameters of the updating formula.
@@ -2156,17 +2257,13 @@ public final class BobyqaAlgorithm extends GradientFreeOptimizer {
 		}
 
 		// Finally, update the matrix BMAT.
+		final double[] ta = new double[n], tb = new double[n];
 		for (j = 1; j <= n; ++j) {
 			jp = npt + j;
 			w[jp - 1 + iw - 1] = bmat[knew - 1][j - 1];
-			tempa = (alpha * vlag[jp - 1] - tau * w[jp - 1 + iw - 1]) / denom[0];
-			tempb = (-beta[0] * w[jp - 1 + iw - 1] - tau * vlag[jp - 1]) / denom[0];
-			for (i = 1; i <= jp; ++i) {
-				bmat[i - 1][j - 1] += tempa * vlag[i - 1] + tempb * w[i - 1 + iw - 1];
-				if (i > npt) {
-					bmat[jp - 1][i - npt - 1] = bmat[i - 1][j - 1];
-				}
-			}
+			ta[j - 1] = (alpha * vlag[jp - 1] - tau * w[jp - 1 + iw - 1]) / denom[0];
+			tb[j - 1] = (-beta[0] * w[jp - 1 + iw - 1] - tau * vlag[jp - 1]) / denom[0];
 		}
+		InterpolationKernels.updateBmat(n, npt, bmat, vlag, w, iw - 1, ta, tb, parallel);
 	}
 }
@@ -0,0 +1,187 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.multivariate.unconstrained.order0.quad;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Kernels shared by the quadratic interpolation methods of Powell for problems
+ * in high dimension. The updates of ZMAT and BMAT traverse the matrices by rows,
+ * which are stored contiguously, and give the same results as the column
+ * oriented loops of the original Fortran code. All kernels can be run in
+ * parallel over blocks of rows or columns.
+ */
+final class InterpolationKernels {
+
+	// problems below this dimension always use the serial code
+	static final int MIN_PARALLEL_DIM = 64;
+
+	private static final int BLOCK = 32;
+
+	private InterpolationKernels() {
+	}
+
+	/**
+	 * Applies a sequence of Givens rotations to pairs of columns of ZMAT, in all
+	 * rows except the given one. The r-th rotation replaces the columns (a, b) by
+	 * (ca a + cb b, ca b - cb a), where a and b are columns col1[r] and col2[r].
+	 */
+	static void rotateColumns(final double[][] zmat, final int npt, final int skip, final int nrot, final int[] col1,
+			final int[] col2, final double[] ca, final double[] cb, final boolean parallel) {
+		if (nrot == 0) {
+			return;
+		}
+		if (parallel) {
+			IntStream.range(0, npt).parallel().forEach(i -> {
+				if (i != skip) {
+					rotateRow(zmat[i], nrot, col1, col2, ca, cb);
+				}
+			});
+		} else {
+			for (int i = 0; i < npt; ++i) {
+				if (i != skip) {
+					rotateRow(zmat[i], nrot, col1, col2, ca, cb);
+				}
+			}
+		}
+	}
+
+	static void rotateRow(final double[] z, final int nrot, final int[] col1, final int[] col2, final double[] ca,
+			final double[] cb) {
+		for (int r = 0; r < nrot; ++r) {
+			final int jl = col1[r], j = col2[r];
+			final double temp = ca[r] * z[jl] + cb[r] * z[j];
+			z[j] = ca[r] * z[j] - cb[r] * z[jl];
+			z[jl] = temp;
+		}
+	}
+
+	/**
+	 * Adds ta[j] vlag + tb[j] w to the j-th column of BMAT, where only the upper
+	 * triangle of the last n rows is updated and then copied to the lower
+	 * triangle, and w starts at index wi.
+	 */
+	static void updateBmat(final int n, final int npt, final double[][] bmat, final double[] vlag, final double[] w,
+			final int wi, final double[] ta, final double[] tb, final boolean parallel) {
+		final int ndim = npt + n;
+		if (parallel) {
+			IntStream.range(0, ndim).parallel().forEach(i -> updateBmatRow(n, npt, bmat, vlag, w, wi, ta, tb, i));
+			IntStream.range(0, n).parallel().forEach(j -> mirrorBmatRow(n, npt, bmat, j));
+		} else {
+			for (int i = 0; i < ndim; ++i) {
+				updateBmatRow(n, npt, bmat, vlag, w, wi, ta, tb, i);
+			}
+			for (int j = 0; j < n; ++j) {
+				mirrorBmatRow(n, npt, bmat, j);
+			}
+		}
+	}
+
+	private static void updateBmatRow(final int n, final int npt, final double[][] bmat, final double[] vlag,
+			final double[] w, final int wi, final double[] ta, final double[] tb, final int i) {
+		final double[] row = bmat[i];
+		final double vi = vlag[i], wv = w[i + wi];
+		for (int j = Math.max(0, i - npt); j < n; ++j) {
+			row[j] += ta[j] * vi + tb[j] * wv;
+		}
+	}
+
+	private static void mirrorBmatRow(final int n, final int npt, final double[][] bmat, final int j) {
+		final double[] row = bmat[npt + j];
+		for (int i = 0; i < j; ++i) {
+			row[i] = bmat[npt + i][j];
+		}
+	}
+
+	/**
+	 * Sets out to the product of the second derivative matrix of the quadratic
+	 * model with v, where the explicit part is stored in packed form in HQ and the
+	 * implicit part is the sum of pq[k] xpt[k] xpt[k]'. The vector v starts at
+	 * index vi, out starts at index oi, and work has length npt.
+	 */
+	static void hessianProduct(final int n, final int npt, final double[][] xpt, final double[] pq, final double[] hq,
+			final double[] v, final int vi, final double[] out, final int oi, final double[] work) {
+		IntStream.range(0, npt).parallel().forEach(k -> {
+			double sum = 0.0;
+			if (pq[k] != 0.0) {
+				final double[] xk = xpt[k];
+				for (int j = 0; j < n; ++j) {
+					sum += xk[j] * v[j + vi];
+				}
+			}
+			work[k] = sum * pq[k];
+		});
+		final int nblocks = (n + BLOCK - 1) / BLOCK;
+		IntStream.range(0, nblocks).parallel().forEach(b -> {
+			final int lo = b * BLOCK, hi = Math.min(n, lo + BLOCK);
+
+			// explicit part: column i of the packed matrix, then row i
+			for (int i = lo; i < hi; ++i) {
+				double sum = 0.0;
+				final int col = i * (i + 1) / 2;
+				for (int p = 0; p <= i; ++p) {
+					sum += hq[col + p] * v[p + vi];
+				}
+				for (int q = i + 1; q < n; ++q) {
+					sum += hq[q * (q + 1) / 2 + i] * v[q + vi];
+				}
+				out[i + oi] = sum;
+			}
+
+			// implicit part over the block of columns
+			for (int k = 0; k < npt; ++k) {
+				final double wk = work[k];
+				if (wk != 0.0) {
+					final double[] xk = xpt[k];
+					for (int i = lo; i < hi; ++i) {
+						out[i + oi] += wk * xk[i];
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Evaluates the objective function on multiple threads at the points xinit[k]
+	 * for all k in index, and stores the values in finit. The points are predicted
+	 * ahead of time by the initialization of the interpolation set.
+	 */
+	static void evaluatePoints(final Function<? super double[], Double> func, final double[][] xinit,
+			final double[] finit, final int[] index) {
+		Arrays.stream(index).parallel().forEach(k -> finit[k] = func.apply(xinit[k]));
+	}
+
+	/**
+	 * Returns the value of the objective function at x, which is looked up in
+	 * finit if x is the k-th point evaluated by evaluatePoints, and computed
+	 * otherwise.
+	 */
+	static double evaluate(final Function<? super double[], Double> func, final double[] x, final int k,
+			final double[][] xinit, final double[] finit) {
+		if (xinit != null && k < xinit.length && xinit[k] != null && Arrays.equals(xinit[k], x)) {
+			return finit[k];
+		}
+		return func.apply(x);
+	}
+}
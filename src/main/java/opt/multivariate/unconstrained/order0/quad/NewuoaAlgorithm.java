@@ -22,6 +22,7 @@ package opt.multivariate.unconstrained.order0.quad;
 
 import java.util.Arrays;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import opt.multivariate.GradientFreeOptimizer;
 import opt.multivariate.MultivariateOptimizerSolution;
@@ -29,6 +30,13 @@ import utils.BlasMath;
 import utils.RealMath;
 
 /**
+ * 
+ * In parallel mode, the linear algebra kernels that dominate the cost in high
+ * dimension (the product of the model Hessian with a vector in the truncated
+ * conjugate gradient method, and the updates of ZMAT and BMAT) are run on
+ * multiple threads when the dimension is large. The objective function is also
+ * evaluated on multiple threads at the initial interpolation points, so it must
+ * be thread-safe.
  * 
  * REFERENCES:
  * 
@@ -41,6 +49,7 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 	private final Function<Integer, Integer> mySize;
 	private final double myRho0;
 	private final int myMaxFev;
+	private final boolean myParallel;
 
 	/**
 	 *
@@ -48,13 +57,27 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 	 * @param initialStep
 	 * @param maxEvaluations
 	 * @param sizeFunction
+	 * @param parallel
 	 */
 	public NewuoaAlgorithm(final double tolerance, final double initialStep, final int maxEvaluations,
-			final Function<Integer, Integer> sizeFunction) {
+			final Function<Integer, Integer> sizeFunction, final boolean parallel) {
 		super(tolerance);
 		myRho0 = initialStep;
 		myMaxFev = maxEvaluations;
 		mySize = sizeFunction;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param initialStep
+	 * @param maxEvaluations
+	 * @param sizeFunction
+	 */
+	public NewuoaAlgorithm(final double tolerance, final double initialStep, final int maxEvaluations,
+			final Function<Integer, Integer> sizeFunction) {
+		this(tolerance, initialStep, maxEvaluations, sizeFunction, false);
 	}
 
 	/**
@@ -88,12 +111,14 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 
 		// call main subroutine
 		// TODO: check convergence
-		x = newuoa(func, n, npt, x, myRho0, myTol, myMaxFev, fev);
+		x = newuoa(func, n, npt, x, myRho0, myTol, myMaxFev, fev,
+				myParallel && n >= InterpolationKernels.MIN_PARALLEL_DIM, myParallel);
 		return new MultivariateOptimizerSolution(x, fev[0], 0, false);
 	}
 
 	private static double[] newuoa(final Function<? super double[], Double> calfun, final int n, final int npt,
-			final double[] x, final double rhobeg, final double rhoend, final int maxfun, final int[] fev) {
+			final double[] x, final double rhobeg, final double rhoend, final int maxfun, final int[] fev,
+			final boolean parallel, final boolean parallelEval) {
 
 		// prepare variables
 		final int ndim = npt + n;
@@ -105,7 +130,7 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 
 		// call main subroutine
 		newuob(calfun, n, npt, x, rhobeg, rhoend, maxfun, xbase, xopt, xnew, xpt, fval, gq, hq, pq, bmat, zmat, ndim, d,
-				vlag, w, fev);
+				vlag, w, fev, parallel, parallelEval);
 		return x;
 	}
 
@@ -113,7 +138,8 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 			final double[] x, final double rhobeg, final double rhoend, final int maxfun, final double[] xbase,
 			final double[] xopt, final double[] xnew, final double[][] xpt, final double[] fval, final double[] gq,
 			final double[] hq, final double[] pq, final double[][] bmat, final double[][] zmat, final int ndim,
-			final double[] d, final double[] vlag, final double[] w, final int[] fev) {
+			final double[] d, final double[] vlag, final double[] w, final int[] fev, final boolean parallel,
+			final boolean parallelEval) {
 
 		int i, ih, ip, ipt = 0, itemp, itest = 0, j, jp, jpt = 0, k, knew = 0, ktemp, ksave = 0, kopt = 0, nf, nfm = 0,
 				nfmm = 0, nfsav = 0;
@@ -124,6 +150,8 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 		final double[] crvmin = new double[1], alpha = new double[1], beta = new double[1];
 		final double[][] wvec1 = new double[ndim][5], prod1 = new double[ndim][5];
 		final int[] idz = new int[1];
+		final double[][] xinit = parallelEval ? new double[npt][] : null;
+		final double[] finit = parallelEval ? new double[npt] : null;
 
 		// Set some constants
 		final double HALF = 0.5, ONE = 1.0, TENTH = 0.1, ZERO = 0.0;
@@ -256,7 +284,7 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 				// to -1 if the purpose of the next F will be to improve the model
 				knew = 0;
 				trsapp(n, npt, xopt, xpt, gq, hq, pq, delta, d, w, w, w, w, crvmin, 0, np - 1, np + n - 1,
-						np + 2 * n - 1);
+						np + 2 * n - 1, parallel);
 				dsq = BlasMath.ddotm(n, d, 1, d, 1);
 				dnorm = Math.min(delta, Math.sqrt(dsq));
 				if (dnorm < HALF * rho) {
@@ -461,7 +489,18 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 					}
 					return;
 				}
-				f = calfun.apply(x);
+				if (xinit != null && nf <= npt && xinit[nf - 1] == null) {
+
+					// The first 2N+1 initial points are known in advance, and the
+					// remaining ones depend only on the values of F at these points,
+					// so each group is evaluated in parallel
+					final int nflast = Math.min(nf == 1 ? Math.min(npt, 2 * n + 1) : npt, nftest);
+					for (k = nf; k <= nflast; ++k) {
+						xinit[k - 1] = initialPoint(n, k, rhobeg, xbase, fval);
+					}
+					InterpolationKernels.evaluatePoints(calfun, xinit, finit, IntStream.range(nf - 1, nflast).toArray());
+				}
+				f = InterpolationKernels.evaluate(calfun, x, nf - 1, xinit, finit);
 				++fev[0];
 				if (nf <= npt) {
 					gotoflag = 70;
@@ -579,7 +618,7 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 				// Update BMAT, ZMAT and IDZ, so that the KNEW-th interpolation point
 				// can be moved. Begin the updating of the quadratic model, starting
 				// with the explicit second derivative term
-				update(n, npt, bmat, zmat, idz, ndim, vlag, beta[0], knew, w);
+				update(n, npt, bmat, zmat, idz, ndim, vlag, beta[0], knew, w, parallel);
 				fval[knew - 1] = f;
 				ih = 0;
 				for (i = 1; i <= n; ++i) {
@@ -1226,10 +1265,46 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 		}
 	}
 
+	private static double[] initialPoint(final int n, final int nf, final double rhobeg, final double[] xbase,
+			final double[] fval) {
+
+		// Mirrors the choice of XPT(NF,.) in the initialization of NEWUOB
+		final int np = n + 1, nfm = nf - 1, nfmm = nf - 1 - n;
+		final double[] xk = new double[n], x = new double[n];
+		if (nfm <= 2 * n) {
+			if (nfm >= 1 && nfm <= n) {
+				xk[nfm - 1] = rhobeg;
+			} else if (nfm > n) {
+				xk[nfmm - 1] = -rhobeg;
+			}
+		} else {
+			int itemp = (nfmm - 1) / n;
+			int jpt = nfm - itemp * n - n;
+			int ipt = jpt + itemp;
+			if (ipt > n) {
+				itemp = jpt;
+				jpt = ipt - n;
+				ipt = itemp;
+			}
+			double xipt = rhobeg;
+			if (fval[ipt + np - 1] < fval[ipt + 1 - 1]) {
+				xipt = -xipt;
+			}
+			double xjpt = rhobeg;
+			if (fval[jpt + np - 1] < fval[jpt + 1 - 1]) {
+				xjpt = -xjpt;
+			}
+			xk[ipt - 1] = xipt;
+			xk[jpt - 1] = xjpt;
+		}
+		BlasMath.dxpy1(n, xk, 1, xbase, 1, x, 1);
+		return x;
+	}
+
 	private static void trsapp(final int n, final int npt, final double[] xopt, final double[][] xpt, final double[] gq,
 			final double[] hq, final double[] pq, final double delta, final double[] step, final double[] d,
 			final double[] g, final double[] hd, final double[] hs, final double[] crvmin, final int di, final int gi,
-			final int hdi, final int hsi) {
+			final int hdi, final int hsi, final boolean parallel) {
 
 		// Initialization, which includes setting HD to H times XOPT
 		double alpha, angtest, angle, bstep = 0.0, cf, cth, dd = 0.0, dhd, dhs, dg, ds, gg = 0.0, ggbeg = 0.0, ggsav,
@@ -1242,6 +1317,7 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 		itermax = n;
 		itersw = itermax;
 		System.arraycopy(xopt, 0, d, di, n);
+		final double[] work = parallel ? new double[npt] : null;
 
 		while (true) {
 
@@ -1249,20 +1325,24 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 			// HD to the vector D multiplied by the second derivative matrix of Q.
 			// They are called from three different places, which are distinguished
 			// by the value of ITERC
-			Arrays.fill(hd, hdi, n + hdi, ZERO);
-			for (k = 1; k <= npt; ++k) {
-				temp = BlasMath.ddotm(n, xpt[k - 1], 1, d, di + 1);
-				temp *= pq[k - 1];
-				BlasMath.daxpym(n, temp, xpt[k - 1], 1, hd, hdi + 1);
-			}
-			ih = 0;
-			for (j = 1; j <= n; ++j) {
-				for (i = 1; i <= j; ++i) {
-					++ih;
-					if (i < j) {
-						hd[j - 1 + hdi] += (hq[ih - 1] * d[i - 1 + di]);
+			if (parallel) {
+				InterpolationKernels.hessianProduct(n, npt, xpt, pq, hq, d, di, hd, hdi, work);
+			} else {
+				Arrays.fill(hd, hdi, n + hdi, ZERO);
+				for (k = 1; k <= npt; ++k) {
+					temp = BlasMath.ddotm(n, xpt[k - 1], 1, d, di + 1);
+					temp *= pq[k - 1];
+					BlasMath.daxpym(n, temp, xpt[k - 1], 1, hd, hdi + 1);
+				}
+				ih = 0;
+				for (j = 1; j <= n; ++j) {
+					for (i = 1; i <= j; ++i) {
+						++ih;
+						if (i < j) {
+							hd[j - 1 + hdi] += (hq[ih - 1] * d[i - 1 + di]);
+						}
+						hd[i - 1 + hdi] += (hq[ih - 1] * d[j - 1 + di]);
 					}
-					hd[i - 1 + hdi] += (hq[ih - 1] * d[j - 1 + di]);
 				}
 			}
 			if (iterc == 0) {
@@ -1458,7 +1538,8 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 	}
 
 	private static void update(final int n, final int npt, final double[][] bmat, final double[][] zmat,
-			final int[] idz, final int ndim, final double[] vlag, final double beta, final int knew, final double[] w) {
+			final int[] idz, final int ndim, final double[] vlag, final double beta, final int knew, final double[] w,
+			final boolean parallel) {
 
 		// The arrays BMAT and ZMAT with IDZ are updated, in order to shift the
 		// interpolation point that has index KNEW. On entry, VLAG contains the
@@ -1472,7 +1553,11 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 		final double ONE = 1.0, ZERO = 0.0;
 		final int nptm = npt - n - 1;
 
-		// Apply the rotations that put zeros in the KNEW-th row of ZMAT
+		// Apply the rotations that put zeros in the KNEW-th row of ZMAT. They are
+		// found from the KNEW-th row first, and then applied to the other rows
+		final int[] col1 = new int[nptm], col2 = new int[nptm];
+		final double[] ca = new double[nptm], cb = new double[nptm];
+		int nrot = 0;
 		jl = 1;
 		for (j = 2; j <= nptm; ++j) {
 			if (j == idz[0]) {
@@ -1481,14 +1566,16 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 				temp = RealMath.hypot(zmat[knew - 1][jl - 1], zmat[knew - 1][j - 1]);
 				tempa = zmat[knew - 1][jl - 1] / temp;
 				tempb = zmat[knew - 1][j - 1] / temp;
-				for (i = 1; i <= npt; ++i) {
-					temp = tempa * zmat[i - 1][jl - 1] + tempb * zmat[i - 1][j - 1];
-					zmat[i - 1][j - 1] = tempa * zmat[i - 1][j - 1] - tempb * zmat[i - 1][jl - 1];
-					zmat[i - 1][jl - 1] = temp;
-				}
+				zmat[knew - 1][jl - 1] = tempa * zmat[knew - 1][jl - 1] + tempb * zmat[knew - 1][j - 1];
 				zmat[knew - 1][j - 1] = ZERO;
+				col1[nrot] = jl - 1;
+				col2[nrot] = j - 1;
+				ca[nrot] = tempa;
+				cb[nrot] = tempb;
+				++nrot;
 			}
 		}
+		InterpolationKernels.rotateColumns(zmat, npt, knew - 1, nrot, col1, col2, ca, cb, parallel);
 
 		// Put the first NPT components of the KNEW-th column of HLAG into W,
 		// and calculate the parameters of the updating formula
@@ -1567,17 +1654,13 @@ public final class NewuoaAlgorithm extends GradientFreeOptimizer {
 		}
 
 		// Finally, update the matrix BMAT
+		final double[] ta = new double[n], tb = new double[n];
 		for (j = 1; j <= n; ++j) {
 			jp = npt + j;
 			w[jp - 1] = bmat[knew - 1][j - 1];
-			tempa = (alpha * vlag[jp - 1] - tau * w[jp - 1]) / denom;
-			tempb = (-beta * w[jp - 1] - tau * vlag[jp - 1]) / denom;
-			for (i = 1; i <= jp; ++i) {
-				bmat[i - 1][j - 1] += (tempa * vlag[i - 1] + tempb * w[i - 1]);
-				if (i > npt) {
-					bmat[jp - 1][i - npt - 1] = bmat[i - 1][j - 1];
-				}
-			}
+			ta[j - 1] = (alpha * vlag[jp - 1] - tau * w[jp - 1]) / denom;
+			tb[j - 1] = (-beta * w[jp - 1] - tau * vlag[jp - 1]) / denom;
 		}
+		InterpolationKernels.updateBmat(n, npt, bmat, vlag, w, 0, ta, tb, parallel);
 	}
 }
@@ -34,22 +34,39 @@ import utils.RealMath;
  * 
  * [1] Powell, Michael JD. "UOBYQA: unconstrained optimization by quadratic
  * approximation." Mathematical Programming 92.3 (2002): 555-582.
+ * 
+ * In parallel mode, the objective function is evaluated on multiple threads at
+ * the initial interpolation points, so it must be thread-safe.
  */
 public final class UobyqaAlgorithm extends GradientFreeOptimizer {
 
 	private final double myRho0;
 	private final int myMaxFev;
+	private final boolean myParallel;
 
 	/**
 	 *
 	 * @param tolerance
 	 * @param initialStep
 	 * @param maxEvaluations
+	 * @param parallel
 	 */
-	public UobyqaAlgorithm(final double tolerance, final double initialStep, final int maxEvaluations) {
+	public UobyqaAlgorithm(final double tolerance, final double initialStep, final int maxEvaluations,
+			final boolean parallel) {
 		super(tolerance);
 		myRho0 = initialStep;
 		myMaxFev = maxEvaluations;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param initialStep
+	 * @param maxEvaluations
+	 */
+	public UobyqaAlgorithm(final double tolerance, final double initialStep, final int maxEvaluations) {
+		this(tolerance, initialStep, maxEvaluations, false);
 	}
 
 	@Override
@@ -72,25 +89,26 @@ public final class UobyqaAlgorithm extends GradientFreeOptimizer {
 
 		// call main subroutine
 		// TODO: check convergence
-		uobyqa1(func, n, x, myMaxFev, myRho0, myTol, fev);
+		uobyqa1(func, n, x, myMaxFev, myRho0, myTol, fev, myParallel);
 		return new MultivariateOptimizerSolution(x, fev[0], 0, false);
 	}
 
 	private static void uobyqa1(final Function<? super double[], Double> func, final int n, final double[] x,
-			final int maxfev, final double rhobeg, final double rhoend, final int[] fev) {
+			final int maxfev, final double rhobeg, final double rhoend, final int[] fev, final boolean parallel) {
 		final int iprint = 0, npt = (n * n + 3 * n + 2) / 2;
 		final double[][] pl = new double[npt][npt], h = new double[n][n], xpt = new double[npt][n];
 		final double[] xbase = new double[n], xopt = new double[n], xnew = new double[n], pq = new double[npt],
 				g = new double[n], d = new double[n], vlag = new double[npt], w = new double[Math.max(6 * n, npt)];
 		fev[0] = 0;
-		uobyqb(func, n, x, rhobeg, rhoend, iprint, maxfev, npt, xbase, xopt, xnew, xpt, pq, pl, h, g, d, vlag, w, fev);
+		uobyqb(func, n, x, rhobeg, rhoend, iprint, maxfev, npt, xbase, xopt, xnew, xpt, pq, pl, h, g, d, vlag, w, fev,
+				parallel);
 	}
 
 	private static void uobyqb(final Function<? super double[], Double> func, final int n, final double[] x,
 			final double rhobeg, final double rhoend, final int iprint, final int maxfun, final int npt,
 			final double[] xbase, final double[] xopt, final double[] xnew, final double[][] xpt, final double[] pq,
 			final double[][] pl, final double[][] h, final double[] g, final double[] d, final double[] vlag,
-			final double[] w, final int[] fev) {
+			final double[] w, final int[] fev, final boolean parallel) {
 
 		final double[] empty = new double[npt], evalue = new double[1], vmax = new double[1];
 		final double one, two, zero, half, tol;
@@ -98,6 +116,8 @@ public final class UobyqaAlgorithm extends GradientFreeOptimizer {
 		double delta = 0.0, detrat, distest, ddknew = 0.0, dnorm = 0.0, diff = 0.0, errtol = 0.0, estim, rho, rhosq,
 				tworsq = 0.0, sixthm = 0.0, f = 0.0, fbase = 0.0, fopt = 0.0, fsave = 0.0, ratio, sum, sumh, sumg,
 				temp = 0.0, tempa, vquad, wmult = 0.0;
+		final double[][] xinit = parallel ? new double[npt][] : null;
+		final double[] finit = parallel ? new double[npt] : null;
 		int nf, i, ih = 0, ip = 0, iq = 0, iw, j = 0, jswitch = 0, k, knew = 0, ksave = 0, ktemp, kopt = 0;
 
 		// Set some constants
@@ -290,7 +310,10 @@ public final class UobyqaAlgorithm extends GradientFreeOptimizer {
 					return;
 				}
 				++nf;
-				f = func.apply(x);
+				if (xinit != null && nf <= npt && xinit[nf - 1] == null) {
+					prefetch(func, n, npt, nf, nftest, rho, xbase, w, xinit, finit);
+				}
+				f = InterpolationKernels.evaluate(func, x, nf - 1, xinit, finit);
 				++fev[0];
 				if (nf <= npt) {
 					flag = 50;
@@ -568,6 +591,62 @@ public final class UobyqaAlgorithm extends GradientFreeOptimizer {
 		}
 	}
 
+	private static void prefetch(final Function<? super double[], Double> func, final int n, final int npt,
+			final int nf, final int nftest, final double rho, final double[] xbase, final double[] w,
+			final double[][] xinit, final double[] finit) {
+
+		// The initial points are generated in three groups, each of which depends
+		// only on the values of F in the previous groups: XBASE and the steps RHO
+		// along the coordinates, then the second steps along the coordinates,
+		// whose signs depend on F, and finally the off-diagonal points, which
+		// depend on the signs W
+		final int nnp = n + n + 1;
+		final double[] step = new double[n];
+		final int[] index;
+		if (nf == 1) {
+			index = new int[n + 1];
+			for (int j = 0; j <= n; ++j) {
+				final int k = j == 0 ? 0 : 2 * j - 1;
+				if (j >= 1) {
+					step[j - 1] = rho;
+				}
+				index[j] = k;
+				xinit[k] = new double[n];
+				BlasMath.dxpy1(n, xbase, 1, step, 1, xinit[k], 1);
+				if (j >= 1) {
+					step[j - 1] = 0.0;
+				}
+			}
+		} else if (nf <= nnp) {
+			index = new int[n];
+			for (int j = 1; j <= n; ++j) {
+				index[j - 1] = 2 * j;
+				step[j - 1] = finit[2 * j - 1] < finit[0] ? 2.0 * rho : -rho;
+				xinit[2 * j] = new double[n];
+				BlasMath.dxpy1(n, xbase, 1, step, 1, xinit[2 * j], 1);
+				step[j - 1] = 0.0;
+			}
+		} else {
+			index = new int[npt - nnp];
+			int ip = 1, iq = 2;
+			for (int k = nnp; k < npt; ++k) {
+				index[k - nnp] = k;
+				step[ip - 1] = w[ip - 1];
+				step[iq - 1] = w[iq - 1];
+				xinit[k] = new double[n];
+				BlasMath.dxpy1(n, xbase, 1, step, 1, xinit[k], 1);
+				step[ip - 1] = step[iq - 1] = 0.0;
+				++ip;
+				if (ip == iq) {
+					ip = 1;
+					++iq;
+				}
+			}
+		}
+		InterpolationKernels.evaluatePoints(func, xinit, finit,
+				Arrays.stream(index).filter(k -> k < nftest).toArray());
+	}
+
 	private static void trstep(final int n, final double[] g, final double[][] h, final double delta, final double tol,
 			final double[] d, final double[] gg, final int igg, final double[] td, final int itd, final double[] tn,
 			final int itn, final double[] w, final int iw, final double[] piv, final int ipiv, final double[] z,
@@ -27,21 +27,45 @@ import utils.BlasMath;
 import utils.Constants;
 
 /**
+ * The correction pairs are stored in flat arrays with one contiguous column of
+ * length n per pair, used as a circular buffer, so the products with the
+ * limited memory matrices are plain dot products and axpys over contiguous
+ * memory. For very large problems these reductions can optionally be split
+ * across threads.
  *
  * @author Michael
  */
 public final class LBFGSBAlgorithm extends GradientOptimizer {
 
+	// task codes of the reverse communication between the driver, mainlb and
+	// the line search
+	private enum Task {
+		START, FG, FG_START, FG_LNSRCH, NEW_X, CONVERGENCE, WARNING, ERROR, ABNORMAL, RESTART
+	}
+
 	private final int mySize;
+	private final boolean myParallel;
 
 	/**
 	 *
 	 * @param tolerance
 	 * @param memorySize
+	 * @param parallel   whether to split the vector operations across threads
+	 *                   for very large problems
 	 */
-	public LBFGSBAlgorithm(final double tolerance, final int memorySize) {
+	public LBFGSBAlgorithm(final double tolerance, final int memorySize, final boolean parallel) {
 		super(tolerance);
 		mySize = memorySize;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param memorySize
+	 */
+	public LBFGSBAlgorithm(final double tolerance, final int memorySize) {
+		this(tolerance, memorySize, false);
 	}
 
 	@Override
@@ -58,11 +82,11 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 			nbd[i] = 0;
 		}
 		final int[] fev = new int[1];
+		final boolean[] converged = new boolean[1];
 
 		// call main subroutine
-		final double[] result = lbfgsb(f, df, guess, l, u, nbd, mySize, 10.0, myTol, fev);
-		// TODO: check convergence
-		return new MultivariateOptimizerSolution(result, fev[0], fev[0], false);
+		final double[] result = lbfgsb(f, df, guess, l, u, nbd, mySize, 10.0, myTol, fev, converged, myParallel);
+		return new MultivariateOptimizerSolution(result, fev[0], fev[0], converged[0]);
 	}
 
 	/**
@@ -83,16 +107,17 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 			nbd[i] = 2;
 		}
 		final int[] fev = new int[1];
+		final boolean[] converged = new boolean[1];
 
 		// call main subroutine
-		// TODO: check convergence
-		final double[] result = lbfgsb(f, df, guess, lb, ub, nbd, mySize, 10.0, myTol, fev);
-		return new MultivariateOptimizerSolution(result, fev[0], fev[0], false);
+		final double[] result = lbfgsb(f, df, guess, lb, ub, nbd, mySize, 10.0, myTol, fev, converged, myParallel);
+		return new MultivariateOptimizerSolution(result, fev[0], fev[0], converged[0]);
 	}
 
 	private static double[] lbfgsb(final Function<? super double[], Double> func,
 			final Function<? super double[], double[]> dfunc, final double[] guess, final double[] l, final double[] u,
-			final int[] nbd, final int m, final double factr, final double pgtol, final int[] fev) {
+			final int[] nbd, final int m, final double factr, final double pgtol, final int[] fev,
+			final boolean[] converged, final boolean par) {
 
 		// prepare variables
 		final int n = guess.length;
@@ -100,34 +125,35 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 
 		// call main subroutine
 		fev[0] = 0;
-		driver(func, dfunc, n, m, x, l, u, nbd, factr, pgtol, fev);
+		driver(func, dfunc, n, m, x, l, u, nbd, factr, pgtol, fev, converged, par);
 		return x;
 	}
 
 	private static void driver(final Function<? super double[], Double> func,
 			final Function<? super double[], double[]> dfunc, final int n, final int m, final double[] x,
 			final double[] l, final double[] u, final int[] nbd, final double factr, final double pgtol,
-			final int[] fev) {
+			final int[] fev, final boolean[] converged, final boolean par) {
 
-		final double[][] ws = new double[n][m], wy = new double[n][m], sy = new double[m][m], ss = new double[m][m],
-				wt = new double[m][m], wn = new double[2 * m][2 * m], snd = new double[2 * m][2 * m];
+		final double[] ws = new double[m * n], wy = new double[m * n];
+		final double[][] sy = new double[m][m], ss = new double[m][m], wt = new double[m][m],
+				wn = new double[2 * m][2 * m], snd = new double[2 * m][2 * m];
 		final double[] z = new double[n], r = new double[n], d = new double[n], t = new double[n], xp = new double[n],
 				wa = new double[8 * m], dsave = new double[29], f = new double[1], g = new double[n];
-		final int[] iwa = new int[3 * n], isave = new int[44];
-		final String[] task = new String[1], csave = new String[1];
+		final int[] index = new int[n], iwhere = new int[n], indx2 = new int[n], isave = new int[44];
+		final Task[] task = new Task[1], csave = new Task[1];
 		final boolean[] lsave = new boolean[4];
 
 		// We start the iteration by initializing task.
-		task[0] = "START";
+		task[0] = Task.START;
 
 		// ------- the beginning of the loop ----------
 		while (true) {
 
 			// This is the call to the L-BFGS-B code.
-			setulb(n, m, x, l, u, nbd, f, g, factr, pgtol, ws, wy, sy, ss, wt, wn, snd, z, r, d, t, xp, wa, iwa, task,
-					-1, csave, lsave, isave, dsave);
+			mainlb(n, m, x, l, u, nbd, f, g, factr, pgtol, ws, wy, sy, ss, wt, wn, snd, z, r, d, t, xp, wa, index,
+					iwhere, indx2, task, -1, csave, lsave, isave, dsave, par);
 
-			if ("FG".equals(task[0].substring(0, 2))) {
+			if (task[0] == Task.FG_START || task[0] == Task.FG_LNSRCH) {
 
 				// the minimization routine has returned to request the
 				// function f and gradient g values at the current x.
@@ -139,7 +165,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 				continue;
 			}
 
-			if (!"NEW_X".equals(task[0].substring(0, 5))) {
+			if (task[0] != Task.NEW_X) {
 				break;
 			}
 		}
@@ -147,54 +173,16 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		// the minimization routine has returned with a new iterate,
 		// and we have opted to continue the iteration.
 		// If task is neither FG nor NEW_X we terminate execution.
-	}
-
-	private static void setulb(final int n, final int m, final double[] x, final double[] l, final double[] u,
-			final int[] nbd, final double[] f, final double[] g, final double factr, final double pgtol,
-			final double[][] ws, final double[][] wy, final double[][] sy, final double[][] ss, final double[][] wt,
-			final double[][] wn, final double[][] snd, final double[] z, final double[] r, final double[] d,
-			final double[] t, final double[] xp, final double[] wa, final int[] iwa, final String[] task,
-			final int iprint, final String[] csave, final boolean[] lsave, final int[] isave, final double[] dsave) {
-
-		if ("START".equals(task[0].substring(0, 5))) {
-			isave[1 - 1] = m * n;
-			isave[2 - 1] = m * m;
-			isave[3 - 1] = 4 * m * m;
-			isave[4 - 1] = 1;
-			isave[5 - 1] = isave[4 - 1] + isave[1 - 1];
-			isave[6 - 1] = isave[5 - 1] + isave[1 - 1];
-			isave[7 - 1] = isave[6 - 1] + isave[2 - 1];
-			isave[8 - 1] = isave[7 - 1] + isave[2 - 1];
-			isave[9 - 1] = isave[8 - 1] + isave[2 - 1];
-			isave[10 - 1] = isave[9 - 1] + isave[3 - 1];
-			isave[11 - 1] = isave[10 - 1] + isave[3 - 1];
-			isave[12 - 1] = isave[11 - 1] + n;
-			isave[13 - 1] = isave[12 - 1] + n;
-			isave[14 - 1] = isave[13 - 1] + n;
-			isave[15 - 1] = isave[14 - 1] + n;
-			isave[16 - 1] = isave[15 - 1] + n;
-		}
-
-		final int[] index = new int[n];
-		final int[] iwhere = new int[n];
-		final int[] indx2 = new int[n];
-		System.arraycopy(iwa, 0, index, 0, n);
-		System.arraycopy(iwa, n, iwhere, 0, n);
-		System.arraycopy(iwa, 2 * n, indx2, 0, n);
-		mainlb(n, m, x, l, u, nbd, f, g, factr, pgtol, ws, wy, sy, ss, wt, wn, snd, z, r, d, t, xp, wa, index, iwhere,
-				indx2, task, iprint, csave, lsave, isave, dsave);
-		System.arraycopy(index, 0, iwa, 0, n);
-		System.arraycopy(iwhere, 0, iwa, n, n);
-		System.arraycopy(indx2, 0, iwa, 2 * n, n);
+		converged[0] = task[0] == Task.CONVERGENCE;
 	}
 
 	private static void mainlb(final int n, final int m, final double[] x, final double[] l, final double[] u,
 			final int[] nbd, final double[] f, final double[] g, final double factr, final double pgtol,
-			final double[][] ws, final double[][] wy, final double[][] sy, final double[][] ss, final double[][] wt,
+			final double[] ws, final double[] wy, final double[][] sy, final double[][] ss, final double[][] wt,
 			final double[][] wn, final double[][] snd, final double[] z, final double[] r, final double[] d,
 			final double[] t, final double[] xp, final double[] wa, final int[] index, final int[] iwhere,
-			final int[] indx2, final String[] task, final int iprint, final String[] csave, final boolean[] lsave,
-			final int[] isave, final double[] dsave) {
+			final int[] indx2, final Task[] task, final int iprint, final Task[] csave, final boolean[] lsave,
+			final int[] isave, final double[] dsave, final boolean par) {
 
 		final double[] sbgnrm = new double[1], fold = new double[1], stp = new double[1], dnorm = new double[1],
 				gd = new double[1], gdold = new double[1], dtd = new double[1], xstep = new double[1],
@@ -210,7 +198,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		final double one = 1.0, zero = 0.0;
 
 		int gotoflag;
-		if ("START".equals(task[0].substring(0, 5))) {
+		if (task[0] == Task.START) {
 
 			// Initialize counters and scalars when task='START'.
 			// for the limited memory BFGS matrices:
@@ -240,7 +228,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 
 			// Check the input arguments for errors.
 			errclb(n, m, factr, l, u, nbd, task, info, k);
-			if ("ERROR".equals(task[0].substring(0, 5))) {
+			if (task[0] == Task.ERROR) {
 
 				// call prn3lb(n,x,f,task,iprint,info,itfile,...
 				return;
@@ -252,7 +240,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 
 			// The end of the initialization.
 			// Compute f0 and g0.
-			task[0] = "FG_START";
+			task[0] = Task.FG_START;
 
 			// return to the driver to calculate f and g; reenter at 111.
 			gotoflag = 1000;
@@ -297,11 +285,11 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 
 			// After returning from the driver go to the point where execution
 			// is to resume.
-			if ("FG_LN".equals(task[0].substring(0, 5))) {
+			if (task[0] == Task.FG_LNSRCH) {
 				gotoflag = 666;
-			} else if ("NEW_X".equals(task[0].substring(0, 5))) {
+			} else if (task[0] == Task.NEW_X) {
 				gotoflag = 777;
-			} else if ("FG_ST".equals(task[0].substring(0, 5))) {
+			} else if (task[0] == Task.FG_START) {
 
 				nfgv[0] = 1;
 
@@ -310,24 +298,15 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 				if (sbgnrm[0] <= pgtol) {
 
 					// terminate the algorithm.
-					task[0] = "CONVERGENCE: NORM_OF_PROJECTED_GRADIENT_<=_PGTOL";
+					task[0] = Task.CONVERGENCE;
 					gotoflag = 1000;
 				} else {
 					gotoflag = 222;
 				}
-			} else if ("STOP".equals(task[0].substring(0, 4))) {
-				if ("CPU".equals(task[0].substring(6, 9))) {
-
-					// restore the previous iterate.
-					System.arraycopy(t, 0, x, 0, n);
-					System.arraycopy(r, 0, g, 0, n);
-					f[0] = fold[0];
-				}
-				gotoflag = 1000;
 			} else {
 
 				// Compute f0 and g0.
-				task[0] = "FG_START";
+				task[0] = Task.FG_START;
 
 				// return to the driver to calculate f and g; reenter at 111.
 				gotoflag = 1000;
@@ -354,7 +333,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 					// c
 					// cccccccccccccccccccccccccccccccccccccccccccccccccccccccccccccccccccccccc
 					cauchy(n, x, l, u, nbd, g, indx2, iwhere, t, d, z, m, wy, ws, sy, wt, theta[0], col[0], head[0], wa,
-							1, wa, 2 * m + 1, wa, 4 * m + 1, wa, 6 * m + 1, nseg, iprint, sbgnrm[0], info, epsmch);
+							1, wa, 2 * m + 1, wa, 4 * m + 1, wa, 6 * m + 1, nseg, iprint, sbgnrm[0], info, epsmch, par);
 					if (info[0] != 0) {
 
 						// singular triangular system detected; refresh the lbfgs
@@ -391,7 +370,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 					// [ 0 I]
 					if (wrk[0]) {
 						formk(n, nfree[0], index, nenter[0], ileave[0], indx2, iupdat, updatd, wn, snd, m, ws, wy, sy,
-								theta[0], col[0], head[0], info);
+								theta[0], col[0], head[0], info, par);
 					}
 					if (info[0] != 0) {
 
@@ -409,12 +388,12 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 					// compute r=-Z'B(xcp-xk)-Z'g (using wa(2m+1)=W'(xcp-x)
 					// from 'cauchy').
 					cmprlb(n, m, x, g, ws, wy, sy, wt, z, r, wa, index, theta[0], col[0], head[0], nfree[0], cnstnd[0],
-							info);
+							info, par);
 					if (info[0] == 0) {
 
 						// c-jlm-jn call the direct method.
 						subsm(n, m, nfree[0], index, l, u, nbd, z, r, xp, ws, wy, theta[0], x, g, col[0], head[0],
-								iword, wa, wn, iprint, info);
+								iword, wa, wn, iprint, info, par);
 					}
 					if (info[0] != 0) {
 
@@ -445,7 +424,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 			if (gotoflag == 666) {
 
 				lnsrlb(n, l, u, nbd, x, f, fold, gd, gdold, g, d, r, t, z, stp, dnorm, dtd, xstep, stpmx, iter, ifun,
-						iback, nfgv, info, task, boxed[0], cnstnd[0], csave, isave, 22, dsave, 17);
+						iback, nfgv, info, task, boxed[0], cnstnd[0], csave, isave, 22, dsave, 17, par);
 				if (info[0] != 0 || iback[0] >= 20) {
 
 					// restore the previous iterate.
@@ -463,7 +442,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 							--ifun[0];
 							--iback[0];
 						}
-						task[0] = "ABNORMAL_TERMINATION_IN_LNSRCH";
+						task[0] = Task.ABNORMAL;
 						++iter;
 						gotoflag = 1000;
 						continue;
@@ -478,11 +457,11 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 						theta[0] = one;
 						iupdat = 0;
 						updatd = false;
-						task[0] = "RESTART_FROM_LNSRCH";
+						task[0] = Task.RESTART;
 						gotoflag = 222;
 						continue;
 					}
-				} else if ("FG_LN".equals(task[0].substring(0, 5))) {
+				} else if (task[0] == Task.FG_LNSRCH) {
 
 					// return to the driver for calculating f and g; reenter at 666.
 					gotoflag = 1000;
@@ -509,7 +488,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 				if (sbgnrm[0] <= pgtol) {
 
 					// terminate the algorithm.
-					task[0] = "CONVERGENCE: NORM_OF_PROJECTED_GRADIENT_<=_PGTOL";
+					task[0] = Task.CONVERGENCE;
 					gotoflag = 1000;
 					continue;
 				}
@@ -517,7 +496,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 				if ((fold[0] - f[0]) <= tol * ddum) {
 
 					// terminate the algorithm.
-					task[0] = "CONVERGENCE: REL_REDUCTION_OF_F_<=_FACTR*EPSMCH";
+					task[0] = Task.CONVERGENCE;
 					if (iback[0] >= 10) {
 						info[0] = -5;
 					}
@@ -531,7 +510,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 				for (i = 1; i <= n; ++i) {
 					r[i - 1] = g[i - 1] - r[i - 1];
 				}
-				rr = BlasMath.ddotm(n, r, 1, r, 1);
+				rr = BlasMath.ddotm(n, r, 1, r, 1, par);
 				if (stp[0] == one) {
 					dr = gd[0] - gdold[0];
 					ddum = -gdold[0];
@@ -558,7 +537,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 				++iupdat;
 
 				// Update matrices WS and WY and form the middle matrix in B.
-				matupd(n, m, ws, wy, sy, ss, d, r, itail, iupdat, col, head, theta, rr, dr, stp[0], dtd[0]);
+				matupd(n, m, ws, wy, sy, ss, d, r, itail, iupdat, col, head, theta, rr, dr, stp[0], dtd[0], par);
 
 				// Form the upper half of the pds T = theta*SS + L*D^(-1)*L';
 				// Store T in the upper triangular of the array wt;
@@ -679,10 +658,11 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 
 	private static void cauchy(final int n, final double[] x, final double[] l, final double[] u, final int[] nbd,
 			final double[] g, final int[] iorder, final int[] iwhere, final double[] t, final double[] d,
-			final double[] xcp, final int m, final double[][] wy, final double[][] ws, final double[][] sy,
+			final double[] xcp, final int m, final double[] wy, final double[] ws, final double[][] sy,
 			final double[][] wt, final double theta, final int col, final int head, final double[] p, final int ip,
 			final double[] c, final int ic, final double[] wbp, final int iwbp, final double[] v, final int iv,
-			final int[] nseg, final int iprint, final double sbgnrm, final int[] info, final double epsmch) {
+			final int[] nseg, final int iprint, final double sbgnrm, final int[] info, final double epsmch,
+			final boolean par) {
 
 		boolean xlower, xupper, bnded;
 		int i, j, col2, nfree, nbreak, pointr, ibp, nleft, ibkmin, iter;
@@ -704,13 +684,8 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		col2 = 2 * col;
 		f1 = zero;
 
-		// We set p to zero and build it up as we determine d.
-		for (i = 1; i <= col2; ++i) {
-			p[i - 1 + ip - 1] = zero;
-		}
-
 		// In the following loop we determine for each variable its bound
-		// status and its breakpoint, and update p accordingly.
+		// status and its breakpoint.
 		// Smallest breakpoint is identified.
 		for (i = 1; i <= n; ++i) {
 			neggi = -g[i - 1];
@@ -744,19 +719,11 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 					iwhere[i - 1] = -3;
 				}
 			}
-			pointr = head;
 			if (iwhere[i - 1] != 0 && iwhere[i - 1] != -1) {
 				d[i - 1] = zero;
 			} else {
 				d[i - 1] = neggi;
 				f1 -= neggi * neggi;
-
-				// calculate p := p - W'e_i* (g_i).
-				for (j = 1; j <= col; ++j) {
-					p[j - 1 + ip - 1] += wy[i - 1][pointr - 1] * neggi;
-					p[col + j - 1 + ip - 1] += ws[i - 1][pointr - 1] * neggi;
-					pointr = (pointr % m) + 1;
-				}
 				if (nbd[i - 1] <= 2 && nbd[i - 1] != 0 && neggi < zero) {
 
 					// x(i) + d(i) is bounded; compute t(i).
@@ -789,6 +756,14 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 			}
 		}
 
+		// calculate p = W'd one column of W at a time.
+		pointr = head;
+		for (j = 1; j <= col; ++j) {
+			p[j - 1 + ip - 1] = BlasMath.ddotm(n, wy, (pointr - 1) * n + 1, d, 1, par);
+			p[col + j - 1 + ip - 1] = BlasMath.ddotm(n, ws, (pointr - 1) * n + 1, d, 1, par);
+			pointr = (pointr % m) + 1;
+		}
+
 		// The indices of the nonzero components of d are now stored
 		// in iorder(1),...,iorder(nbreak) and iorder(nfree),...,iorder(n).
 		// The smallest of the nbreak breakpoints is in t(ibkmin)=bkmin.
@@ -915,8 +890,8 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 					// the row of W corresponding to the breakpoint encountered.
 					pointr = head;
 					for (j = 1; j <= col; ++j) {
-						wbp[j - 1 + iwbp - 1] = wy[ibp - 1][pointr - 1];
-						wbp[col + j - 1 + iwbp - 1] = theta * ws[ibp - 1][pointr - 1];
+						wbp[j - 1 + iwbp - 1] = wy[(pointr - 1) * n + ibp - 1];
+						wbp[col + j - 1 + iwbp - 1] = theta * ws[(pointr - 1) * n + ibp - 1];
 						pointr = (pointr % m) + 1;
 					}
 
@@ -970,12 +945,12 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		}
 	}
 
-	private static void cmprlb(final int n, final int m, final double[] x, final double[] g, final double[][] ws,
-			final double[][] wy, final double[][] sy, final double[][] wt, final double[] z, final double[] r,
+	private static void cmprlb(final int n, final int m, final double[] x, final double[] g, final double[] ws,
+			final double[] wy, final double[][] sy, final double[][] wt, final double[] z, final double[] r,
 			final double[] wa, final int[] index, final double theta, final int col, final int head, final int nfree,
-			final boolean cnstnd, final int[] info) {
+			final boolean cnstnd, final int[] info, final boolean par) {
 
-		int i, j, k, pointr;
+		int i, j, k, pointr, off;
 		double a1, a2;
 
 		if (!cnstnd && col > 0) {
@@ -996,9 +971,17 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 			for (j = 1; j <= col; ++j) {
 				a1 = wa[j - 1];
 				a2 = theta * wa[col + j - 1];
-				for (i = 1; i <= nfree; ++i) {
-					k = index[i - 1];
-					r[i - 1] += wy[k - 1][pointr - 1] * a1 + ws[k - 1][pointr - 1] * a2;
+				off = (pointr - 1) * n;
+				if (nfree == n) {
+
+					// all variables are free and index is the identity.
+					BlasMath.daxpym(n, a1, wy, off + 1, r, 1, par);
+					BlasMath.daxpym(n, a2, ws, off + 1, r, 1, par);
+				} else {
+					for (i = 1; i <= nfree; ++i) {
+						k = index[i - 1];
+						r[i - 1] += wy[off + k - 1] * a1 + ws[off + k - 1] * a2;
+					}
 				}
 				pointr = (pointr % m) + 1;
 			}
@@ -1063,20 +1046,20 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 	}
 
 	private static void errclb(final int n, final int m, final double factr, final double[] l, final double[] u,
-			final int[] nbd, final String[] task, final int[] info, final int[] k) {
+			final int[] nbd, final Task[] task, final int[] info, final int[] k) {
 
 		int i;
 		final double one = 1.0, zero = 0.0;
 
 		// Check the input arguments for errors.
 		if (n <= 0) {
-			task[0] = "ERROR: N .LE. 0";
+			task[0] = Task.ERROR;
 		}
 		if (m <= 0) {
-			task[0] = "ERROR: M .LE. 0";
+			task[0] = Task.ERROR;
 		}
 		if (factr < zero) {
-			task[0] = "ERROR: FACTR .LT. 0";
+			task[0] = Task.ERROR;
 		}
 
 		// Check the validity of the arrays nbd(i), u(i), and l(i).
@@ -1084,7 +1067,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 			if (nbd[i - 1] < 0 || nbd[i - 1] > 3) {
 
 				// return
-				task[0] = "ERROR: INVALID NBD";
+				task[0] = Task.ERROR;
 				info[0] = -6;
 				k[0] = i;
 			}
@@ -1092,7 +1075,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 				if (l[i - 1] > u[i - 1]) {
 
 					// return
-					task[0] = "ERROR: NO FEASIBLE SOLUTION";
+					task[0] = Task.ERROR;
 					info[0] = -7;
 					k[0] = i;
 				}
@@ -1102,11 +1085,12 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 
 	private static void formk(final int n, final int nsub, final int[] ind, final int nenter, final int ileave,
 			final int[] indx2, final int iupdat, final boolean updatd, final double[][] wn, final double[][] wn1,
-			final int m, final double[][] ws, final double[][] wy, final double[][] sy, final double theta,
-			final int col, final int head, final int[] info) {
+			final int m, final double[] ws, final double[] wy, final double[][] sy, final double theta,
+			final int col, final int head, final int[] info, final boolean par) {
 
 		final double[] aux = new double[wn.length];
-		int m2, ipntr, jpntr, iy, is, jy, js, is1, js1, k1, i, k, col2, pbegin, pend, dbegin, dend, upcl, jaux;
+		int m2, ipntr, jpntr, iy, is, jy, js, is1, js1, k1, i, k, col2, pbegin, pend, dbegin, dend, upcl, jaux, io,
+				jo;
 		double temp1, temp2, temp3, temp4;
 		final double one = 1.0, zero = 0.0;
 
@@ -1148,21 +1132,29 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 				ipntr -= m;
 			}
 			jpntr = head;
+			io = (ipntr - 1) * n;
 			for (jy = 1; jy <= col; ++jy) {
 				js = m + jy;
+				jo = (jpntr - 1) * n;
 				temp1 = temp2 = temp3 = zero;
 
 				// compute element jy of row 'col' of Y'ZZ'Y
-				for (k = pbegin; k <= pend; ++k) {
-					k1 = ind[k - 1];
-					temp1 += wy[k1 - 1][ipntr - 1] * wy[k1 - 1][jpntr - 1];
+				if (nsub == n) {
+
+					// all variables are free and ind is the identity.
+					temp1 = BlasMath.ddotm(n, wy, io + 1, wy, jo + 1, par);
+				} else {
+					for (k = pbegin; k <= pend; ++k) {
+						k1 = ind[k - 1];
+						temp1 += wy[io + k1 - 1] * wy[jo + k1 - 1];
+					}
 				}
 
 				// compute elements jy of row 'col' of L_a and S'AA'S
 				for (k = dbegin; k <= dend; ++k) {
 					k1 = ind[k - 1];
-					temp2 += ws[k1 - 1][ipntr - 1] * ws[k1 - 1][jpntr - 1];
-					temp3 += ws[k1 - 1][ipntr - 1] * wy[k1 - 1][jpntr - 1];
+					temp2 += ws[io + k1 - 1] * ws[jo + k1 - 1];
+					temp3 += ws[io + k1 - 1] * wy[jo + k1 - 1];
 				}
 				wn1[iy - 1][jy - 1] = temp1;
 				wn1[is - 1][js - 1] = temp2;
@@ -1176,15 +1168,21 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 			if (jpntr > m) {
 				jpntr -= m;
 			}
+			jo = (jpntr - 1) * n;
 			ipntr = head;
 			for (i = 1; i <= col; ++i) {
 				is = m + i;
+				io = (ipntr - 1) * n;
 				temp3 = zero;
 
 				// compute element i of column 'col' of R_z
-				for (k = pbegin; k <= pend; ++k) {
-					k1 = ind[k - 1];
-					temp3 += ws[k1 - 1][ipntr - 1] * wy[k1 - 1][jpntr - 1];
+				if (nsub == n) {
+					temp3 = BlasMath.ddotm(n, ws, io + 1, wy, jo + 1, par);
+				} else {
+					for (k = pbegin; k <= pend; ++k) {
+						k1 = ind[k - 1];
+						temp3 += ws[io + k1 - 1] * wy[jo + k1 - 1];
+					}
 				}
 				ipntr = (ipntr % m) + 1;
 				wn1[is - 1][jy - 1] = temp3;
@@ -1200,18 +1198,20 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		for (iy = 1; iy <= upcl; ++iy) {
 			is = m + iy;
 			jpntr = head;
+			io = (ipntr - 1) * n;
 			for (jy = 1; jy <= iy; ++jy) {
 				js = m + jy;
+				jo = (jpntr - 1) * n;
 				temp1 = temp2 = temp3 = temp4 = zero;
 				for (k = 1; k <= nenter; ++k) {
 					k1 = indx2[k - 1];
-					temp1 += wy[k1 - 1][ipntr - 1] * wy[k1 - 1][jpntr - 1];
-					temp2 += ws[k1 - 1][ipntr - 1] * ws[k1 - 1][jpntr - 1];
+					temp1 += wy[io + k1 - 1] * wy[jo + k1 - 1];
+					temp2 += ws[io + k1 - 1] * ws[jo + k1 - 1];
 				}
 				for (k = ileave; k <= n; ++k) {
 					k1 = indx2[k - 1];
-					temp3 += wy[k1 - 1][ipntr - 1] * wy[k1 - 1][jpntr - 1];
-					temp4 += ws[k1 - 1][ipntr - 1] * ws[k1 - 1][jpntr - 1];
+					temp3 += wy[io + k1 - 1] * wy[jo + k1 - 1];
+					temp4 += ws[io + k1 - 1] * ws[jo + k1 - 1];
 				}
 				wn1[iy - 1][jy - 1] += (temp1 - temp3);
 				wn1[is - 1][js - 1] += (-temp2 + temp4);
@@ -1223,16 +1223,18 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		// modify the old parts in block (2,1).
 		ipntr = head;
 		for (is = m + 1; is <= m + upcl; ++is) {
+			io = (ipntr - 1) * n;
 			jpntr = head;
 			for (jy = 1; jy <= upcl; ++jy) {
+				jo = (jpntr - 1) * n;
 				temp1 = temp3 = zero;
 				for (k = 1; k <= nenter; ++k) {
 					k1 = indx2[k - 1];
-					temp1 += ws[k1 - 1][ipntr - 1] * wy[k1 - 1][jpntr - 1];
+					temp1 += ws[io + k1 - 1] * wy[jo + k1 - 1];
 				}
 				for (k = ileave; k <= n; ++k) {
 					k1 = indx2[k - 1];
-					temp3 += ws[k1 - 1][ipntr - 1] * wy[k1 - 1][jpntr - 1];
+					temp3 += ws[io + k1 - 1] * wy[jo + k1 - 1];
 				}
 				if (is <= jy + m) {
 					wn1[is - 1][jy - 1] += (temp1 - temp3);
@@ -1448,17 +1450,17 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 			final double[] f, final double[] fold, final double[] gd, final double[] gdold, final double[] g,
 			final double[] d, final double[] r, final double[] t, final double[] z, final double[] stp,
 			final double[] dnorm, final double[] dtd, final double[] xstep, final double[] stpmx, final int iter,
-			final int[] ifun, final int[] iback, final int[] nfgv, final int[] info, final String[] task,
-			final boolean boxed, final boolean cnstnd, final String[] csave, final int[] isave, final int iisave,
-			final double[] dsave, final int idsave) {
+			final int[] ifun, final int[] iback, final int[] nfgv, final int[] info, final Task[] task,
+			final boolean boxed, final boolean cnstnd, final Task[] csave, final int[] isave, final int iisave,
+			final double[] dsave, final int idsave, final boolean par) {
 
 		int i;
 		double a1, a2;
 		final double one = 1.0, zero = 0.0, big = 1.0e10, ftol = 1.0e-3, gtol = 0.9, xtol = 0.1;
 
-		if (!"FG_LN".equals(task[0].substring(0, 5))) {
+		if (task[0] != Task.FG_LNSRCH) {
 
-			dtd[0] = BlasMath.ddotm(n, d, 1, d, 1);
+			dtd[0] = BlasMath.ddotm(n, d, 1, d, 1, par);
 			dnorm[0] = Math.sqrt(dtd[0]);
 
 			// Determine the maximum step length.
@@ -1499,10 +1501,10 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 			System.arraycopy(g, 0, r, 0, n);
 			fold[0] = f[0];
 			ifun[0] = iback[0] = 0;
-			csave[0] = "START";
+			csave[0] = Task.START;
 		}
 
-		gd[0] = BlasMath.ddotm(n, g, 1, d, 1);
+		gd[0] = BlasMath.ddotm(n, g, 1, d, 1, par);
 		if (ifun[0] == 0) {
 			gdold[0] = gd[0];
 			if (gd[0] >= zero) {
@@ -1515,9 +1517,8 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 
 		dcsrch(f, gd, stp, ftol, gtol, xtol, zero, stpmx[0], csave, isave, iisave, dsave, idsave);
 		xstep[0] = stp[0] * dnorm[0];
-		if (!(csave[0].length() >= 4 && "CONV".equals(csave[0].substring(0, 4)))
-				&& !(csave[0].length() >= 4 && "WARN".equals(csave[0].substring(0, 4)))) {
-			task[0] = "FG_LNSRCH";
+		if (csave[0] != Task.CONVERGENCE && csave[0] != Task.WARNING) {
+			task[0] = Task.FG_LNSRCH;
 			++ifun[0];
 			++nfgv[0];
 			iback[0] = ifun[0] - 1;
@@ -1527,14 +1528,14 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 				BlasMath.daxpy1(n, stp[0], d, 1, t, 1, x, 1);
 			}
 		} else {
-			task[0] = "NEW_X";
+			task[0] = Task.NEW_X;
 		}
 	}
 
-	private static void matupd(final int n, final int m, final double[][] ws, final double[][] wy, final double[][] sy,
+	private static void matupd(final int n, final int m, final double[] ws, final double[] wy, final double[][] sy,
 			final double[][] ss, final double[] d, final double[] r, final int[] itail, final int iupdat,
 			final int[] col, final int[] head, final double[] theta, final double rr, final double dr, final double stp,
-			final double dtd) {
+			final double dtd, final boolean par) {
 
 		int j, jaux, pointr;
 		final double one = 1.0;
@@ -1549,12 +1550,8 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		}
 
 		// Update matrices WS and WY.
-		// call dcopy(n,d,1,ws(1,itail),1)
-		// call dcopy(n,r,1,wy(1,itail),1)
-		for (jaux = 1; jaux <= n; ++jaux) {
-			ws[1 - 1 + jaux - 1][itail[0] - 1] = d[1 - 1 + jaux - 1];
-			wy[1 - 1 + jaux - 1][itail[0] - 1] = r[1 - 1 + jaux - 1];
-		}
+		System.arraycopy(d, 0, ws, (itail[0] - 1) * n, n);
+		System.arraycopy(r, 0, wy, (itail[0] - 1) * n, n);
 
 		// Set theta=yy/ys.
 		theta[0] = rr / dr;
@@ -1582,16 +1579,8 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		pointr = head[0];
 		for (j = 1; j <= col[0] - 1; ++j) {
 
-			// sy(col,j) = ddot(n,d,1,wy(1,pointr),1)
-			// ss(j,col) = ddot(n,ws(1,pointr),1,d,1)
-			double dot1 = 0.0;
-			double dot2 = 0.0;
-			for (jaux = 1; jaux <= n; ++jaux) {
-				dot1 += d[1 - 1 + jaux - 1] * wy[1 - 1 + jaux - 1][pointr - 1];
-				dot2 += ws[1 - 1 + jaux - 1][pointr - 1] * d[1 - 1 + jaux - 1];
-			}
-			sy[col[0] - 1][j - 1] = dot1;
-			ss[j - 1][col[0] - 1] = dot2;
+			sy[col[0] - 1][j - 1] = BlasMath.ddotm(n, d, 1, wy, (pointr - 1) * n + 1, par);
+			ss[j - 1][col[0] - 1] = BlasMath.ddotm(n, ws, (pointr - 1) * n + 1, d, 1, par);
 			pointr = (pointr % m) + 1;
 		}
 		if (stp == one) {
@@ -1627,11 +1616,11 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 
 	private static void subsm(final int n, final int m, final int nsub, final int[] ind, final double[] l,
 			final double[] u, final int[] nbd, final double[] x, final double[] d, final double[] xp,
-			final double[][] ws, final double[][] wy, final double theta, final double[] xx, final double[] gg,
+			final double[] ws, final double[] wy, final double theta, final double[] xx, final double[] gg,
 			final int col, final int head, final int[] iword, final double[] wv, final double[][] wn, final int iprint,
-			final int[] info) {
+			final int[] info, final boolean par) {
 
-		int pointr, m2, col2, ibd, jy, js, i, j, k;
+		int pointr, m2, col2, ibd, jy, js, i, j, k, off;
 		double alpha, xk, dk, temp1, temp2, dd_p;
 		final double one = 1.0, zero = 0.0;
 
@@ -1642,11 +1631,19 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		// Compute wv = W'Zd.
 		pointr = head;
 		for (i = 1; i <= col; ++i) {
+			off = (pointr - 1) * n;
 			temp1 = temp2 = zero;
-			for (j = 1; j <= nsub; ++j) {
-				k = ind[j - 1];
-				temp1 += wy[k - 1][pointr - 1] * d[j - 1];
-				temp2 += ws[k - 1][pointr - 1] * d[j - 1];
+			if (nsub == n) {
+
+				// all variables are free and ind is the identity.
+				temp1 = BlasMath.ddotm(n, wy, off + 1, d, 1, par);
+				temp2 = BlasMath.ddotm(n, ws, off + 1, d, 1, par);
+			} else {
+				for (j = 1; j <= nsub; ++j) {
+					k = ind[j - 1];
+					temp1 += wy[off + k - 1] * d[j - 1];
+					temp2 += ws[off + k - 1] * d[j - 1];
+				}
 			}
 			wv[i - 1] = temp1;
 			wv[col + i - 1] = theta * temp2;
@@ -1672,9 +1669,15 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		pointr = head;
 		for (jy = 1; jy <= col; ++jy) {
 			js = col + jy;
-			for (i = 1; i <= nsub; ++i) {
-				k = ind[i - 1];
-				d[i - 1] += wy[k - 1][pointr - 1] * wv[jy - 1] / theta + ws[k - 1][pointr - 1] * wv[js - 1];
+			off = (pointr - 1) * n;
+			if (nsub == n) {
+				BlasMath.daxpym(n, wv[jy - 1] / theta, wy, off + 1, d, 1, par);
+				BlasMath.daxpym(n, wv[js - 1], ws, off + 1, d, 1, par);
+			} else {
+				for (i = 1; i <= nsub; ++i) {
+					k = ind[i - 1];
+					d[i - 1] += wy[off + k - 1] * wv[jy - 1] / theta + ws[off + k - 1] * wv[js - 1];
+				}
 			}
 			pointr = (pointr % m) + 1;
 		}
@@ -1788,7 +1791,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 	}
 
 	private static void dcsrch(final double[] f, final double[] g, final double[] stp, final double ftol,
-			final double gtol, final double xtol, final double stpmin, final double stpmax, final String[] task,
+			final double gtol, final double xtol, final double stpmin, final double stpmax, final Task[] task,
 			final int[] isave, final int iisave, final double[] dsave, final int idsave) {
 
 		final double[] stx = new double[1], fxm = new double[1], fgm = new double[1], sty = new double[1],
@@ -1800,36 +1803,36 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		final double zero = 0.0, p5 = 0.5, p66 = 0.66, xtrapl = 1.1, xtrapu = 4.0;
 
 		// Initialization block.
-		if (task[0].length() >= 5 && "START".equals(task[0].substring(0, 5))) {
+		if (task[0] == Task.START) {
 
 			// Check the input arguments for errors.
 			if (stp[0] < stpmin) {
-				task[0] = "ERROR: STP .LT. STPMIN";
+				task[0] = Task.ERROR;
 			}
 			if (stp[0] > stpmax) {
-				task[0] = "ERROR: STP .GT. STPMAX";
+				task[0] = Task.ERROR;
 			}
 			if (g[0] >= zero) {
-				task[0] = "ERROR: INITIAL G .GE. ZERO";
+				task[0] = Task.ERROR;
 			}
 			if (ftol < zero) {
-				task[0] = "ERROR: FTOL .LT. ZERO";
+				task[0] = Task.ERROR;
 			}
 			if (gtol < zero) {
-				task[0] = "ERROR: GTOL .LT. ZERO";
+				task[0] = Task.ERROR;
 			}
 			if (xtol < zero) {
-				task[0] = "ERROR: XTOL .LT. ZERO";
+				task[0] = Task.ERROR;
 			}
 			if (stpmin < zero) {
-				task[0] = "ERROR: STPMIN .LT. ZERO";
+				task[0] = Task.ERROR;
 			}
 			if (stpmax < stpmin) {
-				task[0] = "ERROR: STPMAX .LT. STPMIN";
+				task[0] = Task.ERROR;
 			}
 
 			// Exit if there are errors on input.
-			if ("ERROR".equals(task[0].substring(0, 5))) {
+			if (task[0] == Task.ERROR) {
 				return;
 			}
 
@@ -1856,7 +1859,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 			gy[0] = ginit;
 			stmin = zero;
 			stmax = stp[0] + xtrapu * stp[0];
-			task[0] = "FG";
+			task[0] = Task.FG;
 
 			// Save local variables.
 			if (brackt[0]) {
@@ -1908,26 +1911,25 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 
 		// Test for warnings.
 		if (brackt[0] && (stp[0] <= stmin || stp[0] >= stmax)) {
-			task[0] = "WARNING: ROUNDING ERRORS PREVENT PROGRESS";
+			task[0] = Task.WARNING;
 		}
 		if (brackt[0] && stmax - stmin <= xtol * stmax) {
-			task[0] = "WARNING: XTOL TEST SATISFIED";
+			task[0] = Task.WARNING;
 		}
 		if (stp[0] == stpmax && f[0] <= ftest && g[0] <= gtest) {
-			task[0] = "WARNING: STP = STPMAX";
+			task[0] = Task.WARNING;
 		}
 		if (stp[0] == stpmin && (f[0] > ftest || g[0] >= gtest)) {
-			task[0] = "WARNING: STP = STPMIN";
+			task[0] = Task.WARNING;
 		}
 
 		// Test for convergence.
 		if (f[0] <= ftest && Math.abs(g[0]) <= gtol * (-ginit)) {
-			task[0] = "CONVERGENCE";
+			task[0] = Task.CONVERGENCE;
 		}
 
 		// Test for termination.
-		if (task[0].length() >= 4
-				&& ("WARN".equals(task[0].substring(0, 4)) || "CONV".equals(task[0].substring(0, 4)))) {
+		if (task[0] == Task.WARNING || task[0] == Task.CONVERGENCE) {
 
 			// Save local variables.
 			if (brackt[0]) {
@@ -2008,7 +2010,7 @@ public final class LBFGSBAlgorithm extends GradientOptimizer {
 		}
 
 		// Obtain another function and derivative.
-		task[0] = "FG";
+		task[0] = Task.FG;
 
 		// Save local variables.
 		if (brackt[0]) {
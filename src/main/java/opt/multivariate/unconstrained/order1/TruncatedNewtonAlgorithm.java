@@ -17,7 +17,10 @@ import java.util.Arrays;
 import java.util.function.Function;
 
 import opt.multivariate.GradientOptimizer;
+import opt.multivariate.HessianVectorProduct;
 import opt.multivariate.MultivariateOptimizerSolution;
+import opt.multivariate.ad.TapeFunction;
+import opt.multivariate.ad.TapeObjective;
 import utils.BlasMath;
 import utils.Constants;
 
@@ -50,6 +53,10 @@ public final class TruncatedNewtonAlgorithm extends GradientOptimizer {
 	private int lgv, lz1, lzk, lv, lsk, lyk, ldiagb, lsr, lyr, loldg, lhg, lhyk, lpk, lemat, lwtest;
 	private int myEvals, myGEvals;
 
+	// exact Hessian-vector products, or null to use differences of gradients
+	private HessianVectorProduct myHvp;
+	private double[] myV, myHv;
+
 	/**
 	 *
 	 * @param tolerance
@@ -152,6 +159,69 @@ public final class TruncatedNewtonAlgorithm extends GradientOptimizer {
 		return new MultivariateOptimizerSolution(x, myEvals, myGEvals, err[0] == 0 || err[0] == 3);
 	}
 
+	/**
+	 * Minimizes f using exact Hessian-vector products in the inner conjugate
+	 * gradient iterations, instead of differences of gradients.
+	 *
+	 * @param f
+	 * @param df
+	 * @param hvp
+	 * @param guess
+	 * @return
+	 */
+	public final MultivariateOptimizerSolution optimize(final Function<? super double[], Double> f,
+			final Function<? super double[], double[]> df, final HessianVectorProduct hvp, final double[] guess) {
+		setHessianVectorProduct(hvp, guess.length);
+		try {
+			return optimize(f, df, guess);
+		} finally {
+			setHessianVectorProduct(null, 0);
+		}
+	}
+
+	/**
+	 * Minimizes f subject to bound constraints, using exact Hessian-vector
+	 * products in the inner conjugate gradient iterations.
+	 *
+	 * @param f
+	 * @param df
+	 * @param hvp
+	 * @param guess
+	 * @param low
+	 * @param up
+	 * @return
+	 */
+	public final MultivariateOptimizerSolution optimize(final Function<double[], Double> f,
+			final Function<double[], double[]> df, final HessianVectorProduct hvp, final double[] guess,
+			final double[] low, final double[] up) {
+		setHessianVectorProduct(hvp, guess.length);
+		try {
+			return optimize(f, df, guess, low, up);
+		} finally {
+			setHessianVectorProduct(null, 0);
+		}
+	}
+
+	/**
+	 * Minimizes f using the exact gradient and Hessian-vector products, computed
+	 * by automatic differentiation.
+	 *
+	 * @param f
+	 * @param guess
+	 * @return
+	 */
+	@Override
+	public final MultivariateOptimizerSolution optimize(final TapeFunction f, final double[] guess) {
+		final TapeObjective obj = new TapeObjective(f);
+		return optimize(obj.asFunction(), obj.asGradient(), obj.asHessianVectorProduct(), guess);
+	}
+
+	private void setHessianVectorProduct(final HessianVectorProduct hvp, final int n) {
+		myHvp = hvp;
+		myV = hvp == null ? null : new double[n];
+		myHv = hvp == null ? null : new double[n];
+	}
+
 	private void lmqn(final int[] ifail, final int n, final double[] x, final double[] f, final double[] g,
 			final double[] w, final int lw, final Sfun sfun, final int msglvl, final int maxit, final int maxfun,
 			final double eta, final double stepmx, final double accrcy, final double xtol) {
@@ -833,8 +903,6 @@ public final class TruncatedNewtonAlgorithm extends GradientOptimizer {
 				ztime(n, v, iv, ipivot);
 			}
 			gtims(v, iv, gv, igv, n, x, g, w, lw, sfun, first, delta, accrcy, xnorm);
-			++myEvals;
-			++myGEvals;
 			if (bounds) {
 				ztime(n, gv, igv, ipivot);
 			}
@@ -999,6 +1067,14 @@ public final class TruncatedNewtonAlgorithm extends GradientOptimizer {
 		double dinv, f;
 		int i, ihg;
 
+		// USE THE EXACT PRODUCT IF ONE WAS PROVIDED
+		if (myHvp != null) {
+			System.arraycopy(v, iv - 1, myV, 0, n);
+			myHvp.apply(x, myV, myHv);
+			System.arraycopy(myHv, 0, gv, igv - 1, n);
+			return;
+		}
+
 		if (first[0]) {
 			delta[0] = Math.sqrt(accrcy) * (1.0 + xnorm);
 			first[0] = false;
@@ -1011,6 +1087,8 @@ public final class TruncatedNewtonAlgorithm extends GradientOptimizer {
 			++ihg;
 		}
 		f = sfun.apply(n, w, lhg, gv, igv);
+		++myEvals;
+		++myGEvals;
 		for (i = 1; i <= n; ++i) {
 			gv[i - 1 + igv - 1] = (gv[i - 1 + igv - 1] - g[i - 1]) * dinv;
 		}
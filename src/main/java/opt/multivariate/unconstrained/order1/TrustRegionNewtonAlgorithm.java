@@ -32,8 +32,13 @@ package opt.multivariate.unconstrained.order1;
 import java.util.function.Function;
 
 import opt.multivariate.GradientOptimizer;
+import opt.multivariate.HessianVectorProduct;
 import opt.multivariate.MultivariateOptimizerSolution;
+import opt.multivariate.SparseHessian;
+import opt.multivariate.ad.TapeFunction;
+import opt.multivariate.ad.TapeObjective;
 import utils.BlasMath;
+import utils.SparseCholesky;
 
 /**
  * A translation of a Python implementation of the Trust-Region Newton algorithm
@@ -57,6 +62,7 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 	private final double myT2 = 2.0;
 	private final double myDeltaM, myDelta0;
 	private final int myMaxEvals;
+	private final boolean myParallel;
 
 	/**
 	 *
@@ -64,13 +70,27 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 	 * @param minDelta
 	 * @param maxDelta
 	 * @param maxEvaluations
+	 * @param parallel       whether to factor sparse Hessians in parallel
 	 */
 	public TrustRegionNewtonAlgorithm(final double tolerance, final double minDelta, final double maxDelta,
-			final int maxEvaluations) {
+			final int maxEvaluations, final boolean parallel) {
 		super(tolerance);
 		myDelta0 = minDelta;
 		myDeltaM = maxDelta;
 		myMaxEvals = maxEvaluations;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param minDelta
+	 * @param maxDelta
+	 * @param maxEvaluations
+	 */
+	public TrustRegionNewtonAlgorithm(final double tolerance, final double minDelta, final double maxDelta,
+			final int maxEvaluations) {
+		this(tolerance, minDelta, maxDelta, maxEvaluations, false);
 	}
 
 	@Override
@@ -83,8 +103,8 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 		final boolean[] converged = new boolean[1];
 
 		// call main subroutine
-		final double[] result = trust(f, df, null, guess.length, guess, 1, myDelta0, myDeltaM, myE1, myE2, myE3, myT1,
-				myT2, myTol, fev, dfev, myMaxEvals, converged);
+		final double[] result = trust(f, df, null, null, null, false, guess.length, guess, 1, myDelta0, myDeltaM,
+				myE1, myE2, myE3, myT1, myT2, myTol, fev, dfev, myMaxEvals, converged);
 		return new MultivariateOptimizerSolution(result, fev[0], dfev[0], converged[0]);
 	}
 
@@ -106,16 +126,88 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 		final boolean[] converged = new boolean[1];
 
 		// call main subroutine
-		final double[] result = trust(f, df, hess, guess.length, guess, 0, myDelta0, myDeltaM, myE1, myE2, myE3, myT1,
-				myT2, myTol, fev, dfev, myMaxEvals, converged);
+		final double[] result = trust(f, df, hess, null, null, false, guess.length, guess, 0, myDelta0, myDeltaM,
+				myE1, myE2, myE3, myT1, myT2, myTol, fev, dfev, myMaxEvals, converged);
+		return new MultivariateOptimizerSolution(result, fev[0], dfev[0], converged[0]);
+	}
+
+	/**
+	 * Minimizes f without forming the Hessian: the trust region subproblems are
+	 * solved by Steihaug's conjugate gradient method using only products of the
+	 * Hessian with vectors, so the memory used is linear in the dimension.
+	 * 
+	 * @param f
+	 * @param df
+	 * @param hvp
+	 * @param guess
+	 * @return
+	 */
+	public final MultivariateOptimizerSolution optimize(final Function<? super double[], Double> f,
+			final Function<? super double[], double[]> df, final HessianVectorProduct hvp, final double[] guess) {
+
+		// prepare work arrays
+		final int[] fev = new int[1];
+		final int[] dfev = new int[1];
+		final boolean[] converged = new boolean[1];
+
+		// call main subroutine
+		final double[] result = trust(f, df, null, hvp, null, false, guess.length, guess, 2, myDelta0, myDeltaM,
+				myE1, myE2, myE3, myT1, myT2, myTol, fev, dfev, myMaxEvals, converged);
+		return new MultivariateOptimizerSolution(result, fev[0], dfev[0], converged[0]);
+	}
+
+	/**
+	 * Minimizes f using a sparse Hessian. The trust region subproblems are solved
+	 * nearly exactly by the method of More and Sorensen, using sparse Cholesky
+	 * factorizations of shifted Hessians whose symbolic analysis is computed once
+	 * from the sparsity pattern.
+	 * 
+	 * @param f
+	 * @param df
+	 * @param hess
+	 * @param guess
+	 * @return
+	 */
+	public final MultivariateOptimizerSolution optimize(final Function<? super double[], Double> f,
+			final Function<? super double[], double[]> df, final SparseHessian hess, final double[] guess) {
+		if (hess.dimension() != guess.length) {
+			throw new IllegalArgumentException("Dimension of the Hessian does not match the initial guess.");
+		}
+
+		// prepare work arrays
+		final int[] fev = new int[1];
+		final int[] dfev = new int[1];
+		final boolean[] converged = new boolean[1];
+
+		// call main subroutine
+		final double[] result = trust(f, df, null, null, hess, myParallel, guess.length, guess, 3, myDelta0, myDeltaM,
+				myE1, myE2, myE3, myT1, myT2, myTol, fev, dfev, myMaxEvals, converged);
 		return new MultivariateOptimizerSolution(result, fev[0], dfev[0], converged[0]);
 	}
 
+	/**
+	 * Minimizes f using the exact gradient and Hessian-vector products, computed
+	 * by automatic differentiation (the products forward-over-reverse).
+	 * 
+	 * @param f
+	 * @param guess
+	 * @return
+	 */
+	@Override
+	public final MultivariateOptimizerSolution optimize(final TapeFunction f, final double[] guess) {
+		final TapeObjective obj = new TapeObjective(f);
+		return optimize(obj.asFunction(), obj.asGradient(), obj.asHessianVectorProduct(), guess);
+	}
+
 	private static double[] trust(final Function<? super double[], Double> f,
 			final Function<? super double[], double[]> df, final Function<? super double[], double[][]> d2f,
-			final int n, final double[] x0, final int mode, final double delta0, final double delmax, final double e1,
+			final HessianVectorProduct hvp, final SparseHessian sparse, final boolean parallel, final int n,
+			final double[] x0, final int mode, final double delta0, final double delmax, final double e1,
 			final double e2, final double e3, final double t1, final double t2, final double tol, final int[] fev,
 			final int[] dfev, final int maxfev, final boolean[] converged) {
+		if (mode == 2 && hvp == null) {
+			throw new IllegalArgumentException("A Hessian-vector product is required.");
+		}
 
 		// INITIALIZE POSITION, GRADIENT AND WORK ARRAYS
 		final double[] x = x0;
@@ -131,8 +223,19 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 		fev[0] = dfev[0] = 1;
 
 		// INITIALIZE THE HESSIAN
-		double[][] B;
-		if (mode == 0) {
+		double[][] B = null;
+		double[] values = null, shifted = null;
+		SparseCholesky chol = null;
+		double lambda = 0.0;
+		boolean boundary = false;
+		if (mode == 3) {
+
+			// THE SYMBOLIC FACTORIZATION IS DONE ONCE FOR THE WHOLE RUN
+			values = new double[sparse.nnz()];
+			shifted = new double[sparse.nnz()];
+			sparse.evaluate(x, values);
+			chol = new SparseCholesky(n, sparse.rowPointers(), sparse.columnIndices(), parallel);
+		} else if (mode == 0) {
 			B = d2f.apply(x);
 		} else if (mode == 1) {
 			B = new double[n][n];
@@ -145,7 +248,7 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 					}
 				}
 			}
-		} else {
+		} else if (mode != 2) {
 			return null;
 		}
 
@@ -157,10 +260,23 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 			//
 			// MIN_{||P||<=DELTA} F(X)+DF(X)*P+0.5*P*B(X)*P
 			//
-			// USING A CONJUGATE GRADIENT METHOD
-			trcg(n, delta, g, p, b, B, wa1, wa2);
+			// USING A CONJUGATE GRADIENT METHOD, OR FOR A SPARSE HESSIAN, THE
+			// METHOD OF MORE AND SORENSEN
+			if (mode == 3) {
+				lambda = mssolve(n, delta, g, p, sparse, values, shifted, chol, wa1, lambda);
+				boundary = lambda != 0.0;
+				sparse.multiply(values, p, b);
+			} else {
+				final double[][] Bk = B;
+				final HessianVectorProduct op = mode == 2 ? hvp : (xx, v, hv) -> {
+					for (int j = 0; j < n; ++j) {
+						hv[j] = BlasMath.ddotm(n, Bk[j], 1, v, 1);
+					}
+				};
+				trcg(n, delta, x, g, p, b, op, wa1, wa2);
+				op.apply(x, p, b);
+			}
 			for (int j = 0; j < n; ++j) {
-				b[j] = BlasMath.ddotm(n, B[j], 1, p, 1);
 				x1[j] = x[j] + p[j];
 			}
 			final double y1 = f.apply(x1);
@@ -176,7 +292,7 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 			final double gp = BlasMath.ddotm(n, g, 1, p, 1);
 			final double pbp = BlasMath.ddotm(n, p, 1, b, 1);
 			final double prered = -gp - 0.5 * pbp;
-			if (prered == 0.0 || prered == -0.0) {
+			if (prered == 0.0 || prered != prered) {
 				return x;
 			}
 			final double rho = actred / prered;
@@ -186,7 +302,7 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 			final double pnorm = BlasMath.denorm(n, p);
 			if (rho < e2) {
 				delta *= t1;
-			} else if (rho > e3 && pnorm == delta) {
+			} else if (rho > e3 && (pnorm == delta || boundary)) {
 				delta = Math.min(t2 * delta, delmax);
 			}
 
@@ -210,6 +326,10 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 
 					// COMPUTE THE HESSIAN DIRECTLY FROM GIVEN FUNCTION
 					B = d2f.apply(x);
+				} else if (mode == 3) {
+
+					// REFRESH THE VALUES OF THE SPARSE HESSIAN IN PLACE
+					sparse.evaluate(x, values);
 				} else if (mode == 1) {
 
 					// UPDATE THE HESSIAN USING A SYMMETRIC RANK-ONE UPDATE
@@ -244,12 +364,103 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 		}
 	}
 
-	// from pytron
-	private static void trcg(final int n, final double delta, final double[] g, final double[] s, final double[] r,
-			final double[][] H, final double[] wa1, final double[] wa2) {
+	// More and Sorensen: find lambda >= 0 with H + lambda I positive definite,
+	// such that p = -(H + lambda I)^-1 g satisfies ||p|| = delta approximately,
+	// or lambda = 0 and ||p|| <= delta. Returns lambda, or -1 if no positive
+	// definite shift was found and p is a scaled steepest descent step
+	private static double mssolve(final int n, final double delta, final double[] g, final double[] p,
+			final SparseHessian hess, final double[] values, final double[] shifted, final SparseCholesky chol,
+			final double[] w, final double lambda0) {
+		final int[] rp = hess.rowPointers(), ci = hess.columnIndices(), diag = hess.diagonal();
+		final double gnorm = BlasMath.denorm(n, g);
+
+		// BOUNDS ON LAMBDA FROM THE GERSHGORIN DISKS OF H
+		for (int i = 0; i < n; ++i) {
+			w[i] = 0.0;
+		}
+		for (int i = 0; i < n; ++i) {
+			for (int k = rp[i]; k < rp[i + 1]; ++k) {
+				if (ci[k] != i) {
+					w[i] += Math.abs(values[k]);
+					w[ci[k]] += Math.abs(values[k]);
+				}
+			}
+		}
+		double hnorm = 0.0, mindiag = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; ++i) {
+			hnorm = Math.max(hnorm, Math.abs(values[diag[i]]) + w[i]);
+			mindiag = Math.min(mindiag, values[diag[i]]);
+		}
+		double lo = Math.max(0.0, Math.max(-mindiag, gnorm / delta - hnorm));
+		double hi = gnorm / delta + hnorm;
+		double lambda = lo == 0.0 ? 0.0 : Math.min(Math.max(lambda0, lo), hi);
+		double lambdap = -1.0;
+
+		for (int it = 0; it < 50; ++it) {
+
+			// FACTOR THE SHIFTED HESSIAN
+			System.arraycopy(values, 0, shifted, 0, values.length);
+			for (int i = 0; i < n; ++i) {
+				shifted[diag[i]] += lambda;
+			}
+			if (!chol.factor(shifted)) {
+				lo = Math.max(lo, lambda);
+				lambda = Math.max(Math.sqrt(lo * hi), lo + 0.01 * (hi - lo));
+				continue;
+			}
+			for (int i = 0; i < n; ++i) {
+				p[i] = -g[i];
+			}
+			chol.solve(p);
+			lambdap = lambda;
+			final double pnorm = BlasMath.denorm(n, p);
+
+			// TEST FOR AN ACCEPTABLE STEP AND UPDATE THE BRACKET
+			if (pnorm <= delta) {
+				if (lambda == 0.0 || delta - pnorm <= 0.1 * delta) {
+					return lambda;
+				}
+				hi = lambda;
+			} else {
+				if (pnorm - delta <= 0.1 * delta) {
+					break;
+				}
+				lo = lambda;
+			}
+
+			// NEWTON STEP FOR THE SECULAR EQUATION 1 / ||p|| = 1 / delta
+			System.arraycopy(p, 0, w, 0, n);
+			chol.solve(w);
+			final double ptw = BlasMath.ddotm(n, p, 1, w, 1);
+			lambda += (pnorm * pnorm / ptw) * (pnorm - delta) / delta;
+			if (!(lambda > lo && lambda < hi)) {
+				lambda = Math.max(Math.sqrt(lo * hi), lo + 0.01 * (hi - lo));
+			}
+			if (hi - lo <= 1.0e-12 * hi) {
+				break;
+			}
+		}
+
+		// ACCEPT THE LAST STEP, PULLED BACK INTO THE TRUST REGION
+		if (lambdap < 0.0) {
+			for (int i = 0; i < n; ++i) {
+				p[i] = -g[i] * delta / gnorm;
+			}
+			return -1.0;
+		}
+		final double pnorm = BlasMath.denorm(n, p);
+		if (pnorm > delta) {
+			BlasMath.dscalm(n, delta / pnorm, p, 1);
+		}
+		return lambdap;
+	}
+
+	// from pytron, with Steihaug's exit on directions of nonpositive curvature
+	private static void trcg(final int n, final double delta, final double[] x, final double[] g, final double[] s,
+			final double[] r, final HessianVectorProduct H, final double[] wa1, final double[] wa2) {
 		final double delsq = delta * delta;
-		int i, j;
-		double rtr, rtrnew, alpha, beta, cgtol;
+		int i;
+		double rtr, rtrnew, alpha, beta, cgtol, dhd;
 
 		// INITIALIZE THE KEY QUANTITIES AND WORK ARRAYS
 		for (i = 0; i < n; ++i) {
@@ -270,14 +481,20 @@ public final class TrustRegionNewtonAlgorithm extends GradientOptimizer {
 			}
 
 			// IF CONVERGENCE IS NOT SATISFIED, CONTINUE WITH THE METHOD
-			for (j = 0; j < n; ++j) {
-				wa2[j] = BlasMath.ddotm(n, H[j], 1, wa1, 1);
-			}
-			alpha = rtr / BlasMath.ddotm(n, wa1, 1, wa2, 1);
-			BlasMath.daxpym(n, alpha, wa1, 1, s, 1);
-			if (BlasMath.denorm(n, s) > delta) {
-				alpha = -alpha;
+			H.apply(x, wa1, wa2);
+			dhd = BlasMath.ddotm(n, wa1, 1, wa2, 1);
+			alpha = rtr / dhd;
+			if (dhd > 0.0) {
 				BlasMath.daxpym(n, alpha, wa1, 1, s, 1);
+			}
+			if (dhd <= 0.0 || BlasMath.denorm(n, s) > delta) {
+
+				// THE STEP LEAVES THE TRUST REGION OR THE MODEL IS NOT CONVEX
+				// ALONG THE SEARCH DIRECTION, SO MOVE TO THE BOUNDARY
+				if (dhd > 0.0) {
+					alpha = -alpha;
+					BlasMath.daxpym(n, alpha, wa1, 1, s, 1);
+				}
 				final double std = BlasMath.ddotm(n, s, 1, wa1, 1);
 				final double sts = BlasMath.ddotm(n, s, 1, s, 1);
 				final double dtd = BlasMath.ddotm(n, wa1, 1, wa1, 1);
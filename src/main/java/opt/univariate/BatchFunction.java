@@ -0,0 +1,41 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.univariate;
+
+/**
+ * A family of independent univariate functions that are evaluated together on
+ * arrays of abscissae. Batch optimizers may call this concurrently from
+ * several threads, each time with different arrays.
+ */
+@FunctionalInterface
+public interface BatchFunction {
+
+	/**
+	 * Computes fs[k] = f_i(xs[k]) for i = problems[k] and each k < count.
+	 * 
+	 * @param problems the indices of the functions to evaluate
+	 * @param xs       the abscissae
+	 * @param fs       the array that receives the function values
+	 * @param count    the number of entries to evaluate
+	 */
+	void apply(int[] problems, double[] xs, double[] fs, int count);
+}
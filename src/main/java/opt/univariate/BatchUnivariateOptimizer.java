@@ -0,0 +1,103 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.univariate;
+
+import java.util.stream.IntStream;
+
+/**
+ * An optimizer that solves many independent bracketed univariate problems at
+ * once. The problems are split into chunks, optionally solved in parallel, and
+ * within a chunk the state of the unfinished problems is kept in arrays
+ * indexed by lane, next to their trial points. Every round evaluates all
+ * lanes with a single call to the objective, and a problem that converges or
+ * runs out of evaluations frees its lane for the last one, so the lanes stay
+ * contiguous without gathering or scattering any state.
+ */
+public abstract class BatchUnivariateOptimizer {
+
+	// number of problems solved together in one chunk
+	private static final int CHUNK = 1 << 12;
+
+	protected final double myTol, myRelTol;
+	protected final int myMaxEvals;
+	protected final boolean myParallel;
+
+	/**
+	 * 
+	 * @param absoluteTolerance
+	 * @param relativeTolerance
+	 * @param maxEvaluations    maximum number of evaluations of each problem
+	 * @param parallel
+	 */
+	public BatchUnivariateOptimizer(final double absoluteTolerance, final double relativeTolerance,
+			final int maxEvaluations, final boolean parallel) {
+		myTol = absoluteTolerance;
+		myRelTol = relativeTolerance;
+		myMaxEvals = maxEvaluations;
+		myParallel = parallel;
+	}
+
+	/**
+	 * Minimizes f_i on [a[i], b[i]] for each i. Problems with b[i] <= a[i] are
+	 * not solved, and their solution is NaN.
+	 * 
+	 * @param f
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public final BatchUnivariateOptimizerSolution optimize(final BatchFunction f, final double[] a,
+			final double[] b) {
+		if (a.length != b.length) {
+			throw new IllegalArgumentException("a.length = " + a.length + " != b.length = " + b.length);
+		}
+		final int n = a.length;
+		final double[] sols = new double[n];
+		final int[] evals = new int[n];
+		final boolean[] converged = new boolean[n];
+		IntStream chunks = IntStream.range(0, (n + CHUNK - 1) / CHUNK);
+		if (myParallel) {
+			chunks = chunks.parallel();
+		}
+		chunks.forEach(c -> {
+			final int lo = c * CHUNK;
+			solve(f, a, b, lo, Math.min(lo + CHUNK, n), sols, evals, converged);
+		});
+		return new BatchUnivariateOptimizerSolution(sols, evals, converged);
+	}
+
+	/**
+	 * Solves the problems lo, lo + 1, ... hi - 1 and stores their solutions,
+	 * evaluation counts and convergence flags.
+	 * 
+	 * @param f
+	 * @param a
+	 * @param b
+	 * @param lo
+	 * @param hi
+	 * @param sols
+	 * @param evals
+	 * @param converged
+	 */
+	protected abstract void solve(BatchFunction f, double[] a, double[] b, int lo, int hi, double[] sols,
+			int[] evals, boolean[] converged);
+}
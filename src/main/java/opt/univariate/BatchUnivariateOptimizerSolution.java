@@ -0,0 +1,90 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.univariate;
+
+import opt.OptimizerSolution;
+
+/**
+ * The solutions of a batch of univariate problems. The number of evaluations
+ * is the total over all problems, and the batch is converged if every problem
+ * is.
+ */
+public class BatchUnivariateOptimizerSolution extends OptimizerSolution<double[], double[]> {
+
+	private final int[] myProblemEvals;
+	private final boolean[] myProblemConverged;
+
+	/**
+	 * 
+	 * @param sols
+	 * @param evaluations
+	 * @param converged
+	 */
+	public BatchUnivariateOptimizerSolution(final double[] sols, final int[] evaluations,
+			final boolean[] converged) {
+		super(sols, total(evaluations), 0, all(converged));
+		myProblemEvals = evaluations;
+		myProblemConverged = converged;
+	}
+
+	@Override
+	public String toString() {
+		String result = "";
+		result += "problems: " + mySol.length + "\n";
+		result += "calls to f: " + myFEvals + "\n";
+		result += "converged: " + myConverged;
+		return result;
+	}
+
+	/**
+	 * 
+	 * @return the number of evaluations of each problem
+	 */
+	public int[] getEvaluations() {
+		return myProblemEvals;
+	}
+
+	/**
+	 * 
+	 * @return whether each problem converged
+	 */
+	public boolean[] getConverged() {
+		return myProblemConverged;
+	}
+
+	private static int total(final int[] evaluations) {
+		long sum = 0L;
+		for (final int evals : evaluations) {
+			sum += evals;
+		}
+		return (int) Math.min(sum, Integer.MAX_VALUE);
+	}
+
+	private static boolean all(final boolean[] converged) {
+		for (final boolean flag : converged) {
+			if (!flag) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,213 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.univariate.order0;
+
+import opt.univariate.BatchFunction;
+import opt.univariate.BatchUnivariateOptimizer;
+import utils.RealMath;
+
+/**
+ * Brent's method for many independent bracketed problems at once. Each problem
+ * follows the same steps, with the same stopping rule, as in
+ * {@link BrentAlgorithm}, but the solution is the best point found rather than
+ * the last one evaluated.
+ * 
+ * This solver is meant for objectives that are expensive to evaluate, or
+ * cheap only when evaluated over many points at once, where the number of
+ * evaluations decides the running time. It takes far fewer evaluations than
+ * {@link BatchGoldenSectionAlgorithm} on smooth problems. For objectives that
+ * cost only a few arithmetic operations, calling {@link BrentAlgorithm} on each
+ * problem is faster, since the steps of Brent's method branch differently from
+ * one problem to the next.
+ * 
+ * 
+ * REFERENCES:
+ * 
+ * [1] Brent, Richard P. Algorithms for minimization without derivatives.
+ * Courier Corporation, 2013.
+ */
+public final class BatchBrentAlgorithm extends BatchUnivariateOptimizer {
+
+	private static final double C = 0.5 * (3.0 - Math.sqrt(5.0));
+
+	/**
+	 *
+	 * @param absTolerance
+	 * @param relTolerance
+	 * @param maxEvaluations
+	 * @param parallel
+	 */
+	public BatchBrentAlgorithm(final double absTolerance, final double relTolerance, final int maxEvaluations,
+			final boolean parallel) {
+		super(absTolerance, relTolerance, maxEvaluations, parallel);
+	}
+
+	/**
+	 *
+	 * @param absTolerance
+	 * @param relTolerance
+	 * @param maxEvaluations
+	 */
+	public BatchBrentAlgorithm(final double absTolerance, final double relTolerance, final int maxEvaluations) {
+		this(absTolerance, relTolerance, maxEvaluations, false);
+	}
+
+	@Override
+	protected final void solve(final BatchFunction f, final double[] a, final double[] b, final int lo,
+			final int hi, final double[] sols, final int[] evals, final boolean[] converged) {
+
+		// state of each running problem, indexed by lane, next to its trial point
+		final int len = hi - lo;
+		final int[] ids = new int[len];
+		final double[] la = new double[len], lb = new double[len], lx = new double[len], lw = new double[len],
+				lv = new double[len], lfx = new double[len], lfw = new double[len], lfv = new double[len],
+				ld = new double[len], le = new double[len], xs = new double[len], fs = new double[len];
+		int count = 0;
+		for (int i = lo; i < hi; ++i) {
+			if (!(b[i] > a[i])) {
+				sols[i] = Double.NaN;
+				continue;
+			}
+			ids[count] = i;
+			la[count] = a[i];
+			lb[count] = b[i];
+			xs[count] = lx[count] = lw[count] = lv[count] = a[i] + C * (b[i] - a[i]);
+			++count;
+		}
+
+		// main loop
+		for (int fev = 1; count > 0; ++fev) {
+			f.apply(ids, xs, fs, count);
+			for (int k = 0; k < count;) {
+				final double u = xs[k], fu = fs[k];
+				double x = lx[k], w = lw[k], v = lv[k], fx = lfx[k], fw = lfw[k], fv = lfv[k];
+				double ak = la[k], bk = lb[k], d = ld[k], e = le[k];
+
+				// update the data
+				if (fev == 1) {
+					fx = fv = fw = fu;
+				} else if (fu <= fx) {
+					if (x <= u) {
+						ak = x;
+					} else {
+						bk = x;
+					}
+					v = w;
+					fv = fw;
+					w = x;
+					fw = fx;
+					x = u;
+					fx = fu;
+				} else {
+					if (u < x) {
+						ak = u;
+					} else {
+						bk = u;
+					}
+					if (fu <= fw || w == x) {
+						v = w;
+						fv = fw;
+						w = u;
+						fw = fu;
+					} else if (fu <= fv || v == x || v == w) {
+						v = u;
+						fv = fu;
+					}
+				}
+
+				// retire the problem if converged or out of evaluations
+				final double midpoint = 0.5 * (ak + bk);
+				final double tol1 = myRelTol * Math.abs(x) + myTol / 3.0;
+				final double tol2 = 2.0 * tol1;
+				final boolean done = Math.abs(x - midpoint) <= (tol2 - 0.5 * (bk - ak));
+				if (done || fev >= myMaxEvals) {
+					final int i = ids[k];
+					sols[i] = x;
+					evals[i] = fev;
+					converged[i] = done;
+
+					// move the last running problem into this lane
+					--count;
+					ids[k] = ids[count];
+					la[k] = la[count];
+					lb[k] = lb[count];
+					lx[k] = lx[count];
+					lw[k] = lw[count];
+					lv[k] = lv[count];
+					lfx[k] = lfx[count];
+					lfw[k] = lfw[count];
+					lfv[k] = lfv[count];
+					ld[k] = ld[count];
+					le[k] = le[count];
+					xs[k] = xs[count];
+					fs[k] = fs[count];
+					continue;
+				}
+
+				// golden-section step or parabolic step
+				boolean golden = Math.abs(e) <= tol1;
+				if (!golden) {
+					double r = (x - w) * (fx - fv);
+					double q = (x - v) * (fx - fw);
+					double p = (x - v) * q - (x - w) * r;
+					q = 2.0 * (q - r);
+					if (0.0 < q) {
+						p = -p;
+					}
+					q = Math.abs(q);
+					r = e;
+					e = d;
+					if (Math.abs(0.5 * q * r) <= Math.abs(p) || p <= q * (ak - x) || q * (bk - x) <= p) {
+						golden = true;
+					} else {
+						d = p / q;
+						final double ut = x + d;
+						if (ut - ak < tol2 || bk - ut < tol2) {
+							d = RealMath.sign(tol1, midpoint - x);
+						}
+					}
+				}
+				if (golden) {
+					e = midpoint <= x ? ak - x : bk - x;
+					d = C * e;
+				}
+
+				// f must not be evaluated too close to x
+				final double unew = tol1 <= Math.abs(d) ? x + d : x + RealMath.sign(tol1, d);
+
+				// store the state and the new point
+				lx[k] = x;
+				lw[k] = w;
+				lv[k] = v;
+				lfx[k] = fx;
+				lfw[k] = fw;
+				lfv[k] = fv;
+				la[k] = ak;
+				lb[k] = bk;
+				ld[k] = d;
+				le[k] = e;
+				xs[k] = unew;
+				++k;
+			}
+		}
+	}
+}
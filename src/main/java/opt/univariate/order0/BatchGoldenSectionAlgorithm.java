@@ -0,0 +1,151 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.univariate.order0;
+
+import opt.univariate.BatchFunction;
+import opt.univariate.BatchUnivariateOptimizer;
+import utils.Constants;
+
+/**
+ * Golden section search for many independent bracketed problems at once, with
+ * the same stopping rule as {@link GoldenSectionAlgorithm}. Each interior
+ * point is reused in the next interval, so a problem needs two evaluations to
+ * start and one per iteration after that.
+ */
+public final class BatchGoldenSectionAlgorithm extends BatchUnivariateOptimizer {
+
+	/**
+	 *
+	 * @param absoluteTolerance
+	 * @param relativeTolerance
+	 * @param maxEvaluations
+	 * @param parallel
+	 */
+	public BatchGoldenSectionAlgorithm(final double absoluteTolerance, final double relativeTolerance,
+			final int maxEvaluations, final boolean parallel) {
+		super(absoluteTolerance, relativeTolerance, maxEvaluations, parallel);
+	}
+
+	/**
+	 *
+	 * @param absoluteTolerance
+	 * @param relativeTolerance
+	 * @param maxEvaluations
+	 */
+	public BatchGoldenSectionAlgorithm(final double absoluteTolerance, final double relativeTolerance,
+			final int maxEvaluations) {
+		this(absoluteTolerance, relativeTolerance, maxEvaluations, false);
+	}
+
+	@Override
+	protected final void solve(final BatchFunction f, final double[] a, final double[] b, final int lo,
+			final int hi, final double[] sols, final int[] evals, final boolean[] converged) {
+
+		// relative positions of the right and left interior points
+		final double C1 = 1.0 / Constants.GOLDEN, C2 = 1.0 - C1;
+		final double[] pos = { C1, C2 };
+
+		// state of each running problem, indexed by lane: the left end and width
+		// of the interval, the side of the interior point kept from the last
+		// round (1 if right) and its value, and the new point to evaluate
+		final int len = hi - lo;
+		final int[] ids = new int[len], side = new int[len];
+		final double[] la = new double[len], lw = new double[len], lfk = new double[len], xs = new double[len],
+				fs = new double[len];
+		int count = 0;
+		for (int i = lo; i < hi; ++i) {
+			if (!(b[i] > a[i])) {
+				sols[i] = Double.NaN;
+				continue;
+			}
+			final double w = b[i] - a[i];
+			if (retire(i, a[i], w, C1 - C2, 0, myMaxEvals < 2, sols, evals, converged)) {
+				continue;
+			}
+			ids[count] = i;
+			la[count] = a[i];
+			lw[count] = w;
+			xs[count] = a[i] + w * C2;
+			++count;
+		}
+		if (count == 0) {
+			return;
+		}
+
+		// the first round evaluates the left interior point
+		f.apply(ids, xs, lfk, count);
+		for (int k = 0; k < count; ++k) {
+			xs[k] = la[k] + lw[k] * C1;
+		}
+
+		// main loop: evaluate the new point and shrink the interval
+		for (int fev = 2; count > 0; ++fev) {
+			f.apply(ids, xs, fs, count);
+			for (int k = 0; k < count;) {
+
+				// the interval moves right if the right interior point is better;
+				// the update is done with 0/1 arithmetic, since the comparison
+				// goes either way at random
+				final double fn = fs[k], fk = lfk[k], w = lw[k];
+				final int right = side[k] ^ (fn < fk ? 1 : 0);
+				final double ak = la[k] + right * (w * C2), wk = w * C1;
+				if (retire(ids[k], ak, wk, C1 - C2, fev, fev >= myMaxEvals, sols, evals, converged)) {
+
+					// move the last running problem into this lane
+					--count;
+					ids[k] = ids[count];
+					side[k] = side[count];
+					la[k] = la[count];
+					lw[k] = lw[count];
+					lfk[k] = lfk[count];
+					xs[k] = xs[count];
+					fs[k] = fs[count];
+					continue;
+				}
+
+				// the better point is kept on the other side of the new interval
+				side[k] = right ^ 1;
+				la[k] = ak;
+				lw[k] = wk;
+				lfk[k] = Math.min(fn, fk);
+				xs[k] = ak + wk * pos[right ^ 1];
+				++k;
+			}
+		}
+	}
+
+	// stores the solution of problem i if it converged or must stop, where the
+	// interior points of [a, a + w] are a distance w * gap apart
+	private boolean retire(final int i, final double a, final double w, final double gap, final int fev,
+			final boolean stop, final double[] sols, final int[] evals, final boolean[] converged) {
+		final double mid = a + 0.5 * w;
+		final double tol = myRelTol * Math.abs(mid) + myTol;
+		final boolean done = w * gap <= tol;
+		if (done || stop) {
+			sols[i] = mid;
+			evals[i] = fev;
+			converged[i] = done;
+			return true;
+		}
+		return false;
+	}
+}
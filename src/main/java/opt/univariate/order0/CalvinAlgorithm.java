@@ -21,7 +21,9 @@ SOFTWARE.
 */
 package opt.univariate.order0;
 
+import java.util.Arrays;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import opt.univariate.UnivariateOptimizerSolution;
 import opt.univariate.DerivativeFreeOptimizer;
@@ -37,17 +39,79 @@ import utils.Sequences;
  */
 public final class CalvinAlgorithm extends DerivativeFreeOptimizer {
 
+	private static final class Partition {
+
+		double[] t, f;
+		int[] next;
+		int n;
+
+		Partition(final int capacity) {
+			t = new double[capacity];
+			f = new double[capacity];
+			next = new int[capacity];
+		}
+
+		final int add(final double tnew, final double fnew) {
+			if (n == t.length) {
+				final int cap = n << 1;
+				t = Arrays.copyOf(t, cap);
+				f = Arrays.copyOf(f, cap);
+				next = Arrays.copyOf(next, cap);
+			}
+			t[n] = tnew;
+			f[n] = fnew;
+			next[n] = -1;
+			return n++;
+		}
+	}
+
 	private final double myLambda;
+	private final int myBatch;
+	private final boolean myParallel;
 
 	/**
+	 * Creates an instance that splits the batchSize intervals with the largest
+	 * selection criteria at once, taken from a priority queue. When parallel is
+	 * true, the midpoints of a batch are evaluated concurrently, so the function
+	 * must be thread-safe.
 	 *
 	 * @param absoluteTolerance
 	 * @param maxEvaluations
 	 * @param lambdaParam
+	 * @param batchSize
+	 * @param parallel
 	 */
-	public CalvinAlgorithm(final double absoluteTolerance, final int maxEvaluations, final double lambdaParam) {
+	public CalvinAlgorithm(final double absoluteTolerance, final int maxEvaluations, final double lambdaParam,
+			final int batchSize, final boolean parallel) {
 		super(absoluteTolerance, 0.0, maxEvaluations);
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive.");
+		}
 		myLambda = lambdaParam;
+		myBatch = batchSize;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param absoluteTolerance
+	 * @param maxEvaluations
+	 * @param batchSize
+	 * @param parallel
+	 */
+	public CalvinAlgorithm(final double absoluteTolerance, final int maxEvaluations, final int batchSize,
+			final boolean parallel) {
+		this(absoluteTolerance, maxEvaluations, 16.0, batchSize, parallel);
+	}
+
+	/**
+	 *
+	 * @param absoluteTolerance
+	 * @param maxEvaluations
+	 * @param lambdaParam
+	 */
+	public CalvinAlgorithm(final double absoluteTolerance, final int maxEvaluations, final double lambdaParam) {
+		this(absoluteTolerance, maxEvaluations, lambdaParam, 1, false);
 	}
 
 	/**
@@ -67,14 +131,21 @@ public final class CalvinAlgorithm extends DerivativeFreeOptimizer {
 		final boolean[] converged = new boolean[1];
 
 		// call main subroutine
-		final double result = optimize(f, a, b, myTol, myLambda, myMaxEvals, fevals, converged);
+		final double result = optimize(f, a, b, myTol, myLambda, myMaxEvals, myBatch, myParallel, fevals,
+				converged);
 		return new UnivariateOptimizerSolution(result, fevals[0], 0, converged[0]);
 	}
 
 	private static double optimize(final Function<? super Double, Double> func, final double a, final double b,
-			final double tolerance, final double lambda, final int fmax, final int[] evals, final boolean[] converged) {
+			final double tolerance, final double lambda, final int fmax, final int batch, final boolean parallel,
+			final int[] evals, final boolean[] converged) {
 		final Function<Double, Double> obj = x -> func.apply(a + x * (b - a));
-		final double topt = calvin(obj, tolerance, lambda, fmax, evals, converged);
+		final double topt;
+		if (batch == 1 && !parallel) {
+			topt = calvin(obj, tolerance, lambda, fmax, evals, converged);
+		} else {
+			topt = calvin(obj, tolerance, lambda, fmax, batch, parallel, evals, converged);
+		}
 		return a + topt * (b - a);
 	}
 
@@ -151,4 +222,125 @@ public final class CalvinAlgorithm extends DerivativeFreeOptimizer {
 			return Double.NaN;
 		}
 	}
+
+	private static double calvin(final Function<Double, Double> func, final double tolerance, final double lambda,
+			final int fmax, final int batch, final boolean parallel, final int[] evals, final boolean[] converged) {
+
+		// initialize the partition
+		final Partition s = new Partition(Math.max(3, Math.min(fmax, 1024)));
+		s.add(0.0, func.apply(0.0));
+		s.add(0.5, func.apply(0.5));
+		s.add(1.0, func.apply(1.0));
+		s.next[0] = 1;
+		s.next[1] = 2;
+		evals[0] = 3;
+		if (s.f[0] != s.f[0] || s.f[1] != s.f[1] || s.f[2] != s.f[2]) {
+			return Double.NaN;
+		}
+
+		// initialize the tracking parameters
+		double tau = 0.5;
+		double gtau = Math.sqrt(-lambda * tau * Math.log(tau));
+		double min = Math.min(Math.min(s.f[0], s.f[1]), s.f[2]);
+		final IntervalHeap heap = new IntervalHeap(s.t.length);
+		reset(s, heap, min, gtau);
+
+		// main loop
+		final int[] sel = new int[batch];
+		final double[] tmid = new double[batch];
+		final double[] fmid = new double[batch];
+		while (evals[0] < fmax) {
+
+			// find out which intervals to split
+			final int m = Math.min(batch, fmax - evals[0]);
+			int count = 0;
+			while (count < m && heap.size() > 0) {
+				final int lo = heap.poll();
+				sel[count] = lo;
+				tmid[count] = 0.5 * (s.t[lo] + s.t[s.next[lo]]);
+				++count;
+			}
+
+			// split the intervals at their midpoints
+			evaluate(func, tmid, fmid, count, parallel);
+			evals[0] += count;
+			final double oldtau = tau, oldmin = min;
+			for (int j = 0; j < count; ++j) {
+				if (fmid[j] != fmid[j]) {
+					return Double.NaN;
+				}
+				final int lo = sel[j];
+				final int hi = s.next[lo];
+				final int p = s.add(tmid[j], fmid[j]);
+				s.next[lo] = p;
+				s.next[p] = hi;
+
+				// update tracking parameters
+				tau = Math.min(tau, tmid[j] - s.t[lo]);
+				tau = Math.min(tau, s.t[hi] - tmid[j]);
+				min = Math.min(min, fmid[j]);
+			}
+			gtau = Math.sqrt(-lambda * tau * Math.log(tau));
+
+			// check convergence
+			if (tau <= tolerance) {
+				converged[0] = true;
+				return best(s);
+			}
+
+			// update the queue
+			if (tau != oldtau || min != oldmin) {
+				reset(s, heap, min, gtau);
+			} else {
+				for (int j = 0; j < count; ++j) {
+					update(s, heap, sel[j], min, gtau, false);
+					update(s, heap, s.next[sel[j]], min, gtau, false);
+				}
+			}
+		}
+		return best(s);
+	}
+
+	private static void reset(final Partition s, final IntervalHeap heap, final double min, final double gtau) {
+		heap.clear();
+		for (int i = 0; s.next[i] >= 0; i = s.next[i]) {
+			update(s, heap, i, min, gtau, true);
+		}
+		heap.heapify();
+	}
+
+	private static void update(final Partition s, final IntervalHeap heap, final int lo, final double min,
+			final double gtau, final boolean append) {
+		final int hi = s.next[lo];
+		final double num = s.t[hi] - s.t[lo];
+		final double den1 = s.f[lo] - min + gtau;
+		final double den2 = s.f[hi] - min + gtau;
+		final double rho = num / (den1 * den2);
+		if (append) {
+			heap.append(lo, -rho, s.t[lo]);
+		} else {
+			heap.put(lo, -rho, s.t[lo]);
+		}
+	}
+
+	private static double best(final Partition s) {
+		int imin = 0;
+		for (int i = s.next[0]; i >= 0; i = s.next[i]) {
+			if (s.f[i] < s.f[imin]) {
+				imin = i;
+			}
+		}
+		return s.t[imin];
+	}
+
+	private static void evaluate(final Function<Double, Double> func, final double[] t, final double[] f,
+			final int count, final boolean parallel) {
+		if (parallel && count > 1) {
+			IntStream.range(0, count).parallel().forEach(j -> f[j] = func.apply(t[j]));
+		} else {
+			for (int j = 0; j < count; ++j) {
+				f[j] = func.apply(t[j]);
+			}
+		}
+	}
 }
@@ -0,0 +1,163 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package opt.univariate.order0;
+
+import java.util.Arrays;
+
+/**
+ * An indexed binary min-heap of intervals, used by the batch variants of the
+ * Lipschitz global searches. Each interval is identified by a non-negative
+ * handle (the index of its left end point). Keys are compared first by value
+ * and then by a tie-breaker, so that ties go to the leftmost interval as in the
+ * linear scans.
+ */
+final class IntervalHeap {
+
+	private int[] myHeap;
+	private int[] myPos;
+	private double[] myKey;
+	private double[] myTie;
+	private int mySize;
+
+	IntervalHeap(final int capacity) {
+		final int cap = Math.max(capacity, 4);
+		myHeap = new int[cap];
+		myPos = new int[cap];
+		myKey = new double[cap];
+		myTie = new double[cap];
+		Arrays.fill(myPos, -1);
+	}
+
+	final int size() {
+		return mySize;
+	}
+
+	final void clear() {
+		for (int i = 0; i < mySize; ++i) {
+			myPos[myHeap[i]] = -1;
+		}
+		mySize = 0;
+	}
+
+	/**
+	 * Inserts the interval, or moves it if it is already in the heap.
+	 */
+	final void put(final int handle, final double key, final double tie) {
+		ensure(handle + 1);
+		myKey[handle] = key;
+		myTie[handle] = tie;
+		int i = myPos[handle];
+		if (i < 0) {
+			i = mySize;
+			++mySize;
+			myHeap[i] = handle;
+			myPos[handle] = i;
+		}
+		down(up(i));
+	}
+
+	/**
+	 * Appends the interval without restoring the heap order; call heapify()
+	 * after a run of these.
+	 */
+	final void append(final int handle, final double key, final double tie) {
+		ensure(handle + 1);
+		myKey[handle] = key;
+		myTie[handle] = tie;
+		if (myPos[handle] < 0) {
+			myHeap[mySize] = handle;
+			myPos[handle] = mySize;
+			++mySize;
+		}
+	}
+
+	final void heapify() {
+		for (int i = (mySize >>> 1) - 1; i >= 0; --i) {
+			down(i);
+		}
+	}
+
+	final int poll() {
+		final int handle = myHeap[0];
+		--mySize;
+		myPos[handle] = -1;
+		if (mySize > 0) {
+			myHeap[0] = myHeap[mySize];
+			myPos[myHeap[0]] = 0;
+			down(0);
+		}
+		return handle;
+	}
+
+	private void ensure(final int n) {
+		if (n > myPos.length) {
+			final int cap = Math.max(n, myPos.length << 1);
+			final int old = myPos.length;
+			myHeap = Arrays.copyOf(myHeap, cap);
+			myPos = Arrays.copyOf(myPos, cap);
+			myKey = Arrays.copyOf(myKey, cap);
+			myTie = Arrays.copyOf(myTie, cap);
+			Arrays.fill(myPos, old, cap, -1);
+		}
+	}
+
+	private boolean less(final int h1, final int h2) {
+		return myKey[h1] < myKey[h2] || (myKey[h1] == myKey[h2] && myTie[h1] < myTie[h2]);
+	}
+
+	private int up(int i) {
+		final int handle = myHeap[i];
+		while (i > 0) {
+			final int p = (i - 1) >>> 1;
+			if (!less(handle, myHeap[p])) {
+				break;
+			}
+			myHeap[i] = myHeap[p];
+			myPos[myHeap[i]] = i;
+			i = p;
+		}
+		myHeap[i] = handle;
+		myPos[handle] = i;
+		return i;
+	}
+
+	private void down(int i) {
+		final int handle = myHeap[i];
+		while (true) {
+			int c = 2 * i + 1;
+			if (c >= mySize) {
+				break;
+			}
+			if (c + 1 < mySize && less(myHeap[c + 1], myHeap[c])) {
+				++c;
+			}
+			if (!less(myHeap[c], handle)) {
+				break;
+			}
+			myHeap[i] = myHeap[c];
+			myPos[myHeap[i]] = i;
+			i = c;
+		}
+		myHeap[i] = handle;
+		myPos[handle] = i;
+	}
+}
@@ -21,7 +21,9 @@ SOFTWARE.
 */
 package opt.univariate.order0;
 
+import java.util.Arrays;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import opt.univariate.UnivariateOptimizerSolution;
 import opt.univariate.DerivativeFreeOptimizer;
@@ -41,21 +43,90 @@ import utils.Sequences;
  */
 public final class PiyavskiiAlgorithm extends DerivativeFreeOptimizer {
 
+	private static final class Trials {
+
+		double[] x, z, slope, lip;
+		int[] prev, next;
+		int n;
+
+		Trials(final int capacity) {
+			x = new double[capacity];
+			z = new double[capacity];
+			slope = new double[capacity];
+			lip = new double[capacity];
+			prev = new int[capacity];
+			next = new int[capacity];
+		}
+
+		final int add(final double xnew, final double znew) {
+			if (n == x.length) {
+				final int cap = n << 1;
+				x = Arrays.copyOf(x, cap);
+				z = Arrays.copyOf(z, cap);
+				slope = Arrays.copyOf(slope, cap);
+				lip = Arrays.copyOf(lip, cap);
+				prev = Arrays.copyOf(prev, cap);
+				next = Arrays.copyOf(next, cap);
+			}
+			x[n] = xnew;
+			z[n] = znew;
+			prev[n] = next[n] = -1;
+			return n++;
+		}
+	}
+
 	private final double myR;
 	private final double myXi;
+	private final int myBatch;
+	private final boolean myParallel;
 
 	/**
+	 * Creates an instance that splits the batchSize intervals with the lowest
+	 * lower bounds at once, taken from a priority queue. When parallel is true,
+	 * the trial points of a batch are evaluated concurrently, so the function
+	 * must be thread-safe.
 	 *
 	 * @param tolerance
 	 * @param maxEvaluations
 	 * @param rParam
 	 * @param xiParam
+	 * @param batchSize
+	 * @param parallel
 	 */
 	public PiyavskiiAlgorithm(final double tolerance, final int maxEvaluations, final double rParam,
-			final double xiParam) {
+			final double xiParam, final int batchSize, final boolean parallel) {
 		super(tolerance, 0.0, maxEvaluations);
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive.");
+		}
 		myR = rParam;
 		myXi = xiParam;
+		myBatch = batchSize;
+		myParallel = parallel;
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param maxEvaluations
+	 * @param batchSize
+	 * @param parallel
+	 */
+	public PiyavskiiAlgorithm(final double tolerance, final int maxEvaluations, final int batchSize,
+			final boolean parallel) {
+		this(tolerance, maxEvaluations, 1.4, 1e-6, batchSize, parallel);
+	}
+
+	/**
+	 *
+	 * @param tolerance
+	 * @param maxEvaluations
+	 * @param rParam
+	 * @param xiParam
+	 */
+	public PiyavskiiAlgorithm(final double tolerance, final int maxEvaluations, final double rParam,
+			final double xiParam) {
+		this(tolerance, maxEvaluations, rParam, xiParam, 1, false);
 	}
 
 	/**
@@ -76,7 +147,12 @@ public final class PiyavskiiAlgorithm extends DerivativeFreeOptimizer {
 		final boolean[] converged = new boolean[1];
 
 		// call main subroutine
-		final double result = shubert(f, a, b, myTol, myMaxEvals, fev, myR, myXi, converged);
+		final double result;
+		if (myBatch == 1 && !myParallel) {
+			result = shubert(f, a, b, myTol, myMaxEvals, fev, myR, myXi, converged);
+		} else {
+			result = shubert(f, a, b, myTol, myMaxEvals, fev, myR, myXi, myBatch, myParallel, converged);
+		}
 		return new UnivariateOptimizerSolution(result, fev[0], 0, converged[0]);
 	}
 
@@ -181,4 +257,165 @@ public final class PiyavskiiAlgorithm extends DerivativeFreeOptimizer {
 		}
 		return Double.NaN;
 	}
+
+	public static double shubert(final Function<? super Double, Double> func, final double a, final double b,
+			final double tol, final int maxiters, final int[] fev, final double r, final double xi, final int batch,
+			final boolean parallel, final boolean[] converged) {
+
+		// first two trials
+		final Trials s = new Trials(Math.max(2, Math.min(maxiters, 1024)));
+		final int ia = s.add(a, func.apply(a));
+		final int ib = s.add(b, func.apply(b));
+		fev[0] = 2;
+		if (s.z[ia] != s.z[ia] || s.z[ib] != s.z[ib]) {
+			return Double.NaN;
+		}
+		s.next[ia] = ib;
+		s.prev[ib] = ia;
+		s.slope[ia] = Math.abs(s.z[ib] - s.z[ia]) / (b - a);
+		final double[] glob = { s.slope[ia], b - a };
+		final IntervalHeap heap = new IntervalHeap(s.x.length);
+		reset(s, heap, glob, r, xi);
+
+		// main loop of adaptive Piyavskii algorithm
+		final int[] sel = new int[batch];
+		final int[] skip = new int[batch];
+		final double[] xtry = new double[batch];
+		final double[] ztry = new double[batch];
+		while (fev[0] < maxiters && s.n < maxiters) {
+
+			// take the intervals with the lowest lower bounds
+			final int m = Math.min(batch, Math.min(maxiters - fev[0], maxiters - s.n));
+			int count = 0, nskip = 0;
+			while (count + nskip < m && heap.size() > 0) {
+				final int lo = heap.poll();
+				final int hi = s.next[lo];
+				if (s.x[hi] - s.x[lo] > tol) {
+					final double xmid = 0.5 * (s.x[hi] + s.x[lo]);
+					final double zdif = 0.5 * (s.z[lo] - s.z[hi]);
+					sel[count] = lo;
+					xtry[count] = xmid + (zdif / s.lip[lo]);
+					++count;
+				} else if (count == 0 && nskip == 0) {
+
+					// we have converged
+					converged[0] = true;
+					return best(s);
+				} else {
+					skip[nskip] = lo;
+					++nskip;
+				}
+			}
+
+			// execute the trial points
+			evaluate(func, xtry, ztry, count, parallel);
+			fev[0] += count;
+			for (int j = 0; j < count; ++j) {
+				if (ztry[j] != ztry[j]) {
+					return Double.NaN;
+				}
+			}
+
+			// insert the trial points and update the slopes
+			boolean changed = false, widest = false;
+			for (int j = 0; j < count; ++j) {
+				final int lo = sel[j];
+				final int hi = s.next[lo];
+				widest |= s.x[hi] - s.x[lo] >= glob[1];
+				final int p = s.add(xtry[j], ztry[j]);
+				s.next[lo] = p;
+				s.prev[p] = lo;
+				s.next[p] = hi;
+				s.prev[hi] = p;
+				s.slope[lo] = Math.abs(s.z[p] - s.z[lo]) / (s.x[p] - s.x[lo]);
+				s.slope[p] = Math.abs(s.z[hi] - s.z[p]) / (s.x[hi] - s.x[p]);
+				final double hnew = Math.max(s.slope[lo], s.slope[p]);
+				if (hnew > glob[0]) {
+					glob[0] = hnew;
+					changed = true;
+				}
+			}
+			if (widest) {
+				double xmax = 0.0;
+				for (int i = ia; s.next[i] >= 0; i = s.next[i]) {
+					xmax = Math.max(xmax, s.x[s.next[i]] - s.x[i]);
+				}
+				changed |= xmax != glob[1];
+				glob[1] = xmax;
+			}
+
+			// update the local Lipschitz estimates and the queue
+			if (changed) {
+				reset(s, heap, glob, r, xi);
+			} else {
+				for (int j = 0; j < count; ++j) {
+					final int lo = sel[j];
+					final int p = s.next[lo];
+					if (s.prev[lo] >= 0) {
+						update(s, heap, s.prev[lo], glob, r, xi, false);
+					}
+					update(s, heap, lo, glob, r, xi, false);
+					update(s, heap, p, glob, r, xi, false);
+					if (s.next[s.next[p]] >= 0) {
+						update(s, heap, s.next[p], glob, r, xi, false);
+					}
+				}
+				for (int j = 0; j < nskip; ++j) {
+					update(s, heap, skip[j], glob, r, xi, false);
+				}
+			}
+		}
+		return Double.NaN;
+	}
+
+	private static void reset(final Trials s, final IntervalHeap heap, final double[] glob, final double r,
+			final double xi) {
+		heap.clear();
+		for (int i = 0; s.next[i] >= 0; i = s.next[i]) {
+			update(s, heap, i, glob, r, xi, true);
+		}
+		heap.heapify();
+	}
+
+	private static void update(final Trials s, final IntervalHeap heap, final int lo, final double[] glob,
+			final double r, final double xi, final boolean append) {
+		final int hi = s.next[lo];
+		double lambda = s.slope[lo];
+		if (s.prev[lo] >= 0) {
+			lambda = Math.max(lambda, s.slope[s.prev[lo]]);
+		}
+		if (s.next[hi] >= 0) {
+			lambda = Math.max(lambda, s.slope[hi]);
+		}
+		final double xdif = s.x[hi] - s.x[lo];
+		final double gamma = glob[0] * xdif / glob[1];
+		s.lip[lo] = r * Math.max(xi, Math.max(lambda, gamma));
+		final double key = 0.5 * (s.z[hi] + s.z[lo]) - s.lip[lo] * (0.5 * xdif);
+		if (append) {
+			heap.append(lo, key, s.x[lo]);
+		} else {
+			heap.put(lo, key, s.x[lo]);
+		}
+	}
+
+	private static double best(final Trials s) {
+		int imin = 0;
+		for (int i = s.next[0]; i >= 0; i = s.next[i]) {
+			if (s.z[i] < s.z[imin]) {
+				imin = i;
+			}
+		}
+		return s.x[imin];
+	}
+
+	private static void evaluate(final Function<? super Double, Double> func, final double[] x, final double[] z,
+			final int count, final boolean parallel) {
+		if (parallel && count > 1) {
+			IntStream.range(0, count).parallel().forEach(j -> z[j] = func.apply(x[j]));
+		} else {
+			for (int j = 0; j < count; ++j) {
+				z[j] = func.apply(x[j]);
+			}
+		}
+	}
 }
@@ -7,6 +7,8 @@
  */
 package utils;
 
+import java.util.stream.IntStream;
+
 /**
  * 
  */
@@ -18,6 +20,20 @@ public final class BlasMath {
 	public static final double[] D1MACH = { Double.MIN_VALUE, Double.MAX_VALUE, RealMath.pow(2.0, -52),
 			RealMath.pow(2.0, -51), Math.log(2.0) / Math.log(10.0) };
 
+	/**
+	 * Minimum length of a vector for the parallel variants to split it across
+	 * threads; shorter vectors use the serial kernels.
+	 */
+	public static final int PARALLEL_MIN = 1 << 16;
+
+	// length of each parallel chunk (fixed, so reductions do not depend on the
+	// number of threads) and of each block of the serial reductions
+	private static final int PARALLEL_CHUNK = 1 << 13;
+	private static final int BLOCK = 1 << 10;
+
+	// range of a sum of squares that is safe from underflow and overflow
+	private static final double SSQ_MIN = 0x1p-900, SSQ_MAX = Double.MAX_VALUE;
+
 	// ==========================================================================
 	// STATIC METHODS
 	// ==========================================================================
@@ -28,6 +44,13 @@ public final class BlasMath {
 	 * @return
 	 */
 	public static final double denorm(final int n, final double[] x) {
+
+		// FAST PATH: PLAIN SUM OF SQUARES WHEN IT CANNOT UNDER- OR OVERFLOW
+		final double ssq = dssqm(n, x, 1);
+		if (ssq >= SSQ_MIN && ssq <= SSQ_MAX) {
+			return Math.sqrt(ssq);
+		}
+
 		final double rdwarf = 3.834e-20, rgiant = 1.304e19, floatn = n, agiant = rgiant / floatn;
 		double s1, s2, s3, x1max, x3max, xabs;
 		s1 = s2 = s3 = x1max = x3max = 0.0;
@@ -185,6 +208,37 @@ public final class BlasMath {
 		}
 	}
 
+	/**
+	 * Returns the sum of squares of n consecutive elements of dx, starting at
+	 * the 1-based offset idx, with no scaling.
+	 * 
+	 * @param n
+	 * @param dx
+	 * @param idx
+	 * @return
+	 */
+	public static final double dssqm(final int n, final double[] dx, final int idx) {
+		final int ix = idx - 1;
+		double sum = 0.0;
+		for (int lo = 0; lo < n; lo += BLOCK) {
+			final int hi = Math.min(lo + BLOCK, n);
+			double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+			int i = lo;
+			for (; i + 3 < hi; i += 4) {
+				final double x0 = dx[ix + i], x1 = dx[ix + i + 1], x2 = dx[ix + i + 2], x3 = dx[ix + i + 3];
+				s0 += x0 * x0;
+				s1 += x1 * x1;
+				s2 += x2 * x2;
+				s3 += x3 * x3;
+			}
+			for (; i < hi; ++i) {
+				s0 += dx[ix + i] * dx[ix + i];
+			}
+			sum += (s0 + s1) + (s2 + s3);
+		}
+		return sum;
+	}
+
 	/**
 	 *
 	 * @param n
@@ -195,27 +249,26 @@ public final class BlasMath {
 	 * @return
 	 */
 	public static final double ddotm(final int n, final double[] dx, final int idx, final double[] dy, final int idy) {
-		if (n <= 0) {
-			return 0.0;
-		}
-
-		// CODE FOR BOTH INCREMENTS EQUAL TO 1
-		double dtemp = 0.0;
-		final int m = n % 5;
-		if (m != 0) {
-			for (int i = 0; i < m; ++i) {
-				dtemp += (dx[i + idx - 1] * dy[i + idy - 1]);
+		final int ix = idx - 1, iy = idy - 1;
+
+		// BLOCKED SUMMATION WITH FOUR INDEPENDENT PARTIAL SUMS PER BLOCK
+		double sum = 0.0;
+		for (int lo = 0; lo < n; lo += BLOCK) {
+			final int hi = Math.min(lo + BLOCK, n);
+			double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+			int i = lo;
+			for (; i + 3 < hi; i += 4) {
+				s0 += dx[ix + i] * dy[iy + i];
+				s1 += dx[ix + i + 1] * dy[iy + i + 1];
+				s2 += dx[ix + i + 2] * dy[iy + i + 2];
+				s3 += dx[ix + i + 3] * dy[iy + i + 3];
 			}
-			if (n < 5) {
-				return dtemp;
+			for (; i < hi; ++i) {
+				s0 += dx[ix + i] * dy[iy + i];
 			}
+			sum += (s0 + s1) + (s2 + s3);
 		}
-		for (int i = m; i < n; i += 5) {
-			dtemp += (dx[i + 0 + idx - 1] * dy[i + 0 + idy - 1] + dx[i + 1 + idx - 1] * dy[i + 1 + idy - 1]
-					+ dx[i + 2 + idx - 1] * dy[i + 2 + idy - 1] + dx[i + 3 + idx - 1] * dy[i + 3 + idy - 1]
-					+ dx[i + 4 + idx - 1] * dy[i + 4 + idy - 1]);
-		}
-		return dtemp;
+		return sum;
 	}
 
 	/**
@@ -226,26 +279,9 @@ public final class BlasMath {
 	 * @param idx
 	 */
 	public static final void dscalm(final int n, final double da, final double[] dx, final int idx) {
-		if (n <= 0) {
-			return;
-		}
-
-		// code for increment equal to 1
-		final int m = n % 5;
-		if (m != 0) {
-			for (int i = 0; i < m; ++i) {
-				dx[i + idx - 1] *= da;
-			}
-			if (n < 5) {
-				return;
-			}
-		}
-		for (int i = m; i < n; i += 5) {
-			dx[i + 0 + idx - 1] *= da;
-			dx[i + 1 + idx - 1] *= da;
-			dx[i + 2 + idx - 1] *= da;
-			dx[i + 3 + idx - 1] *= da;
-			dx[i + 4 + idx - 1] *= da;
+		final int ix = idx - 1;
+		for (int i = 0; i < n; ++i) {
+			dx[ix + i] *= da;
 		}
 	}
 
@@ -260,26 +296,9 @@ public final class BlasMath {
 	 */
 	public static final void dscal1(final int n, final double da, final double[] dx, final int idx, final double[] dy,
 			final int idy) {
-		if (n <= 0) {
-			return;
-		}
-
-		// code for increment equal to 1
-		final int m = n % 5;
-		if (m != 0) {
-			for (int i = 0; i < m; ++i) {
-				dy[i + idy - 1] = dx[i + idx - 1] * da;
-			}
-			if (n < 5) {
-				return;
-			}
-		}
-		for (int i = m; i < n; i += 5) {
-			dy[i + 0 + idy - 1] = dx[i + 0 + idx - 1] * da;
-			dy[i + 1 + idy - 1] = dx[i + 1 + idx - 1] * da;
-			dy[i + 2 + idy - 1] = dx[i + 2 + idx - 1] * da;
-			dy[i + 3 + idy - 1] = dx[i + 3 + idx - 1] * da;
-			dy[i + 4 + idy - 1] = dx[i + 4 + idx - 1] * da;
+		final int ix = idx - 1, iy = idy - 1;
+		for (int i = 0; i < n; ++i) {
+			dy[iy + i] = dx[ix + i] * da;
 		}
 	}
 
@@ -294,25 +313,12 @@ public final class BlasMath {
 	 */
 	public static final void daxpym(final int n, final double da, final double[] dx, final int idx, final double[] dy,
 			final int idy) {
-		if (n <= 0 || da == 0.0) {
+		if (da == 0.0) {
 			return;
 		}
-
-		// CODE FOR BOTH INCREMENTS EQUAL TO 1
-		final int m = n % 4;
-		if (m != 0) {
-			for (int i = 0; i < m; ++i) {
-				dy[i + idy - 1] += da * dx[i + idx - 1];
-			}
-			if (n < 4) {
-				return;
-			}
-		}
-		for (int i = m; i < n; i += 4) {
-			dy[i + 0 + idy - 1] += da * dx[i + 0 + idx - 1];
-			dy[i + 1 + idy - 1] += da * dx[i + 1 + idx - 1];
-			dy[i + 2 + idy - 1] += da * dx[i + 2 + idx - 1];
-			dy[i + 3 + idy - 1] += da * dx[i + 3 + idx - 1];
+		final int ix = idx - 1, iy = idy - 1;
+		for (int i = 0; i < n; ++i) {
+			dy[iy + i] += da * dx[ix + i];
 		}
 	}
 
@@ -335,25 +341,12 @@ public final class BlasMath {
 		if (da == 0.0) {
 
 			// COPY Y INTO Z
-			System.arraycopy(dy, idx - 1, dz, idz - 1, n);
+			System.arraycopy(dy, idy - 1, dz, idz - 1, n);
 			return;
 		}
-
-		// CODE FOR BOTH INCREMENTS EQUAL TO 1
-		final int m = n % 4;
-		if (m != 0) {
-			for (int i = 0; i < m; ++i) {
-				dz[i + idz - 1] = dy[i + idy - 1] + da * dx[i + idx - 1];
-			}
-			if (n < 4) {
-				return;
-			}
-		}
-		for (int i = m; i < n; i += 4) {
-			dz[i + 0 + idz - 1] = dy[i + 0 + idy - 1] + da * dx[i + 0 + idx - 1];
-			dz[i + 1 + idz - 1] = dy[i + 1 + idy - 1] + da * dx[i + 1 + idx - 1];
-			dz[i + 2 + idz - 1] = dy[i + 2 + idy - 1] + da * dx[i + 2 + idx - 1];
-			dz[i + 3 + idz - 1] = dy[i + 3 + idy - 1] + da * dx[i + 3 + idx - 1];
+		final int ix = idx - 1, iy = idy - 1, iz = idz - 1;
+		for (int i = 0; i < n; ++i) {
+			dz[iz + i] = dy[iy + i] + da * dx[ix + i];
 		}
 	}
 
@@ -370,6 +363,14 @@ public final class BlasMath {
 			return 0.0;
 		}
 
+		// UNIT STRIDE: PLAIN SUM OF SQUARES WHEN IT CANNOT UNDER- OR OVERFLOW
+		if (incx == 1) {
+			final double ssq = dssqm(n, dx, idx);
+			if (ssq >= SSQ_MIN && ssq <= SSQ_MAX) {
+				return Math.sqrt(ssq);
+			}
+		}
+
 		double cutlo = 8.23181e-11, cuthi = 1.30438e19, hitest, sum = 0.0, xmax = 0.0;
 		int i = 1, j, next = 30, nn = n * incx;
 
@@ -490,30 +491,200 @@ public final class BlasMath {
 	 * @param idy
 	 */
 	public static final void dxpym(final int n, final double[] dx, final int idx, final double[] dy, final int idy) {
-		if (n <= 0) {
+		final int ix = idx - 1, iy = idy - 1;
+		for (int i = 0; i < n; ++i) {
+			dy[iy + i] += dx[ix + i];
+		}
+	}
+
+	/**
+	 *
+	 * @param n
+	 * @param dx
+	 * @param idx
+	 * @param dy
+	 * @param idy
+	 * @param dz
+	 * @param idz
+	 */
+	public static final void dxpy1(final int n, final double[] dx, final int idx, final double[] dy, final int idy,
+			final double[] dz, final int idz) {
+		final int ix = idx - 1, iy = idy - 1, iz = idz - 1;
+		for (int i = 0; i < n; ++i) {
+			dz[iz + i] = dy[iy + i] + dx[ix + i];
+		}
+	}
+
+	// ==========================================================================
+	// PARALLEL VARIANTS
+	// ==========================================================================
+	/**
+	 * Same as {@link #ddotm(int, double[], int, double[], int)}, but splits the
+	 * product into fixed-size chunks computed in parallel when parallel is set
+	 * and n is at least {@link #PARALLEL_MIN}. The partial sums are added in
+	 * order, so the result does not depend on the number of threads.
+	 * 
+	 * @param n
+	 * @param dx
+	 * @param idx
+	 * @param dy
+	 * @param idy
+	 * @param parallel
+	 * @return
+	 */
+	public static final double ddotm(final int n, final double[] dx, final int idx, final double[] dy, final int idy,
+			final boolean parallel) {
+		if (!parallel || n < PARALLEL_MIN) {
+			return ddotm(n, dx, idx, dy, idy);
+		}
+		final double[] sums = new double[chunks(n)];
+		IntStream.range(0, sums.length).parallel().forEach(c -> {
+			final int lo = c * PARALLEL_CHUNK;
+			sums[c] = ddotm(Math.min(PARALLEL_CHUNK, n - lo), dx, idx + lo, dy, idy + lo);
+		});
+		return sum(sums);
+	}
+
+	/**
+	 * Same as {@link #dnrm2(int, double[], int, int)} with unit increment, but
+	 * computes the sum of squares in parallel when parallel is set and n is at
+	 * least {@link #PARALLEL_MIN}.
+	 * 
+	 * @param n
+	 * @param dx
+	 * @param idx
+	 * @param parallel
+	 * @return
+	 */
+	public static final double dnrm2(final int n, final double[] dx, final int idx, final boolean parallel) {
+		if (!parallel || n < PARALLEL_MIN) {
+			return dnrm2(n, dx, idx, 1);
+		}
+		final double[] sums = new double[chunks(n)];
+		IntStream.range(0, sums.length).parallel().forEach(c -> {
+			final int lo = c * PARALLEL_CHUNK;
+			sums[c] = dssqm(Math.min(PARALLEL_CHUNK, n - lo), dx, idx + lo);
+		});
+		final double ssq = sum(sums);
+		if (ssq >= SSQ_MIN && ssq <= SSQ_MAX) {
+			return Math.sqrt(ssq);
+		}
+
+		// FALL BACK TO THE SCALED SERIAL VERSION
+		return dnrm2(n, dx, idx, 1);
+	}
+
+	/**
+	 * 
+	 * @param n
+	 * @param da
+	 * @param dx
+	 * @param idx
+	 * @param parallel
+	 */
+	public static final void dscalm(final int n, final double da, final double[] dx, final int idx,
+			final boolean parallel) {
+		if (!parallel || n < PARALLEL_MIN) {
+			dscalm(n, da, dx, idx);
+			return;
+		}
+		IntStream.range(0, chunks(n)).parallel().forEach(c -> {
+			final int lo = c * PARALLEL_CHUNK;
+			dscalm(Math.min(PARALLEL_CHUNK, n - lo), da, dx, idx + lo);
+		});
+	}
+
+	/**
+	 * 
+	 * @param n
+	 * @param da
+	 * @param dx
+	 * @param idx
+	 * @param dy
+	 * @param idy
+	 * @param parallel
+	 */
+	public static final void dscal1(final int n, final double da, final double[] dx, final int idx, final double[] dy,
+			final int idy, final boolean parallel) {
+		if (!parallel || n < PARALLEL_MIN) {
+			dscal1(n, da, dx, idx, dy, idy);
 			return;
 		}
+		IntStream.range(0, chunks(n)).parallel().forEach(c -> {
+			final int lo = c * PARALLEL_CHUNK;
+			dscal1(Math.min(PARALLEL_CHUNK, n - lo), da, dx, idx + lo, dy, idy + lo);
+		});
+	}
 
-		// CODE FOR BOTH INCREMENTS EQUAL TO 1
-		final int m = n % 4;
-		if (m != 0) {
-			for (int i = 0; i < m; ++i) {
-				dy[i + idy - 1] += dx[i + idx - 1];
-			}
-			if (n < 4) {
-				return;
-			}
+	/**
+	 * 
+	 * @param n
+	 * @param da
+	 * @param dx
+	 * @param idx
+	 * @param dy
+	 * @param idy
+	 * @param parallel
+	 */
+	public static final void daxpym(final int n, final double da, final double[] dx, final int idx, final double[] dy,
+			final int idy, final boolean parallel) {
+		if (!parallel || n < PARALLEL_MIN) {
+			daxpym(n, da, dx, idx, dy, idy);
+			return;
 		}
-		for (int i = m; i < n; i += 4) {
-			dy[i + idy - 1] += dx[i + idx - 1];
-			dy[i + 1 + idy - 1] += dx[i + 1 + idx - 1];
-			dy[i + 2 + idy - 1] += dx[i + 2 + idx - 1];
-			dy[i + 3 + idy - 1] += dx[i + 3 + idx - 1];
+		IntStream.range(0, chunks(n)).parallel().forEach(c -> {
+			final int lo = c * PARALLEL_CHUNK;
+			daxpym(Math.min(PARALLEL_CHUNK, n - lo), da, dx, idx + lo, dy, idy + lo);
+		});
+	}
+
+	/**
+	 * 
+	 * @param n
+	 * @param da
+	 * @param dx
+	 * @param idx
+	 * @param dy
+	 * @param idy
+	 * @param dz
+	 * @param idz
+	 * @param parallel
+	 */
+	public static final void daxpy1(final int n, final double da, final double[] dx, final int idx, final double[] dy,
+			final int idy, final double[] dz, final int idz, final boolean parallel) {
+		if (!parallel || n < PARALLEL_MIN) {
+			daxpy1(n, da, dx, idx, dy, idy, dz, idz);
+			return;
 		}
+		IntStream.range(0, chunks(n)).parallel().forEach(c -> {
+			final int lo = c * PARALLEL_CHUNK;
+			daxpy1(Math.min(PARALLEL_CHUNK, n - lo), da, dx, idx + lo, dy, idy + lo, dz, idz + lo);
+		});
 	}
 
 	/**
-	 *
+	 * 
+	 * @param n
+	 * @param dx
+	 * @param idx
+	 * @param dy
+	 * @param idy
+	 * @param parallel
+	 */
+	public static final void dxpym(final int n, final double[] dx, final int idx, final double[] dy, final int idy,
+			final boolean parallel) {
+		if (!parallel || n < PARALLEL_MIN) {
+			dxpym(n, dx, idx, dy, idy);
+			return;
+		}
+		IntStream.range(0, chunks(n)).parallel().forEach(c -> {
+			final int lo = c * PARALLEL_CHUNK;
+			dxpym(Math.min(PARALLEL_CHUNK, n - lo), dx, idx + lo, dy, idy + lo);
+		});
+	}
+
+	/**
+	 * 
 	 * @param n
 	 * @param dx
 	 * @param idx
@@ -521,31 +692,33 @@ public final class BlasMath {
 	 * @param idy
 	 * @param dz
 	 * @param idz
+	 * @param parallel
 	 */
 	public static final void dxpy1(final int n, final double[] dx, final int idx, final double[] dy, final int idy,
-			final double[] dz, final int idz) {
-		if (n <= 0) {
+			final double[] dz, final int idz, final boolean parallel) {
+		if (!parallel || n < PARALLEL_MIN) {
+			dxpy1(n, dx, idx, dy, idy, dz, idz);
 			return;
 		}
+		IntStream.range(0, chunks(n)).parallel().forEach(c -> {
+			final int lo = c * PARALLEL_CHUNK;
+			dxpy1(Math.min(PARALLEL_CHUNK, n - lo), dx, idx + lo, dy, idy + lo, dz, idz + lo);
+		});
+	}
 
-		// CODE FOR BOTH INCREMENTS EQUAL TO 1
-		final int m = n % 4;
-		if (m != 0) {
-			for (int i = 0; i < m; ++i) {
-				dz[i + idz - 1] = dy[i + idy - 1] + dx[i + idx - 1];
-			}
-			if (n < 4) {
-				return;
-			}
-		}
-		for (int i = m; i < n; i += 4) {
-			dz[i + idz - 1] = dy[i + idy - 1] + dx[i + idx - 1];
-			dz[i + 1 + idy - 1] = dy[i + 1 + idy - 1] + dx[i + 1 + idx - 1];
-			dz[i + 2 + idy - 1] = dy[i + 2 + idy - 1] + dx[i + 2 + idx - 1];
-			dz[i + 3 + idy - 1] = dy[i + 3 + idy - 1] + dx[i + 3 + idx - 1];
+	private static final int chunks(final int n) {
+		return (n + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+	}
+
+	private static final double sum(final double[] sums) {
+		double sum = 0.0;
+		for (final double s : sums) {
+			sum += s;
 		}
+		return sum;
 	}
 
 	private BlasMath() {
 	}
 }
+
@@ -0,0 +1,500 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package utils;
+
+import java.util.stream.IntStream;
+
+/**
+ * Dense linear algebra kernels for matrices stored as flat row-major arrays, so
+ * that element (i, j) of a matrix with n columns is a[i * n + j]. The matrix
+ * products are computed over tiles of the output and blocks of the inner
+ * dimension that fit in cache, and the innermost loops run over contiguous
+ * memory. Kernels with a parallel flag split independent rows or tiles of the
+ * output across threads when there is enough work; the result does not depend
+ * on whether this is done.
+ * 
+ * The symmetric eigensolver is translated from the JAMA package, which was
+ * released into the public domain by The MathWorks and the National Institute
+ * of Standards and Technology (NIST).
+ * 
+ * 
+ * REFERENCES:
+ * 
+ * [1] Golub, Gene H., and Charles F. Van Loan. Matrix computations. JHU press,
+ * 2013.
+ * 
+ * [2] Goto, Kazushige, and Robert A. van de Geijn. "Anatomy of
+ * high-performance matrix multiplication." ACM Transactions on Mathematical
+ * Software 34.3 (2008): 1-25.
+ * 
+ * [3] Demmel, James, and Kresimir Veselic. "Jacobi's method is more accurate
+ * than QR." SIAM Journal on Matrix Analysis and Applications 13.4 (1992):
+ * 1204-1245.
+ */
+public final class DenseMath {
+
+	// rows or columns of the output in one tile, and length of one block of the
+	// inner dimension of a product
+	private static final int TILE = 64;
+	private static final int DEPTH = 256;
+
+	// minimum number of multiply-adds for a kernel to run in parallel
+	private static final long PARALLEL_MIN = 1L << 18;
+
+	// ==========================================================================
+	// STATIC METHODS
+	// ==========================================================================
+	/**
+	 * Computes the symmetric matrix c = alpha * a * a' + beta * c, where a is
+	 * n-by-k and c is n-by-n. Only the lower triangle of c is referenced, and the
+	 * result is written to both triangles.
+	 * 
+	 * @param n
+	 * @param k
+	 * @param alpha
+	 * @param a
+	 * @param beta
+	 * @param c
+	 * @param parallel
+	 */
+	public static final void dsyrk(final int n, final int k, final double alpha, final double[] a, final double beta,
+			final double[] c, final boolean parallel) {
+		if (beta != 1.0) {
+			for (int i = 0; i < n; ++i) {
+				scale(i + 1, beta, c, i * n);
+			}
+		}
+		if (alpha != 0.0 && k != 0) {
+			range((n + TILE - 1) / TILE, parallel && (long) n * n * k >= 2 * PARALLEL_MIN).forEach(t -> {
+				final int i0 = t * TILE, i1 = Math.min(i0 + TILE, n);
+				for (int j0 = 0; j0 < i1; j0 += TILE) {
+					rowProducts(i0, i1, j0, Math.min(j0 + TILE, i1), n, k, alpha, a, a, c);
+				}
+			});
+		}
+
+		// copy the lower triangle to the upper
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < i; ++j) {
+				c[j * n + i] = c[i * n + j];
+			}
+		}
+	}
+
+	/**
+	 * Computes the Cholesky factorization a = L * L' of a symmetric positive
+	 * definite n-by-n matrix. Only the lower triangle of a is referenced. On exit
+	 * the lower triangle of a holds L and the strict upper triangle is zero.
+	 * 
+	 * @param n
+	 * @param a
+	 * @param parallel
+	 * @return the order of the leading submatrix that was factored: n on success,
+	 *         or the index of the first non-positive pivot
+	 */
+	public static final int dpotrf(final int n, final double[] a, final boolean parallel) {
+		for (int i = 0; i < n; ++i) {
+			for (int j = i + 1; j < n; ++j) {
+				a[i * n + j] = 0.0;
+			}
+		}
+
+		// left-looking: column j of L needs the dot products of the first j
+		// elements of rows j and i, which are contiguous
+		for (int j = 0; j < n; ++j) {
+			final int rj = j * n;
+			double d = a[rj + j] - BlasMath.ddotm(j, a, rj + 1, a, rj + 1);
+			if (!(d > 0.0)) {
+				return j;
+			}
+			d = Math.sqrt(d);
+			a[rj + j] = d;
+			final double dj = d;
+			final int col = j;
+			range(n - j - 1, parallel && (long) (n - j) * j >= PARALLEL_MIN).forEach(r -> {
+				final int ri = (col + 1 + r) * n;
+				a[ri + col] = (a[ri + col] - BlasMath.ddotm(col, a, ri + 1, a, rj + 1)) / dj;
+			});
+		}
+		return n;
+	}
+
+	/**
+	 * Computes all eigenvalues and eigenvectors of a symmetric n-by-n matrix by
+	 * Householder tridiagonalization followed by the implicit QL method. On exit
+	 * w holds the eigenvalues in ascending order, and column j of a holds the
+	 * normalized eigenvector of w[j].
+	 * 
+	 * @param n
+	 * @param a
+	 * @param w
+	 * @param e work array of length n
+	 */
+	public static final void dsyev(final int n, final double[] a, final double[] w, final double[] e) {
+		tred2(n, a, w, e);
+
+		// the QL sweeps rotate pairs of eigenvector columns, which are contiguous
+		// rows of the transpose
+		transpose(n, a);
+		tql2(n, w, e, a);
+		transpose(n, a);
+	}
+
+	/**
+	 * Computes the thin singular value decomposition a = U * diag(s) * V' of an
+	 * m-by-n matrix with m >= n by the one-sided Jacobi method. On exit a holds
+	 * the m-by-n matrix U, s the singular values in descending order, and v the
+	 * n-by-n matrix V.
+	 * 
+	 * @param m
+	 * @param n
+	 * @param a
+	 * @param s
+	 * @param v
+	 */
+	public static final void dgesvj(final int m, final int n, final double[] a, final double[] s, final double[] v) {
+		if (m < n) {
+			throw new IllegalArgumentException("m = " + m + " < n = " + n);
+		}
+
+		// rotate the rows of the transposes of a and v
+		final double[] at = new double[m * n], vt = new double[n * n];
+		transpose(m, n, a, at);
+		for (int j = 0; j < n; ++j) {
+			vt[j * n + j] = 1.0;
+		}
+		final double eps = BlasMath.D1MACH[3 - 1];
+		for (int sweep = 0; sweep < 60; ++sweep) {
+			boolean rotated = false;
+			for (int p = 0; p < n - 1; ++p) {
+				for (int q = p + 1; q < n; ++q) {
+					final int rp = p * m, rq = q * m;
+					final double alpha = BlasMath.dssqm(m, at, rp + 1);
+					final double beta = BlasMath.dssqm(m, at, rq + 1);
+					final double gamma = BlasMath.ddotm(m, at, rp + 1, at, rq + 1);
+					if (gamma == 0.0 || Math.abs(gamma) <= eps * Math.sqrt(alpha * beta)) {
+						continue;
+					}
+					rotated = true;
+					final double zeta = (beta - alpha) / (2.0 * gamma);
+					final double t = Math.copySign(1.0, zeta) / (Math.abs(zeta) + Math.sqrt(1.0 + zeta * zeta));
+					final double c = 1.0 / Math.sqrt(1.0 + t * t), sn = c * t;
+					rotate(m, at, rp, rq, c, sn);
+					rotate(n, vt, p * n, q * n, c, sn);
+				}
+			}
+			if (!rotated) {
+				break;
+			}
+		}
+
+		// singular values are the column norms; sort them in descending order
+		for (int j = 0; j < n; ++j) {
+			s[j] = BlasMath.dnrm2(m, at, j * m + 1, 1);
+			if (s[j] > 0.0) {
+				BlasMath.dscalm(m, 1.0 / s[j], at, j * m + 1);
+			}
+		}
+		for (int i = 0; i < n - 1; ++i) {
+			int k = i;
+			for (int j = i + 1; j < n; ++j) {
+				if (s[j] > s[k]) {
+					k = j;
+				}
+			}
+			if (k != i) {
+				final double temp = s[k];
+				s[k] = s[i];
+				s[i] = temp;
+				swapRows(m, at, i, k);
+				swapRows(n, vt, i, k);
+			}
+		}
+		transpose(n, m, at, a);
+		transpose(n, n, vt, v);
+	}
+
+	private static final void transpose(final int m, final int n, final double[] a, final double[] at) {
+		for (int i0 = 0; i0 < m; i0 += TILE) {
+			final int i1 = Math.min(i0 + TILE, m);
+			for (int j0 = 0; j0 < n; j0 += TILE) {
+				final int j1 = Math.min(j0 + TILE, n);
+				for (int i = i0; i < i1; ++i) {
+					for (int j = j0; j < j1; ++j) {
+						at[j * m + i] = a[i * n + j];
+					}
+				}
+			}
+		}
+	}
+
+	private static final void transpose(final int n, final double[] a) {
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < i; ++j) {
+				final double temp = a[i * n + j];
+				a[i * n + j] = a[j * n + i];
+				a[j * n + i] = temp;
+			}
+		}
+	}
+
+	private static final void rowProducts(final int i0, final int i1, final int j0, final int j1, final int n,
+			final int k, final double alpha, final double[] a, final double[] b, final double[] c) {
+		for (int p0 = 0; p0 < k; p0 += DEPTH) {
+			final int len = Math.min(DEPTH, k - p0);
+			for (int i = i0; i < i1; ++i) {
+				final int jend = Math.min(j1, i + 1);
+				for (int j = j0; j < jend; ++j) {
+					c[i * n + j] += alpha * BlasMath.ddotm(len, a, i * k + p0 + 1, b, j * k + p0 + 1);
+				}
+			}
+		}
+	}
+
+	private static final IntStream range(final int n, final boolean parallel) {
+		final IntStream range = IntStream.range(0, n);
+		return parallel ? range.parallel() : range;
+	}
+
+	private static final void scale(final int n, final double beta, final double[] c, final int ic) {
+		if (beta == 0.0) {
+			for (int i = ic; i < ic + n; ++i) {
+				c[i] = 0.0;
+			}
+		} else if (beta != 1.0) {
+			BlasMath.dscalm(n, beta, c, ic + 1);
+		}
+	}
+
+	private static final void rotate(final int n, final double[] a, final int rp, final int rq, final double c,
+			final double s) {
+		for (int i = 0; i < n; ++i) {
+			final double ap = a[rp + i], aq = a[rq + i];
+			a[rp + i] = c * ap - s * aq;
+			a[rq + i] = s * ap + c * aq;
+		}
+	}
+
+	private static final void swapRows(final int n, final double[] a, final int p, final int q) {
+		for (int i = 0; i < n; ++i) {
+			final double temp = a[p * n + i];
+			a[p * n + i] = a[q * n + i];
+			a[q * n + i] = temp;
+		}
+	}
+
+	// Householder reduction to tridiagonal form, derived from the Algol procedure
+	// tred2 by Bowdler, Martin, Reinsch, and Wilkinson, Handbook for Auto. Comp.,
+	// Vol.ii-Linear Algebra, and the corresponding Fortran subroutine in EISPACK
+	private static final void tred2(final int n, final double[] V, final double[] d, final double[] e) {
+		System.arraycopy(V, (n - 1) * n, d, 0, n);
+
+		// Householder reduction to tridiagonal form.
+		for (int i = n - 1; i > 0; i--) {
+
+			// Scale to avoid under/overflow.
+			double scale = 0.0;
+			double h = 0.0;
+			for (int k = 0; k < i; k++) {
+				scale += Math.abs(d[k]);
+			}
+			if (scale == 0.0) {
+				e[i] = d[i - 1];
+				for (int j = 0; j < i; j++) {
+					d[j] = V[(i - 1) * n + j];
+					V[i * n + j] = V[j * n + i] = 0.0;
+				}
+			} else {
+
+				// Generate Householder vector.
+				for (int k = 0; k < i; k++) {
+					d[k] /= scale;
+					h += d[k] * d[k];
+				}
+				double f = d[i - 1];
+				double g = Math.sqrt(h);
+				if (f > 0) {
+					g = -g;
+				}
+				e[i] = scale * g;
+				h = h - f * g;
+				d[i - 1] = f - g;
+				for (int k = 0; k < i; k++) {
+					e[k] = 0.0;
+				}
+
+				// Apply similarity transformation to remaining columns.
+				for (int j = 0; j < i; j++) {
+					f = d[j];
+					V[j * n + i] = f;
+					g = e[j] + V[j * n + j] * f;
+					for (int k = j + 1; k <= i - 1; k++) {
+						g += V[k * n + j] * d[k];
+						e[k] += V[k * n + j] * f;
+					}
+					e[j] = g;
+				}
+				BlasMath.dscalm(i, 1.0 / h, e, 1);
+				f = BlasMath.ddotm(i, e, 1, d, 1);
+				final double hh = f / (h + h);
+				BlasMath.daxpym(i, -hh, d, 1, e, 1);
+				for (int j = 0; j < i; j++) {
+					f = d[j];
+					g = e[j];
+					for (int k = j; k <= i - 1; k++) {
+						V[k * n + j] -= (f * e[k] + g * d[k]);
+					}
+					d[j] = V[(i - 1) * n + j];
+					V[i * n + j] = 0.0;
+				}
+			}
+			d[i] = h;
+		}
+
+		// Accumulate transformations.
+		for (int i = 0; i < n - 1; i++) {
+			V[(n - 1) * n + i] = V[i * n + i];
+			V[i * n + i] = 1.0;
+			final double h = d[i + 1];
+			if (h != 0.0) {
+				for (int k = 0; k <= i; k++) {
+					d[k] = V[k * n + i + 1] / h;
+				}
+				for (int j = 0; j <= i; j++) {
+					double g = 0.0;
+					for (int k = 0; k <= i; k++) {
+						g += V[k * n + i + 1] * V[k * n + j];
+					}
+					for (int k = 0; k <= i; k++) {
+						V[k * n + j] -= g * d[k];
+					}
+				}
+			}
+			for (int k = 0; k <= i; k++) {
+				V[k * n + i + 1] = 0.0;
+			}
+		}
+		System.arraycopy(V, (n - 1) * n, d, 0, n);
+		for (int j = 0; j < n; ++j) {
+			V[(n - 1) * n + j] = 0.0;
+		}
+		V[(n - 1) * n + n - 1] = 1.0;
+		e[0] = 0.0;
+	}
+
+	// symmetric tridiagonal QL algorithm, taken from the JAMA package; row j of
+	// VT is the eigenvector of d[j]
+	private static final void tql2(final int n, final double[] d, final double[] e, final double[] VT) {
+		System.arraycopy(e, 1, e, 0, n - 1);
+		e[n - 1] = 0.0;
+		double f = 0.0, tst1 = 0.0;
+		final double eps = BlasMath.D1MACH[3 - 1];
+		for (int l = 0; l < n; l++) {
+
+			// Find small subdiagonal element
+			tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+			int m = l;
+			for (m = l; m < n; m++) {
+				if (Math.abs(e[m]) <= eps * tst1) {
+					break;
+				}
+			}
+			if (m >= n) {
+				break;
+			}
+
+			// If m == l, d[l] is an eigenvalue, otherwise, iterate.
+			if (m > l) {
+				do {
+
+					// Compute implicit shift
+					double g = d[l];
+					double p = (d[l + 1] - g) / (2.0 * e[l]);
+					double r = RealMath.hypot(p, 1.0);
+					r = RealMath.sign(r, p);
+					d[l] = e[l] / (p + r);
+					d[l + 1] = e[l] * (p + r);
+					final double dl1 = d[l + 1];
+					double h = g - d[l];
+					for (int i = l + 2; i < n; i++) {
+						d[i] -= h;
+					}
+					f += h;
+
+					// Implicit QL transformation.
+					p = d[m];
+					double c = 1.0, c2 = c, c3 = c;
+					final double el1 = e[l + 1];
+					double s = 0.0, s2 = 0.0;
+					for (int i = m - 1; i >= l; i--) {
+						c3 = c2;
+						c2 = c;
+						s2 = s;
+						g = c * e[i];
+						h = c * p;
+						r = RealMath.hypot(p, e[i]);
+						e[i + 1] = s * r;
+						s = e[i] / r;
+						c = p / r;
+						p = c * d[i] - s * g;
+						d[i + 1] = h + s * (c * g + s * d[i]);
+
+						// Accumulate transformation.
+						final int ri = i * n, ri1 = (i + 1) * n;
+						for (int k = 0; k < n; k++) {
+							h = VT[ri1 + k];
+							VT[ri1 + k] = s * VT[ri + k] + c * h;
+							VT[ri + k] = c * VT[ri + k] - s * h;
+						}
+					}
+					p = -s * s2 * c3 * el1 * e[l] / dl1;
+					e[l] = s * p;
+					d[l] = c * p;
+
+					// Check for convergence.
+				} while (Math.abs(e[l]) > eps * tst1);
+			}
+			d[l] += f;
+			e[l] = 0.0;
+		}
+
+		// Sort eigenvalues and corresponding vectors.
+		for (int i = 0; i < n - 1; i++) {
+			int k = i;
+			double p = d[i];
+			for (int j = i + 1; j < n; j++) {
+				if (d[j] < p) {
+					k = j;
+					p = d[j];
+				}
+			}
+			if (k != i) {
+				d[k] = d[i];
+				d[i] = p;
+				swapRows(n, VT, i, k);
+			}
+		}
+	}
+
+	private DenseMath() {
+	}
+}
@@ -0,0 +1,542 @@
+/*
+Copyright (c) 2020 Mike Gimelfarb
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the > "Software"), to
+deal in the Software without restriction, including without limitation the
+rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+sell copies of the Software, and to permit persons to whom the Software is
+furnished to do so, > subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package utils;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Sparse Cholesky factorization P A P' = L L' of a symmetric positive definite
+ * matrix. The symbolic analysis (a minimum degree ordering, the elimination tree
+ * and the pattern of L) depends only on the sparsity pattern of A, and is
+ * computed once in the constructor, so that matrices with the same pattern can
+ * be factored repeatedly. The numerical factorization is the up-looking method
+ * of CSparse.
+ *
+ * The matrix is given by the upper triangle of A, including the diagonal, in
+ * compressed sparse column format. The values passed to the factorization are
+ * aligned with the row indices given to the constructor.
+ * 
+ * Rows of L whose nodes have the same height in the elimination tree lie in
+ * disjoint subtrees and update disjoint columns of L, so they can optionally be
+ * computed in parallel, one level of the tree at a time. The result does not
+ * depend on whether this is done.
+ *
+ *
+ * REFERENCES:
+ *
+ * [1] Davis, Timothy A. Direct methods for sparse linear systems. Society for
+ * Industrial and Applied Mathematics, 2006.
+ *
+ * [2] George, Alan, and Joseph WH Liu. "The evolution of the minimum degree
+ * ordering algorithm." SIAM Review 31.1 (1989): 1-19.
+ */
+public final class SparseCholesky {
+
+	private static final double HUGE = 1e64;
+
+	// minimum number of rows in a level of the elimination tree to process them
+	// in parallel
+	private static final int PARALLEL_MIN = 32;
+
+	// work arrays of the factorization of one row of L
+	private static final class Workspace {
+
+		final double[] x;
+		final int[] stack, mark;
+		int stamp;
+
+		Workspace(final int n) {
+			x = new double[n];
+			stack = new int[n];
+			mark = new int[n];
+		}
+	}
+
+	private final int n;
+	private final int[] perm, parent, cp, ci, map, lp, li, next;
+	private final double[] cx, lx;
+	private final Workspace work;
+	private final int[] levelPtr, levelRows;
+	private final ThreadLocal<Workspace> local;
+
+	/**
+	 *
+	 * @param dim
+	 * @param colPointers
+	 * @param rowIndices
+	 * @param parallel    whether to factor independent rows in parallel
+	 */
+	public SparseCholesky(final int dim, final int[] colPointers, final int[] rowIndices, final boolean parallel) {
+		n = dim;
+		next = new int[n];
+		work = new Workspace(n);
+
+		// fill-reducing ordering
+		perm = minimumDegree(n, colPointers, rowIndices);
+		final int[] pinv = new int[n];
+		for (int k = 0; k < n; ++k) {
+			pinv[perm[k]] = k;
+		}
+
+		// upper triangle of the permuted matrix, and where each entry comes from
+		final int nz = colPointers[n];
+		cp = new int[n + 1];
+		for (int j = 0; j < n; ++j) {
+			for (int p = colPointers[j]; p < colPointers[j + 1]; ++p) {
+				final int i = rowIndices[p];
+				if (i > j) {
+					throw new IllegalArgumentException("Only the upper triangle of the matrix can be given.");
+				}
+				++cp[Math.max(pinv[i], pinv[j]) + 1];
+			}
+		}
+		for (int j = 0; j < n; ++j) {
+			cp[j + 1] += cp[j];
+		}
+		ci = new int[nz];
+		map = new int[nz];
+		cx = new double[nz];
+		System.arraycopy(cp, 0, next, 0, n);
+		for (int j = 0; j < n; ++j) {
+			for (int p = colPointers[j]; p < colPointers[j + 1]; ++p) {
+				final int i2 = pinv[rowIndices[p]], j2 = pinv[j];
+				final int q = next[Math.max(i2, j2)]++;
+				ci[q] = Math.min(i2, j2);
+				map[p] = q;
+			}
+		}
+
+		// elimination tree
+		parent = new int[n];
+		final int[] ancestor = next;
+		for (int k = 0; k < n; ++k) {
+			parent[k] = -1;
+			ancestor[k] = -1;
+			for (int p = cp[k]; p < cp[k + 1]; ++p) {
+				int i = ci[p];
+				while (i != -1 && i < k) {
+					final int inext = ancestor[i];
+					ancestor[i] = k;
+					if (inext == -1) {
+						parent[i] = k;
+					}
+					i = inext;
+				}
+			}
+		}
+
+		// column counts of L from the row patterns
+		lp = new int[n + 1];
+		for (int k = 0; k < n; ++k) {
+			final int top = ereach(k, work);
+			for (int t = top; t < n; ++t) {
+				++lp[work.stack[t] + 1];
+			}
+			++lp[k + 1];
+		}
+		for (int k = 0; k < n; ++k) {
+			lp[k + 1] += lp[k];
+		}
+		li = new int[lp[n]];
+		lx = new double[lp[n]];
+
+		// rows grouped by their height in the elimination tree
+		if (parallel) {
+			final int[] height = new int[n];
+			int levels = 0;
+			for (int k = 0; k < n; ++k) {
+				levels = Math.max(levels, height[k] + 1);
+				if (parent[k] != -1) {
+					height[parent[k]] = Math.max(height[parent[k]], height[k] + 1);
+				}
+			}
+			levelPtr = new int[levels + 1];
+			for (int k = 0; k < n; ++k) {
+				++levelPtr[height[k] + 1];
+			}
+			for (int h = 0; h < levels; ++h) {
+				levelPtr[h + 1] += levelPtr[h];
+			}
+			levelRows = new int[n];
+			final int[] fill = Arrays.copyOf(levelPtr, levels);
+			for (int k = 0; k < n; ++k) {
+				levelRows[fill[height[k]]++] = k;
+			}
+			local = ThreadLocal.withInitial(() -> new Workspace(n));
+		} else {
+			levelPtr = levelRows = null;
+			local = null;
+		}
+	}
+
+	/**
+	 *
+	 * @param dim
+	 * @param colPointers
+	 * @param rowIndices
+	 */
+	public SparseCholesky(final int dim, final int[] colPointers, final int[] rowIndices) {
+		this(dim, colPointers, rowIndices, false);
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public final int size() {
+		return n;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public final int nnz() {
+		return lp[n];
+	}
+
+	/**
+	 * Factors a positive definite matrix with the pattern given to the
+	 * constructor.
+	 *
+	 * @param values
+	 * @return false if the matrix is not numerically positive definite
+	 */
+	public final boolean factor(final double[] values) {
+		return factor(values, -1.0) == 0;
+	}
+
+	/**
+	 * Factors a positive semidefinite matrix with the pattern given to the
+	 * constructor. Pivots that are not larger than tolerance times the largest
+	 * diagonal entry are replaced by a huge number, which effectively removes the
+	 * corresponding rows and columns from the solution, as is commonly done for
+	 * the normal equations of interior-point methods.
+	 *
+	 * @param values
+	 * @param tolerance
+	 * @return the number of pivots replaced, or -1 if a pivot was negative
+	 */
+	public final int factorSemidefinite(final double[] values, final double tolerance) {
+		return factor(values, tolerance);
+	}
+
+	private int factor(final double[] values, final double tol) {
+
+		// scatter the values into the permuted matrix
+		for (int p = 0; p < map.length; ++p) {
+			cx[map[p]] = 0.0;
+		}
+		for (int p = 0; p < map.length; ++p) {
+			cx[map[p]] += values[p];
+		}
+		double diagmax = 0.0;
+		for (int k = 0; k < n; ++k) {
+			for (int p = cp[k]; p < cp[k + 1]; ++p) {
+				if (ci[p] == k) {
+					diagmax = Math.max(diagmax, cx[p]);
+				}
+			}
+		}
+		final double dmax = diagmax;
+		final double dmin = tol < 0.0 ? 0.0 : tol * dmax;
+
+		// up-looking factorization, one row of L at a time
+		System.arraycopy(lp, 0, next, 0, n);
+		int nsmall = 0;
+		if (levelPtr == null) {
+			for (int k = 0; k < n; ++k) {
+				final int status = row(k, work, tol, dmin, dmax);
+				if (status < 0) {
+					return -1;
+				}
+				nsmall += status;
+			}
+			return nsmall;
+		}
+
+		// rows in the same level of the elimination tree are independent
+		final int[] status = new int[n];
+		for (int h = 0; h + 1 < levelPtr.length; ++h) {
+			final int lo = levelPtr[h], hi = levelPtr[h + 1];
+			if (hi - lo >= PARALLEL_MIN) {
+				IntStream.range(lo, hi).parallel().forEach(t -> {
+					final int k = levelRows[t];
+					status[k] = row(k, local.get(), tol, dmin, dmax);
+				});
+			} else {
+				for (int t = lo; t < hi; ++t) {
+					final int k = levelRows[t];
+					status[k] = row(k, work, tol, dmin, dmax);
+				}
+			}
+			for (int t = lo; t < hi; ++t) {
+				if (status[levelRows[t]] < 0) {
+					return -1;
+				}
+				nsmall += status[levelRows[t]];
+			}
+		}
+		return nsmall;
+	}
+
+	private int row(final int k, final Workspace w, final double tol, final double dmin, final double dmax) {
+		final double[] x = w.x;
+		final int[] stack = w.stack, c = next;
+		final int top = ereach(k, w);
+		x[k] = 0.0;
+		for (int p = cp[k]; p < cp[k + 1]; ++p) {
+			x[ci[p]] += cx[p];
+		}
+		double d = x[k];
+		x[k] = 0.0;
+		for (int t = top; t < n; ++t) {
+			final int i = stack[t];
+			final double lki = x[i] / lx[lp[i]];
+			x[i] = 0.0;
+			for (int p = lp[i] + 1; p < c[i]; ++p) {
+				x[li[p]] -= lx[p] * lki;
+			}
+			d -= lki * lki;
+			final int p = c[i]++;
+			li[p] = k;
+			lx[p] = lki;
+		}
+		int small = 0;
+		if (d <= dmin) {
+			if (tol < 0.0 || d < -dmax) {
+				return -1;
+			}
+			d = HUGE * HUGE;
+			small = 1;
+		}
+		final int p = c[k]++;
+		li[p] = k;
+		lx[p] = Math.sqrt(d);
+		return small;
+	}
+
+	/**
+	 * Solves A x = b with the current factorization, overwriting b with x.
+	 *
+	 * @param b
+	 */
+	public final void solve(final double[] b) {
+		final double[] x = work.x;
+		for (int k = 0; k < n; ++k) {
+			x[k] = b[perm[k]];
+		}
+
+		// L y = P b
+		for (int j = 0; j < n; ++j) {
+			x[j] /= lx[lp[j]];
+			final double xj = x[j];
+			for (int p = lp[j] + 1; p < lp[j + 1]; ++p) {
+				x[li[p]] -= lx[p] * xj;
+			}
+		}
+
+		// L' z = y
+		for (int j = n - 1; j >= 0; --j) {
+			double s = x[j];
+			for (int p = lp[j] + 1; p < lp[j + 1]; ++p) {
+				s -= lx[p] * x[li[p]];
+			}
+			x[j] = s / lx[lp[j]];
+		}
+		for (int k = 0; k < n; ++k) {
+			b[perm[k]] = x[k];
+		}
+	}
+
+	private int ereach(final int k, final Workspace w) {
+		final int[] stack = w.stack, mark = w.mark;
+
+		// pattern of row k of L, from the elimination tree
+		final int stamp = ++w.stamp;
+		mark[k] = stamp;
+		int top = n;
+		for (int p = cp[k]; p < cp[k + 1]; ++p) {
+			int i = ci[p];
+			if (i >= k) {
+				continue;
+			}
+			int len = 0;
+			while (mark[i] != stamp) {
+				stack[len] = i;
+				++len;
+				mark[i] = stamp;
+				i = parent[i];
+			}
+			while (len > 0) {
+				--top;
+				--len;
+				stack[top] = stack[len];
+			}
+		}
+		return top;
+	}
+
+	private static int[] minimumDegree(final int n, final int[] cp, final int[] ri) {
+
+		// adjacency lists of the graph of the matrix
+		final int[] deg = new int[n];
+		for (int j = 0; j < n; ++j) {
+			for (int p = cp[j]; p < cp[j + 1]; ++p) {
+				if (ri[p] != j) {
+					++deg[j];
+					++deg[ri[p]];
+				}
+			}
+		}
+		final int[][] adj = new int[n][];
+		for (int j = 0; j < n; ++j) {
+			adj[j] = new int[deg[j]];
+		}
+		Arrays.fill(deg, 0);
+		for (int j = 0; j < n; ++j) {
+			for (int p = cp[j]; p < cp[j + 1]; ++p) {
+				final int i = ri[p];
+				if (i != j) {
+					adj[j][deg[j]++] = i;
+					adj[i][deg[i]++] = j;
+				}
+			}
+		}
+		final int[] mark = new int[n];
+		int stamp = 0;
+		for (int j = 0; j < n; ++j) {
+			++stamp;
+			int len = 0;
+			for (int t = 0; t < deg[j]; ++t) {
+				final int i = adj[j][t];
+				if (mark[i] != stamp) {
+					mark[i] = stamp;
+					adj[j][len++] = i;
+				}
+			}
+			deg[j] = len;
+		}
+
+		// degree lists
+		final int[] head = new int[n], next = new int[n], prev = new int[n];
+		Arrays.fill(head, -1);
+		for (int j = 0; j < n; ++j) {
+			next[j] = head[deg[j]];
+			prev[j] = -1;
+			if (head[deg[j]] >= 0) {
+				prev[head[deg[j]]] = j;
+			}
+			head[deg[j]] = j;
+		}
+
+		// eliminate the nodes of minimum degree, adding the fill to the graph
+		final boolean[] elim = new boolean[n];
+		final int[] perm = new int[n], nb = new int[n];
+		int mindeg = 0;
+		for (int k = 0; k < n; ++k) {
+			while (head[mindeg] < 0) {
+				++mindeg;
+			}
+
+			// once the remaining graph is this dense, its factor is essentially
+			// full, so order the rest by their current degrees
+			if (2 * mindeg >= n - k) {
+				for (int dg = mindeg; k < n; ++dg) {
+					for (int u = head[dg]; u >= 0; u = next[u]) {
+						perm[k++] = u;
+					}
+				}
+				break;
+			}
+			final int v = head[mindeg];
+			head[mindeg] = next[v];
+			if (next[v] >= 0) {
+				prev[next[v]] = -1;
+			}
+			perm[k] = v;
+			elim[v] = true;
+
+			// live neighbours of v
+			int nnb = 0;
+			for (int t = 0; t < deg[v]; ++t) {
+				final int u = adj[v][t];
+				if (!elim[u]) {
+					nb[nnb++] = u;
+				}
+			}
+			adj[v] = null;
+
+			// the neighbours of v become a clique
+			for (int s = 0; s < nnb; ++s) {
+				final int u = nb[s];
+				int[] au = adj[u];
+				++stamp;
+				int len = 0;
+				for (int t = 0; t < deg[u]; ++t) {
+					final int w = au[t];
+					if (!elim[w]) {
+						au[len++] = w;
+						mark[w] = stamp;
+					}
+				}
+				int extra = 0;
+				for (int t = 0; t < nnb; ++t) {
+					final int w = nb[t];
+					if (w != u && mark[w] != stamp) {
+						++extra;
+					}
+				}
+				if (len + extra > au.length) {
+					au = Arrays.copyOf(au, Math.max(len + extra, au.length << 1));
+					adj[u] = au;
+				}
+				for (int t = 0; t < nnb; ++t) {
+					final int w = nb[t];
+					if (w != u && mark[w] != stamp) {
+						au[len++] = w;
+					}
+				}
+
+				// move u to its new degree list
+				if (prev[u] >= 0) {
+					next[prev[u]] = next[u];
+				} else {
+					head[deg[u]] = next[u];
+				}
+				if (next[u] >= 0) {
+					prev[next[u]] = prev[u];
+				}
+				deg[u] = len;
+				next[u] = head[len];
+				prev[u] = -1;
+				if (head[len] >= 0) {
+					prev[head[len]] = u;
+				}
+				head[len] = u;
+				mindeg = Math.min(mindeg, len);
+			}
+		}
+		return perm;
+	}
+}